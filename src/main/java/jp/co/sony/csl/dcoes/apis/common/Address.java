@@ -0,0 +1,363 @@
+package jp.co.sony.csl.dcoes.apis.common;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Typed descriptor of an {@link io.vertx.core.eventbus.EventBus} address.
+ * Carries the address string, the {@link Scope}, the expected message body and reply types, and a default timeout, and offers request helpers which check them.
+ * Addresses which contain a unit ID are described by a {@link PerUnit} template, which interns the {@link Address} of each unit so that hot loops do not build a new string per call.
+ * Descriptors of the addresses in {@link ServiceAddress} are in {@link ServiceAddress.Typed}.
+ * @param <Req> type of message body
+ * @param <Res> type of reply body
+ * @author OES Project
+ * {@link io.vertx.core.eventbus.EventBus} アドレスの型付き記述子.
+ * アドレス文字列, {@link Scope}, 期待するメッセージボディと返信の型, デフォルトのタイムアウトを持ち, それらを確かめるリクエストヘルパを提供する.
+ * ユニット ID を含むアドレスは {@link PerUnit} テンプレートで記述し, ユニットごとの {@link Address} を保持しておくので, 頻繁なループでも呼ぶたびに文字列を作らない.
+ * {@link ServiceAddress} のアドレスの記述子は {@link ServiceAddress.Typed} にある.
+ * @param <Req> メッセージボディの型
+ * @param <Res> 返信ボディの型
+ * @author OES Project
+ */
+public class Address<Req, Res> {
+
+	/**
+	 * Scope of an address.
+	 * アドレスの範囲.
+	 */
+	public enum Scope {
+		/**
+		 * Local : consumers are registered with {@link io.vertx.core.eventbus.EventBus#localConsumer(String)}
+		 * ローカル : {@link io.vertx.core.eventbus.EventBus#localConsumer(String)} で受信を登録する
+		 */
+		LOCAL,
+		/**
+		 * Global : consumers are registered with {@link io.vertx.core.eventbus.EventBus#consumer(String)}
+		 * グローバル : {@link io.vertx.core.eventbus.EventBus#consumer(String)} で受信を登録する
+		 */
+		GLOBAL,
+	}
+
+	/**
+	 * Creates descriptor with {@link DeliveryOptions#DEFAULT_TIMEOUT}.
+	 * @param <Req> type of message body
+	 * @param <Res> type of reply body
+	 * @param name address string
+	 * @param scope scope
+	 * @param requestType class of message body
+	 * @param replyType class of reply body
+	 * @return descriptor
+	 * {@link DeliveryOptions#DEFAULT_TIMEOUT} で記述子を作成する.
+	 * @param <Req> メッセージボディの型
+	 * @param <Res> 返信ボディの型
+	 * @param name アドレス文字列
+	 * @param scope 範囲
+	 * @param requestType メッセージボディのクラス
+	 * @param replyType 返信ボディのクラス
+	 * @return 記述子
+	 */
+	public static <Req, Res> Address<Req, Res> of(String name, Scope scope, Class<Req> requestType, Class<Res> replyType) {
+		return new Address<>(name, scope, requestType, replyType, DeliveryOptions.DEFAULT_TIMEOUT);
+	}
+	/**
+	 * Creates descriptor.
+	 * @param <Req> type of message body
+	 * @param <Res> type of reply body
+	 * @param name address string
+	 * @param scope scope
+	 * @param requestType class of message body
+	 * @param replyType class of reply body
+	 * @param timeoutMsec default reply timeout [ms]
+	 * @return descriptor
+	 * 記述子を作成する.
+	 * @param <Req> メッセージボディの型
+	 * @param <Res> 返信ボディの型
+	 * @param name アドレス文字列
+	 * @param scope 範囲
+	 * @param requestType メッセージボディのクラス
+	 * @param replyType 返信ボディのクラス
+	 * @param timeoutMsec 返信のデフォルトのタイムアウト [ms]
+	 * @return 記述子
+	 */
+	public static <Req, Res> Address<Req, Res> of(String name, Scope scope, Class<Req> requestType, Class<Res> replyType, long timeoutMsec) {
+		return new Address<>(name, scope, requestType, replyType, timeoutMsec);
+	}
+
+	////
+
+	private final String name_;
+	private final Scope scope_;
+	private final Class<Req> requestType_;
+	private final Class<Res> replyType_;
+	private final long timeoutMsec_;
+
+	private Address(String name, Scope scope, Class<Req> requestType, Class<Res> replyType, long timeoutMsec) {
+		name_ = name;
+		scope_ = scope;
+		requestType_ = requestType;
+		replyType_ = replyType;
+		timeoutMsec_ = timeoutMsec;
+	}
+
+	/**
+	 * Gets address string.
+	 * @return address string
+	 * アドレス文字列を取得する.
+	 * @return アドレス文字列
+	 */
+	public String name() {
+		return name_;
+	}
+	/**
+	 * Gets scope.
+	 * @return scope
+	 * 範囲を取得する.
+	 * @return 範囲
+	 */
+	public Scope scope() {
+		return scope_;
+	}
+	/**
+	 * Gets class of message body.
+	 * @return class of message body
+	 * メッセージボディのクラスを取得する.
+	 * @return メッセージボディのクラス
+	 */
+	public Class<Req> requestType() {
+		return requestType_;
+	}
+	/**
+	 * Gets class of reply body.
+	 * @return class of reply body
+	 * 返信ボディのクラスを取得する.
+	 * @return 返信ボディのクラス
+	 */
+	public Class<Res> replyType() {
+		return replyType_;
+	}
+	/**
+	 * Gets default reply timeout.
+	 * @return timeout [ms]
+	 * 返信のデフォルトのタイムアウトを取得する.
+	 * @return タイムアウト [ms]
+	 */
+	public long timeoutMsec() {
+		return timeoutMsec_;
+	}
+
+	/**
+	 * Creates delivery options with the default timeout.
+	 * @return delivery options
+	 * デフォルトのタイムアウトで配送オプションを作成する.
+	 * @return 配送オプション
+	 */
+	public DeliveryOptions deliveryOptions() {
+		return new DeliveryOptions().setSendTimeout(timeoutMsec_);
+	}
+
+	/**
+	 * Sends request and receives reply body.
+	 * Fails with {@link ClassCastException} if the reply body is neither {@code null} nor of {@link #replyType()}.
+	 * @param vertx the {@link Vertx} instance
+	 * @param body message body. May be {@code null}
+	 * @param replyHandler handler receiving reply body
+	 * リクエストを送り返信ボディを受け取る.
+	 * 返信ボディが {@code null} でも {@link #replyType()} でもなければ {@link ClassCastException} で fail する.
+	 * @param vertx the {@link Vertx} instance
+	 * @param body メッセージボディ. {@code null} 可
+	 * @param replyHandler 返信ボディを受け取るハンドラ
+	 */
+	public void request(Vertx vertx, Req body, Handler<AsyncResult<Res>> replyHandler) {
+		request(vertx, body, deliveryOptions(), replyHandler);
+	}
+	/**
+	 * Sends request with delivery options and receives reply body.
+	 * Fails with {@link ClassCastException} if the reply body is neither {@code null} nor of {@link #replyType()}.
+	 * @param vertx the {@link Vertx} instance
+	 * @param body message body. May be {@code null}
+	 * @param options delivery options, e.g. from {@link #deliveryOptions()} with headers added
+	 * @param replyHandler handler receiving reply body
+	 * 配送オプション付きでリクエストを送り返信ボディを受け取る.
+	 * 返信ボディが {@code null} でも {@link #replyType()} でもなければ {@link ClassCastException} で fail する.
+	 * @param vertx the {@link Vertx} instance
+	 * @param body メッセージボディ. {@code null} 可
+	 * @param options 配送オプション. 例えば {@link #deliveryOptions()} にヘッダを追加したもの
+	 * @param replyHandler 返信ボディを受け取るハンドラ
+	 */
+	public void request(Vertx vertx, Req body, DeliveryOptions options, Handler<AsyncResult<Res>> replyHandler) {
+		vertx.eventBus().send(name_, body, options, res -> {
+			if (res.failed()) {
+				replyHandler.handle(Future.failedFuture(res.cause()));
+				return;
+			}
+			Object reply = res.result().body();
+			if (reply != null && !replyType_.isInstance(reply)) {
+				replyHandler.handle(Future.failedFuture(new ClassCastException(name_ + " : expected " + replyType_.getName() + " but got " + reply.getClass().getName())));
+				return;
+			}
+			replyHandler.handle(Future.succeededFuture(replyType_.cast(reply)));
+		});
+	}
+	/**
+	 * Sends message without expecting reply.
+	 * @param vertx the {@link Vertx} instance
+	 * @param body message body. May be {@code null}
+	 * 返信を期待せずにメッセージを送る.
+	 * @param vertx the {@link Vertx} instance
+	 * @param body メッセージボディ. {@code null} 可
+	 */
+	public void send(Vertx vertx, Req body) {
+		vertx.eventBus().send(name_, body);
+	}
+	/**
+	 * Publishes message.
+	 * @param vertx the {@link Vertx} instance
+	 * @param body message body. May be {@code null}
+	 * メッセージを publish する.
+	 * @param vertx the {@link Vertx} instance
+	 * @param body メッセージボディ. {@code null} 可
+	 */
+	public void publish(Vertx vertx, Req body) {
+		vertx.eventBus().publish(name_, body);
+	}
+	/**
+	 * Registers consumer according to the scope.
+	 * @param vertx the {@link Vertx} instance
+	 * @param handler message handler
+	 * @return message consumer
+	 * 範囲に応じて受信を登録する.
+	 * @param vertx the {@link Vertx} instance
+	 * @param handler メッセージハンドラ
+	 * @return message consumer
+	 */
+	public MessageConsumer<Req> consumer(Vertx vertx, Handler<Message<Req>> handler) {
+		return (scope_ == Scope.LOCAL) ? vertx.eventBus().localConsumer(name_, handler) : vertx.eventBus().consumer(name_, handler);
+	}
+
+	@Override public String toString() {
+		return name_;
+	}
+
+	////
+
+	/**
+	 * Template of addresses containing a unit ID, {@code prefix + unitId + suffix}.
+	 * The {@link Address} of each unit is created once and interned in a concurrent map, up to {@link #MAX_CACHE_SIZE} units ; beyond that, and for a {@code null} unit ID, a new one is created per call.
+	 * @param <Req> type of message body
+	 * @param <Res> type of reply body
+	 * @author OES Project
+	 * ユニット ID を含むアドレス {@code prefix + unitId + suffix} のテンプレート.
+	 * ユニットごとの {@link Address} は一度だけ作り並行マップに {@link #MAX_CACHE_SIZE} ユニットまで保持する. それを超えた分と {@code null} のユニット ID には呼ぶたびに作る.
+	 * @param <Req> メッセージボディの型
+	 * @param <Res> 返信ボディの型
+	 * @author OES Project
+	 */
+	public static class PerUnit<Req, Res> {
+		/**
+		 * Maximum number of units whose {@link Address} is interned.
+		 * Unit IDs come from configuration and messages, so the map stops growing beyond this.
+		 * The value is {@value}.
+		 * {@link Address} を保持するユニットの数の最大値.
+		 * ユニット ID は設定やメッセージから来るので, これを超えたらマップを増やさない.
+		 * 値は {@value}.
+		 */
+		public static final int MAX_CACHE_SIZE = 1024;
+
+		private final String prefix_;
+		private final String suffix_;
+		private final Scope scope_;
+		private final Class<Req> requestType_;
+		private final Class<Res> replyType_;
+		private final long timeoutMsec_;
+		private final ConcurrentMap<String, Address<Req, Res>> addresses_ = new ConcurrentHashMap<>();
+
+		/**
+		 * Creates template with {@link DeliveryOptions#DEFAULT_TIMEOUT}.
+		 * @param prefix part before unit ID
+		 * @param suffix part after unit ID
+		 * @param scope scope
+		 * @param requestType class of message body
+		 * @param replyType class of reply body
+		 * {@link DeliveryOptions#DEFAULT_TIMEOUT} でテンプレートを作成する.
+		 * @param prefix ユニット ID の前の部分
+		 * @param suffix ユニット ID の後の部分
+		 * @param scope 範囲
+		 * @param requestType メッセージボディのクラス
+		 * @param replyType 返信ボディのクラス
+		 */
+		public PerUnit(String prefix, String suffix, Scope scope, Class<Req> requestType, Class<Res> replyType) {
+			this(prefix, suffix, scope, requestType, replyType, DeliveryOptions.DEFAULT_TIMEOUT);
+		}
+		/**
+		 * Creates template.
+		 * @param prefix part before unit ID
+		 * @param suffix part after unit ID
+		 * @param scope scope
+		 * @param requestType class of message body
+		 * @param replyType class of reply body
+		 * @param timeoutMsec default reply timeout [ms]
+		 * テンプレートを作成する.
+		 * @param prefix ユニット ID の前の部分
+		 * @param suffix ユニット ID の後の部分
+		 * @param scope 範囲
+		 * @param requestType メッセージボディのクラス
+		 * @param replyType 返信ボディのクラス
+		 * @param timeoutMsec 返信のデフォルトのタイムアウト [ms]
+		 */
+		public PerUnit(String prefix, String suffix, Scope scope, Class<Req> requestType, Class<Res> replyType, long timeoutMsec) {
+			prefix_ = prefix;
+			suffix_ = suffix;
+			scope_ = scope;
+			requestType_ = requestType;
+			replyType_ = replyType;
+			timeoutMsec_ = timeoutMsec;
+		}
+		/**
+		 * Gets the address of unit.
+		 * @param unitId unit ID. {@code null} gives {@code prefix + "null" + suffix} as string concatenation does
+		 * @return descriptor, interned unless {@code unitId} is {@code null} or the map is full
+		 * ユニットのアドレスを取得する.
+		 * @param unitId ユニット ID. {@code null} なら文字列連結と同じく {@code prefix + "null" + suffix}
+		 * @return 記述子. {@code unitId} が {@code null} かマップが一杯でなければ保持しているもの
+		 */
+		public Address<Req, Res> of(String unitId) {
+			// ConcurrentHashMap does not take null keys
+			// ConcurrentHashMap は null キーを受け付けない
+			if (unitId == null) return create_(unitId);
+			// get() first : ConcurrentHashMap#computeIfAbsent of Java 8 locks even when present
+			// まず get() : Java 8 の ConcurrentHashMap#computeIfAbsent は存在しても lock する
+			Address<Req, Res> result = addresses_.get(unitId);
+			if (result == null) {
+				result = create_(unitId);
+				if (addresses_.size() < MAX_CACHE_SIZE) {
+					Address<Req, Res> old = addresses_.putIfAbsent(unitId, result);
+					if (old != null) result = old;
+				}
+			}
+			return result;
+		}
+		private Address<Req, Res> create_(String unitId) {
+			return new Address<>(prefix_ + unitId + suffix_, scope_, requestType_, replyType_, timeoutMsec_);
+		}
+		/**
+		 * Gets the address string of unit.
+		 * @param unitId unit ID
+		 * @return address string
+		 * ユニットのアドレス文字列を取得する.
+		 * @param unitId ユニット ID
+		 * @return アドレス文字列
+		 */
+		public String name(String unitId) {
+			return of(unitId).name_;
+		}
+	}
+
+}
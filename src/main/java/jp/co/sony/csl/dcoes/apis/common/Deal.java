@@ -6,6 +6,7 @@ import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import jp.co.sony.csl.dcoes.apis.common.util.EnumLookup;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.JsonObjectUtil;
 
 /**
@@ -52,20 +53,20 @@ public class Deal {
 	}
 	/**
 	 * Gets {@link Direction} object from string indicating Power Sharing direction.
+	 * Case-insensitive. Unknown values are logged at a limited rate.
 	 * @param value string indicating direction
-	 * @return direction object indicating direction of Power Sharing
+	 * @return direction object indicating direction of Power Sharing.
+	 *         {@code null} if {@code value} is unknown
 	 * 融通の方向を示す文字列から {@link Direction} オブジェクトを取得する.
+	 * 大文字小文字を区別しない. 不明な値は頻度を制限してログ出力する.
 	 * @param value 方向を示す文字列
-	 * @return 方向を示す direction オブジェクト
+	 * @return 方向を示す direction オブジェクト.
+	 *         {@code value} が不明なら {@code null}
 	 */
 	public static Direction direction(String value) {
-		try {
-			return Direction.valueOf(value.toUpperCase());
-		} catch (Exception e) {
-			log.error(e);
-			return null;
-		}
+		return directions_.get(value);
 	}
+	private static final EnumLookup<Direction> directions_ = new EnumLookup<>(Direction.class, null, log);
 
 	/**
 	 * Resets Power Sharing ID.
@@ -711,6 +712,73 @@ public class Deal {
 		return (abortDateTime(deal) != null);
 	}
 
+	/**
+	 * Indicates the furthest lifecycle milestone the Power Sharing has reached.
+	 * @author OES Project
+	 * 融通が到達した最も先のライフサイクル上の節目を示す.
+	 * @author OES Project
+	 */
+	public enum State {
+		/**
+		 * Not activated yet
+		 * 未起動
+		 */
+		NOT_ACTIVATED,
+		/**
+		 * {@link Deal#isActivated(JsonObject) Activated}
+		 * {@link Deal#isActivated(JsonObject) 起動済み}
+		 */
+		ACTIVATED,
+		/**
+		 * {@link Deal#isRampedUp(JsonObject) Voltage ramped up}
+		 * {@link Deal#isRampedUp(JsonObject) 電圧ランプアップ済み}
+		 */
+		RAMPED_UP,
+		/**
+		 * {@link Deal#isWarmedUp(JsonObject) Units on both sides activated}
+		 * {@link Deal#isWarmedUp(JsonObject) 両側ユニット起動済み}
+		 */
+		WARMED_UP,
+		/**
+		 * {@link Deal#isStarted(JsonObject) Started}
+		 * {@link Deal#isStarted(JsonObject) 融通開始済み}
+		 */
+		STARTED,
+		/**
+		 * {@link Deal#isStopped(JsonObject) Stopped}
+		 * {@link Deal#isStopped(JsonObject) 融通終了済み}
+		 */
+		STOPPED,
+		/**
+		 * {@link Deal#isDeactivated(JsonObject) Units on both sides stopped}
+		 * {@link Deal#isDeactivated(JsonObject) 両側ユニット停止済み}
+		 */
+		DEACTIVATED,
+		/**
+		 * {@link Deal#isAborted(JsonObject) Aborted}. Takes precedence over the others
+		 * {@link Deal#isAborted(JsonObject) 異常終了済み}. 他に優先する
+		 */
+		ABORTED,
+	}
+	/**
+	 * Gets lifecycle state of the Power Sharing in question.
+	 * @param deal jsonobject object of target Power Sharing information
+	 * @return state object
+	 * 当該融通のライフサイクル上の状態を取得.
+	 * @param deal 対象の融通情報 jsonobject オブジェクト
+	 * @return state オブジェクト
+	 */
+	public static State state(JsonObject deal) {
+		if (isAborted(deal)) return State.ABORTED;
+		if (isDeactivated(deal)) return State.DEACTIVATED;
+		if (isStopped(deal)) return State.STOPPED;
+		if (isStarted(deal)) return State.STARTED;
+		if (isWarmedUp(deal)) return State.WARMED_UP;
+		if (isRampedUp(deal)) return State.RAMPED_UP;
+		if (isActivated(deal)) return State.ACTIVATED;
+		return State.NOT_ACTIVATED;
+	}
+
 	/**
 	 * Determines if the unit on voltage reference side of the Power Sharing in question is in operation.
 	 * The Power Sharing has finished starting up; the units on both sides have not yet stopped completely.
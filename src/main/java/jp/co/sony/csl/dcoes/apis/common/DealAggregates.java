@@ -0,0 +1,291 @@
+package jp.co.sony.csl.dcoes.apis.common;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Aggregates over a collection of Power Sharings computed in one pass.
+ * - Per unit : grid current as the discharging side, as the charging side, and the net ( discharging minus charging )
+ * - Whole : sum of {@link Deal#dealAmountWh(JsonObject)}, the part of it in flight, and number of Power Sharings per {@link Deal.State}
+ * The grid current of a side is {@link Deal#dischargeUnitCompensatedGridCurrentA(JsonObject)} or {@link Deal#chargeUnitCompensatedGridCurrentA(JsonObject)}, or {@link Deal#dealGridCurrentA(JsonObject)} if not compensated yet.
+ * A Power Sharing is in flight when {@link Deal#isActivated(JsonObject) activated} but neither {@link Deal#isStopped(JsonObject) stopped} nor {@link Deal#isAborted(JsonObject) aborted}.
+ * Numbers are read without creating {@link Float}s, and results are kept in primitive arrays indexed by unit in the order of {@link #unitIds()}.
+ * Arrays returned are the internal ones and must not be modified.
+ * @author OES Project
+ * 融通の集まりに対する集計を一度の走査で計算する.
+ * - ユニットごと : 送電側としてのグリッド電流, 受電側としてのグリッド電流, およびその差 ( 送電 - 受電 )
+ * - 全体 : {@link Deal#dealAmountWh(JsonObject)} の合計, そのうち実行中の分, {@link Deal.State} ごとの融通の数
+ * 各側のグリッド電流は {@link Deal#dischargeUnitCompensatedGridCurrentA(JsonObject)} または {@link Deal#chargeUnitCompensatedGridCurrentA(JsonObject)}, まだコンペンセイションされていなければ {@link Deal#dealGridCurrentA(JsonObject)}.
+ * {@link Deal#isActivated(JsonObject) 起動済み} で {@link Deal#isStopped(JsonObject) 融通終了済み} でも {@link Deal#isAborted(JsonObject) 異常終了済み} でもない融通を実行中とする.
+ * 数値は {@link Float} を作らずに読み, 結果は {@link #unitIds()} の順にユニットで添字付けしたプリミティブ配列に保持する.
+ * 返す配列は内部のものなので変更してはならない.
+ * @author OES Project
+ */
+public class DealAggregates {
+
+	/**
+	 * Default minimum number of Power Sharings to compute in parallel.
+	 * The value is {@value}.
+	 * 並列に計算する融通の最小数のデフォルト.
+	 * 値は {@value}.
+	 */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 4096;
+
+	/**
+	 * Computes aggregates sequentially.
+	 * @param deals collection of jsonobject objects of Power Sharing information
+	 * @return aggregates
+	 * 逐次に集計する.
+	 * @param deals 融通情報 jsonobject オブジェクトの集まり
+	 * @return 集計
+	 */
+	public static DealAggregates of(Collection<JsonObject> deals) {
+		Partial_ partial = new Partial_();
+		for (JsonObject deal : deals) partial.add(deal);
+		return new DealAggregates(partial);
+	}
+	/**
+	 * Computes aggregates, in parallel on the common fork-join pool if there are at least {@code parallelThreshold} Power Sharings.
+	 * @param deals collection of jsonobject objects of Power Sharing information.
+	 *        Must not be modified during the computation
+	 * @param parallelThreshold minimum number of Power Sharings to compute in parallel
+	 * @return aggregates
+	 * 融通が {@code parallelThreshold} 以上あれば共通 fork-join プールで並列に集計する.
+	 * @param deals 融通情報 jsonobject オブジェクトの集まり.
+	 *        計算中に変更してはならない
+	 * @param parallelThreshold 並列に計算する融通の最小数
+	 * @return 集計
+	 */
+	public static DealAggregates of(Collection<JsonObject> deals, int parallelThreshold) {
+		if (deals.size() < parallelThreshold) return of(deals);
+		Partial_ partial = deals.parallelStream().collect(Partial_::new, Partial_::add, Partial_::merge);
+		return new DealAggregates(partial);
+	}
+
+	////
+
+	private final String[] unitIds_;
+	private final Map<String, Integer> indexes_;
+	private final float[] dischargeGridCurrentA_;
+	private final float[] chargeGridCurrentA_;
+	private final float[] netGridCurrentA_;
+	private final int[] stateCounts_;
+	private final int dealCount_;
+	private final double totalDealAmountWh_;
+	private final double inFlightDealAmountWh_;
+
+	private DealAggregates(Partial_ partial) {
+		int n = partial.size_;
+		unitIds_ = new String[n];
+		indexes_ = new HashMap<>(n * 2);
+		dischargeGridCurrentA_ = new float[n];
+		chargeGridCurrentA_ = new float[n];
+		netGridCurrentA_ = new float[n];
+		// Order units by ID so that sequential and parallel passes give the same arrays
+		// 逐次と並列の走査で同じ配列になるようユニットを ID 順に並べる
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) order[i] = i;
+		Arrays.sort(order, (a, b) -> partial.unitIds_[a].compareTo(partial.unitIds_[b]));
+		for (int i = 0; i < n; i++) {
+			int j = order[i];
+			unitIds_[i] = partial.unitIds_[j];
+			indexes_.put(unitIds_[i], i);
+			dischargeGridCurrentA_[i] = partial.discharge_[j];
+			chargeGridCurrentA_[i] = partial.charge_[j];
+		}
+		for (int i = 0; i < n; i++) {
+			netGridCurrentA_[i] = dischargeGridCurrentA_[i] - chargeGridCurrentA_[i];
+		}
+		stateCounts_ = partial.stateCounts_;
+		dealCount_ = partial.dealCount_;
+		totalDealAmountWh_ = partial.totalWh_;
+		inFlightDealAmountWh_ = partial.inFlightWh_;
+	}
+
+	/**
+	 * Gets IDs of units participating in any of the Power Sharings.
+	 * @return array of unit IDs in ascending order
+	 * いずれかの融通に参加しているユニットの ID を取得する.
+	 * @return 昇順のユニット ID の配列
+	 */
+	public String[] unitIds() {
+		return unitIds_;
+	}
+	/**
+	 * Gets index of unit in arrays.
+	 * @param unitId unit ID
+	 * @return index.
+	 *         -1 if the unit participates in none of the Power Sharings
+	 * 配列におけるユニットの添字を取得する.
+	 * @param unitId ユニット ID
+	 * @return 添字.
+	 *         ユニットがどの融通にも参加していなければ -1
+	 */
+	public int indexOf(String unitId) {
+		Integer result = indexes_.get(unitId);
+		return (result != null) ? result : -1;
+	}
+	/**
+	 * Gets sum of grid current per unit as the discharging side [A].
+	 * @return array indexed by unit
+	 * ユニットごとの送電側としてのグリッド電流の合計を取得する [A].
+	 * @return ユニットで添字付けした配列
+	 */
+	public float[] dischargeGridCurrentA() {
+		return dischargeGridCurrentA_;
+	}
+	/**
+	 * Gets sum of grid current per unit as the charging side [A].
+	 * @return array indexed by unit
+	 * ユニットごとの受電側としてのグリッド電流の合計を取得する [A].
+	 * @return ユニットで添字付けした配列
+	 */
+	public float[] chargeGridCurrentA() {
+		return chargeGridCurrentA_;
+	}
+	/**
+	 * Gets net grid current per unit, discharging minus charging [A].
+	 * @return array indexed by unit
+	 * ユニットごとの正味のグリッド電流 ( 送電 - 受電 ) を取得する [A].
+	 * @return ユニットで添字付けした配列
+	 */
+	public float[] netGridCurrentA() {
+		return netGridCurrentA_;
+	}
+	/**
+	 * Gets net grid current of unit, discharging minus charging [A].
+	 * @param unitId unit ID
+	 * @return net grid current.
+	 *         0 if the unit participates in none of the Power Sharings
+	 * ユニットの正味のグリッド電流 ( 送電 - 受電 ) を取得する [A].
+	 * @param unitId ユニット ID
+	 * @return 正味のグリッド電流.
+	 *         ユニットがどの融通にも参加していなければ 0
+	 */
+	public float netGridCurrentA(String unitId) {
+		int i = indexOf(unitId);
+		return (0 <= i) ? netGridCurrentA_[i] : 0F;
+	}
+	/**
+	 * Gets number of Power Sharings per state.
+	 * @return array indexed by {@link Deal.State#ordinal()}
+	 * 状態ごとの融通の数を取得する.
+	 * @return {@link Deal.State#ordinal()} で添字付けした配列
+	 */
+	public int[] stateCounts() {
+		return stateCounts_;
+	}
+	/**
+	 * Gets number of Power Sharings in state.
+	 * @param state state
+	 * @return number of Power Sharings
+	 * ある状態の融通の数を取得する.
+	 * @param state 状態
+	 * @return 融通の数
+	 */
+	public int count(Deal.State state) {
+		return stateCounts_[state.ordinal()];
+	}
+	/**
+	 * Gets number of Power Sharings aggregated.
+	 * @return number of Power Sharings
+	 * 集計した融通の数を取得する.
+	 * @return 融通の数
+	 */
+	public int dealCount() {
+		return dealCount_;
+	}
+	/**
+	 * Gets sum of {@link Deal#dealAmountWh(JsonObject)} [Wh].
+	 * @return sum
+	 * {@link Deal#dealAmountWh(JsonObject)} の合計を取得する [Wh].
+	 * @return 合計
+	 */
+	public double totalDealAmountWh() {
+		return totalDealAmountWh_;
+	}
+	/**
+	 * Gets sum of {@link Deal#dealAmountWh(JsonObject)} of Power Sharings in flight [Wh].
+	 * @return sum
+	 * 実行中の融通の {@link Deal#dealAmountWh(JsonObject)} の合計を取得する [Wh].
+	 * @return 合計
+	 */
+	public double inFlightDealAmountWh() {
+		return inFlightDealAmountWh_;
+	}
+
+	////
+
+	private static float float_(JsonObject deal, String key, float def) {
+		Object value = deal.getValue(key);
+		return (value instanceof Number) ? ((Number) value).floatValue() : def;
+	}
+
+	/**
+	 * Accumulator of a pass over part of the Power Sharings.
+	 * @author OES Project
+	 * 融通の一部を走査する集計器.
+	 * @author OES Project
+	 */
+	private static class Partial_ {
+		private final Map<String, Integer> indexes_ = new HashMap<>();
+		private String[] unitIds_ = new String[16];
+		private float[] discharge_ = new float[16];
+		private float[] charge_ = new float[16];
+		private int size_ = 0;
+		private final int[] stateCounts_ = new int[Deal.State.values().length];
+		private int dealCount_ = 0;
+		private double totalWh_ = 0D;
+		private double inFlightWh_ = 0D;
+
+		private void add(JsonObject deal) {
+			float dealGridCurrentA = float_(deal, "dealGridCurrentA", 0F);
+			String dischargeUnitId = Deal.dischargeUnitId(deal);
+			if (dischargeUnitId != null) {
+				int i = index_(dischargeUnitId);
+				discharge_[i] += float_(deal, "dischargeUnitCompensatedGridCurrentA", dealGridCurrentA);
+			}
+			String chargeUnitId = Deal.chargeUnitId(deal);
+			if (chargeUnitId != null) {
+				int i = index_(chargeUnitId);
+				charge_[i] += float_(deal, "chargeUnitCompensatedGridCurrentA", dealGridCurrentA);
+			}
+			Deal.State state = Deal.state(deal);
+			stateCounts_[state.ordinal()]++;
+			dealCount_++;
+			float wh = float_(deal, "dealAmountWh", 0F);
+			totalWh_ += wh;
+			if (state != Deal.State.NOT_ACTIVATED && !Deal.isStopped(deal) && state != Deal.State.ABORTED) inFlightWh_ += wh;
+		}
+		private int index_(String unitId) {
+			Integer result = indexes_.get(unitId);
+			if (result != null) return result;
+			if (size_ == unitIds_.length) grow_();
+			unitIds_[size_] = unitId;
+			indexes_.put(unitId, size_);
+			return size_++;
+		}
+		private void grow_() {
+			int n = size_ * 2;
+			unitIds_ = Arrays.copyOf(unitIds_, n);
+			discharge_ = Arrays.copyOf(discharge_, n);
+			charge_ = Arrays.copyOf(charge_, n);
+		}
+		private void merge(Partial_ other) {
+			for (int j = 0; j < other.size_; j++) {
+				int i = index_(other.unitIds_[j]);
+				discharge_[i] += other.discharge_[j];
+				charge_[i] += other.charge_[j];
+			}
+			for (int k = 0; k < stateCounts_.length; k++) stateCounts_[k] += other.stateCounts_[k];
+			dealCount_ += other.dealCount_;
+			totalWh_ += other.totalWh_;
+			inFlightWh_ += other.inFlightWh_;
+		}
+	}
+
+}
@@ -0,0 +1,383 @@
+package jp.co.sony.csl.dcoes.apis.common;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Incremental form of Power Sharing information for publishing only what changed.
+ * A delta is a {@link JsonObject} with the following attributes.
+ * - {@code "dealId"} : Power Sharing ID
+ * - {@code "version"} : version number of Power Sharing ID, starting at 1 and incremented by every delta
+ * - {@code "deal"} : the whole Power Sharing information. Present only in a full delta
+ * - {@code "set"} : top-level attributes added or changed since the previous version. Present only in a patch delta
+ * - {@code "unset"} : names of top-level attributes removed since the previous version. Present only in a patch delta
+ * Nested values such as {@link Deal#resets(JsonObject)} are replaced as a whole.
+ * The publisher side makes deltas with a {@link Tracker}, and the receiver side applies them to a {@link Cache}.
+ * A patch delta applies only to the exact previous version ; otherwise the receiver has missed something and must get a full delta ( resync ) from {@link Tracker#full(String)}.
+ * A full delta replaces the cached Power Sharing unless it is older than the cached version, such as a late or duplicated resync reply.
+ * Since a restarted publisher starts its versions over, the receiver must {@link Cache#remove(String)} its Power Sharings before accepting them again.
+ * @author OES Project
+ * 変化した部分だけを publish するための融通情報の差分形式.
+ * 差分は以下の属性を持つ {@link JsonObject}.
+ * - {@code "dealId"} : 融通 ID
+ * - {@code "version"} : 融通 ID ごとのバージョン番号. 1 から始まり差分ごとに増える
+ * - {@code "deal"} : 融通情報全体. 完全差分にのみある
+ * - {@code "set"} : 前のバージョンから追加または変更されたトップレベルの属性. パッチ差分にのみある
+ * - {@code "unset"} : 前のバージョンから削除されたトップレベルの属性名. パッチ差分にのみある
+ * {@link Deal#resets(JsonObject)} などの入れ子の値は丸ごと置き換える.
+ * 送信側は {@link Tracker} で差分を作り, 受信側はそれを {@link Cache} に適用する.
+ * パッチ差分はちょうど一つ前のバージョンにだけ適用できる. そうでなければ受信側は何かを取りこぼしているので {@link Tracker#full(String)} から完全差分を得る ( 再同期 ) 必要がある.
+ * 完全差分はキャッシュのバージョンより古くなければキャッシュの融通を置き換える. 古いのは遅れたり重複したりした再同期の返信などである.
+ * 再起動した送信側はバージョンをやり直すので, 受信側はそれを再び受け入れる前にその融通を {@link Cache#remove(String)} しなければならない.
+ * @author OES Project
+ */
+public class DealDelta {
+	private static final Logger log = LoggerFactory.getLogger(DealDelta.class);
+
+	private DealDelta() { }
+
+	/**
+	 * Gets Power Sharing ID of delta.
+	 * @param delta delta
+	 * @return Power Sharing ID
+	 * 差分の融通 ID を取得する.
+	 * @param delta 差分
+	 * @return 融通 ID
+	 */
+	public static String dealId(JsonObject delta) {
+		return delta.getString("dealId");
+	}
+	/**
+	 * Gets version number of delta.
+	 * @param delta delta
+	 * @return version number.
+	 *         0 if not present
+	 * 差分のバージョン番号を取得する.
+	 * @param delta 差分
+	 * @return バージョン番号.
+	 *         なければ 0
+	 */
+	public static long version(JsonObject delta) {
+		return delta.getLong("version", 0L);
+	}
+	/**
+	 * Determines whether delta is a full delta.
+	 * @param delta delta
+	 * @return true if full delta
+	 * 完全差分か否かを判定する.
+	 * @param delta 差分
+	 * @return 完全差分なら true
+	 */
+	public static boolean isFull(JsonObject delta) {
+		return delta.containsKey("deal");
+	}
+
+	/**
+	 * Creates a full delta.
+	 * @param deal jsonobject object of Power Sharing information
+	 * @param version version number
+	 * @return full delta
+	 * 完全差分を作成する.
+	 * @param deal 融通情報 jsonobject オブジェクト
+	 * @param version バージョン番号
+	 * @return 完全差分
+	 */
+	public static JsonObject full(JsonObject deal, long version) {
+		return new JsonObject().put("dealId", Deal.dealId(deal)).put("version", version).put("deal", deal);
+	}
+	/**
+	 * Creates a patch delta from {@code previous} to {@code current}.
+	 * Top-level values are compared with {@link Object#equals(Object)}.
+	 * @param previous Power Sharing information of the previous version
+	 * @param current Power Sharing information of this version
+	 * @param version version number of {@code current}
+	 * @return patch delta.
+	 *         {@code null} if nothing changed
+	 * {@code previous} から {@code current} へのパッチ差分を作成する.
+	 * トップレベルの値は {@link Object#equals(Object)} で比較する.
+	 * @param previous 前のバージョンの融通情報
+	 * @param current このバージョンの融通情報
+	 * @param version {@code current} のバージョン番号
+	 * @return パッチ差分.
+	 *         何も変わっていなければ {@code null}
+	 */
+	public static JsonObject patch(JsonObject previous, JsonObject current, long version) {
+		JsonObject set = null;
+		JsonArray unset = null;
+		for (Map.Entry<String, Object> entry : current) {
+			Object old = previous.getValue(entry.getKey());
+			if (old == null && !previous.containsKey(entry.getKey()) || !Objects.equals(old, entry.getValue())) {
+				if (set == null) set = new JsonObject();
+				set.put(entry.getKey(), entry.getValue());
+			}
+		}
+		for (String name : previous.fieldNames()) {
+			if (!current.containsKey(name)) {
+				if (unset == null) unset = new JsonArray();
+				unset.add(name);
+			}
+		}
+		if (set == null && unset == null) return null;
+		JsonObject result = new JsonObject().put("dealId", Deal.dealId(current)).put("version", version);
+		if (set != null) result.put("set", set);
+		if (unset != null) result.put("unset", unset);
+		return result;
+	}
+
+	////
+
+	/**
+	 * Publisher side state which makes deltas of successive Power Sharing information.
+	 * Keeps a copy of the last Power Sharing information published per Power Sharing ID.
+	 * @author OES Project
+	 * 連続する融通情報の差分を作る送信側の状態.
+	 * 融通 ID ごとに最後に publish した融通情報のコピーを保持する.
+	 * @author OES Project
+	 */
+	public static class Tracker {
+		private final Map<String, Entry_> entries_ = new HashMap<>();
+
+		/**
+		 * Makes delta of Power Sharing information against the last one of the same Power Sharing ID.
+		 * A full delta if this is the first one of the Power Sharing ID.
+		 * @param deal jsonobject object of Power Sharing information
+		 * @return delta.
+		 *         {@code null} if nothing changed
+		 * 融通情報の同じ融通 ID の前回のものに対する差分を作る.
+		 * その融通 ID の最初のものなら完全差分.
+		 * @param deal 融通情報 jsonobject オブジェクト
+		 * @return 差分.
+		 *         何も変わっていなければ {@code null}
+		 */
+		public synchronized JsonObject delta(JsonObject deal) {
+			String dealId = Deal.dealId(deal);
+			if (dealId == null) throw new IllegalArgumentException("no dealId : " + deal);
+			JsonObject copy = deal.copy();
+			Entry_ entry = entries_.get(dealId);
+			if (entry == null) {
+				entries_.put(dealId, new Entry_(copy));
+				return DealDelta.full(copy.copy(), 1L);
+			}
+			JsonObject result = patch(entry.deal_, copy, entry.version_ + 1);
+			if (result != null) {
+				entry.version_++;
+				entry.deal_ = copy;
+			}
+			return result;
+		}
+		/**
+		 * Makes full delta of the current version for resync.
+		 * @param dealId Power Sharing ID
+		 * @return full delta.
+		 *         {@code null} if not tracked
+		 * 再同期のため現在のバージョンの完全差分を作る.
+		 * @param dealId 融通 ID
+		 * @return 完全差分.
+		 *         追跡していなければ {@code null}
+		 */
+		public synchronized JsonObject full(String dealId) {
+			Entry_ entry = entries_.get(dealId);
+			return (entry != null) ? DealDelta.full(entry.deal_.copy(), entry.version_) : null;
+		}
+		/**
+		 * Stops tracking Power Sharing ID.
+		 * @param dealId Power Sharing ID
+		 * 融通 ID の追跡をやめる.
+		 * @param dealId 融通 ID
+		 */
+		public synchronized void remove(String dealId) {
+			entries_.remove(dealId);
+		}
+		/**
+		 * Gets number of Power Sharing IDs tracked.
+		 * @return number of Power Sharing IDs
+		 * 追跡している融通 ID の数を取得する.
+		 * @return 融通 ID の数
+		 */
+		public synchronized int size() {
+			return entries_.size();
+		}
+
+		/**
+		 * Last Power Sharing information published and its version.
+		 * @author OES Project
+		 * 最後に publish した融通情報とそのバージョン.
+		 * @author OES Project
+		 */
+		private static class Entry_ {
+			private JsonObject deal_;
+			private long version_ = 1L;
+			private Entry_(JsonObject deal) {
+				deal_ = deal;
+			}
+		}
+	}
+
+	////
+
+	/**
+	 * Result of {@link Cache#apply(JsonObject)}.
+	 * {@link Cache#apply(JsonObject)} の結果.
+	 */
+	public enum Result {
+		/**
+		 * Applied
+		 * 適用した
+		 */
+		APPLIED,
+		/**
+		 * Ignored because the version has already been applied
+		 * バージョンが適用済みなので無視した
+		 */
+		STALE,
+		/**
+		 * Not applied because versions are missing. Resync is needed
+		 * バージョンが欠けているので適用しなかった. 再同期が必要
+		 */
+		GAP,
+	}
+
+	/**
+	 * Receiver side cache of Power Sharing information rebuilt from deltas.
+	 * Once a gap is detected for a Power Sharing ID, patch deltas of it are not applied until a full delta arrives.
+	 * Thread-safe : {@link #get(String)} and {@link #deals()} return copies, since {@link #apply(JsonObject)} modifies the cached objects in place.
+	 * @author OES Project
+	 * 差分から組み立てる受信側の融通情報のキャッシュ.
+	 * ある融通 ID で欠落を検出したら, 完全差分が届くまでその融通 ID のパッチ差分は適用しない.
+	 * スレッドセーフ : {@link #apply(JsonObject)} はキャッシュのオブジェクトをその場で変更するので, {@link #get(String)} と {@link #deals()} はコピーを返す.
+	 * @author OES Project
+	 */
+	public static class Cache {
+		private final Map<String, Entry_> entries_ = new HashMap<>();
+		private final Set<String> needResync_ = new LinkedHashSet<>();
+
+		/**
+		 * Applies delta.
+		 * @param delta delta
+		 * @return result
+		 * 差分を適用する.
+		 * @param delta 差分
+		 * @return 結果
+		 */
+		public synchronized Result apply(JsonObject delta) {
+			String dealId = dealId(delta);
+			long version = DealDelta.version(delta);
+			Entry_ entry = entries_.get(dealId);
+			if (isFull(delta)) {
+				// An older full delta would roll the cached Power Sharing back
+				// 古い完全差分はキャッシュの融通を巻き戻してしまう
+				if (entry != null && version < entry.version_) {
+					return Result.STALE;
+				}
+				entries_.put(dealId, new Entry_(delta.getJsonObject("deal"), version));
+				needResync_.remove(dealId);
+				return Result.APPLIED;
+			}
+			if (entry != null && version <= entry.version_) {
+				return Result.STALE;
+			}
+			if (entry == null || version != entry.version_ + 1 || needResync_.contains(dealId)) {
+				if (needResync_.add(dealId) && log.isInfoEnabled()) log.info("gap in deal deltas : " + dealId + " ; " + ((entry != null) ? entry.version_ : null) + " -> " + version);
+				return Result.GAP;
+			}
+			JsonObject set = delta.getJsonObject("set");
+			if (set != null) {
+				for (Map.Entry<String, Object> field : set) {
+					entry.deal_.put(field.getKey(), field.getValue());
+				}
+			}
+			JsonArray unset = delta.getJsonArray("unset");
+			if (unset != null) {
+				for (Object name : unset) {
+					entry.deal_.remove((String) name);
+				}
+			}
+			entry.version_ = version;
+			return Result.APPLIED;
+		}
+		/**
+		 * Gets cached Power Sharing information.
+		 * @param dealId Power Sharing ID
+		 * @return copy of jsonobject object of Power Sharing information.
+		 *         {@code null} if not cached
+		 * キャッシュの融通情報を取得する.
+		 * @param dealId 融通 ID
+		 * @return 融通情報 jsonobject オブジェクトのコピー.
+		 *         キャッシュされていなければ {@code null}
+		 */
+		public synchronized JsonObject get(String dealId) {
+			Entry_ entry = entries_.get(dealId);
+			return (entry != null) ? entry.deal_.copy() : null;
+		}
+		/**
+		 * Gets cached version of Power Sharing ID.
+		 * @param dealId Power Sharing ID
+		 * @return version number.
+		 *         0 if not cached
+		 * 融通 ID のキャッシュのバージョンを取得する.
+		 * @param dealId 融通 ID
+		 * @return バージョン番号.
+		 *         キャッシュされていなければ 0
+		 */
+		public synchronized long version(String dealId) {
+			Entry_ entry = entries_.get(dealId);
+			return (entry != null) ? entry.version_ : 0L;
+		}
+		/**
+		 * Gets all cached Power Sharing information.
+		 * @return list of copies of jsonobject objects of Power Sharing information
+		 * キャッシュの全ての融通情報を取得する.
+		 * @return 融通情報 jsonobject オブジェクトのコピーのリスト
+		 */
+		public synchronized List<JsonObject> deals() {
+			List<JsonObject> result = new ArrayList<>(entries_.size());
+			for (Entry_ entry : entries_.values()) result.add(entry.deal_.copy());
+			return result;
+		}
+		/**
+		 * Gets Power Sharing IDs waiting for a full delta.
+		 * @return list of Power Sharing IDs
+		 * 完全差分を待っている融通 ID を取得する.
+		 * @return 融通 ID のリスト
+		 */
+		public synchronized List<String> needResync() {
+			return new ArrayList<>(needResync_);
+		}
+		/**
+		 * Removes Power Sharing ID from cache.
+		 * @param dealId Power Sharing ID
+		 * 融通 ID をキャッシュから削除する.
+		 * @param dealId 融通 ID
+		 */
+		public synchronized void remove(String dealId) {
+			entries_.remove(dealId);
+			needResync_.remove(dealId);
+		}
+
+		/**
+		 * Cached Power Sharing information and its version.
+		 * @author OES Project
+		 * キャッシュした融通情報とそのバージョン.
+		 * @author OES Project
+		 */
+		private static class Entry_ {
+			private final JsonObject deal_;
+			private long version_;
+			private Entry_(JsonObject deal, long version) {
+				deal_ = deal;
+				version_ = version;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,341 @@
+package jp.co.sony.csl.dcoes.apis.common;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Power Sharing information keyed by Power Sharing ID with secondary indexes.
+ * Answers which Power Sharings involve a unit, in which direction or on which side, and which are in a lifecycle state, without scanning all Power Sharings.
+ * Indexes are maintained incrementally by {@link #put(JsonObject)} and {@link #remove(String)}.
+ * The keys a Power Sharing was indexed under are remembered, so Power Sharing information modified in place by the caller is reindexed correctly by calling {@link #put(JsonObject)} again.
+ * An update touches only the index entries whose membership changed, and does not copy them.
+ * Each entry instead caches an immutable snapshot built on the first lookup after a change ( copy-on-read ), so repeated lookups return it in O(1) and the results are safe to iterate while the registry changes.
+ * Master and slave sides are determined by {@link Deal#masterSideUnitId(JsonObject, String)} with the policy given by {@link #masterSidePolicy(String)}.
+ * @author OES Project
+ * 融通 ID をキーとし副索引を持つ融通情報.
+ * あるユニットが参加している融通, その方向や側, あるライフサイクル状態にある融通に, 全ての融通を走査せずに答える.
+ * 索引は {@link #put(JsonObject)} と {@link #remove(String)} で差分的に維持する.
+ * 融通を索引したキーを覚えておくので, 呼び出し側がその場で変更した融通情報も再度 {@link #put(JsonObject)} すれば正しく索引し直す.
+ * 更新はメンバが変わった索引のエントリだけに触れ, それもコピーしない.
+ * 代わりに各エントリは変更後の最初の検索で作った不変のスナップショットをキャッシュする ( copy-on-read ) ので, 繰り返しの検索は O(1) で返し, 結果はレジストリの変更中も反復して安全である.
+ * 電圧リファレンス側とそうでない側は {@link #masterSidePolicy(String)} で与えたポリシで {@link Deal#masterSideUnitId(JsonObject, String)} により決める.
+ * @author OES Project
+ */
+public class DealRegistry {
+
+	private final Map<String, JsonObject> deals_ = new LinkedHashMap<>();
+	private final Map<String, Keys_> keys_ = new HashMap<>();
+	private final Map<String, Entry_> byUnit_ = new HashMap<>();
+	private final Map<Deal.Direction, Map<String, Entry_>> byDirection_ = new EnumMap<>(Deal.Direction.class);
+	private final Map<String, Entry_> byMasterSide_ = new HashMap<>();
+	private final Map<String, Entry_> bySlaveSide_ = new HashMap<>();
+	private final Map<Deal.State, Entry_> byState_ = new EnumMap<>(Deal.State.class);
+	private final Entry_ transitional_ = new Entry_();
+	private List<JsonObject> all_ = null;
+	private String masterSidePolicy_;
+
+	/**
+	 * Creates instance.
+	 * @param masterSidePolicy POLICY information specifying voltage reference side.
+	 *                         See {@link Deal#masterSideUnitId(JsonObject, String)}
+	 * インスタンスを作成する.
+	 * @param masterSidePolicy 電圧リファレンス側を指定する POLICY 情報.
+	 *                         {@link Deal#masterSideUnitId(JsonObject, String)} 参照
+	 */
+	public DealRegistry(String masterSidePolicy) {
+		masterSidePolicy_ = masterSidePolicy;
+		for (Deal.Direction direction : Deal.Direction.values()) {
+			byDirection_.put(direction, new HashMap<>());
+		}
+	}
+
+	/**
+	 * Changes the policy specifying voltage reference side and rebuilds the side indexes.
+	 * @param masterSidePolicy POLICY information specifying voltage reference side
+	 * 電圧リファレンス側を指定するポリシを変更し側の索引を作り直す.
+	 * @param masterSidePolicy 電圧リファレンス側を指定する POLICY 情報
+	 */
+	public synchronized void masterSidePolicy(String masterSidePolicy) {
+		masterSidePolicy_ = masterSidePolicy;
+		List<JsonObject> deals = new ArrayList<>(deals_.values());
+		for (JsonObject deal : deals) put(deal);
+	}
+
+	/**
+	 * Adds or replaces Power Sharing information and updates indexes.
+	 * @param deal jsonobject object of target Power Sharing information
+	 * @return previous Power Sharing information of the same Power Sharing ID.
+	 *         {@code null} if none
+	 * 融通情報を追加または置き換え索引を更新する.
+	 * @param deal 対象の融通情報 jsonobject オブジェクト
+	 * @return 同じ融通 ID の以前の融通情報.
+	 *         なければ {@code null}
+	 */
+	public synchronized JsonObject put(JsonObject deal) {
+		String dealId = Deal.dealId(deal);
+		if (dealId == null) throw new IllegalArgumentException("no dealId : " + deal);
+		JsonObject result = deals_.put(dealId, deal);
+		// Snapshots hold the previous object only if another object replaced it
+		// 別のオブジェクトで置き換えた場合だけスナップショットが以前のオブジェクトを持っている
+		boolean replaced = (result != deal);
+		if (replaced) all_ = null;
+		Keys_ keys = new Keys_(deal, masterSidePolicy_);
+		Keys_ old = keys_.put(dealId, keys);
+		reindex_(dealId, (old != null) ? old : Keys_.NONE_, keys, replaced);
+		return result;
+	}
+	/**
+	 * Removes Power Sharing information and updates indexes.
+	 * @param dealId Power Sharing ID
+	 * @return removed Power Sharing information.
+	 *         {@code null} if none
+	 * 融通情報を削除し索引を更新する.
+	 * @param dealId 融通 ID
+	 * @return 削除した融通情報.
+	 *         なければ {@code null}
+	 */
+	public synchronized JsonObject remove(String dealId) {
+		JsonObject result = deals_.remove(dealId);
+		Keys_ old = keys_.remove(dealId);
+		if (old != null) reindex_(dealId, old, Keys_.NONE_, false);
+		if (result != null) all_ = null;
+		return result;
+	}
+
+	/**
+	 * Gets Power Sharing information.
+	 * @param dealId Power Sharing ID
+	 * @return jsonobject object of Power Sharing information.
+	 *         {@code null} if none
+	 * 融通情報を取得する.
+	 * @param dealId 融通 ID
+	 * @return 融通情報 jsonobject オブジェクト.
+	 *         なければ {@code null}
+	 */
+	public synchronized JsonObject get(String dealId) {
+		return deals_.get(dealId);
+	}
+	/**
+	 * Gets number of Power Sharings.
+	 * @return number of Power Sharings
+	 * 融通の数を取得する.
+	 * @return 融通の数
+	 */
+	public synchronized int size() {
+		return deals_.size();
+	}
+	/**
+	 * Gets all Power Sharings.
+	 * @return snapshot of Power Sharing information in order of first registration
+	 * 全ての融通を取得する.
+	 * @return 最初に登録した順の融通情報のスナップショット
+	 */
+	public synchronized Collection<JsonObject> deals() {
+		if (all_ == null) all_ = Collections.unmodifiableList(new ArrayList<>(deals_.values()));
+		return all_;
+	}
+	/**
+	 * Gets Power Sharings the unit participates in.
+	 * Equivalent to filtering by {@link Deal#isInvolved(JsonObject, String)}.
+	 * @param unitId unit ID
+	 * @return snapshot of Power Sharing information
+	 * ユニットが参加している融通を取得する.
+	 * {@link Deal#isInvolved(JsonObject, String)} での絞り込みと同じ.
+	 * @param unitId ユニット ID
+	 * @return 融通情報のスナップショット
+	 */
+	public synchronized Collection<JsonObject> involving(String unitId) {
+		return snapshot_(byUnit_.get(unitId));
+	}
+	/**
+	 * Gets Power Sharings the unit participates in in direction.
+	 * Equivalent to filtering by {@link Deal#isDischargeUnit(JsonObject, String)} or {@link Deal#isChargeUnit(JsonObject, String)}.
+	 * @param unitId unit ID
+	 * @param direction direction
+	 * @return snapshot of Power Sharing information
+	 * ユニットがある方向で参加している融通を取得する.
+	 * {@link Deal#isDischargeUnit(JsonObject, String)} または {@link Deal#isChargeUnit(JsonObject, String)} での絞り込みと同じ.
+	 * @param unitId ユニット ID
+	 * @param direction 方向
+	 * @return 融通情報のスナップショット
+	 */
+	public synchronized Collection<JsonObject> involving(String unitId, Deal.Direction direction) {
+		return snapshot_(byDirection_.get(direction).get(unitId));
+	}
+	/**
+	 * Gets Power Sharings in which the unit is on voltage reference side.
+	 * Equivalent to filtering by {@link Deal#isMasterSideUnit(JsonObject, String, String)}.
+	 * @param unitId unit ID
+	 * @return snapshot of Power Sharing information
+	 * ユニットが電圧リファレンス側である融通を取得する.
+	 * {@link Deal#isMasterSideUnit(JsonObject, String, String)} での絞り込みと同じ.
+	 * @param unitId ユニット ID
+	 * @return 融通情報のスナップショット
+	 */
+	public synchronized Collection<JsonObject> masterSide(String unitId) {
+		return snapshot_(byMasterSide_.get(unitId));
+	}
+	/**
+	 * Gets Power Sharings in which the unit is on non-voltage reference side.
+	 * Equivalent to filtering by {@link Deal#isSlaveSideUnit(JsonObject, String, String)}.
+	 * @param unitId unit ID
+	 * @return snapshot of Power Sharing information
+	 * ユニットが電圧リファレンス側でない側である融通を取得する.
+	 * {@link Deal#isSlaveSideUnit(JsonObject, String, String)} での絞り込みと同じ.
+	 * @param unitId ユニット ID
+	 * @return 融通情報のスナップショット
+	 */
+	public synchronized Collection<JsonObject> slaveSide(String unitId) {
+		return snapshot_(bySlaveSide_.get(unitId));
+	}
+	/**
+	 * Gets Power Sharings in lifecycle state.
+	 * @param state state
+	 * @return snapshot of Power Sharing information
+	 * あるライフサイクル状態にある融通を取得する.
+	 * @param state 状態
+	 * @return 融通情報のスナップショット
+	 */
+	public synchronized Collection<JsonObject> inState(Deal.State state) {
+		return snapshot_(byState_.get(state));
+	}
+	/**
+	 * Gets Power Sharings in transitional state.
+	 * Equivalent to filtering by {@link Deal#isTransitionalState(JsonObject)}.
+	 * @return snapshot of Power Sharing information
+	 * 過渡期にある融通を取得する.
+	 * {@link Deal#isTransitionalState(JsonObject)} での絞り込みと同じ.
+	 * @return 融通情報のスナップショット
+	 */
+	public synchronized Collection<JsonObject> transitional() {
+		return snapshot_(transitional_);
+	}
+
+	////
+
+	/**
+	 * Moves a Power Sharing from the index entries of {@code old} keys to those of {@code keys}.
+	 * {@link Keys_#NONE_} stands for not indexed.
+	 * Entries whose membership does not change are left as they are, except that their snapshots are dropped if {@code replaced}.
+	 * 融通を {@code old} のキーの索引エントリから {@code keys} のキーのものへ移す.
+	 * {@link Keys_#NONE_} は索引されていないことを表す.
+	 * メンバが変わらないエントリはそのままにする. ただし {@code replaced} ならそのスナップショットを捨てる.
+	 */
+	private void reindex_(String dealId, Keys_ old, Keys_ keys, boolean replaced) {
+		reindex_(byUnit_, set_(old.dischargeUnitId_, old.chargeUnitId_), set_(keys.dischargeUnitId_, keys.chargeUnitId_), dealId, replaced);
+		reindex_(byDirection_.get(Deal.Direction.DISCHARGE), set_(old.dischargeUnitId_), set_(keys.dischargeUnitId_), dealId, replaced);
+		reindex_(byDirection_.get(Deal.Direction.CHARGE), set_(old.chargeUnitId_), set_(keys.chargeUnitId_), dealId, replaced);
+		reindex_(byMasterSide_, set_(old.masterSideUnitId_), set_(keys.masterSideUnitId_), dealId, replaced);
+		reindex_(bySlaveSide_, set_(old.slaveSideUnitId_), set_(keys.slaveSideUnitId_), dealId, replaced);
+		reindex_(byState_, set_(old.state_), set_(keys.state_), dealId, replaced);
+		if (old.transitional_ != keys.transitional_) {
+			if (keys.transitional_) {
+				transitional_.dealIds_.add(dealId);
+			} else {
+				transitional_.dealIds_.remove(dealId);
+			}
+			transitional_.snapshot_ = null;
+		} else if (keys.transitional_ && replaced) {
+			transitional_.snapshot_ = null;
+		}
+	}
+	private static <K> void reindex_(Map<K, Entry_> index, Set<K> oldKeys, Set<K> keys, String dealId, boolean replaced) {
+		for (K key : oldKeys) {
+			if (!keys.contains(key)) {
+				Entry_ entry = index.get(key);
+				if (entry != null) {
+					entry.dealIds_.remove(dealId);
+					entry.snapshot_ = null;
+					if (entry.dealIds_.isEmpty()) index.remove(key);
+				}
+			}
+		}
+		for (K key : keys) {
+			if (!oldKeys.contains(key)) {
+				Entry_ entry = index.computeIfAbsent(key, k -> new Entry_());
+				entry.dealIds_.add(dealId);
+				entry.snapshot_ = null;
+			} else if (replaced) {
+				index.get(key).snapshot_ = null;
+			}
+		}
+	}
+	private static <K> Set<K> set_(K key) {
+		return (key != null) ? Collections.singleton(key) : Collections.emptySet();
+	}
+	private static <K> Set<K> set_(K key1, K key2) {
+		if (key1 == null) return set_(key2);
+		if (key2 == null || key1.equals(key2)) return set_(key1);
+		Set<K> result = new HashSet<>(4);
+		result.add(key1);
+		result.add(key2);
+		return result;
+	}
+
+	private List<JsonObject> snapshot_(Entry_ entry) {
+		if (entry == null) return Collections.emptyList();
+		if (entry.snapshot_ == null) {
+			List<JsonObject> result = new ArrayList<>(entry.dealIds_.size());
+			for (String dealId : entry.dealIds_) result.add(deals_.get(dealId));
+			entry.snapshot_ = Collections.unmodifiableList(result);
+		}
+		return entry.snapshot_;
+	}
+
+	/**
+	 * Index entry.
+	 * Power Sharing IDs in order of entry, and the snapshot of their Power Sharing information, {@code null} until looked up after a change.
+	 * @author OES Project
+	 * 索引のエントリ.
+	 * 入った順の融通 ID と, その融通情報のスナップショット. 変更後に検索されるまでは {@code null}.
+	 * @author OES Project
+	 */
+	private static class Entry_ {
+		private final Set<String> dealIds_ = new LinkedHashSet<>();
+		private List<JsonObject> snapshot_ = null;
+	}
+
+	/**
+	 * Keys a Power Sharing is indexed under.
+	 * @author OES Project
+	 * 融通を索引したキー.
+	 * @author OES Project
+	 */
+	private static class Keys_ {
+		private static final Keys_ NONE_ = new Keys_();
+		private final String dischargeUnitId_;
+		private final String chargeUnitId_;
+		private final String masterSideUnitId_;
+		private final String slaveSideUnitId_;
+		private final Deal.State state_;
+		private final boolean transitional_;
+		private Keys_(JsonObject deal, String masterSidePolicy) {
+			dischargeUnitId_ = Deal.dischargeUnitId(deal);
+			chargeUnitId_ = Deal.chargeUnitId(deal);
+			masterSideUnitId_ = Deal.masterSideUnitId(deal, masterSidePolicy);
+			slaveSideUnitId_ = Deal.slaveSideUnitId(deal, masterSidePolicy);
+			state_ = Deal.state(deal);
+			transitional_ = Deal.isTransitionalState(deal);
+		}
+		private Keys_() {
+			dischargeUnitId_ = null;
+			chargeUnitId_ = null;
+			masterSideUnitId_ = null;
+			slaveSideUnitId_ = null;
+			state_ = null;
+			transitional_ = false;
+		}
+	}
+
+}
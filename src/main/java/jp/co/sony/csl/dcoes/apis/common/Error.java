@@ -4,6 +4,8 @@ import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+
+import jp.co.sony.csl.dcoes.apis.common.util.EnumLookup;
 import jp.co.sony.csl.dcoes.apis.common.util.StackTraceUtil;
 import jp.co.sony.csl.dcoes.apis.common.util.vertx.JsonObjectUtil;
 
@@ -129,59 +131,56 @@ public class Error {
 		UNKNOWN,
 	}
 
+	// The only lookup tables of these enums ; looked up without exceptions, since parsing happens for every received error
+	// これらの enum の唯一の参照表. 受信したエラーごとにパースするので例外を使わずに引く
+	private static final EnumLookup<Category> categories_ = new EnumLookup<>(Category.class, Category.UNKNOWN, log);
+	private static final EnumLookup<Extent> extents_ = new EnumLookup<>(Extent.class, Extent.UNKNOWN, log);
+	private static final EnumLookup<Level> levels_ = new EnumLookup<>(Level.class, Level.UNKNOWN, log);
+
 	/**
 	 * Gets corresponding {@link Category} from string.
+	 * Case-insensitive. Unknown values are logged at a limited rate.
 	 * @param value string
 	 * @return category object corresponding to {@code value}.
 	 *         {@link Category#UNKNOWN} if corresponding {@link Category} cannot be gotten.
 	 * 文字列から対応する {@link Category} を取得.
+	 * 大文字小文字を区別しない. 不明な値は頻度を制限してログ出力する.
 	 * @param value 文字列
 	 * @return {@code value} に対応する category object.
 	 *         該当する {@link Category} がつからなければ {@link Category#UNKNOWN}.
 	 */
 	public static Category category(String value) {
-		try {
-			return Error.Category.valueOf(value);
-		} catch (Exception e) {
-			log.error(e);
-			return Error.Category.UNKNOWN;
-		}
+		return categories_.get(value);
 	}
 	/**
 	 * Gets corresponding {@link Extent} from string.
+	 * Case-insensitive. Unknown values are logged at a limited rate.
 	 * @param value string
 	 * @return extent object corresponding to {@code value}.
 	 *         {@link Extent#UNKNOWN} if corresponding {@link Extent} cannot be gotten.
 	 * 文字列から対応する {@link Extent} を取得.
+	 * 大文字小文字を区別しない. 不明な値は頻度を制限してログ出力する.
 	 * @param value string
 	 * @return {@code value} に対応する extent オブジェクト.
 	 *         該当する {@link Extent} がつからなければ {@link Extent#UNKNOWN}.
 	 */
 	public static Extent extent(String value) {
-		try {
-			return Error.Extent.valueOf(value);
-		} catch (Exception e) {
-			log.error(e);
-			return Error.Extent.UNKNOWN;
-		}
+		return extents_.get(value);
 	}
 	/**
 	 * Gets corresponding {@link Level} from string.
+	 * Case-insensitive. Unknown values are logged at a limited rate.
 	 * @param value string
 	 * @return level object corresponding to {@code value}.
 	 *         {@link Level#UNKNOWN} if corresponding {@link Level} cannot be gotten.
 	 * 文字列から対応する {@link Level} を取得.
+	 * 大文字小文字を区別しない. 不明な値は頻度を制限してログ出力する.
 	 * @param value 文字列
 	 * @return {@code value} に対応する level オブジェクト.
 	 *         該当する {@link Level} がつからなければ {@link Level#UNKNOWN}.
 	 */
 	public static Level level(String value) {
-		try {
-			return Error.Level.valueOf(value);
-		} catch (Exception e) {
-			log.error(e);
-			return Error.Level.UNKNOWN;
-		}
+		return levels_.get(value);
 	}
 
 	/**
@@ -374,6 +373,7 @@ public class Error {
 	}
 	/**
 	 * Creates error representation {@link JsonObject} and publishes to {@link io.vertx.core.eventbus.EventBus#publish(String, Object) EventBus}.
+	 * Goes through {@link ErrorAggregator} if one is installed for {@code vertx}.
 	 * @param vertx the {@link Vertx} instance, cannot be {@code null}
 	 * @param unitId unit ID that generated error
 	 * @param category error category object
@@ -382,6 +382,7 @@ public class Error {
 	 * @param message error message
 	 * @param ste error stacktraceelement object
 	 * エラーを表す {@link JsonObject} を作成し {@link io.vertx.core.eventbus.EventBus#publish(String, Object) EventBus に publish} する.
+	 * {@code vertx} に {@link ErrorAggregator} が設置されていればそれを経由する.
 	 * @param vertx the {@link Vertx} instance, cannot be {@code null}
 	 * @param unitId エラー生成ユニット ID
 	 * @param category エラーの category オブジェクト
@@ -391,8 +392,13 @@ public class Error {
 	 * @param ste エラーの stacktraceelement オブジェクト
 	 */
 	public static void report(Vertx vertx, String unitId, Error.Category category, Error.Extent extent, Error.Level level, String message, StackTraceElement ste) {
-		JsonObject json = generateErrorObject(unitId, category, extent, level, message, ste);
-		vertx.eventBus().publish(ServiceAddress.error(), json);
+		ErrorAggregator aggregator = ErrorAggregator.of(vertx);
+		if (aggregator != null) {
+			aggregator.report(unitId, category, extent, level, message, ste);
+		} else {
+			JsonObject json = generateErrorObject(unitId, category, extent, level, message, ste);
+			vertx.eventBus().publish(ServiceAddress.error(), json);
+		}
 	}
 
 	private static final Class<?>[] lastStackTraceArg_ = new Class<?>[] { Error.class };
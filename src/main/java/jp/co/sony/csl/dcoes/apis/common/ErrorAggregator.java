@@ -0,0 +1,317 @@
+package jp.co.sony.csl.dcoes.apis.common;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import jp.co.sony.csl.dcoes.apis.common.util.DateTimeUtil;
+
+/**
+ * Aggregates errors published by {@link Error#report(Vertx, String, Error.Category, Error.Extent, Error.Level, String, StackTraceElement)}.
+ * Errors with the same unit ID, category, extent, level, message and stack trace ( that is, equal {@link ErrorRecord}s ) are deduplicated within a window.
+ * The first occurrence is published immediately, and the rest are counted and published as one summary when the window closes.
+ * The summary is an ordinary error object with the following added :
+ * - {@code aggregated} : always {@code true}, which tells a summary from an individual error
+ * - {@code count} : number of occurrences absorbed into the summary, which excludes the first one already published
+ * - {@code firstDateTime} : time of the first occurrence in the window
+ * - {@code lastDateTime} : time of the last occurrence in the window
+ * Hence the window saw {@code count + 1} occurrences in total.
+ * {@link Error.Level#FATAL} errors are always published immediately.
+ * At most {@code maxKeys} distinct errors are tracked at once, and errors beyond that are published without aggregation.
+ * Installed per {@link Vertx} instance by {@link #install(Vertx, long, int)}.
+ * @author OES Project
+ * {@link Error#report(Vertx, String, Error.Category, Error.Extent, Error.Level, String, StackTraceElement)} が publish するエラーを集約する.
+ * ユニット ID, category, extent, level, メッセージ, スタックトレースが同じエラー ( すなわち等しい {@link ErrorRecord} ) はウィンドウ内で重複を除く.
+ * 最初の一件はすぐに publish し, 残りは数えておいてウィンドウが閉じる時に一件の要約として publish する.
+ * 要約は通常のエラーオブジェクトに以下を追加したもの.
+ * - {@code aggregated} : 常に {@code true}. 個別のエラーと要約を区別する
+ * - {@code count} : 要約に吸収した発生の回数. publish 済みの最初の一件は含まない
+ * - {@code firstDateTime} : ウィンドウ内の最初の発生の時刻
+ * - {@code lastDateTime} : ウィンドウ内の最後の発生の時刻
+ * したがってウィンドウ内の発生は全部で {@code count + 1} 回.
+ * {@link Error.Level#FATAL} のエラーは常にすぐ publish する.
+ * 同時に追跡する異なるエラーは最大 {@code maxKeys} 個で, それを超えたエラーは集約せずに publish する.
+ * {@link #install(Vertx, long, int)} で {@link Vertx} インスタンスごとに設置する.
+ * @author OES Project
+ */
+public class ErrorAggregator {
+	private static final Logger log = LoggerFactory.getLogger(ErrorAggregator.class);
+
+	/**
+	 * Default window length [ms].
+	 * The value is {@value}.
+	 * ウィンドウの長さのデフォルト [ms].
+	 * 値は {@value}.
+	 */
+	public static final long DEFAULT_WINDOW_MSEC = 5000L;
+	/**
+	 * Default maximum number of distinct errors tracked at once.
+	 * The value is {@value}.
+	 * 同時に追跡する異なるエラーの最大数のデフォルト.
+	 * 値は {@value}.
+	 */
+	public static final int DEFAULT_MAX_KEYS = 1024;
+
+	private static final Map<Vertx, ErrorAggregator> aggregators_ = new ConcurrentHashMap<>();
+
+	/**
+	 * Installs an aggregator for {@code vertx}.
+	 * An aggregator already installed is uninstalled.
+	 * @param vertx the {@link Vertx} instance, cannot be {@code null}
+	 * @param windowMsec window length [ms]
+	 * @param maxKeys maximum number of distinct errors tracked at once
+	 * @return the installed aggregator
+	 * {@code vertx} に集約器を設置する.
+	 * 既に設置されている集約器は撤去する.
+	 * @param vertx the {@link Vertx} instance, cannot be {@code null}
+	 * @param windowMsec ウィンドウの長さ [ms]
+	 * @param maxKeys 同時に追跡する異なるエラーの最大数
+	 * @return 設置した集約器
+	 */
+	public static ErrorAggregator install(Vertx vertx, long windowMsec, int maxKeys) {
+		return install_(new ErrorAggregator(vertx, windowMsec, maxKeys, System::currentTimeMillis));
+	}
+	/**
+	 * Uninstalls the aggregator for {@code vertx}.
+	 * Pending summaries are published.
+	 * @param vertx the {@link Vertx} instance, cannot be {@code null}
+	 * @return the uninstalled aggregator.
+	 *         {@code null} if not installed
+	 * {@code vertx} の集約器を撤去する.
+	 * 保留中の要約は publish する.
+	 * @param vertx the {@link Vertx} instance, cannot be {@code null}
+	 * @return 撤去した集約器.
+	 *         設置されていなければ {@code null}
+	 */
+	public static ErrorAggregator uninstall(Vertx vertx) {
+		ErrorAggregator result = aggregators_.remove(vertx);
+		if (result != null) result.close_();
+		return result;
+	}
+	/**
+	 * Gets the aggregator for {@code vertx}.
+	 * @param vertx the {@link Vertx} instance
+	 * @return the aggregator.
+	 *         {@code null} if not installed
+	 * {@code vertx} の集約器を取得する.
+	 * @param vertx the {@link Vertx} instance
+	 * @return 集約器.
+	 *         設置されていなければ {@code null}
+	 */
+	public static ErrorAggregator of(Vertx vertx) {
+		return aggregators_.get(vertx);
+	}
+
+	/*package*/ static ErrorAggregator install_(ErrorAggregator aggregator) {
+		ErrorAggregator old = aggregators_.put(aggregator.vertx_, aggregator);
+		if (old != null) old.close_();
+		aggregator.timerId_ = aggregator.vertx_.setPeriodic(aggregator.windowMsec_, t -> aggregator.sweep_());
+		if (log.isInfoEnabled()) log.info("error aggregator installed ; windowMsec : " + aggregator.windowMsec_ + ", maxKeys : " + aggregator.maxKeys_);
+		return aggregator;
+	}
+
+	////
+
+	private final Vertx vertx_;
+	private final long windowMsec_;
+	private final int maxKeys_;
+	private final LongSupplier clock_;
+	private final Map<ErrorRecord, Entry_> entries_ = new HashMap<>();
+	private long timerId_ = -1L;
+	private long published_ = 0L;
+	private long aggregated_ = 0L;
+	private long summaries_ = 0L;
+	private long overflowed_ = 0L;
+
+	/*package*/ ErrorAggregator(Vertx vertx, long windowMsec, int maxKeys, LongSupplier clock) {
+		if (windowMsec <= 0) throw new IllegalArgumentException("windowMsec must be positive : " + windowMsec);
+		vertx_ = vertx;
+		windowMsec_ = windowMsec;
+		maxKeys_ = maxKeys;
+		clock_ = clock;
+	}
+
+	/**
+	 * Aggregates an error.
+	 * Publishes it to {@link ServiceAddress#error()} unless it is a duplicate within the window.
+	 * @param unitId unit ID that generated error
+	 * @param category error category object
+	 * @param extent error extent object
+	 * @param level error level object
+	 * @param message error message
+	 * @param ste error stacktraceelement object
+	 * エラーを集約する.
+	 * ウィンドウ内の重複でなければ {@link ServiceAddress#error()} に publish する.
+	 * @param unitId エラー生成ユニット ID
+	 * @param category エラーの category オブジェクト
+	 * @param extent エラーの extent オブジェクト
+	 * @param level エラーの level オブジェクト
+	 * @param message エラーメッセージ
+	 * @param ste エラーの stacktraceelement オブジェクト
+	 */
+	public void report(String unitId, Error.Category category, Error.Extent extent, Error.Level level, String message, StackTraceElement ste) {
+		JsonObject summary = null;
+		if (level != Error.Level.FATAL) {
+			ErrorRecord key = new ErrorRecord(unitId, category, extent, level, message, ste);
+			long now = clock_.getAsLong();
+			synchronized (this) {
+				Entry_ entry = entries_.get(key);
+				if (entry != null) {
+					if (now - entry.firstTime_ < windowMsec_) {
+						entry.count_++;
+						entry.lastTime_ = now;
+						aggregated_++;
+						return;
+					}
+					// The window of the previous occurrences has closed but has not been swept yet
+					// 前回までの発生のウィンドウは閉じているがまだ掃除されていない
+					entries_.remove(key);
+					summary = summary_(entry);
+				}
+				if (entries_.size() < maxKeys_) {
+					entries_.put(key, new Entry_(key, now));
+				} else {
+					overflowed_++;
+				}
+				published_++;
+			}
+		} else {
+			synchronized (this) {
+				published_++;
+			}
+		}
+		if (summary != null) publish_(summary);
+		publish_(Error.generateErrorObject(unitId, category, extent, level, message, ste));
+	}
+
+	/**
+	 * Publishes summaries of all pending errors regardless of the window.
+	 * 全ての保留中のエラーの要約をウィンドウにかかわらず publish する.
+	 */
+	public void flush() {
+		sweep_(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Gets number of errors published individually.
+	 * @return number of errors
+	 * 個別に publish したエラーの数を取得する.
+	 * @return エラーの数
+	 */
+	public synchronized long published() {
+		return published_;
+	}
+	/**
+	 * Gets number of errors absorbed into summaries.
+	 * @return number of errors
+	 * 要約に吸収したエラーの数を取得する.
+	 * @return エラーの数
+	 */
+	public synchronized long aggregated() {
+		return aggregated_;
+	}
+	/**
+	 * Gets number of summaries published.
+	 * @return number of summaries
+	 * publish した要約の数を取得する.
+	 * @return 要約の数
+	 */
+	public synchronized long summaries() {
+		return summaries_;
+	}
+	/**
+	 * Gets number of errors published without aggregation because {@code maxKeys} was reached.
+	 * @return number of errors
+	 * {@code maxKeys} に達したため集約せずに publish したエラーの数を取得する.
+	 * @return エラーの数
+	 */
+	public synchronized long overflowed() {
+		return overflowed_;
+	}
+
+	////
+
+	/*package*/ void sweep_() {
+		sweep_(clock_.getAsLong());
+	}
+	private void sweep_(long now) {
+		List<JsonObject> summaries = new ArrayList<>();
+		synchronized (this) {
+			for (Iterator<Entry_> it = entries_.values().iterator(); it.hasNext();) {
+				Entry_ entry = it.next();
+				if (now == Long.MAX_VALUE || windowMsec_ <= now - entry.firstTime_) {
+					it.remove();
+					JsonObject summary = summary_(entry);
+					if (summary != null) summaries.add(summary);
+				}
+			}
+		}
+		for (JsonObject summary : summaries) {
+			publish_(summary);
+		}
+	}
+	private void close_() {
+		vertx_.cancelTimer(timerId_);
+		flush();
+	}
+
+	/**
+	 * Creates summary of the occurrences in a window.
+	 * Must be called with the lock held.
+	 * @param entry target entry
+	 * @return summary error object.
+	 *         {@code null} if there was only one occurrence, which has already been published
+	 * ウィンドウ内の発生の要約を作成する.
+	 * ロックを保持した状態で呼ぶこと.
+	 * @param entry 対象のエントリ
+	 * @return 要約のエラーオブジェクト.
+	 *         一件だけでそれが publish 済みなら {@code null}
+	 */
+	private JsonObject summary_(Entry_ entry) {
+		if (entry.count_ <= 1) return null;
+		summaries_++;
+		JsonObject result = entry.key_.toJson();
+		result.put("aggregated", Boolean.TRUE);
+		result.put("count", entry.count_ - 1);
+		result.put("firstDateTime", toString_(entry.firstTime_));
+		result.put("lastDateTime", toString_(entry.lastTime_));
+		return result;
+	}
+	private static String toString_(long millis) {
+		return DateTimeUtil.toString(LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()));
+	}
+	private void publish_(JsonObject error) {
+		vertx_.eventBus().publish(ServiceAddress.error(), error);
+	}
+
+	/**
+	 * Occurrences of an error in a window.
+	 * @author OES Project
+	 * ウィンドウ内のエラーの発生.
+	 * @author OES Project
+	 */
+	private static class Entry_ {
+		private final ErrorRecord key_;
+		private final long firstTime_;
+		private long lastTime_;
+		private int count_ = 1;
+		private Entry_(ErrorRecord key, long time) {
+			key_ = key;
+			firstTime_ = time;
+			lastTime_ = time;
+		}
+	}
+
+}
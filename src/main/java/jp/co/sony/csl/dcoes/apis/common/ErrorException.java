@@ -1,5 +1,13 @@
 package jp.co.sony.csl.dcoes.apis.common;
 
+import io.vertx.core.Future;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Exceptions to handle errors occurring in the tools of APIS program.
  * Flow of program becomes incomprehensible if an error occurs in tools.
@@ -9,6 +17,7 @@ package jp.co.sony.csl.dcoes.apis.common;
  * and
  * {@code jp.co.sony.csl.dcoes.apis.main.util.ErrorExceptionUtil#logAndFail(Error.Category, Error.Extent, Error.Level, Throwable, Handler)}
  * specifically.
+ * Stack traces are not captured by default, as they are costly and these exceptions carry their meaning in the fields ; see {@link CapturePolicy} to capture them for diagnosis.
  * @author OES Project
  * APIS プログラムのツール中で発生するエラーを扱うための例外.
  * ツールでエラーを発しても流れがわからなくなる.
@@ -18,6 +27,7 @@ package jp.co.sony.csl.dcoes.apis.common;
  * や
  * {@code jp.co.sony.csl.dcoes.apis.main.util.ErrorExceptionUtil#logAndFail(Error.Category, Error.Extent, Error.Level, Throwable, Handler)}
  * から使われる.
+ * 高価でありこの例外は意味をフィールドで伝えるため, デフォルトではスタックトレースを取得しない. 診断のために取得するには {@link CapturePolicy} を参照.
  * @author OES Project
  */
 // This may be FailureException ...
@@ -26,11 +36,61 @@ public class ErrorException extends Exception {
 
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Policy for capturing stack traces.
+	 * Capturing records the call stack cheaply, and {@link StackTraceElement}s are built only when {@link #getStackTrace()} or printing asks for them.
+	 * @author OES Project
+	 * スタックトレースを取得する方針.
+	 * 取得時はコールスタックを安価に記録するだけで, {@link StackTraceElement} は {@link #getStackTrace()} や出力で必要になって初めて作られる.
+	 * @author OES Project
+	 */
+	public enum CapturePolicy {
+		/**
+		 * Never captures.
+		 * 取得しない.
+		 */
+		NONE,
+		/**
+		 * Captures one in every {@code sampleEvery} instances, and every {@link Error.Level#FATAL} one.
+		 * {@code sampleEvery} 個に一個と, 全ての {@link Error.Level#FATAL} のものを取得する.
+		 */
+		SAMPLED,
+		/**
+		 * Captures only {@link Error.Level#FATAL} ones.
+		 * {@link Error.Level#FATAL} のものだけ取得する.
+		 */
+		FATAL_ONLY,
+	}
+
+	/**
+	 * Default sampling interval of {@link CapturePolicy#SAMPLED}.
+	 * The value is {@value}.
+	 * {@link CapturePolicy#SAMPLED} のサンプリング間隔のデフォルト.
+	 * 値は {@value}.
+	 */
+	public static final int DEFAULT_SAMPLE_EVERY = 100;
+	/**
+	 * Maximum number of preallocated instances.
+	 * Beyond this, {@link #preallocated(String, Error.Category, String)} returns new instances.
+	 * The value is {@value}.
+	 * 事前生成するインスタンスの最大数.
+	 * これを超えると {@link #preallocated(String, Error.Category, String)} は新しいインスタンスを返す.
+	 * 値は {@value}.
+	 */
+	public static final int MAX_PREALLOCATED = 1024;
+
+	private static volatile CapturePolicy capturePolicy_ = CapturePolicy.NONE;
+	private static volatile int sampleEvery_ = DEFAULT_SAMPLE_EVERY;
+	private static final AtomicLong created_ = new AtomicLong();
+	private static final Map<List<Object>, ErrorException> preallocated_ = new ConcurrentHashMap<>();
+
 	public final String unitId;
 	public final Error.Category category;
 	public final Error.Extent extent;
 	public final Error.Level level;
 
+	private transient volatile Future<?> failedFuture_;
+
 	/**
 	 * Creates instance.
 	 * @param unitId ID of unit that generated error	 
@@ -38,15 +98,17 @@ public class ErrorException extends Exception {
 	 * @param extent error extent object
 	 * @param level error level object
 	 * @param message error message
+	 * @param shared whether the instance is shared. Shared instances have neither stack trace nor suppressed exceptions, so that they are immutable
 	 * インスタンス作成.
 	 * @param unitId エラー生成ユニット ID
 	 * @param category エラーの category オブジェクト
 	 * @param extent エラーの extent オブジェクト
 	 * @param level エラーの level オブジェクト
 	 * @param message エラーメッセージ
+	 * @param shared 共有するインスタンスか否か. 共有するインスタンスは不変であるようスタックトレースも抑制された例外も持たない
 	 */
-	private ErrorException(String unitId, Error.Category category, Error.Extent extent, Error.Level level, String message) {
-		super(message, null, true, false);
+	private ErrorException(String unitId, Error.Category category, Error.Extent extent, Error.Level level, String message, boolean shared) {
+		super(message, null, !shared, !shared && capture_(level));
 		this.unitId = unitId;
 		this.category = category;
 		this.extent = extent;
@@ -55,6 +117,7 @@ public class ErrorException extends Exception {
 
 	/**
 	 * Creates instance.
+	 * Stack trace is captured according to {@link #configure(CapturePolicy, int) policy}.
 	 * @param unitId ID of unit that generated error	 
 	 * @param category error category object
 	 * @param extent error extent object
@@ -62,6 +125,7 @@ public class ErrorException extends Exception {
 	 * @param message error message
 	 * @return errorexception object
 	 * インスタンス作成.
+	 * スタックトレースは {@link #configure(CapturePolicy, int) 方針} に従って取得する.
 	 * @param unitId エラー生成ユニット ID
 	 * @param category エラーの category オブジェクト
 	 * @param extent エラーの extent オブジェクト
@@ -70,7 +134,88 @@ public class ErrorException extends Exception {
 	 * @return errorexception オブジェクト
 	 */
 	public static ErrorException create(String unitId, Error.Category category, Error.Extent extent, Error.Level level, String message) {
-		return new ErrorException(unitId, category, extent, level, message);
+		return new ErrorException(unitId, category, extent, level, message, false);
+	}
+	/**
+	 * Gets a shared instance of a {@link Error.Extent#LOCAL} / {@link Error.Level#WARN} error.
+	 * For very common errors on hot paths : the same instance is returned for the same arguments, and {@link #failedFuture()} of it is also shared, so signaling failure allocates nothing.
+	 * Shared instances never have a stack trace.
+	 * @param unitId ID of unit that generated error
+	 * @param category error category object
+	 * @param message error message. Should be a constant, not built per call
+	 * @return errorexception object
+	 * {@link Error.Extent#LOCAL} / {@link Error.Level#WARN} のエラーの共有インスタンスを取得する.
+	 * ホットパスで頻繁に起きるエラー用 : 同じ引数には同じインスタンスを返し, その {@link #failedFuture()} も共有するので失敗の通知で何も生成しない.
+	 * 共有インスタンスはスタックトレースを持たない.
+	 * @param unitId エラー生成ユニット ID
+	 * @param category エラーの category オブジェクト
+	 * @param message エラーメッセージ. 呼び出しごとに組み立てたものではなく定数であるべき
+	 * @return errorexception オブジェクト
+	 */
+	public static ErrorException preallocated(String unitId, Error.Category category, String message) {
+		List<Object> key = Arrays.asList(unitId, category, message);
+		ErrorException result = preallocated_.get(key);
+		if (result == null) {
+			result = new ErrorException(unitId, category, Error.Extent.LOCAL, Error.Level.WARN, message, true);
+			if (preallocated_.size() < MAX_PREALLOCATED) {
+				ErrorException existing = preallocated_.putIfAbsent(key, result);
+				if (existing != null) result = existing;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Sets stack trace capture policy.
+	 * Applied to instances created afterwards.
+	 * @param policy capture policy
+	 * @param sampleEvery sampling interval of {@link CapturePolicy#SAMPLED}
+	 * スタックトレース取得の方針を設定する.
+	 * 以後に作成するインスタンスに適用する.
+	 * @param policy 取得方針
+	 * @param sampleEvery {@link CapturePolicy#SAMPLED} のサンプリング間隔
+	 */
+	public static void configure(CapturePolicy policy, int sampleEvery) {
+		capturePolicy_ = (policy != null) ? policy : CapturePolicy.NONE;
+		sampleEvery_ = Math.max(1, sampleEvery);
+	}
+	/**
+	 * Gets stack trace capture policy.
+	 * @return capture policy
+	 * スタックトレース取得の方針を取得する.
+	 * @return 取得方針
+	 */
+	public static CapturePolicy capturePolicy() {
+		return capturePolicy_;
+	}
+
+	/**
+	 * Gets a failed {@link Future} with this exception as the cause.
+	 * Created once per instance and reused, since a failed future is immutable.
+	 * @param <T> type of result
+	 * @return failed future
+	 * この例外を原因とする失敗した {@link Future} を取得する.
+	 * 失敗した future は不変なのでインスタンスごとに一度だけ作成して再利用する.
+	 * @param <T> 結果の型
+	 * @return 失敗した future
+	 */
+	@SuppressWarnings("unchecked") public <T> Future<T> failedFuture() {
+		Future<?> result = failedFuture_;
+		if (result == null) failedFuture_ = result = Future.failedFuture(this);
+		return (Future<T>) result;
+	}
+
+	////
+
+	private static boolean capture_(Error.Level level) {
+		switch (capturePolicy_) {
+		case SAMPLED:
+			return level == Error.Level.FATAL || created_.getAndIncrement() % sampleEvery_ == 0;
+		case FATAL_ONLY:
+			return level == Error.Level.FATAL;
+		default:
+			return false;
+		}
 	}
 
 }
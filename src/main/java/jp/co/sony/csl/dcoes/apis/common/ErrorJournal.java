@@ -0,0 +1,545 @@
+package jp.co.sony.csl.dcoes.apis.common;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jp.co.sony.csl.dcoes.apis.common.util.vertx.JsonObjectUtil;
+
+/**
+ * Bounded in-memory journal of recent errors.
+ * Entries are kept in a ring buffer in order of arrival, and the oldest are evicted when either the number of entries or the estimated memory exceeds its limit.
+ * Secondary indexes by unit ID, {@link Error.Category} and {@link Error.Level} hold sequence numbers in the same order, so a query walks only the most selective index and finds the time range by binary search.
+ * Not thread-safe : use from a single thread such as the event loop of {@link jp.co.sony.csl.dcoes.apis.common.util.vertx.ErrorJournalService}.
+ * @author OES Project
+ * 最近のエラーを保持する容量制限付きのメモリ内ジャーナル.
+ * エントリは到着順にリングバッファに保持し, エントリ数または推定メモリ量が上限を超えると古いものから追い出す.
+ * ユニット ID, {@link Error.Category}, {@link Error.Level} による二次インデクスは同じ順序でシーケンス番号を保持するので, 検索は最も絞り込めるインデクスだけをたどり, 時刻の範囲は二分探索で求める.
+ * スレッドセーフではない : {@link jp.co.sony.csl.dcoes.apis.common.util.vertx.ErrorJournalService} のイベントループなど単一のスレッドから使うこと.
+ * @author OES Project
+ */
+public class ErrorJournal {
+
+	/**
+	 * Default maximum number of entries.
+	 * The value is {@value}.
+	 * エントリ数の上限のデフォルト.
+	 * 値は {@value}.
+	 */
+	public static final int DEFAULT_CAPACITY = 10000;
+	/**
+	 * Default maximum estimated memory [byte].
+	 * The value is {@value}.
+	 * 推定メモリ量の上限のデフォルト [byte].
+	 * 値は {@value}.
+	 */
+	public static final long DEFAULT_MAX_BYTES = 16L * 1024L * 1024L;
+	/**
+	 * Default maximum number of entries returned by a query.
+	 * The value is {@value}.
+	 * 一回の検索で返すエントリ数の上限のデフォルト.
+	 * 値は {@value}.
+	 */
+	public static final int DEFAULT_LIMIT = 100;
+
+	private final int capacity_;
+	private final long maxBytes_;
+	private final Entry[] entries_;
+	private final Map<String, LongQueue_> byUnitId_ = new HashMap<>();
+	private final Map<Error.Category, LongQueue_> byCategory_ = new EnumMap<>(Error.Category.class);
+	private final Map<Error.Level, LongQueue_> byLevel_ = new EnumMap<>(Error.Level.class);
+	private long nextSeq_ = 0L;
+	private int size_ = 0;
+	private long bytes_ = 0L;
+	private long evicted_ = 0L;
+	private long lastTime_ = Long.MIN_VALUE;
+
+	/**
+	 * Creates instance.
+	 * @param capacity maximum number of entries
+	 * @param maxBytes maximum estimated memory [byte]
+	 * インスタンスを作成する.
+	 * @param capacity エントリ数の上限
+	 * @param maxBytes 推定メモリ量の上限 [byte]
+	 */
+	public ErrorJournal(int capacity, long maxBytes) {
+		if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive : " + capacity);
+		capacity_ = capacity;
+		maxBytes_ = maxBytes;
+		entries_ = new Entry[capacity];
+		for (Error.Category category : Error.Category.values()) byCategory_.put(category, new LongQueue_());
+		for (Error.Level level : Error.Level.values()) byLevel_.put(level, new LongQueue_());
+	}
+
+	/**
+	 * Appends an error.
+	 * Times are made non-decreasing so that time ranges can be found by binary search : a time earlier than the previous one is replaced with the previous one.
+	 * @param record error
+	 * @param time time of arrival [ms]
+	 * @return sequence number of the entry
+	 * エラーを追加する.
+	 * 時刻の範囲を二分探索で求められるよう時刻は単調非減少にする : 前回より早い時刻は前回の時刻に置き換える.
+	 * @param record エラー
+	 * @param time 到着時刻 [ms]
+	 * @return エントリのシーケンス番号
+	 */
+	public long append(ErrorRecord record, long time) {
+		if (time < lastTime_) time = lastTime_;
+		lastTime_ = time;
+		Entry entry = new Entry(nextSeq_, time, record);
+		while (0 < size_ && (size_ == capacity_ || maxBytes_ < bytes_ + entry.bytes_)) {
+			evictOldest_();
+		}
+		entries_[slot_(entry.seq_)] = entry;
+		nextSeq_++;
+		size_++;
+		bytes_ += entry.bytes_;
+		byUnitId_.computeIfAbsent(record.unitId(), k -> new LongQueue_()).addLast(entry.seq_);
+		byCategory_.get(record.category()).addLast(entry.seq_);
+		byLevel_.get(record.level()).addLast(entry.seq_);
+		return entry.seq_;
+	}
+
+	/**
+	 * Searches entries.
+	 * Cost is proportional to the number of entries in the time range of the most selective index given, not to the size of the journal.
+	 * @param query search condition
+	 * @return matching entries, newest first, at most {@link Query#limit(int) limit}
+	 * エントリを検索する.
+	 * コストはジャーナルの大きさではなく, 与えられた中で最も絞り込めるインデクスの時刻範囲内のエントリ数に比例する.
+	 * @param query 検索条件
+	 * @return 条件に合うエントリ. 新しい順で最大 {@link Query#limit(int) limit} 件
+	 */
+	public List<Entry> query(Query query) {
+		List<Entry> result = new ArrayList<>();
+		SeqSource_ source = source_(query);
+		if (source == null || query.limit_ <= 0) return result;
+		int i = upperBound_(source, query.until_) - 1;
+		for (; 0 <= i; i--) {
+			Entry entry = entry_(source.seq(i));
+			if (entry.time_ < query.since_) break;
+			if (query.matches_(entry.record_)) {
+				result.add(entry);
+				if (query.limit_ <= result.size()) break;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets number of entries.
+	 * @return number of entries
+	 * エントリ数を取得する.
+	 * @return エントリ数
+	 */
+	public int size() {
+		return size_;
+	}
+	/**
+	 * Gets estimated memory used by entries.
+	 * @return estimated memory [byte]
+	 * エントリが使う推定メモリ量を取得する.
+	 * @return 推定メモリ量 [byte]
+	 */
+	public long bytes() {
+		return bytes_;
+	}
+	/**
+	 * Gets number of entries evicted so far.
+	 * @return number of entries
+	 * これまでに追い出したエントリ数を取得する.
+	 * @return エントリ数
+	 */
+	public long evicted() {
+		return evicted_;
+	}
+	/**
+	 * Gets statistics.
+	 * - {@code size} : number of entries
+	 * - {@code capacity} : maximum number of entries
+	 * - {@code bytes} : estimated memory [byte]
+	 * - {@code maxBytes} : maximum estimated memory [byte]
+	 * - {@code evicted} : number of entries evicted so far
+	 * - {@code units} : number of units with entries
+	 * - {@code oldestSeq}, {@code newestSeq} : range of sequence numbers. Omitted if empty
+	 * @return statistics
+	 * 統計を取得する.
+	 * - {@code size} : エントリ数
+	 * - {@code capacity} : エントリ数の上限
+	 * - {@code bytes} : 推定メモリ量 [byte]
+	 * - {@code maxBytes} : 推定メモリ量の上限 [byte]
+	 * - {@code evicted} : これまでに追い出したエントリ数
+	 * - {@code units} : エントリを持つユニットの数
+	 * - {@code oldestSeq}, {@code newestSeq} : シーケンス番号の範囲. 空なら省略
+	 * @return 統計
+	 */
+	public JsonObject stats() {
+		JsonObject result = new JsonObject();
+		result.put("size", size_);
+		result.put("capacity", capacity_);
+		result.put("bytes", bytes_);
+		result.put("maxBytes", maxBytes_);
+		result.put("evicted", evicted_);
+		result.put("units", byUnitId_.size());
+		if (0 < size_) {
+			result.put("oldestSeq", oldestSeq_());
+			result.put("newestSeq", nextSeq_ - 1);
+		}
+		return result;
+	}
+
+	////
+
+	private long oldestSeq_() {
+		return nextSeq_ - size_;
+	}
+	private int slot_(long seq) {
+		return (int) (seq % capacity_);
+	}
+	private Entry entry_(long seq) {
+		return entries_[slot_(seq)];
+	}
+	private void evictOldest_() {
+		long seq = oldestSeq_();
+		int slot = slot_(seq);
+		Entry entry = entries_[slot];
+		entries_[slot] = null;
+		size_--;
+		bytes_ -= entry.bytes_;
+		evicted_++;
+		// Indexes are in the same order as the ring, so the evicted entry is at their heads
+		// インデクスはリングと同じ順序なので, 追い出すエントリはそれらの先頭にある
+		LongQueue_ unit = byUnitId_.get(entry.record_.unitId());
+		unit.removeFirst();
+		if (unit.size() == 0) byUnitId_.remove(entry.record_.unitId());
+		byCategory_.get(entry.record_.category()).removeFirst();
+		byLevel_.get(entry.record_.level()).removeFirst();
+	}
+
+	/**
+	 * Chooses the smallest of the indexes given by the condition.
+	 * @param query search condition
+	 * @return sequence numbers to walk.
+	 *         {@code null} if nothing can match
+	 * 条件で与えられたインデクスのうち最も小さいものを選ぶ.
+	 * @param query 検索条件
+	 * @return たどるシーケンス番号.
+	 *         何も一致し得なければ {@code null}
+	 */
+	private SeqSource_ source_(Query query) {
+		SeqSource_ result = new SeqSource_() {
+			@Override public int size() {
+				return size_;
+			}
+			@Override public long seq(int index) {
+				return oldestSeq_() + index;
+			}
+		};
+		if (query.unitId_ != null) {
+			LongQueue_ q = byUnitId_.get(query.unitId_);
+			if (q == null) return null;
+			result = q;
+		}
+		if (query.category_ != null) {
+			LongQueue_ q = byCategory_.get(query.category_);
+			if (q.size() < result.size()) result = q;
+		}
+		if (query.level_ != null) {
+			LongQueue_ q = byLevel_.get(query.level_);
+			if (q.size() < result.size()) result = q;
+		}
+		return result;
+	}
+	/**
+	 * Finds the first index whose time is after {@code until}.
+	 * @param source sequence numbers in order of time
+	 * @param until upper bound of time [ms]
+	 * @return index
+	 * 時刻が {@code until} より後である最初のインデクスを求める.
+	 * @param source 時刻順のシーケンス番号
+	 * @param until 時刻の上限 [ms]
+	 * @return インデクス
+	 */
+	private int upperBound_(SeqSource_ source, long until) {
+		int lo = 0;
+		int hi = source.size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (entry_(source.seq(mid)).time_ <= until) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	////
+
+	/**
+	 * Journal entry.
+	 * @author OES Project
+	 * ジャーナルのエントリ.
+	 * @author OES Project
+	 */
+	public static final class Entry {
+		private final long seq_;
+		private final long time_;
+		private final ErrorRecord record_;
+		private final long bytes_;
+		private Entry(long seq, long time, ErrorRecord record) {
+			seq_ = seq;
+			time_ = time;
+			record_ = record;
+			bytes_ = estimateBytes_(record);
+		}
+		/**
+		 * Gets sequence number.
+		 * @return sequence number
+		 * シーケンス番号を取得する.
+		 * @return シーケンス番号
+		 */
+		public long seq() {
+			return seq_;
+		}
+		/**
+		 * Gets time of arrival.
+		 * @return time [ms]
+		 * 到着時刻を取得する.
+		 * @return 時刻 [ms]
+		 */
+		public long time() {
+			return time_;
+		}
+		/**
+		 * Gets error.
+		 * @return error
+		 * エラーを取得する.
+		 * @return エラー
+		 */
+		public ErrorRecord record() {
+			return record_;
+		}
+		/**
+		 * Converts to error representation {@link JsonObject} with {@code seq} and {@code time} added.
+		 * @return jsonobject object
+		 * {@code seq} と {@code time} を追加したエラーを表す {@link JsonObject} に変換する.
+		 * @return jsonobject オブジェクト
+		 */
+		public JsonObject toJson() {
+			return record_.toJson().put("seq", seq_).put("time", time_);
+		}
+	}
+
+	/**
+	 * Estimates memory used by an entry.
+	 * Object headers and references are counted roughly, and strings at two bytes per character.
+	 * @param record error
+	 * @return estimated memory [byte]
+	 * エントリが使うメモリ量を推定する.
+	 * オブジェクトヘッダと参照はおおまかに, 文字列は一文字 2 バイトで数える.
+	 * @param record エラー
+	 * @return 推定メモリ量 [byte]
+	 */
+	private static long estimateBytes_(ErrorRecord record) {
+		long result = 32L + 48L + 3L * 8L;
+		result += stringBytes_(record.unitId()) + stringBytes_(record.message());
+		StackTraceElement ste = record.stackTrace();
+		if (ste != null) {
+			result += 48L + stringBytes_(ste.getClassName()) + stringBytes_(ste.getMethodName()) + stringBytes_(ste.getFileName());
+		}
+		return result;
+	}
+	private static long stringBytes_(String s) {
+		return (s != null) ? 40L + 2L * s.length() : 0L;
+	}
+
+	/**
+	 * Search condition.
+	 * Conditions not set are not applied.
+	 * @author OES Project
+	 * 検索条件.
+	 * 設定していない条件は適用しない.
+	 * @author OES Project
+	 */
+	public static final class Query {
+		private String unitId_ = null;
+		private Error.Category category_ = null;
+		private Error.Extent extent_ = null;
+		private Error.Level level_ = null;
+		private long since_ = Long.MIN_VALUE;
+		private long until_ = Long.MAX_VALUE;
+		private int limit_ = DEFAULT_LIMIT;
+		/**
+		 * Creates condition from {@link JsonObject}.
+		 * Keys are {@code unitId}, {@code category}, {@code extent}, {@code level}, {@code since} [ms], {@code until} [ms] and {@code limit}.
+		 * @param json condition. Empty if {@code null}
+		 * @return query object
+		 * {@link JsonObject} から条件を作成する.
+		 * キーは {@code unitId}, {@code category}, {@code extent}, {@code level}, {@code since} [ms], {@code until} [ms], {@code limit}.
+		 * @param json 条件. {@code null} なら空
+		 * @return query オブジェクト
+		 */
+		public static Query fromJson(JsonObject json) {
+			Query result = new Query();
+			if (json != null) {
+				result.unitId(json.getString("unitId"));
+				if (json.getString("category") != null) result.category(Error.category(json));
+				if (json.getString("extent") != null) result.extent(Error.extent(json));
+				if (json.getString("level") != null) result.level(Error.level(json));
+				result.since(JsonObjectUtil.getLong(json, Long.MIN_VALUE, "since"));
+				result.until(JsonObjectUtil.getLong(json, Long.MAX_VALUE, "until"));
+				result.limit(JsonObjectUtil.getInteger(json, DEFAULT_LIMIT, "limit"));
+			}
+			return result;
+		}
+		/**
+		 * Sets unit ID that generated error.
+		 * @param value unit ID
+		 * @return this
+		 * エラー生成ユニット ID を設定する.
+		 * @param value ユニット ID
+		 * @return this
+		 */
+		public Query unitId(String value) {
+			unitId_ = value;
+			return this;
+		}
+		/**
+		 * Sets {@link Error.Category}.
+		 * @param value category object
+		 * @return this
+		 * {@link Error.Category} を設定する.
+		 * @param value category オブジェクト
+		 * @return this
+		 */
+		public Query category(Error.Category value) {
+			category_ = value;
+			return this;
+		}
+		/**
+		 * Sets {@link Error.Extent}.
+		 * @param value extent object
+		 * @return this
+		 * {@link Error.Extent} を設定する.
+		 * @param value extent オブジェクト
+		 * @return this
+		 */
+		public Query extent(Error.Extent value) {
+			extent_ = value;
+			return this;
+		}
+		/**
+		 * Sets {@link Error.Level}.
+		 * @param value level object
+		 * @return this
+		 * {@link Error.Level} を設定する.
+		 * @param value level オブジェクト
+		 * @return this
+		 */
+		public Query level(Error.Level value) {
+			level_ = value;
+			return this;
+		}
+		/**
+		 * Sets lower bound of time, inclusive.
+		 * @param value time [ms]
+		 * @return this
+		 * 時刻の下限を設定する. 境界を含む.
+		 * @param value 時刻 [ms]
+		 * @return this
+		 */
+		public Query since(long value) {
+			since_ = value;
+			return this;
+		}
+		/**
+		 * Sets upper bound of time, inclusive.
+		 * @param value time [ms]
+		 * @return this
+		 * 時刻の上限を設定する. 境界を含む.
+		 * @param value 時刻 [ms]
+		 * @return this
+		 */
+		public Query until(long value) {
+			until_ = value;
+			return this;
+		}
+		/**
+		 * Sets maximum number of entries returned.
+		 * @param value number of entries
+		 * @return this
+		 * 返すエントリ数の上限を設定する.
+		 * @param value エントリ数
+		 * @return this
+		 */
+		public Query limit(int value) {
+			limit_ = value;
+			return this;
+		}
+		private boolean matches_(ErrorRecord record) {
+			return (unitId_ == null || unitId_.equals(record.unitId())) && (category_ == null || category_ == record.category()) && (extent_ == null || extent_ == record.extent()) && (level_ == null || level_ == record.level());
+		}
+	}
+
+	/**
+	 * Converts entries to {@link JsonArray}.
+	 * @param entries entries
+	 * @return jsonarray object
+	 * エントリを {@link JsonArray} に変換する.
+	 * @param entries エントリ
+	 * @return jsonarray オブジェクト
+	 */
+	public static JsonArray toJsonArray(List<Entry> entries) {
+		JsonArray result = new JsonArray();
+		for (Entry entry : entries) result.add(entry.toJson());
+		return result;
+	}
+
+	////
+
+	private interface SeqSource_ {
+		int size();
+		long seq(int index);
+	}
+
+	/**
+	 * Growable ring of primitive {@code long}s.
+	 * @author OES Project
+	 * プリミティブ {@code long} の伸長可能なリング.
+	 * @author OES Project
+	 */
+	private static class LongQueue_ implements SeqSource_ {
+		private long[] values_ = new long[16];
+		private int head_ = 0;
+		private int size_ = 0;
+		private void addLast(long value) {
+			if (size_ == values_.length) {
+				long[] values = new long[values_.length * 2];
+				int n = values_.length - head_;
+				System.arraycopy(values_, head_, values, 0, n);
+				System.arraycopy(values_, 0, values, n, head_);
+				values_ = values;
+				head_ = 0;
+			}
+			values_[(head_ + size_) & (values_.length - 1)] = value;
+			size_++;
+		}
+		private void removeFirst() {
+			head_ = (head_ + 1) & (values_.length - 1);
+			size_--;
+		}
+		@Override public int size() {
+			return size_;
+		}
+		@Override public long seq(int index) {
+			return values_[(head_ + index) & (values_.length - 1)];
+		}
+	}
+
+}
@@ -0,0 +1,302 @@
+package jp.co.sony.csl.dcoes.apis.common;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.json.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Immutable value of an APIS program error.
+ * Typed counterpart of the error representation {@link JsonObject} made by {@link Error#generateErrorObject(String, Error.Category, Error.Extent, Error.Level, String, StackTraceElement)}, convertible to and from it.
+ * Sent on {@link io.vertx.core.eventbus.EventBus} with {@link Codec}, which passes the instance itself locally and encodes it compactly for clustered delivery.
+ * @author OES Project
+ * APIS プログラムのエラーを表す不変の値.
+ * {@link Error#generateErrorObject(String, Error.Category, Error.Extent, Error.Level, String, StackTraceElement)} が作るエラーを表す {@link JsonObject} の型付き版で, 相互に変換できる.
+ * {@link io.vertx.core.eventbus.EventBus} では {@link Codec} で送られ, ローカルではインスタンスそのものを渡し, クラスタ越しにはコンパクトにエンコードする.
+ * @author OES Project
+ */
+public final class ErrorRecord {
+
+	private final String unitId_;
+	private final Error.Category category_;
+	private final Error.Extent extent_;
+	private final Error.Level level_;
+	private final String message_;
+	private final StackTraceElement stackTrace_;
+	private final int hash_;
+
+	/**
+	 * Creates instance.
+	 * {@code null} enums are replaced with {@code UNKNOWN}.
+	 * @param unitId unit ID that generated error
+	 * @param category error category object
+	 * @param extent error extent object
+	 * @param level error level object
+	 * @param message error message
+	 * @param stackTrace error stacktraceelement object. May be {@code null}
+	 * インスタンスを作成する.
+	 * {@code null} の列挙は {@code UNKNOWN} に置き換える.
+	 * @param unitId エラー生成ユニット ID
+	 * @param category エラーの category オブジェクト
+	 * @param extent エラーの extent オブジェクト
+	 * @param level エラーの level オブジェクト
+	 * @param message エラーメッセージ
+	 * @param stackTrace エラーの stacktraceelement オブジェクト. {@code null} も可
+	 */
+	public ErrorRecord(String unitId, Error.Category category, Error.Extent extent, Error.Level level, String message, StackTraceElement stackTrace) {
+		unitId_ = unitId;
+		category_ = (category != null) ? category : Error.Category.UNKNOWN;
+		extent_ = (extent != null) ? extent : Error.Extent.UNKNOWN;
+		level_ = (level != null) ? level : Error.Level.UNKNOWN;
+		message_ = message;
+		stackTrace_ = stackTrace;
+		hash_ = Objects.hash(unitId_, category_, extent_, level_, message_, stackTrace_);
+	}
+
+	/**
+	 * Creates instance from error representation {@link JsonObject}.
+	 * Fields other than those of {@link Error#generateErrorObject(String, Error.Category, Error.Extent, Error.Level, String, StackTraceElement)} are ignored.
+	 * @param error target's error jsonobject object
+	 * @return errorrecord object
+	 * エラーを表す {@link JsonObject} からインスタンスを作成する.
+	 * {@link Error#generateErrorObject(String, Error.Category, Error.Extent, Error.Level, String, StackTraceElement)} のフィールド以外は無視する.
+	 * @param error 対象のエラー jsonobject オブジェクト
+	 * @return errorrecord オブジェクト
+	 */
+	public static ErrorRecord fromJson(JsonObject error) {
+		return new ErrorRecord(Error.unitId(error), Error.category(error), Error.extent(error), Error.level(error), Error.message(error), Error.stackTraceElement(error));
+	}
+	/**
+	 * Gets instance from message body on {@link ServiceAddress#error()}.
+	 * Accepts both {@link ErrorRecord} and error representation {@link JsonObject} so that receivers can handle senders of either form.
+	 * @param body message body
+	 * @return errorrecord object.
+	 *         {@code null} if {@code body} is neither
+	 * {@link ServiceAddress#error()} のメッセージボディからインスタンスを取得する.
+	 * 受信側がどちらの形式の送信側にも対応できるよう {@link ErrorRecord} とエラーを表す {@link JsonObject} の両方を受け付ける.
+	 * @param body メッセージボディ
+	 * @return errorrecord オブジェクト.
+	 *         どちらでもなければ {@code null}
+	 */
+	public static ErrorRecord from(Object body) {
+		if (body instanceof ErrorRecord) return (ErrorRecord) body;
+		if (body instanceof JsonObject) return fromJson((JsonObject) body);
+		return null;
+	}
+
+	/**
+	 * Converts to error representation {@link JsonObject}.
+	 * @return error representation jsonobject object
+	 * エラーを表す {@link JsonObject} に変換する.
+	 * @return エラーを表す jsonobject オブジェクト
+	 */
+	public JsonObject toJson() {
+		return Error.generateErrorObject(unitId_, category_, extent_, level_, message_, stackTrace_);
+	}
+
+	/**
+	 * Gets unit ID that generated error.
+	 * @return unit ID
+	 * エラー生成ユニット ID を取得する.
+	 * @return ユニット ID
+	 */
+	public String unitId() {
+		return unitId_;
+	}
+	/**
+	 * Gets {@link Error.Category}.
+	 * @return category object
+	 * {@link Error.Category} を取得する.
+	 * @return category オブジェクト
+	 */
+	public Error.Category category() {
+		return category_;
+	}
+	/**
+	 * Gets {@link Error.Extent}.
+	 * @return extent object
+	 * {@link Error.Extent} を取得する.
+	 * @return extent オブジェクト
+	 */
+	public Error.Extent extent() {
+		return extent_;
+	}
+	/**
+	 * Gets {@link Error.Level}.
+	 * @return level object
+	 * {@link Error.Level} を取得する.
+	 * @return level オブジェクト
+	 */
+	public Error.Level level() {
+		return level_;
+	}
+	/**
+	 * Gets error message.
+	 * @return error message
+	 * エラーメッセージを取得する.
+	 * @return エラーメッセージ
+	 */
+	public String message() {
+		return message_;
+	}
+	/**
+	 * Gets {@link StackTraceElement}.
+	 * @return stacktraceelement object.
+	 *         {@code null} if none
+	 * {@link StackTraceElement} を取得する.
+	 * @return stacktraceelement オブジェクト.
+	 *         なければ {@code null}
+	 */
+	public StackTraceElement stackTrace() {
+		return stackTrace_;
+	}
+
+	/**
+	 * Gets string for log output.
+	 * @return string for log output
+	 * ログ出力用の文字列を取得する.
+	 * @return ログ出力用文字列
+	 */
+	public String logMessage() {
+		return Error.logMessage(category_, extent_, level_, message_, unitId_, stackTrace_);
+	}
+
+	@Override public int hashCode() {
+		return hash_;
+	}
+	@Override public boolean equals(Object obj) {
+		if (this == obj) return true;
+		if (!(obj instanceof ErrorRecord)) return false;
+		ErrorRecord other = (ErrorRecord) obj;
+		return hash_ == other.hash_ && category_ == other.category_ && extent_ == other.extent_ && level_ == other.level_ && Objects.equals(unitId_, other.unitId_) && Objects.equals(message_, other.message_) && Objects.equals(stackTrace_, other.stackTrace_);
+	}
+	@Override public String toString() {
+		return logMessage();
+	}
+
+	////
+
+	/**
+	 * {@link MessageCodec} for {@link ErrorRecord}.
+	 * Locally the instance itself is delivered since it is immutable.
+	 * On the wire enums are written as ordinals, which is safe because all APIS programs in a cluster are checked to have the same version.
+	 * Unknown ordinals are decoded as {@code UNKNOWN}.
+	 * @author OES Project
+	 * {@link ErrorRecord} の {@link MessageCodec}.
+	 * 不変なのでローカルではインスタンスそのものを配送する.
+	 * ワイヤ上では列挙を序数で書く. クラスタ内の APIS プログラムは全て同じバージョンであることが確認されているので安全である.
+	 * 未知の序数は {@code UNKNOWN} としてデコードする.
+	 * @author OES Project
+	 */
+	public static final class Codec implements MessageCodec<ErrorRecord, ErrorRecord> {
+		/**
+		 * Codec name.
+		 * The value is {@value}.
+		 * コーデック名.
+		 * 値は {@value}.
+		 */
+		public static final String NAME = "apis.ErrorRecord";
+		private static final byte VERSION_ = 1;
+		private static final Error.Category[] CATEGORIES_ = Error.Category.values();
+		private static final Error.Extent[] EXTENTS_ = Error.Extent.values();
+		private static final Error.Level[] LEVELS_ = Error.Level.values();
+
+		/**
+		 * Registers as default codec for {@link ErrorRecord} on {@code vertx}'s {@link io.vertx.core.eventbus.EventBus}.
+		 * Does nothing if already registered.
+		 * @param vertx the {@link Vertx} instance, cannot be {@code null}
+		 * {@code vertx} の {@link io.vertx.core.eventbus.EventBus} に {@link ErrorRecord} のデフォルトコーデックとして登録する.
+		 * 登録済みなら何もしない.
+		 * @param vertx the {@link Vertx} instance, cannot be {@code null}
+		 */
+		public static void register(Vertx vertx) {
+			try {
+				vertx.eventBus().registerDefaultCodec(ErrorRecord.class, new Codec());
+			} catch (IllegalStateException e) {
+				// already registered
+				// 登録済み
+			}
+		}
+
+		@Override public void encodeToWire(Buffer buffer, ErrorRecord s) {
+			buffer.appendByte(VERSION_);
+			buffer.appendByte((byte) s.category_.ordinal());
+			buffer.appendByte((byte) s.extent_.ordinal());
+			buffer.appendByte((byte) s.level_.ordinal());
+			appendString_(buffer, s.unitId_);
+			appendString_(buffer, s.message_);
+			if (s.stackTrace_ != null) {
+				buffer.appendByte((byte) 1);
+				appendString_(buffer, s.stackTrace_.getClassName());
+				appendString_(buffer, s.stackTrace_.getMethodName());
+				appendString_(buffer, s.stackTrace_.getFileName());
+				buffer.appendInt(s.stackTrace_.getLineNumber());
+			} else {
+				buffer.appendByte((byte) 0);
+			}
+		}
+		@Override public ErrorRecord decodeFromWire(int pos, Buffer buffer) {
+			byte version = buffer.getByte(pos++);
+			if (version != VERSION_) throw new IllegalArgumentException("unsupported ErrorRecord wire version : " + version);
+			Error.Category category = element_(CATEGORIES_, buffer.getByte(pos++), Error.Category.UNKNOWN);
+			Error.Extent extent = element_(EXTENTS_, buffer.getByte(pos++), Error.Extent.UNKNOWN);
+			Error.Level level = element_(LEVELS_, buffer.getByte(pos++), Error.Level.UNKNOWN);
+			int[] cursor = new int[] { pos };
+			String unitId = getString_(buffer, cursor);
+			String message = getString_(buffer, cursor);
+			StackTraceElement stackTrace = null;
+			if (buffer.getByte(cursor[0]++) != 0) {
+				String className = getString_(buffer, cursor);
+				String methodName = getString_(buffer, cursor);
+				String fileName = getString_(buffer, cursor);
+				int lineNumber = buffer.getInt(cursor[0]);
+				stackTrace = new StackTraceElement(className, methodName, fileName, lineNumber);
+			}
+			return new ErrorRecord(unitId, category, extent, level, message, stackTrace);
+		}
+		@Override public ErrorRecord transform(ErrorRecord s) {
+			return s;
+		}
+		@Override public String name() {
+			return NAME;
+		}
+		@Override public byte systemCodecID() {
+			return -1;
+		}
+
+		private static <E> E element_(E[] values, int ordinal, E unknown) {
+			return (0 <= ordinal && ordinal < values.length) ? values[ordinal] : unknown;
+		}
+		/**
+		 * Appends length-prefixed UTF-8 string.
+		 * Length {@code -1} means {@code null}.
+		 * @param buffer buffer to append to
+		 * @param s string
+		 * 長さを前置した UTF-8 文字列を追加する.
+		 * 長さ {@code -1} は {@code null} を意味する.
+		 * @param buffer 追加先のバッファ
+		 * @param s 文字列
+		 */
+		private static void appendString_(Buffer buffer, String s) {
+			if (s == null) {
+				buffer.appendInt(-1);
+			} else {
+				byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+				buffer.appendInt(bytes.length);
+				buffer.appendBytes(bytes);
+			}
+		}
+		private static String getString_(Buffer buffer, int[] cursor) {
+			int length = buffer.getInt(cursor[0]);
+			cursor[0] += 4;
+			if (length < 0) return null;
+			String result = buffer.getString(cursor[0], cursor[0] + length, StandardCharsets.UTF_8.name());
+			cursor[0] += length;
+			return result;
+		}
+	}
+
+}
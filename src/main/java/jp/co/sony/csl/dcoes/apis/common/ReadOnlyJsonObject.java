@@ -0,0 +1,275 @@
+package jp.co.sony.csl.dcoes.apis.common;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Collections;
+import java.util.Set;
+
+import jp.co.sony.csl.dcoes.apis.common.util.vertx.JsonObjectUtil;
+
+/**
+ * Read-only view of a {@link JsonObject}.
+ * {@link io.vertx.core.eventbus.EventBus} deep-copies a {@link JsonObject} on every local delivery ; sending this view with {@link Codec} instead hands over the reference, because nobody can modify the content through it.
+ * Intended for large payloads such as unit data, POLICY and deals sent to local addresses.
+ * {@link #wrap(JsonObject)} does not copy, so the wrapped object must not be modified afterwards ; use {@link #copyOf(JsonObject)} if it may be.
+ * Nested {@link JsonObject}s are returned as views as well, and {@link JsonArray}s as copies.
+ * @author OES Project
+ * {@link JsonObject} の読み出し専用ビュー.
+ * {@link io.vertx.core.eventbus.EventBus} はローカル配送のたびに {@link JsonObject} をディープコピーする. 代わりにこのビューを {@link Codec} で送れば, これを通しては誰も内容を変更できないので参照を渡す.
+ * ユニットデータ, POLICY, 融通などローカルアドレスに送る大きなペイロードを想定している.
+ * {@link #wrap(JsonObject)} はコピーしないので, 包んだオブジェクトはその後変更してはならない. 変更されうるなら {@link #copyOf(JsonObject)} を使うこと.
+ * 入れ子の {@link JsonObject} もビューとして, {@link JsonArray} はコピーとして返す.
+ * @author OES Project
+ */
+public final class ReadOnlyJsonObject {
+
+	private final JsonObject jsonObject_;
+
+	private ReadOnlyJsonObject(JsonObject jsonObject) {
+		jsonObject_ = jsonObject;
+	}
+
+	/**
+	 * Wraps without copying.
+	 * The caller must not modify {@code jsonObject} afterwards.
+	 * @param jsonObject jsonobject object
+	 * @return view. {@code null} if {@code jsonObject} is {@code null}
+	 * コピーせずに包む.
+	 * 呼び出し元はその後 {@code jsonObject} を変更してはならない.
+	 * @param jsonObject jsonobject オブジェクト
+	 * @return ビュー. {@code jsonObject} が {@code null} なら {@code null}
+	 */
+	public static ReadOnlyJsonObject wrap(JsonObject jsonObject) {
+		return (jsonObject != null) ? new ReadOnlyJsonObject(jsonObject) : null;
+	}
+	/**
+	 * Wraps a copy.
+	 * @param jsonObject jsonobject object
+	 * @return view. {@code null} if {@code jsonObject} is {@code null}
+	 * コピーを包む.
+	 * @param jsonObject jsonobject オブジェクト
+	 * @return ビュー. {@code jsonObject} が {@code null} なら {@code null}
+	 */
+	public static ReadOnlyJsonObject copyOf(JsonObject jsonObject) {
+		return (jsonObject != null) ? new ReadOnlyJsonObject(jsonObject.copy()) : null;
+	}
+
+	/**
+	 * Gets value by traversing {@code keys} hierarchy.
+	 * See {@link JsonObjectUtil#getValue(JsonObject, String...)}.
+	 * @param keys key hierarchy
+	 * @return value. {@link JsonObject} as a view and {@link JsonArray} as a copy. {@code null} if it cannot be acquired
+	 * {@code keys} 階層を辿って値を取得する.
+	 * {@link JsonObjectUtil#getValue(JsonObject, String...)} 参照.
+	 * @param keys キーの階層
+	 * @return 値. {@link JsonObject} はビューとして, {@link JsonArray} はコピーとして. 取得できない場合は {@code null}
+	 */
+	public Object getValue(String... keys) {
+		Object result = JsonObjectUtil.getValue(jsonObject_, keys);
+		if (result instanceof JsonObject) return new ReadOnlyJsonObject((JsonObject) result);
+		if (result instanceof JsonArray) return ((JsonArray) result).copy();
+		return result;
+	}
+	/**
+	 * Gets {@link String} value by traversing {@code keys} hierarchy.
+	 * @param keys key hierarchy
+	 * @return value or {@code null}
+	 * {@code keys} 階層を辿って {@link String} 値を取得する.
+	 * @param keys キーの階層
+	 * @return 値または {@code null}
+	 */
+	public String getString(String... keys) {
+		return JsonObjectUtil.getString(jsonObject_, keys);
+	}
+	/**
+	 * Gets {@link Float} value by traversing {@code keys} hierarchy.
+	 * @param keys key hierarchy
+	 * @return value or {@code null}
+	 * {@code keys} 階層を辿って {@link Float} 値を取得する.
+	 * @param keys キーの階層
+	 * @return 値または {@code null}
+	 */
+	public Float getFloat(String... keys) {
+		return JsonObjectUtil.getFloat(jsonObject_, keys);
+	}
+	/**
+	 * Gets {@link Integer} value by traversing {@code keys} hierarchy.
+	 * @param keys key hierarchy
+	 * @return value or {@code null}
+	 * {@code keys} 階層を辿って {@link Integer} 値を取得する.
+	 * @param keys キーの階層
+	 * @return 値または {@code null}
+	 */
+	public Integer getInteger(String... keys) {
+		return JsonObjectUtil.getInteger(jsonObject_, keys);
+	}
+	/**
+	 * Gets {@link Long} value by traversing {@code keys} hierarchy.
+	 * @param keys key hierarchy
+	 * @return value or {@code null}
+	 * {@code keys} 階層を辿って {@link Long} 値を取得する.
+	 * @param keys キーの階層
+	 * @return 値または {@code null}
+	 */
+	public Long getLong(String... keys) {
+		return JsonObjectUtil.getLong(jsonObject_, keys);
+	}
+	/**
+	 * Gets {@link Boolean} value by traversing {@code keys} hierarchy.
+	 * @param keys key hierarchy
+	 * @return value or {@code null}
+	 * {@code keys} 階層を辿って {@link Boolean} 値を取得する.
+	 * @param keys キーの階層
+	 * @return 値または {@code null}
+	 */
+	public Boolean getBoolean(String... keys) {
+		return JsonObjectUtil.getBoolean(jsonObject_, keys);
+	}
+	/**
+	 * Gets nested object by traversing {@code keys} hierarchy.
+	 * @param keys key hierarchy
+	 * @return view of nested object or {@code null}
+	 * {@code keys} 階層を辿って入れ子のオブジェクトを取得する.
+	 * @param keys キーの階層
+	 * @return 入れ子のオブジェクトのビューまたは {@code null}
+	 */
+	public ReadOnlyJsonObject getJsonObject(String... keys) {
+		return wrap(JsonObjectUtil.getJsonObject(jsonObject_, keys));
+	}
+	/**
+	 * Gets copy of array by traversing {@code keys} hierarchy.
+	 * @param keys key hierarchy
+	 * @return copy of array or {@code null}
+	 * {@code keys} 階層を辿って配列のコピーを取得する.
+	 * @param keys キーの階層
+	 * @return 配列のコピーまたは {@code null}
+	 */
+	public JsonArray getJsonArray(String... keys) {
+		JsonArray result = JsonObjectUtil.getJsonArray(jsonObject_, keys);
+		return (result != null) ? result.copy() : null;
+	}
+
+	/**
+	 * Determines whether key exists.
+	 * @param key key
+	 * @return true if exists
+	 * キーが存在するか否か.
+	 * @param key キー
+	 * @return 存在すれば true
+	 */
+	public boolean containsKey(String key) {
+		return jsonObject_.containsKey(key);
+	}
+	/**
+	 * Gets keys.
+	 * @return unmodifiable set of keys
+	 * キーを取得する.
+	 * @return キーの変更不可セット
+	 */
+	public Set<String> fieldNames() {
+		return Collections.unmodifiableSet(jsonObject_.fieldNames());
+	}
+	/**
+	 * Gets number of entries.
+	 * @return number of entries
+	 * エントリの数を取得する.
+	 * @return エントリの数
+	 */
+	public int size() {
+		return jsonObject_.size();
+	}
+	/**
+	 * Gets modifiable deep copy.
+	 * @return copy
+	 * 変更可能なディープコピーを取得する.
+	 * @return コピー
+	 */
+	public JsonObject copy() {
+		return jsonObject_.copy();
+	}
+	/**
+	 * Encodes to JSON string.
+	 * @return JSON string
+	 * JSON 文字列にエンコードする.
+	 * @return JSON 文字列
+	 */
+	public String encode() {
+		return jsonObject_.encode();
+	}
+
+	@Override public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof ReadOnlyJsonObject)) return false;
+		return jsonObject_.equals(((ReadOnlyJsonObject) o).jsonObject_);
+	}
+	@Override public int hashCode() {
+		return jsonObject_.hashCode();
+	}
+	@Override public String toString() {
+		return jsonObject_.encode();
+	}
+
+	////
+
+	/**
+	 * {@link MessageCodec} for {@link ReadOnlyJsonObject}.
+	 * Locally the instance itself is delivered since it cannot be modified.
+	 * On the wire it is written as length-prefixed JSON.
+	 * @author OES Project
+	 * {@link ReadOnlyJsonObject} の {@link MessageCodec}.
+	 * 変更できないのでローカルではインスタンスそのものを配送する.
+	 * ワイヤ上では長さを前置した JSON として書く.
+	 * @author OES Project
+	 */
+	public static final class Codec implements MessageCodec<ReadOnlyJsonObject, ReadOnlyJsonObject> {
+		/**
+		 * Codec name.
+		 * The value is {@value}.
+		 * コーデック名.
+		 * 値は {@value}.
+		 */
+		public static final String NAME = "apis.ReadOnlyJsonObject";
+
+		/**
+		 * Registers as default codec for {@link ReadOnlyJsonObject} on {@code vertx}'s {@link io.vertx.core.eventbus.EventBus}.
+		 * Does nothing if already registered.
+		 * @param vertx the {@link Vertx} instance, cannot be {@code null}
+		 * {@code vertx} の {@link io.vertx.core.eventbus.EventBus} に {@link ReadOnlyJsonObject} のデフォルトコーデックとして登録する.
+		 * 登録済みなら何もしない.
+		 * @param vertx the {@link Vertx} instance, cannot be {@code null}
+		 */
+		public static void register(Vertx vertx) {
+			try {
+				vertx.eventBus().registerDefaultCodec(ReadOnlyJsonObject.class, new Codec());
+			} catch (IllegalStateException e) {
+				// already registered
+				// 登録済み
+			}
+		}
+
+		@Override public void encodeToWire(Buffer buffer, ReadOnlyJsonObject s) {
+			Buffer encoded = s.jsonObject_.toBuffer();
+			buffer.appendInt(encoded.length());
+			buffer.appendBuffer(encoded);
+		}
+		@Override public ReadOnlyJsonObject decodeFromWire(int pos, Buffer buffer) {
+			int length = buffer.getInt(pos);
+			pos += 4;
+			return new ReadOnlyJsonObject(new JsonObject(buffer.slice(pos, pos + length)));
+		}
+		@Override public ReadOnlyJsonObject transform(ReadOnlyJsonObject s) {
+			return s;
+		}
+		@Override public String name() {
+			return NAME;
+		}
+		@Override public byte systemCodecID() {
+			return -1;
+		}
+	}
+
+}
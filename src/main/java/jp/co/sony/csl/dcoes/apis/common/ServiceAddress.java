@@ -1,5 +1,7 @@
 package jp.co.sony.csl.dcoes.apis.common;
 
+import io.vertx.core.json.JsonObject;
+
 /**
  * Carries out unified management of {@link io.vertx.core.eventbus.EventBus} addresses.
  * @author OES Project
@@ -36,7 +38,7 @@ public class ServiceAddress {
 	 * @return アドレス文字列
 	 */
 	public static String helo(String unitId) {
-		return "apis." + unitId + ".helo";
+		return Typed.HELO.name(unitId);
 	}
 	/**
 	 * Address to get own unit's POLICY.
@@ -110,6 +112,10 @@ public class ServiceAddress {
 	 * 　　   - GridMaster : Keeps only global errors.
 	 * 　　   - User : Keeps only local errors of own units.
 	 * Message body : Error information [{@link io.vertx.core.json.JsonObject JsonObject}]
+	 * 　　　　　　　　   When {@link ErrorAggregator} is installed ( the default in {@link jp.co.sony.csl.dcoes.apis.common.util.vertx.AbstractStarter AbstractStarter} ),
+	 * 　　　　　　　　   duplicates within a window are not published one by one but as one summary marked with {@code "aggregated" : true}.
+	 * 　　　　　　　　   Its {@code count} is the number of duplicates after the first occurrence, which has been published as an ordinary error.
+	 * 　　　　　　　　   See {@link ErrorAggregator}
 	 * Message header : None
 	 * Response : None
 	 * @return address string
@@ -120,6 +126,10 @@ public class ServiceAddress {
 	 * 　　   - GridMaster : グローバルエラーのみ保持する.
 	 * 　　   - User : 自ユニットのローカルエラーのみ保持する.
 	 * メッセージボディ : エラー情報 [{@link io.vertx.core.json.JsonObject JsonObject}]
+	 * 　　　　　　　　   {@link ErrorAggregator} が設置されている ( {@link jp.co.sony.csl.dcoes.apis.common.util.vertx.AbstractStarter AbstractStarter} のデフォルト ) と,
+	 * 　　　　　　　　   ウィンドウ内の重複は一件ずつではなく {@code "aggregated" : true} の付いた一件の要約として publish される.
+	 * 　　　　　　　　   その {@code count} は通常のエラーとして publish 済みの最初の一件以降の重複の数.
+	 * 　　　　　　　　   {@link ErrorAggregator} 参照
 	 * メッセージヘッダ : なし
 	 * レスポンス : なし
 	 * @return アドレス文字列
@@ -234,7 +244,7 @@ public class ServiceAddress {
 	 * @return アドレス文字列	 
 	 */
 	public static String shutdown(String unitId) {
-		return "apis." + unitId + ".shutdown";
+		return Typed.SHUTDOWN.name(unitId);
 	}
 	/**
 	 * Address to update UDP multicast log output level.
@@ -259,6 +269,95 @@ public class ServiceAddress {
 	public static String multicastLogHandlerLevel() {
 		return "apis.multicastLogHandlerLevel";
 	}
+	/**
+	 * Address to update log level per logger and per handler type.
+	 * Scope : Global
+	 * Process : Updates log level of a logger or of handlers of a logger.
+	 * 　　   Reverts automatically after {@code ttlMsec} if specified.
+	 * Message body : Setting [{@link io.vertx.core.json.JsonObject}]
+	 * 　　　　　　　　   - {@code "logger"} : logger name [{@link String}].
+	 * 　　　　　　　　     Root logger if not specified
+	 * 　　　　　　　　   - {@code "handler"} : handler class name [{@link String}].
+	 * 　　　　　　　　     Updates the logger itself if not specified
+	 * 　　　　　　　　   - {@code "level"} : log level [{@link String}].
+	 * 　　　　　　　　     Returns original state if not specified
+	 * 　　　　　　　　   - {@code "ttlMsec"} : time until revert [{@link Long}].
+	 * 　　　　　　　　     Does not revert if not specified
+	 * Message header : None
+	 * Response : {@code "ok"} if successful
+	 * 　　　　　   Fail if error occurs.
+	 * @return address string
+	 * ロガーごと, ハンドラの種類ごとにログレベルを変更するためのアドレス.
+	 * 範囲 : グローバル
+	 * 処理 : ロガーまたはロガーが持つハンドラのログレベルを変更する.
+	 * 　　   {@code ttlMsec} の指定があればその時間の後に自動的に元に戻す.
+	 * メッセージボディ : 設定 [{@link io.vertx.core.json.JsonObject}]
+	 * 　　　　　　　　   - {@code "logger"} : ロガー名 [{@link String}].
+	 * 　　　　　　　　     指定がなければルートロガー
+	 * 　　　　　　　　   - {@code "handler"} : ハンドラのクラス名 [{@link String}].
+	 * 　　　　　　　　     指定がなければロガー自体を変更する
+	 * 　　　　　　　　   - {@code "level"} : ログレベル [{@link String}].
+	 * 　　　　　　　　     指定がなければ初期状態に戻す
+	 * 　　　　　　　　   - {@code "ttlMsec"} : 元に戻すまでの時間 [{@link Long}].
+	 * 　　　　　　　　     指定がなければ戻さない
+	 * メッセージヘッダ : なし
+	 * レスポンス : 成功したら {@code "ok"}
+	 * 　　　　　   エラーが起きたら fail.
+	 * @return アドレス文字列
+	 */
+	public static String logLevel() {
+		return "apis.logLevel";
+	}
+	/**
+	 * Address to get metrics of UDP multicast log receiver.
+	 * Scope : Local
+	 * Process : Gets ingestion metrics of {@link jp.co.sony.csl.dcoes.apis.common.util.vertx.MulticastLogReceiver}.
+	 * Message body : None
+	 * Message header : None
+	 * Response : Metrics [{@link io.vertx.core.json.JsonObject JsonObject}]
+	 * @return address string
+	 * UDP マルチキャストログ受信機能のメトリクスを取得するためのアドレス.
+	 * 範囲 : ローカル
+	 * 処理 : {@link jp.co.sony.csl.dcoes.apis.common.util.vertx.MulticastLogReceiver} の受信メトリクスを取得する.
+	 * メッセージボディ : なし
+	 * メッセージヘッダ : なし
+	 * レスポンス : メトリクス [{@link io.vertx.core.json.JsonObject JsonObject}]
+	 * @return アドレス文字列
+	 */
+	public static String multicastLogReceiverMetrics() {
+		return "apis.multicastLogReceiver.metrics";
+	}
+	/**
+	 * Address to search recent errors.
+	 * Scope : Local
+	 * Process : Searches errors kept by {@link jp.co.sony.csl.dcoes.apis.common.util.vertx.ErrorJournalService}.
+	 * Message body : Search condition [{@link io.vertx.core.json.JsonObject JsonObject}]
+	 * 　　　　　　　　   - {@code "unitId"} : unit ID [{@link String}]
+	 * 　　　　　　　　   - {@code "category"}, {@code "extent"}, {@code "level"} : error category, extent and level [{@link String}]
+	 * 　　　　　　　　   - {@code "since"}, {@code "until"} : time range, inclusive [ms] [{@link Long}]
+	 * 　　　　　　　　   - {@code "limit"} : maximum number of errors [{@link Integer}]
+	 * 　　　　　　　　   Conditions not specified are not applied
+	 * Message header : None
+	 * Response : Matching errors newest first and statistics of the journal [{@link io.vertx.core.json.JsonObject JsonObject}]
+	 * 　　　　　   Fail if error occurs.
+	 * @return address string
+	 * 最近のエラーを検索するためのアドレス.
+	 * 範囲 : ローカル
+	 * 処理 : {@link jp.co.sony.csl.dcoes.apis.common.util.vertx.ErrorJournalService} が保持するエラーを検索する.
+	 * メッセージボディ : 検索条件 [{@link io.vertx.core.json.JsonObject JsonObject}]
+	 * 　　　　　　　　   - {@code "unitId"} : ユニット ID [{@link String}]
+	 * 　　　　　　　　   - {@code "category"}, {@code "extent"}, {@code "level"} : エラーの category, extent, level [{@link String}]
+	 * 　　　　　　　　   - {@code "since"}, {@code "until"} : 時刻の範囲. 境界を含む [ms] [{@link Long}]
+	 * 　　　　　　　　   - {@code "limit"} : エラー数の上限 [{@link Integer}]
+	 * 　　　　　　　　   指定のない条件は適用しない
+	 * メッセージヘッダ : なし
+	 * レスポンス : 条件に合うエラー ( 新しい順 ) とジャーナルの統計 [{@link io.vertx.core.json.JsonObject JsonObject}]
+	 * 　　　　　   エラーが起きたら fail.
+	 * @return アドレス文字列
+	 */
+	public static String errorJournal() {
+		return "apis.errorJournal";
+	}
 	/**
 	 * Carries out unified management of {@link io.vertx.core.eventbus.EventBus} addresses used by Controller service.
 	 * @author OES Project
@@ -357,7 +456,7 @@ public class ServiceAddress {
 		 * @return アドレス文字列
 		 */
 		public static String unitData(String unitId) {
-			return "apis." + unitId + ".Controller.data";
+			return Typed.CONTROLLER_UNIT_DATA.name(unitId);
 		}
 		/**
 		 * Address to collect unit data of all units by GridMaster.
@@ -487,7 +586,7 @@ public class ServiceAddress {
 		 * @return アドレス文字列
 		 */
 		public static String unitDeviceStatus(String unitId) {
-			return "apis." + unitId + ".Controller.device.status";
+			return Typed.CONTROLLER_UNIT_DEVICE_STATUS.name(unitId);
 		}
 		/**
 		 * Address to control unit specified by ID.
@@ -520,7 +619,7 @@ public class ServiceAddress {
 		 * @return アドレス文字列
 		 */
 		public static String deviceControlling(String unitId) {
-			return "apis." + unitId + ".Controller.control.device";
+			return Typed.CONTROLLER_DEVICE_CONTROLLING.name(unitId);
 		}
 		/**
 		 * Address to stop own unit's device.
@@ -713,7 +812,7 @@ public class ServiceAddress {
 		 * @return アドレス文字列
 		 */
 		public static String operationMode(String unitId) {
-			return "apis." + unitId + ".operationMode";
+			return Typed.USER_OPERATION_MODE.name(unitId);
 		}
 		/**
 		 * Address to process request from another unit.
@@ -790,7 +889,7 @@ public class ServiceAddress {
 		 * @return アドレス文字列
 		 */
 		public static String errorTesting(String unitId) {
-			return "apis." + unitId + ".User.error.test";
+			return Typed.USER_ERROR_TESTING.name(unitId);
 		}
 	}
 	/**
@@ -1023,7 +1122,7 @@ public class ServiceAddress {
 		 * @return アドレス文字列
 		 */
 		public static String dealInterlocking(String unitId) {
-			return "apis." + unitId + ".Mediator.interlock.deal";
+			return Typed.MEDIATOR_DEAL_INTERLOCKING.name(unitId);
 		}
 		/**
 		 * Address to establish GridMaster in appropriate unit.
@@ -1073,7 +1172,7 @@ public class ServiceAddress {
 		 * @return アドレス文字列
 		 */
 		public static String gridMasterActivation(String unitId) {
-			return "apis." + unitId + ".Mediator.gridMaster.activate";
+			return Typed.MEDIATOR_GRID_MASTER_ACTIVATION.name(unitId);
 		}
 		/**
 		 * Address to stop GridMaster specified by ID.
@@ -1096,7 +1195,7 @@ public class ServiceAddress {
 		 * @return アドレス文字列
 		 */
 		public static String gridMasterDeactivation(String unitId) {
-			return "apis." + unitId + ".Mediator.gridMaster.deactivate";
+			return Typed.MEDIATOR_GRID_MASTER_DEACTIVATION.name(unitId);
 		}
 	}
 	/**
@@ -1317,4 +1416,70 @@ public class ServiceAddress {
 		}
 	}
 
+	/**
+	 * Typed descriptors of the addresses containing a unit ID.
+	 * The string methods of {@link ServiceAddress} for these addresses return the interned names of these templates.
+	 * See the corresponding methods for the scope and the message.
+	 * A message body of "None" is typed {@link Void} and sent as {@code null}.
+	 * @author OES Project
+	 * ユニット ID を含むアドレスの型付き記述子.
+	 * これらのアドレスの {@link ServiceAddress} の文字列メソッドはこのテンプレートが保持する名前を返す.
+	 * 範囲とメッセージは対応するメソッドを参照.
+	 * メッセージボディが "なし" のものは {@link Void} 型で {@code null} を送る.
+	 * @author OES Project
+	 */
+	public static class Typed {
+		private Typed() { }
+		/**
+		 * Template of {@link ServiceAddress#helo(String)}.
+		 * {@link ServiceAddress#helo(String)} のテンプレート.
+		 */
+		public static final Address.PerUnit<String, String> HELO = new Address.PerUnit<>("apis.", ".helo", Address.Scope.GLOBAL, String.class, String.class);
+		/**
+		 * Template of {@link ServiceAddress#shutdown(String)}.
+		 * {@link ServiceAddress#shutdown(String)} のテンプレート.
+		 */
+		public static final Address.PerUnit<Void, String> SHUTDOWN = new Address.PerUnit<>("apis.", ".shutdown", Address.Scope.GLOBAL, Void.class, String.class);
+		/**
+		 * Template of {@link ServiceAddress.Controller#unitData(String)}.
+		 * {@link ServiceAddress.Controller#unitData(String)} のテンプレート.
+		 */
+		public static final Address.PerUnit<Void, JsonObject> CONTROLLER_UNIT_DATA = new Address.PerUnit<>("apis.", ".Controller.data", Address.Scope.GLOBAL, Void.class, JsonObject.class);
+		/**
+		 * Template of {@link ServiceAddress.Controller#unitDeviceStatus(String)}.
+		 * {@link ServiceAddress.Controller#unitDeviceStatus(String)} のテンプレート.
+		 */
+		public static final Address.PerUnit<Void, JsonObject> CONTROLLER_UNIT_DEVICE_STATUS = new Address.PerUnit<>("apis.", ".Controller.device.status", Address.Scope.GLOBAL, Void.class, JsonObject.class);
+		/**
+		 * Template of {@link ServiceAddress.Controller#deviceControlling(String)}.
+		 * {@link ServiceAddress.Controller#deviceControlling(String)} のテンプレート.
+		 */
+		public static final Address.PerUnit<JsonObject, JsonObject> CONTROLLER_DEVICE_CONTROLLING = new Address.PerUnit<>("apis.", ".Controller.control.device", Address.Scope.GLOBAL, JsonObject.class, JsonObject.class);
+		/**
+		 * Template of {@link ServiceAddress.User#operationMode(String)}.
+		 * {@link ServiceAddress.User#operationMode(String)} のテンプレート.
+		 */
+		public static final Address.PerUnit<String, String> USER_OPERATION_MODE = new Address.PerUnit<>("apis.", ".operationMode", Address.Scope.GLOBAL, String.class, String.class);
+		/**
+		 * Template of {@link ServiceAddress.User#errorTesting(String)}.
+		 * {@link ServiceAddress.User#errorTesting(String)} のテンプレート.
+		 */
+		public static final Address.PerUnit<Void, Boolean> USER_ERROR_TESTING = new Address.PerUnit<>("apis.", ".User.error.test", Address.Scope.GLOBAL, Void.class, Boolean.class);
+		/**
+		 * Template of {@link ServiceAddress.Mediator#dealInterlocking(String)}.
+		 * {@link ServiceAddress.Mediator#dealInterlocking(String)} のテンプレート.
+		 */
+		public static final Address.PerUnit<JsonObject, String> MEDIATOR_DEAL_INTERLOCKING = new Address.PerUnit<>("apis.", ".Mediator.interlock.deal", Address.Scope.GLOBAL, JsonObject.class, String.class);
+		/**
+		 * Template of {@link ServiceAddress.Mediator#gridMasterActivation(String)}.
+		 * {@link ServiceAddress.Mediator#gridMasterActivation(String)} のテンプレート.
+		 */
+		public static final Address.PerUnit<Void, String> MEDIATOR_GRID_MASTER_ACTIVATION = new Address.PerUnit<>("apis.", ".Mediator.gridMaster.activate", Address.Scope.GLOBAL, Void.class, String.class);
+		/**
+		 * Template of {@link ServiceAddress.Mediator#gridMasterDeactivation(String)}.
+		 * {@link ServiceAddress.Mediator#gridMasterDeactivation(String)} のテンプレート.
+		 */
+		public static final Address.PerUnit<Void, String> MEDIATOR_GRID_MASTER_DEACTIVATION = new Address.PerUnit<>("apis.", ".Mediator.gridMaster.deactivate", Address.Scope.GLOBAL, Void.class, String.class);
+	}
+
 }
@@ -0,0 +1,354 @@
+package jp.co.sony.csl.dcoes.apis.common;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fixed-capacity history of unit data per unit and per metric.
+ * Each unit has a ring of the last {@code capacity} samples, held as one {@code long[]} of times and one {@code float[]} per metric, so memory per unit is bounded and no {@link JsonObject} snapshot is retained.
+ * Metrics are {@link UnitDataTable.Column}s of {@link UnitDataTable.Type#FLOAT}, and samples are recorded either from unit data or from a {@link UnitDataTable}.
+ * Times of a unit are kept non-decreasing : a sample older than the latest one is recorded at the latest time.
+ * {@link #query(String, String, long, long, long, Aggregation)} downsamples a time range into buckets of a given resolution.
+ * Units may be recorded and queried from different threads.
+ * @author OES Project
+ * ユニットごと, メトリクスごとの固定容量のユニットデータ履歴.
+ * 各ユニットは直近 {@code capacity} 件のサンプルのリングを, 時刻の {@code long[]} 一つとメトリクスごとの {@code float[]} 一つで持つので, ユニットあたりのメモリは有限で {@link JsonObject} のスナップショットを保持しない.
+ * メトリクスは {@link UnitDataTable.Type#FLOAT} の {@link UnitDataTable.Column} で, サンプルはユニットデータか {@link UnitDataTable} から記録する.
+ * ユニットの時刻は減少しないよう保つ : 最新より古いサンプルは最新の時刻で記録する.
+ * {@link #query(String, String, long, long, long, Aggregation)} は時間範囲を指定した解像度のバケツにダウンサンプリングする.
+ * ユニットの記録と検索は別々のスレッドから行ってよい.
+ * @author OES Project
+ */
+public class UnitDataHistory {
+
+	/**
+	 * Maximum number of buckets of a query.
+	 * The value is {@value}.
+	 * 検索のバケツ数の上限.
+	 * 値は {@value}.
+	 */
+	public static final int MAX_BUCKETS = 100000;
+
+	/**
+	 * How samples in a bucket are combined.
+	 * バケツ内のサンプルの組み合わせ方.
+	 */
+	public enum Aggregation {
+		/**
+		 * Average
+		 * 平均
+		 */
+		AVG,
+		/**
+		 * Minimum
+		 * 最小
+		 */
+		MIN,
+		/**
+		 * Maximum
+		 * 最大
+		 */
+		MAX,
+		/**
+		 * Latest sample
+		 * 最新のサンプル
+		 */
+		LAST,
+	}
+
+	/**
+	 * Result of a query.
+	 * Buckets without samples have {@link Float#NaN} values and zero counts.
+	 * @author OES Project
+	 * 検索の結果.
+	 * サンプルのないバケツは値が {@link Float#NaN} で件数がゼロ.
+	 * @author OES Project
+	 */
+	public static class Series {
+		private final long[] times_;
+		private final float[] values_;
+		private final int[] counts_;
+		private Series(long[] times, float[] values, int[] counts) {
+			times_ = times;
+			values_ = values;
+			counts_ = counts;
+		}
+		/**
+		 * Gets start times of buckets [ms].
+		 * @return array of times
+		 * バケツの開始時刻を取得する [ms].
+		 * @return 時刻の配列
+		 */
+		public long[] times() {
+			return times_;
+		}
+		/**
+		 * Gets values of buckets.
+		 * @return array of values
+		 * バケツの値を取得する.
+		 * @return 値の配列
+		 */
+		public float[] values() {
+			return values_;
+		}
+		/**
+		 * Gets numbers of samples in buckets.
+		 * @return array of numbers of samples
+		 * バケツ内のサンプル数を取得する.
+		 * @return サンプル数の配列
+		 */
+		public int[] counts() {
+			return counts_;
+		}
+	}
+
+	////
+
+	private final List<UnitDataTable.Column> metrics_;
+	private final Map<String, Integer> metricIndexes_ = new HashMap<>();
+	private final int capacity_;
+	private final Map<String, Ring_> rings_ = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates instance.
+	 * @param metrics metric definitions. Must be {@link UnitDataTable.Type#FLOAT}
+	 * @param capacity number of samples kept per unit
+	 * インスタンスを作成する.
+	 * @param metrics メトリクス定義. {@link UnitDataTable.Type#FLOAT} であること
+	 * @param capacity ユニットごとに保持するサンプル数
+	 */
+	public UnitDataHistory(List<UnitDataTable.Column> metrics, int capacity) {
+		if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive : " + capacity);
+		for (int m = 0; m < metrics.size(); m++) {
+			UnitDataTable.Column metric = metrics.get(m);
+			if (metric.type() != UnitDataTable.Type.FLOAT) throw new IllegalArgumentException("not a FLOAT column : " + metric.name());
+			if (metricIndexes_.put(metric.name(), m) != null) throw new IllegalArgumentException("duplicate metric : " + metric.name());
+		}
+		metrics_ = new ArrayList<>(metrics);
+		capacity_ = capacity;
+	}
+
+	/**
+	 * Records a sample from unit data.
+	 * @param unitId unit ID
+	 * @param timeMillis time of the sample [ms]
+	 * @param unitData jsonobject object of unit data
+	 * ユニットデータからサンプルを記録する.
+	 * @param unitId ユニット ID
+	 * @param timeMillis サンプルの時刻 [ms]
+	 * @param unitData ユニットデータ jsonobject オブジェクト
+	 */
+	public void record(String unitId, long timeMillis, JsonObject unitData) {
+		float[] values = new float[metrics_.size()];
+		for (int m = 0; m < values.length; m++) values[m] = UnitDataTable.floatValue_(unitData, metrics_.get(m));
+		ring_(unitId).add(timeMillis, values);
+	}
+	/**
+	 * Records a sample of every unit in a table.
+	 * Metrics are matched to columns by name ; a metric without a column is recorded as missing.
+	 * @param table table of unit data
+	 * @param timeMillis time of the samples [ms]
+	 * 表の全てのユニットのサンプルを記録する.
+	 * メトリクスは名前で列に対応付ける. 列のないメトリクスは欠損として記録する.
+	 * @param table ユニットデータの表
+	 * @param timeMillis サンプルの時刻 [ms]
+	 */
+	public void record(UnitDataTable table, long timeMillis) {
+		int[] columns = new int[metrics_.size()];
+		for (int m = 0; m < columns.length; m++) {
+			int c = table.columnIndex(metrics_.get(m).name());
+			columns[m] = (0 <= c && table.columns().get(c).type() == UnitDataTable.Type.FLOAT) ? c : -1;
+		}
+		float[] values = new float[columns.length];
+		for (int r = 0; r < table.size(); r++) {
+			for (int m = 0; m < columns.length; m++) {
+				values[m] = (0 <= columns[m]) ? table.getFloat(r, columns[m]) : Float.NaN;
+			}
+			ring_(table.unitId(r)).add(timeMillis, values);
+		}
+	}
+	/**
+	 * Forgets history of unit.
+	 * @param unitId unit ID
+	 * ユニットの履歴を忘れる.
+	 * @param unitId ユニット ID
+	 */
+	public void remove(String unitId) {
+		rings_.remove(unitId);
+	}
+	/**
+	 * Gets number of samples kept for unit.
+	 * @param unitId unit ID
+	 * @return number of samples
+	 * ユニットについて保持しているサンプル数を取得する.
+	 * @param unitId ユニット ID
+	 * @return サンプル数
+	 */
+	public int size(String unitId) {
+		Ring_ ring = rings_.get(unitId);
+		if (ring == null) return 0;
+		synchronized (ring) {
+			return ring.size_;
+		}
+	}
+
+	/**
+	 * Downsamples samples in {@code [since, until]} into buckets of {@code resolutionMsec} starting at {@code since}.
+	 * Missing values are skipped.
+	 * @param unitId unit ID
+	 * @param metric metric name
+	 * @param since start of range [ms]
+	 * @param until end of range, inclusive [ms]
+	 * @param resolutionMsec bucket length [ms]
+	 * @param aggregation how samples in a bucket are combined
+	 * @return series of buckets
+	 * {@code [since, until]} のサンプルを {@code since} から始まる {@code resolutionMsec} のバケツにダウンサンプリングする.
+	 * 欠損値は飛ばす.
+	 * @param unitId ユニット ID
+	 * @param metric メトリクス名
+	 * @param since 範囲の開始 [ms]
+	 * @param until 範囲の終了. 含む [ms]
+	 * @param resolutionMsec バケツの長さ [ms]
+	 * @param aggregation バケツ内のサンプルの組み合わせ方
+	 * @return バケツの系列
+	 */
+	public Series query(String unitId, String metric, long since, long until, long resolutionMsec, Aggregation aggregation) {
+		Integer m = metricIndexes_.get(metric);
+		if (m == null) throw new IllegalArgumentException("unknown metric : " + metric);
+		if (resolutionMsec <= 0 || until < since) throw new IllegalArgumentException("invalid range : " + since + " - " + until + " / " + resolutionMsec);
+		long buckets = (until - since) / resolutionMsec + 1;
+		if (MAX_BUCKETS < buckets) throw new IllegalArgumentException("too many buckets : " + buckets);
+		int n = (int) buckets;
+		long[] times = new long[n];
+		float[] values = new float[n];
+		int[] counts = new int[n];
+		for (int b = 0; b < n; b++) times[b] = since + b * resolutionMsec;
+		Arrays.fill(values, Float.NaN);
+		Ring_ ring = rings_.get(unitId);
+		if (ring != null) {
+			synchronized (ring) {
+				ring.downsample_(m, since, until, resolutionMsec, aggregation, values, counts);
+			}
+		}
+		if (aggregation == Aggregation.AVG) {
+			for (int b = 0; b < n; b++) {
+				if (0 < counts[b]) values[b] /= counts[b];
+			}
+		}
+		return new Series(times, values, counts);
+	}
+	/**
+	 * Downsamples the last {@code durationMsec} up to {@code nowMillis}.
+	 * Same as {@link #query(String, String, long, long, long, Aggregation)} with {@code since = nowMillis - durationMsec + 1} and {@code until = nowMillis},
+	 * so that the buckets tile {@code (nowMillis - durationMsec, nowMillis]} exactly.
+	 * Hence there are {@code durationMsec / resolutionMsec} buckets when {@code durationMsec} is a multiple of {@code resolutionMsec}.
+	 * Otherwise the last bucket is cut short at {@code nowMillis}.
+	 * @param unitId unit ID
+	 * @param metric metric name
+	 * @param nowMillis current time [ms]
+	 * @param durationMsec length of range [ms]
+	 * @param resolutionMsec bucket length [ms]
+	 * @param aggregation how samples in a bucket are combined
+	 * @return series of buckets
+	 * {@code nowMillis} までの直近 {@code durationMsec} をダウンサンプリングする.
+	 * {@code since = nowMillis - durationMsec + 1}, {@code until = nowMillis} とした {@link #query(String, String, long, long, long, Aggregation)} と同じで,
+	 * バケツは {@code (nowMillis - durationMsec, nowMillis]} を過不足なく覆う.
+	 * したがって {@code durationMsec} が {@code resolutionMsec} の倍数ならバケツは {@code durationMsec / resolutionMsec} 個.
+	 * そうでなければ最後のバケツは {@code nowMillis} で切り詰められる.
+	 * @param unitId ユニット ID
+	 * @param metric メトリクス名
+	 * @param nowMillis 現在時刻 [ms]
+	 * @param durationMsec 範囲の長さ [ms]
+	 * @param resolutionMsec バケツの長さ [ms]
+	 * @param aggregation バケツ内のサンプルの組み合わせ方
+	 * @return バケツの系列
+	 */
+	public Series last(String unitId, String metric, long nowMillis, long durationMsec, long resolutionMsec, Aggregation aggregation) {
+		return query(unitId, metric, nowMillis - durationMsec + 1, nowMillis, resolutionMsec, aggregation);
+	}
+
+	////
+
+	private Ring_ ring_(String unitId) {
+		return rings_.computeIfAbsent(unitId, k -> new Ring_(capacity_, metrics_.size()));
+	}
+
+	/**
+	 * Samples of a unit.
+	 * Guarded by itself.
+	 * @author OES Project
+	 * ユニットのサンプル.
+	 * 自身で保護する.
+	 * @author OES Project
+	 */
+	private static class Ring_ {
+		private final long[] times_;
+		private final float[][] values_;
+		private int head_ = 0;
+		private int size_ = 0;
+		private Ring_(int capacity, int metrics) {
+			times_ = new long[capacity];
+			values_ = new float[metrics][capacity];
+		}
+		private synchronized void add(long time, float[] values) {
+			int capacity = times_.length;
+			if (0 < size_) {
+				long latest = times_[(head_ - 1 + capacity) % capacity];
+				if (time < latest) time = latest;
+			}
+			times_[head_] = time;
+			for (int m = 0; m < values_.length; m++) values_[m][head_] = values[m];
+			head_ = (head_ + 1) % capacity;
+			if (size_ < capacity) size_++;
+		}
+		private int physical_(int logical) {
+			int capacity = times_.length;
+			return (head_ - size_ + logical + capacity) % capacity;
+		}
+		/**
+		 * Finds the first logical index whose time is {@code time} or later.
+		 * 時刻が {@code time} 以降である最初の論理添字を探す.
+		 */
+		private int lowerBound_(long time) {
+			int lo = 0, hi = size_;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (times_[physical_(mid)] < time) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			return lo;
+		}
+		private void downsample_(int m, long since, long until, long resolutionMsec, Aggregation aggregation, float[] result, int[] counts) {
+			float[] values = values_[m];
+			for (int i = lowerBound_(since); i < size_; i++) {
+				int p = physical_(i);
+				long t = times_[p];
+				if (until < t) break;
+				float v = values[p];
+				if (Float.isNaN(v)) continue;
+				int b = (int) ((t - since) / resolutionMsec);
+				if (counts[b] == 0) {
+					result[b] = v;
+				} else {
+					switch (aggregation) {
+					case AVG: result[b] += v; break;
+					case MIN: if (v < result[b]) result[b] = v; break;
+					case MAX: if (result[b] < v) result[b] = v; break;
+					case LAST: result[b] = v; break;
+					}
+				}
+				counts[b]++;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,688 @@
+package jp.co.sony.csl.dcoes.apis.common;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.json.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columnar store of unit data of many units.
+ * Holds the values of chosen fields of unit data such as those collected by {@link ServiceAddress.GridMaster#unitDatas()} in one primitive array per field ( column ), indexed by unit ( row ).
+ * A {@link Column} names a field by its key hierarchy in unit data, and is either {@link Type#FLOAT} or {@link Type#LONG}.
+ * Missing values are {@link Float#NaN} and {@link #MISSING_LONG} respectively, and aggregates skip them.
+ * Converts from and to the JSON form, i.e. a {@link JsonObject} of unit data keyed by unit ID ; only the fields of the columns are carried.
+ * Aggregates are plain loops over the arrays without boxing or hashing.
+ * Not thread-safe : use from one thread such as an event loop.
+ * Sent on {@link io.vertx.core.eventbus.EventBus} with {@link Codec}, which delivers a {@link #copy()} locally, so the sender and each recipient own their tables.
+ * @author OES Project
+ * 多数のユニットのユニットデータの列指向ストア.
+ * {@link ServiceAddress.GridMaster#unitDatas()} で集めたものなどのユニットデータのうち選んだフィールドの値を, フィールド ( 列 ) ごとに一つの, ユニット ( 行 ) で添字付けしたプリミティブ配列に保持する.
+ * {@link Column} はユニットデータ中のキー階層でフィールドを指し, {@link Type#FLOAT} か {@link Type#LONG} のいずれか.
+ * 欠損値はそれぞれ {@link Float#NaN} と {@link #MISSING_LONG} で, 集計はこれらを飛ばす.
+ * JSON 形式すなわちユニット ID をキーとするユニットデータの {@link JsonObject} との間で変換する. 運ぶのは列のフィールドだけ.
+ * 集計はボクシングもハッシュもしない配列上の単純なループ.
+ * スレッドセーフではない : イベントループなど一つのスレッドから使うこと.
+ * {@link io.vertx.core.eventbus.EventBus} では {@link Codec} で送られ, ローカルでは {@link #copy()} を配送するので, 送信側と各受信側はそれぞれ自分の表を持つ.
+ * @author OES Project
+ */
+public class UnitDataTable {
+
+	/**
+	 * Value of a missing {@link Type#LONG} value.
+	 * The value is {@value}.
+	 * {@link Type#LONG} の欠損値の値.
+	 * 値は {@value}.
+	 */
+	public static final long MISSING_LONG = Long.MIN_VALUE;
+
+	/**
+	 * Type of a column.
+	 * 列の型.
+	 */
+	public enum Type {
+		/**
+		 * {@code float[]}
+		 * {@code float[]}
+		 */
+		FLOAT,
+		/**
+		 * {@code long[]}
+		 * {@code long[]}
+		 */
+		LONG,
+	}
+
+	/**
+	 * Definition of a column.
+	 * @author OES Project
+	 * 列の定義.
+	 * @author OES Project
+	 */
+	public static class Column {
+		private final String name_;
+		private final Type type_;
+		private final String[] keys_;
+		/**
+		 * Creates instance.
+		 * @param name column name
+		 * @param type column type
+		 * @param keys key hierarchy of the field in unit data
+		 * インスタンスを作成する.
+		 * @param name 列名
+		 * @param type 列の型
+		 * @param keys ユニットデータ中のフィールドのキー階層
+		 */
+		public Column(String name, Type type, String... keys) {
+			if (keys.length == 0) throw new IllegalArgumentException("no keys : " + name);
+			name_ = name;
+			type_ = type;
+			keys_ = keys.clone();
+		}
+		/**
+		 * Gets column name.
+		 * @return column name
+		 * 列名を取得する.
+		 * @return 列名
+		 */
+		public String name() {
+			return name_;
+		}
+		/**
+		 * Gets column type.
+		 * @return column type
+		 * 列の型を取得する.
+		 * @return 列の型
+		 */
+		public Type type() {
+			return type_;
+		}
+	}
+
+	////
+
+	private final List<Column> columns_;
+	private final Map<String, Integer> columnIndexes_ = new HashMap<>();
+	private final float[][] floats_;
+	private final long[][] longs_;
+	private final Map<String, Integer> rows_ = new HashMap<>();
+	private String[] unitIds_;
+	private int size_ = 0;
+
+	/**
+	 * Creates empty table.
+	 * @param columns column definitions
+	 * @param initialCapacity initial number of rows
+	 * 空の表を作成する.
+	 * @param columns 列定義
+	 * @param initialCapacity 行数の初期値
+	 */
+	public UnitDataTable(List<Column> columns, int initialCapacity) {
+		columns_ = Collections.unmodifiableList(new ArrayList<>(columns));
+		int capacity = Math.max(initialCapacity, 1);
+		floats_ = new float[columns_.size()][];
+		longs_ = new long[columns_.size()][];
+		for (int c = 0; c < columns_.size(); c++) {
+			Column column = columns_.get(c);
+			if (columnIndexes_.put(column.name_, c) != null) throw new IllegalArgumentException("duplicate column : " + column.name_);
+			if (column.type_ == Type.FLOAT) {
+				floats_[c] = new float[capacity];
+			} else {
+				longs_[c] = new long[capacity];
+			}
+		}
+		unitIds_ = new String[capacity];
+	}
+	private UnitDataTable(UnitDataTable other) {
+		columns_ = other.columns_;
+		columnIndexes_.putAll(other.columnIndexes_);
+		int capacity = Math.max(other.size_, 1);
+		floats_ = new float[columns_.size()][];
+		longs_ = new long[columns_.size()][];
+		for (int c = 0; c < columns_.size(); c++) {
+			if (other.floats_[c] != null) {
+				floats_[c] = Arrays.copyOf(other.floats_[c], capacity);
+			} else {
+				longs_[c] = Arrays.copyOf(other.longs_[c], capacity);
+			}
+		}
+		unitIds_ = Arrays.copyOf(other.unitIds_, capacity);
+		rows_.putAll(other.rows_);
+		size_ = other.size_;
+	}
+
+	/**
+	 * Creates table from the JSON form.
+	 * @param unitDatas jsonobject object of unit data keyed by unit ID
+	 * @param columns column definitions
+	 * @return table
+	 * JSON 形式から表を作成する.
+	 * @param unitDatas ユニット ID をキーとするユニットデータの jsonobject オブジェクト
+	 * @param columns 列定義
+	 * @return 表
+	 */
+	public static UnitDataTable fromJson(JsonObject unitDatas, List<Column> columns) {
+		UnitDataTable result = new UnitDataTable(columns, unitDatas.size());
+		for (Map.Entry<String, Object> entry : unitDatas) {
+			if (entry.getValue() instanceof JsonObject) {
+				result.put(entry.getKey(), (JsonObject) entry.getValue());
+			}
+		}
+		return result;
+	}
+	/**
+	 * Gets deep copy.
+	 * Copies the arrays only, which is far cheaper than copying the JSON form.
+	 * @return copy
+	 * ディープコピーを取得する.
+	 * 配列をコピーするだけなので, JSON 形式のコピーよりずっと安い.
+	 * @return コピー
+	 */
+	public UnitDataTable copy() {
+		return new UnitDataTable(this);
+	}
+	/**
+	 * Converts to the JSON form.
+	 * Missing values are omitted.
+	 * @return jsonobject object of unit data keyed by unit ID
+	 * JSON 形式に変換する.
+	 * 欠損値は省く.
+	 * @return ユニット ID をキーとするユニットデータの jsonobject オブジェクト
+	 */
+	public JsonObject toJson() {
+		JsonObject result = new JsonObject();
+		for (int r = 0; r < size_; r++) {
+			JsonObject unitData = new JsonObject();
+			for (int c = 0; c < columns_.size(); c++) {
+				Object value;
+				if (floats_[c] != null) {
+					float v = floats_[c][r];
+					value = (Float.isNaN(v)) ? null : Float.valueOf(v);
+				} else {
+					long v = longs_[c][r];
+					value = (v == MISSING_LONG) ? null : Long.valueOf(v);
+				}
+				if (value != null) put_(unitData, columns_.get(c).keys_, value);
+			}
+			result.put(unitIds_[r], unitData);
+		}
+		return result;
+	}
+
+	/**
+	 * Adds or replaces row of unit from unit data.
+	 * @param unitId unit ID
+	 * @param unitData jsonobject object of unit data
+	 * @return row index
+	 * ユニットデータからユニットの行を追加または置き換える.
+	 * @param unitId ユニット ID
+	 * @param unitData ユニットデータ jsonobject オブジェクト
+	 * @return 行の添字
+	 */
+	public int put(String unitId, JsonObject unitData) {
+		int r = row_(unitId);
+		for (int c = 0; c < columns_.size(); c++) {
+			Object value = get_(unitData, columns_.get(c).keys_);
+			if (floats_[c] != null) {
+				floats_[c][r] = (value instanceof Number) ? ((Number) value).floatValue() : Float.NaN;
+			} else {
+				longs_[c][r] = (value instanceof Number) ? ((Number) value).longValue() : MISSING_LONG;
+			}
+		}
+		return r;
+	}
+	/**
+	 * Removes row of unit.
+	 * The last row is moved into its place.
+	 * @param unitId unit ID
+	 * @return {@code true} if removed
+	 * ユニットの行を削除する.
+	 * 最後の行をその場所に移す.
+	 * @param unitId ユニット ID
+	 * @return 削除したら {@code true}
+	 */
+	public boolean remove(String unitId) {
+		Integer r = rows_.remove(unitId);
+		if (r == null) return false;
+		int last = --size_;
+		if (r != last) {
+			unitIds_[r] = unitIds_[last];
+			rows_.put(unitIds_[r], r);
+			for (int c = 0; c < columns_.size(); c++) {
+				if (floats_[c] != null) {
+					floats_[c][r] = floats_[c][last];
+				} else {
+					longs_[c][r] = longs_[c][last];
+				}
+			}
+		}
+		unitIds_[last] = null;
+		return true;
+	}
+
+	/**
+	 * Gets number of rows.
+	 * @return number of rows
+	 * 行数を取得する.
+	 * @return 行数
+	 */
+	public int size() {
+		return size_;
+	}
+	/**
+	 * Gets column definitions.
+	 * @return unmodifiable list of column definitions
+	 * 列定義を取得する.
+	 * @return 変更不可の列定義のリスト
+	 */
+	public List<Column> columns() {
+		return columns_;
+	}
+	/**
+	 * Gets index of column.
+	 * @param name column name
+	 * @return column index.
+	 *         -1 if not found
+	 * 列の添字を取得する.
+	 * @param name 列名
+	 * @return 列の添字.
+	 *         見つからなければ -1
+	 */
+	public int columnIndex(String name) {
+		Integer result = columnIndexes_.get(name);
+		return (result != null) ? result : -1;
+	}
+	/**
+	 * Gets row index of unit.
+	 * @param unitId unit ID
+	 * @return row index.
+	 *         -1 if not found
+	 * ユニットの行の添字を取得する.
+	 * @param unitId ユニット ID
+	 * @return 行の添字.
+	 *         見つからなければ -1
+	 */
+	public int rowIndex(String unitId) {
+		Integer result = rows_.get(unitId);
+		return (result != null) ? result : -1;
+	}
+	/**
+	 * Gets unit ID of row.
+	 * @param row row index
+	 * @return unit ID
+	 * 行のユニット ID を取得する.
+	 * @param row 行の添字
+	 * @return ユニット ID
+	 */
+	public String unitId(int row) {
+		return unitIds_[row];
+	}
+
+	/**
+	 * Gets {@link Type#FLOAT} value.
+	 * @param row row index
+	 * @param column column index
+	 * @return value. {@link Float#NaN} if missing
+	 * {@link Type#FLOAT} の値を取得する.
+	 * @param row 行の添字
+	 * @param column 列の添字
+	 * @return 値. 欠損なら {@link Float#NaN}
+	 */
+	public float getFloat(int row, int column) {
+		return floats_[column][row];
+	}
+	/**
+	 * Gets {@link Type#LONG} value.
+	 * @param row row index
+	 * @param column column index
+	 * @return value. {@link #MISSING_LONG} if missing
+	 * {@link Type#LONG} の値を取得する.
+	 * @param row 行の添字
+	 * @param column 列の添字
+	 * @return 値. 欠損なら {@link #MISSING_LONG}
+	 */
+	public long getLong(int row, int column) {
+		return longs_[column][row];
+	}
+	/**
+	 * Sets {@link Type#FLOAT} value.
+	 * @param row row index
+	 * @param column column index
+	 * @param value value
+	 * {@link Type#FLOAT} の値を設定する.
+	 * @param row 行の添字
+	 * @param column 列の添字
+	 * @param value 値
+	 */
+	public void setFloat(int row, int column, float value) {
+		floats_[column][row] = value;
+	}
+	/**
+	 * Sets {@link Type#LONG} value.
+	 * @param row row index
+	 * @param column column index
+	 * @param value value
+	 * {@link Type#LONG} の値を設定する.
+	 * @param row 行の添字
+	 * @param column 列の添字
+	 * @param value 値
+	 */
+	public void setLong(int row, int column, long value) {
+		longs_[column][row] = value;
+	}
+	/**
+	 * Gets the array of {@link Type#FLOAT} column.
+	 * Only the first {@link #size()} elements are valid. The array is the internal one and is replaced when rows grow.
+	 * @param column column index
+	 * @return array of values
+	 * {@link Type#FLOAT} の列の配列を取得する.
+	 * 最初の {@link #size()} 要素だけが有効. 配列は内部のもので, 行が増えると置き換わる.
+	 * @param column 列の添字
+	 * @return 値の配列
+	 */
+	public float[] floatColumn(int column) {
+		return floats_[column];
+	}
+	/**
+	 * Gets the array of {@link Type#LONG} column.
+	 * Only the first {@link #size()} elements are valid. The array is the internal one and is replaced when rows grow.
+	 * @param column column index
+	 * @return array of values
+	 * {@link Type#LONG} の列の配列を取得する.
+	 * 最初の {@link #size()} 要素だけが有効. 配列は内部のもので, 行が増えると置き換わる.
+	 * @param column 列の添字
+	 * @return 値の配列
+	 */
+	public long[] longColumn(int column) {
+		return longs_[column];
+	}
+
+	/**
+	 * Gets number of values present in column.
+	 * @param column column index
+	 * @return number of values
+	 * 列にある値の数を取得する.
+	 * @param column 列の添字
+	 * @return 値の数
+	 */
+	public int count(int column) {
+		int result = 0;
+		if (floats_[column] != null) {
+			float[] values = floats_[column];
+			for (int r = 0; r < size_; r++) if (!Float.isNaN(values[r])) result++;
+		} else {
+			long[] values = longs_[column];
+			for (int r = 0; r < size_; r++) if (values[r] != MISSING_LONG) result++;
+		}
+		return result;
+	}
+	/**
+	 * Gets sum of values in column.
+	 * @param column column index
+	 * @return sum. 0 if no value
+	 * 列の値の合計を取得する.
+	 * @param column 列の添字
+	 * @return 合計. 値がなければ 0
+	 */
+	public double sum(int column) {
+		double result = 0D;
+		if (floats_[column] != null) {
+			float[] values = floats_[column];
+			for (int r = 0; r < size_; r++) {
+				float v = values[r];
+				if (v == v) result += v;
+			}
+		} else {
+			long[] values = longs_[column];
+			for (int r = 0; r < size_; r++) {
+				long v = values[r];
+				if (v != MISSING_LONG) result += v;
+			}
+		}
+		return result;
+	}
+	/**
+	 * Gets minimum of values in column.
+	 * @param column column index
+	 * @return minimum. {@link Double#NaN} if no value
+	 * 列の値の最小値を取得する.
+	 * @param column 列の添字
+	 * @return 最小値. 値がなければ {@link Double#NaN}
+	 */
+	public double min(int column) {
+		double result = Double.POSITIVE_INFINITY;
+		boolean found = false;
+		if (floats_[column] != null) {
+			float[] values = floats_[column];
+			for (int r = 0; r < size_; r++) {
+				float v = values[r];
+				if (v < result) result = v;
+				found |= (v == v);
+			}
+		} else {
+			long[] values = longs_[column];
+			for (int r = 0; r < size_; r++) {
+				long v = values[r];
+				if (v != MISSING_LONG) {
+					if (v < result) result = v;
+					found = true;
+				}
+			}
+		}
+		return (found) ? result : Double.NaN;
+	}
+	/**
+	 * Gets maximum of values in column.
+	 * @param column column index
+	 * @return maximum. {@link Double#NaN} if no value
+	 * 列の値の最大値を取得する.
+	 * @param column 列の添字
+	 * @return 最大値. 値がなければ {@link Double#NaN}
+	 */
+	public double max(int column) {
+		double result = Double.NEGATIVE_INFINITY;
+		boolean found = false;
+		if (floats_[column] != null) {
+			float[] values = floats_[column];
+			for (int r = 0; r < size_; r++) {
+				float v = values[r];
+				if (result < v) result = v;
+				found |= (v == v);
+			}
+		} else {
+			long[] values = longs_[column];
+			for (int r = 0; r < size_; r++) {
+				long v = values[r];
+				if (v != MISSING_LONG) {
+					if (result < v) result = v;
+					found = true;
+				}
+			}
+		}
+		return (found) ? result : Double.NaN;
+	}
+	/**
+	 * Gets average of values in column.
+	 * @param column column index
+	 * @return average. {@link Double#NaN} if no value
+	 * 列の値の平均を取得する.
+	 * @param column 列の添字
+	 * @return 平均. 値がなければ {@link Double#NaN}
+	 */
+	public double avg(int column) {
+		int count = count(column);
+		return (0 < count) ? sum(column) / count : Double.NaN;
+	}
+
+	////
+
+	private int row_(String unitId) {
+		Integer result = rows_.get(unitId);
+		if (result != null) return result;
+		if (size_ == unitIds_.length) grow_();
+		unitIds_[size_] = unitId;
+		rows_.put(unitId, size_);
+		return size_++;
+	}
+	private void grow_() {
+		int capacity = unitIds_.length * 2;
+		unitIds_ = Arrays.copyOf(unitIds_, capacity);
+		for (int c = 0; c < columns_.size(); c++) {
+			if (floats_[c] != null) {
+				floats_[c] = Arrays.copyOf(floats_[c], capacity);
+			} else {
+				longs_[c] = Arrays.copyOf(longs_[c], capacity);
+			}
+		}
+	}
+
+	/*package*/ static float floatValue_(JsonObject unitData, Column column) {
+		Object value = get_(unitData, column.keys_);
+		return (value instanceof Number) ? ((Number) value).floatValue() : Float.NaN;
+	}
+	private static Object get_(JsonObject jsonObject, String[] keys) {
+		for (int i = 0; i < keys.length - 1; i++) {
+			Object value = jsonObject.getValue(keys[i]);
+			if (!(value instanceof JsonObject)) return null;
+			jsonObject = (JsonObject) value;
+		}
+		return jsonObject.getValue(keys[keys.length - 1]);
+	}
+	private static void put_(JsonObject jsonObject, String[] keys, Object value) {
+		for (int i = 0; i < keys.length - 1; i++) {
+			JsonObject child = jsonObject.getJsonObject(keys[i]);
+			if (child == null) {
+				child = new JsonObject();
+				jsonObject.put(keys[i], child);
+			}
+			jsonObject = child;
+		}
+		jsonObject.put(keys[keys.length - 1], value);
+	}
+
+	////
+
+	/**
+	 * {@link MessageCodec} for {@link UnitDataTable}.
+	 * Locally a {@link UnitDataTable#copy()} is delivered, since the table is mutable ; copying the arrays is still far cheaper than the deep copy of the JSON form.
+	 * On the wire the columns are written followed by the rows, values as raw floats and longs.
+	 * @author OES Project
+	 * {@link UnitDataTable} の {@link MessageCodec}.
+	 * 表は変更可能なのでローカルでは {@link UnitDataTable#copy()} を配送する. 配列のコピーでも JSON 形式のディープコピーよりずっと安い.
+	 * ワイヤ上では列に続けて行を書き, 値は生の float と long で書く.
+	 * @author OES Project
+	 */
+	public static final class Codec implements MessageCodec<UnitDataTable, UnitDataTable> {
+		/**
+		 * Codec name.
+		 * The value is {@value}.
+		 * コーデック名.
+		 * 値は {@value}.
+		 */
+		public static final String NAME = "apis.UnitDataTable";
+		private static final byte VERSION_ = 1;
+		private static final Type[] TYPES_ = Type.values();
+
+		/**
+		 * Registers as default codec for {@link UnitDataTable} on {@code vertx}'s {@link io.vertx.core.eventbus.EventBus}.
+		 * Does nothing if already registered.
+		 * @param vertx the {@link Vertx} instance, cannot be {@code null}
+		 * {@code vertx} の {@link io.vertx.core.eventbus.EventBus} に {@link UnitDataTable} のデフォルトコーデックとして登録する.
+		 * 登録済みなら何もしない.
+		 * @param vertx the {@link Vertx} instance, cannot be {@code null}
+		 */
+		public static void register(Vertx vertx) {
+			try {
+				vertx.eventBus().registerDefaultCodec(UnitDataTable.class, new Codec());
+			} catch (IllegalStateException e) {
+				// already registered
+				// 登録済み
+			}
+		}
+
+		@Override public void encodeToWire(Buffer buffer, UnitDataTable s) {
+			buffer.appendByte(VERSION_);
+			buffer.appendInt(s.columns_.size());
+			for (Column column : s.columns_) {
+				appendString_(buffer, column.name_);
+				buffer.appendByte((byte) column.type_.ordinal());
+				buffer.appendInt(column.keys_.length);
+				for (String key : column.keys_) appendString_(buffer, key);
+			}
+			buffer.appendInt(s.size_);
+			for (int r = 0; r < s.size_; r++) {
+				appendString_(buffer, s.unitIds_[r]);
+				for (int c = 0; c < s.columns_.size(); c++) {
+					if (s.floats_[c] != null) {
+						buffer.appendFloat(s.floats_[c][r]);
+					} else {
+						buffer.appendLong(s.longs_[c][r]);
+					}
+				}
+			}
+		}
+		@Override public UnitDataTable decodeFromWire(int pos, Buffer buffer) {
+			byte version = buffer.getByte(pos++);
+			if (version != VERSION_) throw new IllegalArgumentException("unsupported UnitDataTable wire version : " + version);
+			int[] cursor = new int[] { pos };
+			int columnCount = getInt_(buffer, cursor);
+			List<Column> columns = new ArrayList<>(columnCount);
+			for (int c = 0; c < columnCount; c++) {
+				String name = getString_(buffer, cursor);
+				Type type = TYPES_[buffer.getByte(cursor[0]++)];
+				String[] keys = new String[getInt_(buffer, cursor)];
+				for (int k = 0; k < keys.length; k++) keys[k] = getString_(buffer, cursor);
+				columns.add(new Column(name, type, keys));
+			}
+			int size = getInt_(buffer, cursor);
+			UnitDataTable result = new UnitDataTable(columns, size);
+			for (int r = 0; r < size; r++) {
+				result.row_(getString_(buffer, cursor));
+				for (int c = 0; c < columnCount; c++) {
+					if (result.floats_[c] != null) {
+						result.floats_[c][r] = buffer.getFloat(cursor[0]);
+						cursor[0] += 4;
+					} else {
+						result.longs_[c][r] = buffer.getLong(cursor[0]);
+						cursor[0] += 8;
+					}
+				}
+			}
+			return result;
+		}
+		@Override public UnitDataTable transform(UnitDataTable s) {
+			return s.copy();
+		}
+		@Override public String name() {
+			return NAME;
+		}
+		@Override public byte systemCodecID() {
+			return -1;
+		}
+
+		private static void appendString_(Buffer buffer, String s) {
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			buffer.appendInt(bytes.length);
+			buffer.appendBytes(bytes);
+		}
+		private static int getInt_(Buffer buffer, int[] cursor) {
+			int result = buffer.getInt(cursor[0]);
+			cursor[0] += 4;
+			return result;
+		}
+		private static String getString_(Buffer buffer, int[] cursor) {
+			int length = getInt_(buffer, cursor);
+			String result = buffer.getString(cursor[0], cursor[0] + length, StandardCharsets.UTF_8.name());
+			cursor[0] += length;
+			return result;
+		}
+	}
+
+}
@@ -1,19 +1,22 @@
 package jp.co.sony.csl.dcoes.apis.common.util;
 
 import java.io.IOException;
-import java.util.logging.FileHandler;
 
 /**
  * Log handler.
  * Subclass in name only to output to two groups of files ( *.log and *.err ).
  * (Wish if there's another way to implement this).
+ * Writes asynchronously as {@link AsyncFileHandler}.
+ * Since *.err keeps error records, which matter most during fault bursts, a full ring buffer blocks the logging thread by default instead of discarding records.
  * @author OES Project
  * ログのハンドラ.
  * ファイルへの出力を 2 系統にする ( *.log および *.err ) ための名ばかりのサブクラス.
  * ( 他に実現方法があるならそっちが良い ).
+ * {@link AsyncFileHandler} として非同期で書き込む.
+ * *.err は障害が集中したときにこそ重要なエラーレコードを残すので, リングバッファが一杯ならデフォルトではレコードを捨てずにログ出力スレッドをブロックする.
  * @author OES Project
  */
-public class AnotherFileHandler extends FileHandler {
+public class AnotherFileHandler extends AsyncFileHandler {
 
 	/**
 	 * Creates instance.
@@ -27,4 +30,12 @@ public class AnotherFileHandler extends FileHandler {
 		super();
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @return {@link RingBuffer.OverflowPolicy#BLOCK}
+	 */
+	@Override protected RingBuffer.OverflowPolicy defaultOverflowPolicy() {
+		return RingBuffer.OverflowPolicy.BLOCK;
+	}
+
 }
@@ -0,0 +1,568 @@
+package jp.co.sony.csl.dcoes.apis.common.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.XMLFormatter;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This handler writes log to files asynchronously.
+ * Records are handed over to a background thread via {@link AsyncLogDispatcher}, formatted there and batched into a direct {@link ByteBuffer}.
+ * The buffer is written with {@link java.nio.channels.FileChannel} when it is full or when {@code flushIntervalMsec} has passed.
+ * Files are rotated by size and by time with {@link RotatingFileWriter}, and rotated files can be compressed with gzip in the background.
+ * Properties are read with the class name as prefix in the same way as {@link java.util.logging.FileHandler}, and its main properties are accepted.
+ * @author OES Project
+ * ログをファイルに非同期で書き込むハンドラ.
+ * レコードは {@link AsyncLogDispatcher} でバックグラウンドスレッドに渡し, そちらでフォーマットしてダイレクト {@link ByteBuffer} にまとめる.
+ * バッファが一杯になるか {@code flushIntervalMsec} が経過したら {@link java.nio.channels.FileChannel} で書き込む.
+ * ファイルは {@link RotatingFileWriter} でサイズおよび時間でローテートし, ローテートしたファイルはバックグラウンドで gzip 圧縮できる.
+ * プロパティは {@link java.util.logging.FileHandler} と同じくクラス名を接頭辞として読み込み, その主なプロパティを受け付ける.
+ * @author OES Project
+ */
+public class AsyncFileHandler extends Handler {
+
+	/**
+	 * Default capacity of the direct buffer [byte].
+	 * The value is {@value}.
+	 * ダイレクトバッファの容量のデフォルト [byte].
+	 * 値は {@value}.
+	 */
+	private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	/**
+	 * Default maximum time records stay in the buffer [ms].
+	 * The value is {@value}.
+	 * レコードがバッファに留まる最大時間のデフォルト [ms].
+	 * 値は {@value}.
+	 */
+	private static final long DEFAULT_FLUSH_INTERVAL_MSEC = 1000L;
+	/**
+	 * Default capacity of the ring buffer.
+	 * The value is {@value}.
+	 * リングバッファの容量のデフォルト.
+	 * 値は {@value}.
+	 */
+	private static final int DEFAULT_QUEUE_SIZE = 8192;
+	/**
+	 * Default maximum number of records processed in one batch.
+	 * The value is {@value}.
+	 * 一回のバッチで処理するレコード数の最大値のデフォルト.
+	 * 値は {@value}.
+	 */
+	private static final int DEFAULT_BATCH_SIZE = 256;
+	private static final int MAX_LOCKS_ = 100;
+	private static final long CLOSE_TIMEOUT_MSEC_ = 5000L;
+	private static final long MIN_IDLE_MSEC_ = 10L;
+	private static final long MAX_IDLE_MSEC_ = 1000L;
+
+	private String pattern_;
+	private long limit_;
+	private int count_;
+	private boolean append_;
+	private long rotateIntervalMsec_;
+	private boolean compress_;
+	private int bufferSize_;
+	private long flushIntervalMsec_;
+	private int queueSize_;
+	private int batchSize_;
+	private RingBuffer.OverflowPolicy overflowPolicy_;
+
+	private FileChannel lockChannel_;
+	private FileLock lock_;
+	private Path lockFile_;
+	private RotatingFileWriter writer_;
+	private ExecutorService compressor_;
+	private ByteBuffer buffer_;
+	private CharsetEncoder encoder_;
+	private long lastWriteMillis_;
+	private long openedMillis_;
+	private long reportedDropped_ = 0L;
+	private volatile boolean flushRequested_ = false;
+	private volatile AsyncLogDispatcher dispatcher_;
+
+	/**
+	 * Creates instance.
+	 * @throws IOException failed to open file
+	 * @throws SecurityException {@link Handler#setEncoding(String)}
+	 * インスタンス作成.
+	 * @throws IOException ファイルを開けなかった
+	 * @throws SecurityException {@link Handler#setEncoding(String)}
+	 */
+	public AsyncFileHandler() throws IOException, SecurityException {
+		configure_();
+		open_();
+		dispatcher_ = new AsyncLogDispatcher(getClass().getSimpleName() + "-writer", queueSize_, batchSize_, overflowPolicy_, idleMsec_(), new Sink_());
+	}
+
+	/**
+	 * Initializes.
+	 * Reads settings from property.
+	 * - {@code pattern} : file name pattern. {@code %t}, {@code %h}, {@code %u}, {@code %g} and {@code %%} are replaced as in {@link java.util.logging.FileHandler}. {@code %g} is always {@code 0}. Default {@code "%h/java%u.log"}
+	 * - {@code limit} : size which triggers rotation [byte]. No rotation by size if {@code 0}. Default {@code 0}
+	 * - {@code count} : number of files including the one being written. At least one rotated file is kept. Default {@code 1}
+	 * - {@code append} : appends to existing file if {@code true}. Otherwise the existing file is rotated. Default {@code false}
+	 * - {@code rotateIntervalMsec} : rotation cycle [ms]. No rotation by time if {@code 0}. Default {@code 0}
+	 * - {@code compress} : compresses rotated files with gzip if {@code true}. Default {@code false}
+	 * - {@code bufferSize} : capacity of the direct buffer [byte]. Default {@link #DEFAULT_BUFFER_SIZE}
+	 * - {@code flushIntervalMsec} : maximum time records stay in the buffer [ms]. {@code 0} writes at the end of every batch. Default {@link #DEFAULT_FLUSH_INTERVAL_MSEC}
+	 * - {@code queueSize} : capacity of the ring buffer. Default {@link #DEFAULT_QUEUE_SIZE}
+	 * - {@code batchSize} : maximum number of records processed in one batch. Default {@link #DEFAULT_BATCH_SIZE}
+	 * - {@code overflowPolicy} : {@link RingBuffer.OverflowPolicy} when the ring buffer is full. Default {@link #defaultOverflowPolicy()}
+	 * 初期化.
+	 * プロパティから設定を読み込む.
+	 * - {@code pattern} : ファイル名のパタン. {@code %t}, {@code %h}, {@code %u}, {@code %g} および {@code %%} は {@link java.util.logging.FileHandler} と同様に置き換える. {@code %g} は常に {@code 0}. デフォルト {@code "%h/java%u.log"}
+	 * - {@code limit} : ローテートするサイズ [byte]. {@code 0} ならサイズではローテートしない. デフォルト {@code 0}
+	 * - {@code count} : 書き込み中のものを含むファイルの数. ローテートしたファイルは最低一つ残す. デフォルト {@code 1}
+	 * - {@code append} : {@code true} なら既存のファイルに追記する. そうでなければ既存のファイルをローテートする. デフォルト {@code false}
+	 * - {@code rotateIntervalMsec} : ローテート周期 [ms]. {@code 0} なら時間ではローテートしない. デフォルト {@code 0}
+	 * - {@code compress} : {@code true} ならローテートしたファイルを gzip 圧縮する. デフォルト {@code false}
+	 * - {@code bufferSize} : ダイレクトバッファの容量 [byte]. デフォルト {@link #DEFAULT_BUFFER_SIZE}
+	 * - {@code flushIntervalMsec} : レコードがバッファに留まる最大時間 [ms]. {@code 0} ならバッチの終わりごとに書き込む. デフォルト {@link #DEFAULT_FLUSH_INTERVAL_MSEC}
+	 * - {@code queueSize} : リングバッファの容量. デフォルト {@link #DEFAULT_QUEUE_SIZE}
+	 * - {@code batchSize} : 一回のバッチで処理するレコード数の最大値. デフォルト {@link #DEFAULT_BATCH_SIZE}
+	 * - {@code overflowPolicy} : リングバッファが一杯のときの {@link RingBuffer.OverflowPolicy}. デフォルト {@link #defaultOverflowPolicy()}
+	 */
+	private void configure_() {
+		String cname = getClass().getName();
+		setLevel(JulUtil.getLevelProperty(cname + ".level", Level.ALL));
+		setFilter(JulUtil.getFilterProperty(cname +".filter", null));
+		setFormatter(JulUtil.getFormatterProperty(cname +".formatter", new XMLFormatter()));
+		try {
+			setEncoding(JulUtil.getStringProperty(cname +".encoding", null));
+		} catch (UnsupportedEncodingException e) {
+			try {
+				setEncoding(null);
+			} catch (UnsupportedEncodingException e2) {
+				// doing a setEncoding with null should always work.
+				// assert false;
+			}
+		}
+		pattern_ = JulUtil.getStringProperty(cname + ".pattern", "%h/java%u.log");
+		limit_ = Math.max(0, JulUtil.getIntProperty(cname + ".limit", 0));
+		count_ = Math.max(1, JulUtil.getIntProperty(cname + ".count", 1));
+		append_ = JulUtil.getBooleanProperty(cname + ".append", false);
+		rotateIntervalMsec_ = Math.max(0, JulUtil.getIntProperty(cname + ".rotateIntervalMsec", 0));
+		compress_ = JulUtil.getBooleanProperty(cname + ".compress", false);
+		bufferSize_ = Math.max(1024, JulUtil.getIntProperty(cname + ".bufferSize", DEFAULT_BUFFER_SIZE));
+		flushIntervalMsec_ = Math.max(0, JulUtil.getIntProperty(cname + ".flushIntervalMsec", (int) DEFAULT_FLUSH_INTERVAL_MSEC));
+		queueSize_ = JulUtil.getIntProperty(cname + ".queueSize", DEFAULT_QUEUE_SIZE);
+		batchSize_ = JulUtil.getIntProperty(cname + ".batchSize", DEFAULT_BATCH_SIZE);
+		overflowPolicy_ = RingBuffer.overflowPolicy(JulUtil.getStringProperty(cname + ".overflowPolicy", null), defaultOverflowPolicy());
+	}
+	/**
+	 * Gets {@link RingBuffer.OverflowPolicy} used when {@code overflowPolicy} property is not set.
+	 * Called from the constructor.
+	 * @return {@link RingBuffer.OverflowPolicy#DROP_OLDEST}
+	 * {@code overflowPolicy} プロパティが設定されていないときに使う {@link RingBuffer.OverflowPolicy} を取得する.
+	 * コンストラクタから呼ばれる.
+	 * @return {@link RingBuffer.OverflowPolicy#DROP_OLDEST}
+	 */
+	protected RingBuffer.OverflowPolicy defaultOverflowPolicy() {
+		return RingBuffer.OverflowPolicy.DROP_OLDEST;
+	}
+	/**
+	 * Gets how long the background thread waits for records before maintenance.
+	 * With {@code flushIntervalMsec} of {@code 0} every batch is written at its end, so the wait only serves rotation by time.
+	 * @return wait time [ms]
+	 * 保守処理までバックグラウンドスレッドがレコードを待つ時間を取得する.
+	 * {@code flushIntervalMsec} が {@code 0} なら各バッチはその終わりで書き込まれるので, 待ちは時間によるローテートのためだけである.
+	 * @return 待ち時間 [ms]
+	 */
+	private long idleMsec_() {
+		if (flushIntervalMsec_ == 0L) return MAX_IDLE_MSEC_;
+		return Math.max(MIN_IDLE_MSEC_, Math.min(flushIntervalMsec_, MAX_IDLE_MSEC_));
+	}
+
+	/**
+	 * Locks and opens file.
+	 * If the file is locked by another process, the next unique number is tried in the same way as {@link java.util.logging.FileHandler}.
+	 * @throws IOException failed to open file
+	 * ロックしてファイルを開く.
+	 * ファイルが別のプロセスにロックされていたら {@link java.util.logging.FileHandler} と同じく次のユニーク番号を試す.
+	 * @throws IOException ファイルを開けなかった
+	 */
+	private void open_() throws IOException {
+		Path file = null;
+		for (int unique = 0; file == null; unique++) {
+			if (MAX_LOCKS_ <= unique) {
+				throw new IOException("Couldn't get lock for " + pattern_);
+			}
+			Path candidate = generate_(pattern_, unique);
+			Path lockFile = candidate.resolveSibling(candidate.getFileName() + ".lck");
+			Path dir = lockFile.getParent();
+			if (dir != null) Files.createDirectories(dir);
+			FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			FileLock lock = null;
+			try {
+				lock = channel.tryLock();
+			} catch (OverlappingFileLockException e) {
+				// Locked by this process
+				// このプロセスがロック中
+			} catch (IOException e) {
+				// Locking is not supported : goes on without lock as FileHandler does
+				// ロックがサポートされていない : FileHandler と同じくロックなしで進める
+				lock = null;
+				file = candidate;
+			}
+			if (lock != null || file != null) {
+				lockChannel_ = channel;
+				lock_ = lock;
+				lockFile_ = lockFile;
+				file = candidate;
+			} else {
+				channel.close();
+			}
+		}
+		int maxBackups = Math.max(1, count_ - 1);
+		writer_ = new RotatingFileWriter(file, limit_, maxBackups) {
+			@Override protected boolean rotated(Path rotated) {
+				return AsyncFileHandler.this.rotated_(rotated);
+			}
+		};
+		if (!append_) writer_.rotate();
+		Charset charset = (getEncoding() != null) ? Charset.forName(getEncoding()) : Charset.defaultCharset();
+		encoder_ = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		buffer_ = ByteBuffer.allocateDirect(bufferSize_);
+		lastWriteMillis_ = openedMillis_ = System.currentTimeMillis();
+		if (writer_.size() == 0) writeString_(getFormatter().getHead(this));
+	}
+
+	/**
+	 * Generates file path from pattern.
+	 * @param pattern file name pattern
+	 * @param unique unique number
+	 * @return file path
+	 * パタンからファイルのパスを生成する.
+	 * @param pattern ファイル名のパタン
+	 * @param unique ユニーク番号
+	 * @return ファイルのパス
+	 */
+	private static Path generate_(String pattern, int unique) {
+		StringBuilder sb = new StringBuilder();
+		boolean sawUnique = false;
+		for (int i = 0; i < pattern.length(); i++) {
+			char ch = pattern.charAt(i);
+			char ch2 = (i + 1 < pattern.length()) ? pattern.charAt(i + 1) : 0;
+			if (ch == '%') {
+				if (ch2 == 't') {
+					sb.append(System.getProperty("java.io.tmpdir"));
+					i++;
+					continue;
+				} else if (ch2 == 'h') {
+					sb.append(System.getProperty("user.home"));
+					i++;
+					continue;
+				} else if (ch2 == 'g') {
+					sb.append('0');
+					i++;
+					continue;
+				} else if (ch2 == 'u') {
+					sb.append(unique);
+					sawUnique = true;
+					i++;
+					continue;
+				} else if (ch2 == '%') {
+					sb.append('%');
+					i++;
+					continue;
+				}
+			}
+			sb.append(ch);
+		}
+		if (0 < unique && !sawUnique) {
+			sb.append('.').append(unique);
+		}
+		return Paths.get(sb.toString());
+	}
+
+	/**
+	 * Gets number of records discarded because the ring buffer was full.
+	 * @return number of discarded records
+	 * リングバッファが一杯で捨てたレコードの数を取得する.
+	 * @return 捨てたレコードの数
+	 */
+	public long dropped() {
+		AsyncLogDispatcher dispatcher = dispatcher_;
+		return (dispatcher != null) ? dispatcher.dropped() : reportedDropped_;
+	}
+	/**
+	 * Gets path of the file being written.
+	 * @return path
+	 * 書き込み中のファイルのパスを取得する.
+	 * @return パス
+	 */
+	public Path file() {
+		return writer_.file();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override public void publish(LogRecord record) {
+		if (!isLoggable(record)) {
+			return;
+		}
+		AsyncLogDispatcher dispatcher = dispatcher_;
+		if (dispatcher != null) {
+			dispatcher.dispatch(record);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * Asks the background thread to write buffered records.
+	 * Returns without waiting for the write.
+	 * バッファに溜まったレコードの書き込みをバックグラウンドスレッドに依頼する.
+	 * 書き込みを待たずに戻る.
+	 */
+	@Override public void flush() {
+		flushRequested_ = true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * Writes all pending records, closes file and waits for compression.
+	 * 保留中のレコードを全て書き込みファイルを閉じ圧縮を待つ.
+	 */
+	@Override public void close() throws SecurityException {
+		AsyncLogDispatcher dispatcher = dispatcher_;
+		if (dispatcher == null) {
+			return;
+		}
+		dispatcher_ = null;
+		dispatcher.close();
+		reportedDropped_ = dispatcher.dropped();
+		synchronized (this) {
+			try {
+				writeString_(getFormatter().getTail(this));
+				writeBuffer_();
+				writer_.close();
+			} catch (Exception e) {
+				reportError(null, e, ErrorManager.CLOSE_FAILURE);
+			}
+			try {
+				if (lock_ != null) lock_.release();
+				if (lockChannel_ != null) lockChannel_.close();
+				if (lockFile_ != null) Files.deleteIfExists(lockFile_);
+			} catch (IOException e) {
+				reportError(null, e, ErrorManager.CLOSE_FAILURE);
+			}
+		}
+		ExecutorService compressor = compressor_;
+		if (compressor != null) {
+			compressor.shutdown();
+			try {
+				compressor.awaitTermination(CLOSE_TIMEOUT_MSEC_, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	////
+
+	/**
+	 * Encodes string into the buffer.
+	 * The buffer is written out whenever it becomes full.
+	 * @param s string to write
+	 * 文字列をバッファにエンコードする.
+	 * バッファが一杯になるたびに書き出す.
+	 * @param s 書き込む文字列
+	 */
+	private void writeString_(String s) {
+		if (s == null || s.isEmpty()) return;
+		CharBuffer in = CharBuffer.wrap(s);
+		encoder_.reset();
+		try {
+			CoderResult cr;
+			while ((cr = encoder_.encode(in, buffer_, true)).isOverflow()) {
+				writeBuffer_();
+			}
+			if (cr.isError()) cr.throwException();
+			while ((cr = encoder_.flush(buffer_)).isOverflow()) {
+				writeBuffer_();
+			}
+		} catch (Exception e) {
+			reportError(null, e, ErrorManager.FORMAT_FAILURE);
+		}
+	}
+	/**
+	 * Writes buffered bytes to the file.
+	 * バッファに溜まったバイト列をファイルに書き込む.
+	 */
+	private void writeBuffer_() {
+		lastWriteMillis_ = System.currentTimeMillis();
+		if (buffer_.position() == 0) return;
+		buffer_.flip();
+		try {
+			writer_.write(buffer_);
+		} catch (Exception e) {
+			reportError(null, e, ErrorManager.WRITE_FAILURE);
+		} finally {
+			buffer_.clear();
+		}
+	}
+	/**
+	 * Writes buffered bytes if {@code flushIntervalMsec} has passed or if requested, and rotates by time if due.
+	 * {@code flushIntervalMsec} が経過したか依頼されていればバッファのバイト列を書き込み, 時間が来ていれば時間でローテートする.
+	 */
+	private void maintain_() {
+		long now = System.currentTimeMillis();
+		long dropped = dispatcher_ != null ? dispatcher_.dropped() : reportedDropped_;
+		if (reportedDropped_ < dropped) {
+			// Leaves a trace in the file so that the discard does not go unnoticed
+			// 捨てたことに気づけるようファイルに痕跡を残す
+			LogRecord notice = new LogRecord(Level.WARNING, (dropped - reportedDropped_) + " log records dropped because the queue was full");
+			notice.setLoggerName(getClass().getName());
+			reportedDropped_ = dropped;
+			write_(notice);
+		}
+		if (flushRequested_ || flushIntervalMsec_ <= now - lastWriteMillis_) {
+			flushRequested_ = false;
+			writeBuffer_();
+		}
+		if (0 < rotateIntervalMsec_ && rotateIntervalMsec_ <= now - openedMillis_) {
+			openedMillis_ = now;
+			writeBuffer_();
+			try {
+				writer_.rotate();
+			} catch (Exception e) {
+				reportError(null, e, ErrorManager.WRITE_FAILURE);
+			}
+		}
+	}
+	private void write_(LogRecord record) {
+		String msg;
+		try {
+			msg = getFormatter().format(record);
+		} catch (Exception e) {
+			reportError(null, e, ErrorManager.FORMAT_FAILURE);
+			return;
+		}
+		writeString_(msg);
+	}
+	/**
+	 * Called after the file has been rotated.
+	 * Writes formatter's head to the new file and compresses the rotated one in the background if {@code compress} is {@code true}.
+	 * Old rotated files are then pruned after the compression.
+	 * Called on the thread which caused the rotation while holding the lock of the writer.
+	 * @param rotated rotated file
+	 * @return {@code true} if the writer should prune right away
+	 * ファイルをローテートした後に呼ばれる.
+	 * 新しいファイルにフォーマッタのヘッダを書き, {@code compress} が {@code true} ならローテートしたファイルをバックグラウンドで圧縮する.
+	 * その場合古いローテート済みファイルの削除は圧縮の後で行う.
+	 * ローテートを起こしたスレッドでライタのロックを保持したまま呼ばれる.
+	 * @param rotated ローテートしたファイル
+	 * @return ライタがすぐに削除すべきなら {@code true}
+	 */
+	private boolean rotated_(Path rotated) {
+		String head = getFormatter().getHead(this);
+		if (head != null && !head.isEmpty()) {
+			try {
+				writer_.write(ByteBuffer.wrap(head.getBytes(encoder_.charset())));
+			} catch (Exception e) {
+				reportError(null, e, ErrorManager.WRITE_FAILURE);
+			}
+		}
+		if (compress_) {
+			if (compressor_ == null) {
+				compressor_ = Executors.newSingleThreadExecutor(r -> {
+					Thread result = new Thread(r, getClass().getSimpleName() + "-compressor");
+					result.setDaemon(true);
+					return result;
+				});
+			}
+			RotatingFileWriter writer = writer_;
+			compressor_.execute(() -> {
+				gzip_(rotated);
+				try {
+					writer.prune();
+				} catch (Exception e) {
+					reportError(null, e, ErrorManager.GENERIC_FAILURE);
+				}
+			});
+			return false;
+		}
+		return true;
+	}
+	/**
+	 * Compresses file with gzip.
+	 * Writes to a temporary {@code .gz.tmp} file first and renames it so that a half written file is never taken as a backup.
+	 * @param file file to compress
+	 * ファイルを gzip 圧縮する.
+	 * 書きかけのファイルがバックアップとみなされないよう一時ファイル {@code .gz.tmp} に書いてからリネームする.
+	 * @param file 圧縮するファイル
+	 */
+	private void gzip_(Path file) {
+		// Pruned after an earlier compression while waiting for its turn
+		// 順番を待つ間に前の圧縮の後の削除で消された
+		if (!Files.exists(file)) return;
+		Path gz = file.resolveSibling(file.getFileName() + ".gz");
+		Path tmp = file.resolveSibling(file.getFileName() + ".gz.tmp");
+		try {
+			try (InputStream in = Files.newInputStream(file); OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp), 64 * 1024)) {
+				byte[] buf = new byte[64 * 1024];
+				int n;
+				while (0 < (n = in.read(buf))) {
+					out.write(buf, 0, n);
+				}
+			}
+			Files.move(tmp, gz, StandardCopyOption.REPLACE_EXISTING);
+			Files.deleteIfExists(file);
+		} catch (Exception e) {
+			reportError(null, e, ErrorManager.GENERIC_FAILURE);
+			try {
+				Files.deleteIfExists(tmp);
+			} catch (IOException e2) {
+				// nop
+			}
+		}
+	}
+
+	/**
+	 * Receives records on the background thread.
+	 * @author OES Project
+	 * バックグラウンドスレッドでレコードを受け取る.
+	 * @author OES Project
+	 */
+	private class Sink_ implements AsyncLogDispatcher.Sink {
+		@Override public void write(LogRecord record) {
+			synchronized (AsyncFileHandler.this) {
+				write_(record);
+			}
+		}
+		@Override public void endOfBatch() {
+			synchronized (AsyncFileHandler.this) {
+				maintain_();
+			}
+		}
+		@Override public void idle() {
+			synchronized (AsyncFileHandler.this) {
+				maintain_();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,219 @@
+package jp.co.sony.csl.dcoes.apis.common.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.LogRecord;
+
+/**
+ * Hands log records over to a single background thread.
+ * Records are put into a {@link RingBuffer} by the logging thread and taken out in batches by the background thread.
+ * Used by log handlers that must not block the caller ( e.g. Vert.x event loop ) with formatting and I/O.
+ * The name and the {@link LogContext} of the logging thread are carried over to the background thread while each record is processed.
+ * The source class and method of each record are resolved on the logging thread before it is handed over.
+ * @author OES Project
+ * ログレコードを一本のバックグラウンドスレッドに引き渡す.
+ * レコードはログ出力スレッドで {@link RingBuffer} に入れられ, バックグラウンドスレッドでまとめて取り出される.
+ * 呼び出し元 ( Vert.x のイベントループなど ) をフォーマットや I/O でブロックしたくないログハンドラで使う.
+ * 各レコードの処理中はログ出力スレッドの名前と {@link LogContext} をバックグラウンドスレッドに引き継ぐ.
+ * 各レコードの呼び出し元のクラスとメソッドは引き渡す前にログ出力スレッドで確定させる.
+ * @author OES Project
+ */
+public class AsyncLogDispatcher {
+
+	/**
+	 * Receives records on the background thread.
+	 * @author OES Project
+	 * バックグラウンドスレッドでレコードを受け取る.
+	 * @author OES Project
+	 */
+	public interface Sink {
+		/**
+		 * Called for each record.
+		 * @param record log record
+		 * レコードごとに呼ばれる.
+		 * @param record ログレコード
+		 */
+		void write(LogRecord record);
+		/**
+		 * Called after each batch of records.
+		 * バッチごとに呼ばれる.
+		 */
+		void endOfBatch();
+		/**
+		 * Called when there has been nothing to do for a while.
+		 * しばらく何もすることがなかったときに呼ばれる.
+		 */
+		void idle();
+	}
+
+	private static final long CLOSE_TIMEOUT_MSEC_ = 5000L;
+
+	private final RingBuffer<Entry_> buffer_;
+	private final RingBuffer.OverflowPolicy overflowPolicy_;
+	private final int batchSize_;
+	private final long idleNanos_;
+	private final Sink sink_;
+	private final Worker_ worker_;
+	private volatile boolean running_ = true;
+	private volatile boolean waiting_ = false;
+
+	/**
+	 * Creates instance and starts background thread.
+	 * @param name name of background thread
+	 * @param capacity capacity of the ring buffer
+	 * @param batchSize maximum number of records processed in one batch
+	 * @param overflowPolicy what to do when the ring buffer is full
+	 * @param idleMsec maximum wait before {@link Sink#idle()} is called [ms]
+	 * @param sink receiver of records
+	 * インスタンスを作成しバックグラウンドスレッドを起動する.
+	 * @param name バックグラウンドスレッドの名前
+	 * @param capacity リングバッファの容量
+	 * @param batchSize 一回のバッチで処理するレコードの最大数
+	 * @param overflowPolicy リングバッファが一杯のときの振る舞い
+	 * @param idleMsec {@link Sink#idle()} が呼ばれるまでの最大待ち時間 [ms]
+	 * @param sink レコードの受け取り手
+	 */
+	public AsyncLogDispatcher(String name, int capacity, int batchSize, RingBuffer.OverflowPolicy overflowPolicy, long idleMsec, Sink sink) {
+		buffer_ = new RingBuffer<>(capacity);
+		overflowPolicy_ = overflowPolicy;
+		batchSize_ = Math.max(1, batchSize);
+		idleNanos_ = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, idleMsec));
+		sink_ = sink;
+		worker_ = new Worker_(name);
+		worker_.start();
+	}
+
+	/**
+	 * Returns name of the thread which created the record being processed.
+	 * Formatters that print the thread name should use this instead of {@link Thread#currentThread()}.
+	 * @return name of the thread which logged the record when called on the background thread.
+	 *         Otherwise name of the current thread.
+	 * 処理中のレコードを作成したスレッドの名前を返す.
+	 * スレッド名を出力するフォーマッタは {@link Thread#currentThread()} ではなくこちらを使うこと.
+	 * @return バックグラウンドスレッドで呼ばれたらレコードをログ出力したスレッドの名前.
+	 *         そうでなければ現在のスレッドの名前.
+	 */
+	public static String callerThreadName() {
+		Thread current = Thread.currentThread();
+		if (current instanceof Worker_) {
+			String result = ((Worker_) current).callerThreadName_;
+			if (result != null) return result;
+		}
+		return current.getName();
+	}
+
+	/**
+	 * Puts record into the ring buffer.
+	 * @param record log record
+	 * @return {@code true} if accepted.
+	 *         {@code false} if discarded or already closed.
+	 * レコードをリングバッファに入れる.
+	 * @param record ログレコード
+	 * @return 受け付けたら {@code true}.
+	 *         捨てたかすでにクローズ済みなら {@code false}.
+	 */
+	public boolean dispatch(LogRecord record) {
+		if (!running_) return false;
+		// LogRecord infers its source class and method from the current stack on first access, so it must happen here and not on the background thread
+		// LogRecord は呼び出し元のクラスとメソッドを初回アクセス時に現在のスタックから推定するのでバックグラウンドスレッドではなくここで行う
+		record.getSourceClassName();
+		boolean result = buffer_.put(new Entry_(record, Thread.currentThread().getName(), LogContext.capture()), overflowPolicy_);
+		if (waiting_) LockSupport.unpark(worker_);
+		return result;
+	}
+
+	/**
+	 * Gets number of discarded records.
+	 * @return number of discarded records
+	 * 捨てたレコードの数を取得する.
+	 * @return 捨てたレコードの数
+	 */
+	public long dropped() {
+		return buffer_.dropped();
+	}
+	/**
+	 * Gets number of records waiting to be processed.
+	 * @return number of waiting records
+	 * 処理待ちのレコードの数を取得する.
+	 * @return 処理待ちのレコードの数
+	 */
+	public int pending() {
+		return buffer_.size();
+	}
+
+	/**
+	 * Stops background thread.
+	 * Records already in the ring buffer are processed before the thread ends.
+	 * バックグラウンドスレッドを停止する.
+	 * リングバッファに残っているレコードは処理してから終了する.
+	 */
+	public void close() {
+		running_ = false;
+		LockSupport.unpark(worker_);
+		if (Thread.currentThread() != worker_) {
+			try {
+				worker_.join(CLOSE_TIMEOUT_MSEC_);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	////
+
+	/**
+	 * Entry in the ring buffer.
+	 * @author OES Project
+	 * リングバッファのエントリ.
+	 * @author OES Project
+	 */
+	private static class Entry_ {
+		private final LogRecord record_;
+		private final String threadName_;
+		private final LogContext.Snapshot context_;
+		private Entry_(LogRecord record, String threadName, LogContext.Snapshot context) {
+			record_ = record;
+			threadName_ = threadName;
+			context_ = context;
+		}
+	}
+
+	/**
+	 * Background thread.
+	 * @author OES Project
+	 * バックグラウンドスレッド.
+	 * @author OES Project
+	 */
+	private class Worker_ extends Thread {
+		private String callerThreadName_ = null;
+		private Worker_(String name) {
+			super(name);
+			setDaemon(true);
+		}
+		@Override public void run() {
+			while (running_ || !buffer_.isEmpty()) {
+				int n = buffer_.drain(this::write_, batchSize_);
+				if (0 < n) {
+					sink_.endOfBatch();
+				} else if (running_) {
+					waiting_ = true;
+					if (buffer_.isEmpty()) LockSupport.parkNanos(this, idleNanos_);
+					waiting_ = false;
+					sink_.idle();
+				}
+			}
+			sink_.endOfBatch();
+		}
+		private void write_(Entry_ entry) {
+			callerThreadName_ = entry.threadName_;
+			LogContext.restore(entry.context_);
+			try {
+				sink_.write(entry.record_);
+			} finally {
+				callerThreadName_ = null;
+				LogContext.clear();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,129 @@
+package jp.co.sony.csl.dcoes.apis.common.util;
+
+import io.vertx.core.logging.Logger;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parses strings into enum constants without exceptions.
+ * Replaces {@link Enum#valueOf(Class, String)} in try/catch, which fills in a stack trace and logs it for every malformed value.
+ * Names are matched exactly first, then case-insensitively, from tables built once.
+ * A string that matches nothing ( including {@code null} ) yields the explicit unknown value given to the constructor, and is logged at most once per {@code logIntervalMsec} together with the number of occurrences suppressed meanwhile.
+ * @param <E> enum type
+ * @author OES Project
+ * 文字列を例外なしに列挙定数にパースする.
+ * 不正な値のたびにスタックトレースを埋めてログ出力する try/catch 内の {@link Enum#valueOf(Class, String)} を置き換える.
+ * 一度だけ作った表で, まず名前を完全一致で, 次に大文字小文字を区別せずに照合する.
+ * 何にも一致しない文字列 ( {@code null} を含む ) はコンストラクタに与えた明示的な不明値になり, {@code logIntervalMsec} に一度まで, その間に抑制した回数とともにログ出力する.
+ * @param <E> 列挙型
+ * @author OES Project
+ */
+public class EnumLookup<E extends Enum<E>> {
+
+	/**
+	 * Default minimum interval between logs of unknown values [ms].
+	 * The value is {@value}.
+	 * 不明な値のログ出力の最小間隔のデフォルト [ms].
+	 * 値は {@value}.
+	 */
+	public static final long DEFAULT_LOG_INTERVAL_MSEC = 10000L;
+
+	private final String typeName_;
+	private final E unknown_;
+	private final Logger log_;
+	private final long logIntervalMsec_;
+	private final Map<String, E> exact_;
+	private final Map<String, E> upper_;
+	private final AtomicLong nextLogMillis_ = new AtomicLong(Long.MIN_VALUE);
+	private final AtomicLong suppressed_ = new AtomicLong();
+	private final AtomicLong unknownCount_ = new AtomicLong();
+
+	/**
+	 * Creates instance with {@link #DEFAULT_LOG_INTERVAL_MSEC}.
+	 * @param type enum class
+	 * @param unknown value for strings which match nothing. May be {@code null}
+	 * @param log logger for unknown values. Not logged if {@code null}
+	 * {@link #DEFAULT_LOG_INTERVAL_MSEC} でインスタンスを作成する.
+	 * @param type 列挙クラス
+	 * @param unknown 何にも一致しない文字列に対する値. {@code null} も可
+	 * @param log 不明な値のロガー. {@code null} ならログ出力しない
+	 */
+	public EnumLookup(Class<E> type, E unknown, Logger log) {
+		this(type, unknown, log, DEFAULT_LOG_INTERVAL_MSEC);
+	}
+	/**
+	 * Creates instance.
+	 * @param type enum class
+	 * @param unknown value for strings which match nothing. May be {@code null}
+	 * @param log logger for unknown values. Not logged if {@code null}
+	 * @param logIntervalMsec minimum interval between logs of unknown values [ms]
+	 * インスタンスを作成する.
+	 * @param type 列挙クラス
+	 * @param unknown 何にも一致しない文字列に対する値. {@code null} も可
+	 * @param log 不明な値のロガー. {@code null} ならログ出力しない
+	 * @param logIntervalMsec 不明な値のログ出力の最小間隔 [ms]
+	 */
+	public EnumLookup(Class<E> type, E unknown, Logger log, long logIntervalMsec) {
+		typeName_ = type.getSimpleName();
+		unknown_ = unknown;
+		log_ = log;
+		logIntervalMsec_ = logIntervalMsec;
+		E[] values = type.getEnumConstants();
+		exact_ = new HashMap<>(values.length * 2);
+		upper_ = new HashMap<>(values.length * 2);
+		for (E value : values) {
+			exact_.put(value.name(), value);
+			upper_.put(value.name().toUpperCase(Locale.ROOT), value);
+		}
+	}
+
+	/**
+	 * Gets enum constant corresponding to string.
+	 * @param value string
+	 * @return enum constant.
+	 *         The unknown value if {@code value} matches nothing
+	 * 文字列に対応する列挙定数を取得する.
+	 * @param value 文字列
+	 * @return 列挙定数.
+	 *         {@code value} が何にも一致しなければ不明値
+	 */
+	public E get(String value) {
+		if (value != null) {
+			E result = exact_.get(value);
+			if (result != null) return result;
+			result = upper_.get(value.toUpperCase(Locale.ROOT));
+			if (result != null) return result;
+		}
+		unknown_(value);
+		return unknown_;
+	}
+
+	/**
+	 * Gets number of strings which matched nothing so far.
+	 * @return number of unknown values
+	 * これまでに何にも一致しなかった文字列の数を取得する.
+	 * @return 不明な値の数
+	 */
+	public long unknownCount() {
+		return unknownCount_.get();
+	}
+
+	////
+
+	private void unknown_(String value) {
+		unknownCount_.incrementAndGet();
+		if (log_ == null) return;
+		long now = System.currentTimeMillis();
+		long next = nextLogMillis_.get();
+		if (now < next || !nextLogMillis_.compareAndSet(next, now + logIntervalMsec_)) {
+			suppressed_.incrementAndGet();
+			return;
+		}
+		long suppressed = suppressed_.getAndSet(0L);
+		log_.error("unknown " + typeName_ + " : " + ((value != null) ? "'" + value + "'" : null) + ((0 < suppressed) ? " ; " + suppressed + " more suppressed" : ""));
+	}
+
+}
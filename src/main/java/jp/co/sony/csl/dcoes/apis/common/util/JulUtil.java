@@ -20,6 +20,7 @@ public class JulUtil {
 	private JulUtil() { }
 
 	private static final Map<Handler, Level> originalLevelMap_ = new HashMap<>();
+	private static final Map<String, LoggerLevel_> originalLoggerLevelMap_ = new HashMap<>();
 	/**
 	 * Updates {@link MulticastHandler} log level.
 	 * Returns level at time of startup if {@code value} is {@code null} .
@@ -29,23 +30,7 @@ public class JulUtil {
 	 * @param value ログレベル
 	 */
 	public static void setRootMulticastHandlerLevel(Level value) {
-		Logger root = LogManager.getLogManager().getLogger("");
-		if (root != null) {
-			for (Handler handler : root.getHandlers()) {
-				if (handler instanceof MulticastHandler) {
-					Level org = originalLevelMap_.get(handler);
-					if (org == null) {
-						org = handler.getLevel();
-						originalLevelMap_.put(handler, org);
-					}
-					if (value != null) {
-						handler.setLevel(value);
-					} else {
-						handler.setLevel(org);
-					}
-				}
-			}
-		}
+		setHandlerLevel("", MulticastHandler.class.getName(), value);
 	}
 	/**
 	 * Updates UDP multicast log level.
@@ -58,7 +43,130 @@ public class JulUtil {
 	 * @throws IllegalArgumentException {@link Level#parse(String)}
 	 */
 	public static void setRootMulticastHandlerLevel(String value) {
-		setRootMulticastHandlerLevel((StringUtil.nullIfEmpty(value) != null) ? Level.parse(value) : (Level) null);
+		setRootMulticastHandlerLevel(parseLevel(value));
+	}
+
+	/**
+	 * Updates log level of a logger.
+	 * Returns level before the first change if {@code value} is {@code null}.
+	 * The logger is strongly referenced while its level is changed so that the setting is not lost by garbage collection.
+	 * @param loggerName logger name.
+	 *        {@code ""} for the root logger
+	 * @param value log level
+	 * ロガーのログレベルを変更する.
+	 * {@code value} が {@code null} なら最初に変更する前のレベルに戻す.
+	 * レベルを変更している間はガベージコレクションで設定が失われないようロガーへの強参照を保持する.
+	 * @param loggerName ロガー名.
+	 *        ルートロガーなら {@code ""}
+	 * @param value ログレベル
+	 */
+	public static synchronized void setLoggerLevel(String loggerName, Level value) {
+		String name = (loggerName != null) ? loggerName : "";
+		LoggerLevel_ org = originalLoggerLevelMap_.get(name);
+		if (value != null) {
+			if (org == null) {
+				Logger logger = Logger.getLogger(name);
+				org = new LoggerLevel_(logger, logger.getLevel());
+				originalLoggerLevelMap_.put(name, org);
+			}
+			org.logger_.setLevel(value);
+		} else if (org != null) {
+			org.logger_.setLevel(org.level_);
+			originalLoggerLevelMap_.remove(name);
+		}
+	}
+	/**
+	 * Updates log level of handlers of a logger by handler type.
+	 * Handlers whose class or superclass matches {@code handlerType} by fully qualified name or simple name are updated.
+	 * A {@link RateLimitingHandler} is looked through : it matches if it or the handler it wraps matches, and both are updated.
+	 * Returns level at time of startup if {@code value} is {@code null}.
+	 * @param loggerName name of logger which has the handlers.
+	 *        {@code ""} for the root logger
+	 * @param handlerType handler class name.
+	 *        All handlers if {@code null} or empty
+	 * @param value log level
+	 * @return number of handlers updated
+	 * ロガーが持つハンドラのログレベルをハンドラの種類ごとに変更する.
+	 * クラスまたはスーパークラスの完全修飾名か単純名が {@code handlerType} に一致するハンドラを変更する.
+	 * {@link RateLimitingHandler} は透過する : それ自身かラップしているハンドラが一致すれば一致とし, 両方を変更する.
+	 * {@code value} が {@code null} なら起動時のレベルに戻す.
+	 * @param loggerName ハンドラを持つロガーの名前.
+	 *        ルートロガーなら {@code ""}
+	 * @param handlerType ハンドラのクラス名.
+	 *        {@code null} または空なら全てのハンドラ
+	 * @param value ログレベル
+	 * @return 変更したハンドラの数
+	 */
+	public static synchronized int setHandlerLevel(String loggerName, String handlerType, Level value) {
+		int result = 0;
+		Logger logger = LogManager.getLogManager().getLogger((loggerName != null) ? loggerName : "");
+		if (logger != null) {
+			String type = StringUtil.nullIfEmpty(handlerType);
+			for (Handler handler : logger.getHandlers()) {
+				if (type == null || matches_(handler, type)) {
+					for (Handler aHandler = handler; aHandler != null; aHandler = wrapped_(aHandler)) {
+						Level org = originalLevelMap_.get(aHandler);
+						if (org == null) {
+							org = aHandler.getLevel();
+							originalLevelMap_.put(aHandler, org);
+						}
+						if (value != null) {
+							aHandler.setLevel(value);
+						} else {
+							aHandler.setLevel(org);
+						}
+					}
+					result++;
+				}
+			}
+		}
+		return result;
+	}
+	/**
+	 * Parses log level string.
+	 * @param value log level string
+	 * @return log level.
+	 *         {@code null} if {@code value} is {@code null} or empty
+	 * @throws IllegalArgumentException {@link Level#parse(String)}
+	 * ログレベル文字列を解析する.
+	 * @param value ログレベル文字列
+	 * @return ログレベル.
+	 *         {@code value} が {@code null} または空なら {@code null}
+	 * @throws IllegalArgumentException {@link Level#parse(String)}
+	 */
+	public static Level parseLevel(String value) {
+		return (StringUtil.nullIfEmpty(value) != null) ? Level.parse(value.trim()) : (Level) null;
+	}
+
+	private static boolean matches_(Handler handler, String type) {
+		for (Handler aHandler = handler; aHandler != null; aHandler = wrapped_(aHandler)) {
+			if (isTypeOf_(aHandler, type)) return true;
+		}
+		return false;
+	}
+	private static Handler wrapped_(Handler handler) {
+		return (handler instanceof RateLimitingHandler) ? ((RateLimitingHandler) handler).target() : null;
+	}
+	private static boolean isTypeOf_(Handler handler, String type) {
+		for (Class<?> c = handler.getClass(); c != null && c != Handler.class; c = c.getSuperclass()) {
+			if (type.equals(c.getName()) || type.equals(c.getSimpleName())) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Holds a logger and its level before change.
+	 * @author OES Project
+	 * ロガーと変更前のレベルを保持する.
+	 * @author OES Project
+	 */
+	private static class LoggerLevel_ {
+		private final Logger logger_;
+		private final Level level_;
+		private LoggerLevel_(Logger logger, Level level) {
+			logger_ = logger;
+			level_ = level;
+		}
 	}
 
 	//// copied from java.util.logging.LogManager
@@ -121,6 +229,33 @@ public class JulUtil {
 		}
 	}
 
+	/**
+	 * Copied from {@link LogManager#getBooleanProperty(String, boolean)}.
+	 * @param name property name
+	 * @param defaultValue default value
+	 * @return property value
+	 * {@link LogManager#getBooleanProperty(String, boolean)} からコピー.
+	 * @param name property name
+	 * @param defaultValue default value
+	 * @return property value
+	 */
+	// Package private method to get a boolean property.
+	// If the property is not defined or cannot be parsed
+	// we return the given default value.
+	public static boolean getBooleanProperty(String name, boolean defaultValue) {
+		String val = getProperty(name);
+		if (val == null) {
+			return defaultValue;
+		}
+		val = val.toLowerCase();
+		if (val.equals("true") || val.equals("1")) {
+			return true;
+		} else if (val.equals("false") || val.equals("0")) {
+			return false;
+		}
+		return defaultValue;
+	}
+
 	/**
 	 * Copied from {@link LogManager#getLevelProperty(String, Level)}.
 	 * @param name property name
@@ -204,4 +339,30 @@ public class JulUtil {
 		return defaultValue;
 	}
 
+	/**
+	 * Creates {@link Handler} from property in the same way as {@link #getFormatterProperty(String, Formatter)}.
+	 * @param name property name
+	 * @param defaultValue default value
+	 * @return property value
+	 * {@link #getFormatterProperty(String, Formatter)} と同じ方法でプロパティから {@link Handler} を作成する.
+	 * @param name property name
+	 * @param defaultValue default value
+	 * @return property value
+	 */
+	public static Handler getHandlerProperty(String name, Handler defaultValue) {
+		String val = getProperty(name);
+		try {
+			if (val != null) {
+				Class<?> clz = ClassLoader.getSystemClassLoader().loadClass(val.trim());
+				return (Handler) clz.getDeclaredConstructor().newInstance();
+			}
+		} catch (Exception ex) {
+			// We got one of a variety of exceptions in creating the
+			// class or creating an instance.
+			// Drop through.
+		}
+		// We got an exception.  Return the defaultValue.
+		return defaultValue;
+	}
+
 }
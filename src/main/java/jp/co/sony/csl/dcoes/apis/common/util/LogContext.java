@@ -0,0 +1,236 @@
+package jp.co.sony.csl.dcoes.apis.common.util;
+
+import java.util.Arrays;
+
+/**
+ * Per-thread context attached to log records, in the manner of MDC.
+ * Structured formatters such as {@link jp.co.sony.csl.dcoes.apis.common.util.vertx.JsonLinesFormatter} output the entries as fields.
+ * The context is an immutable snapshot replaced on each change, so that it can be captured cheaply and handed over to another thread ( {@link AsyncLogDispatcher} does so ).
+ * Since an event loop thread runs many unrelated handlers, set the context in a narrow scope with {@link #open(String, String)} and try-with-resources.
+ * @author OES Project
+ * MDC の要領でログレコードに添付するスレッドごとのコンテキスト.
+ * {@link jp.co.sony.csl.dcoes.apis.common.util.vertx.JsonLinesFormatter} などの構造化フォーマッタはエントリをフィールドとして出力する.
+ * 安価に取得して別のスレッドに渡せるよう ( {@link AsyncLogDispatcher} がそうする ), コンテキストは変更のたびに置き換わる不変のスナップショットである.
+ * イベントループスレッドは無関係な多くのハンドラを実行するので, {@link #open(String, String)} と try-with-resources で狭い範囲に設定すること.
+ * @author OES Project
+ */
+public class LogContext {
+
+	private LogContext() { }
+
+	/**
+	 * Key for deal ID.
+	 * The value is {@value}.
+	 * 融通 ID のキー.
+	 * 値は {@value}.
+	 */
+	public static final String DEAL_ID = "dealId";
+	/**
+	 * Key for unit ID.
+	 * The value is {@value}.
+	 * ユニット ID のキー.
+	 * 値は {@value}.
+	 */
+	public static final String UNIT_ID = "unitId";
+
+	private static final Snapshot EMPTY_ = new Snapshot(new String[0], new String[0]);
+	private static final ThreadLocal<Snapshot> CURRENT_ = ThreadLocal.withInitial(() -> EMPTY_);
+
+	/**
+	 * Gets value of current thread's context.
+	 * @param key key
+	 * @return value.
+	 *         {@code null} if not set
+	 * 現在のスレッドのコンテキストの値を取得する.
+	 * @param key キー
+	 * @return 値.
+	 *         設定されていなければ {@code null}
+	 */
+	public static String get(String key) {
+		return CURRENT_.get().get(key);
+	}
+	/**
+	 * Sets value to current thread's context.
+	 * Removes the key if {@code value} is {@code null}.
+	 * @param key key
+	 * @param value value
+	 * 現在のスレッドのコンテキストに値を設定する.
+	 * {@code value} が {@code null} ならキーを削除する.
+	 * @param key キー
+	 * @param value 値
+	 */
+	public static void put(String key, String value) {
+		CURRENT_.set(CURRENT_.get().with_(key, value));
+	}
+	/**
+	 * Removes key from current thread's context.
+	 * @param key key
+	 * 現在のスレッドのコンテキストからキーを削除する.
+	 * @param key キー
+	 */
+	public static void remove(String key) {
+		put(key, null);
+	}
+	/**
+	 * Clears current thread's context.
+	 * 現在のスレッドのコンテキストを空にする.
+	 */
+	public static void clear() {
+		CURRENT_.set(EMPTY_);
+	}
+	/**
+	 * Sets value to current thread's context until the returned scope is closed.
+	 * The previous context is restored on close.
+	 * @param key key
+	 * @param value value
+	 * @return scope to close
+	 * 返したスコープが閉じられるまで現在のスレッドのコンテキストに値を設定する.
+	 * 閉じると以前のコンテキストに戻す.
+	 * @param key キー
+	 * @param value 値
+	 * @return 閉じるべきスコープ
+	 */
+	public static Scope open(String key, String value) {
+		Snapshot previous = CURRENT_.get();
+		CURRENT_.set(previous.with_(key, value));
+		return new Scope(previous);
+	}
+
+	/**
+	 * Gets current thread's context.
+	 * @return snapshot of the context
+	 * 現在のスレッドのコンテキストを取得する.
+	 * @return コンテキストのスナップショット
+	 */
+	public static Snapshot capture() {
+		return CURRENT_.get();
+	}
+	/**
+	 * Replaces current thread's context.
+	 * @param snapshot context to set.
+	 *        Empty if {@code null}
+	 * @return previous context
+	 * 現在のスレッドのコンテキストを置き換える.
+	 * @param snapshot 設定するコンテキスト.
+	 *        {@code null} なら空
+	 * @return 以前のコンテキスト
+	 */
+	public static Snapshot restore(Snapshot snapshot) {
+		Snapshot result = CURRENT_.get();
+		CURRENT_.set((snapshot != null) ? snapshot : EMPTY_);
+		return result;
+	}
+
+	////
+
+	/**
+	 * Immutable snapshot of a context.
+	 * @author OES Project
+	 * コンテキストの不変のスナップショット.
+	 * @author OES Project
+	 */
+	public static final class Snapshot {
+		private final String[] keys_;
+		private final String[] values_;
+		private Snapshot(String[] keys, String[] values) {
+			keys_ = keys;
+			values_ = values;
+		}
+		/**
+		 * Gets number of entries.
+		 * @return number of entries
+		 * エントリの数を取得する.
+		 * @return エントリの数
+		 */
+		public int size() {
+			return keys_.length;
+		}
+		/**
+		 * Gets key of entry.
+		 * @param index index in order of insertion
+		 * @return key
+		 * エントリのキーを取得する.
+		 * @param index 挿入順のインデクス
+		 * @return キー
+		 */
+		public String key(int index) {
+			return keys_[index];
+		}
+		/**
+		 * Gets value of entry.
+		 * @param index index in order of insertion
+		 * @return value
+		 * エントリの値を取得する.
+		 * @param index 挿入順のインデクス
+		 * @return 値
+		 */
+		public String value(int index) {
+			return values_[index];
+		}
+		/**
+		 * Gets value by key.
+		 * @param key key
+		 * @return value.
+		 *         {@code null} if not set
+		 * キーで値を取得する.
+		 * @param key キー
+		 * @return 値.
+		 *         設定されていなければ {@code null}
+		 */
+		public String get(String key) {
+			int i = indexOf_(key);
+			return (0 <= i) ? values_[i] : null;
+		}
+		private int indexOf_(String key) {
+			for (int i = 0; i < keys_.length; i++) {
+				if (keys_[i].equals(key)) return i;
+			}
+			return -1;
+		}
+		private Snapshot with_(String key, String value) {
+			int i = indexOf_(key);
+			if (value == null) {
+				if (i < 0) return this;
+				if (keys_.length == 1) return EMPTY_;
+				String[] keys = new String[keys_.length - 1];
+				String[] values = new String[keys.length];
+				System.arraycopy(keys_, 0, keys, 0, i);
+				System.arraycopy(keys_, i + 1, keys, i, keys.length - i);
+				System.arraycopy(values_, 0, values, 0, i);
+				System.arraycopy(values_, i + 1, values, i, values.length - i);
+				return new Snapshot(keys, values);
+			} else if (0 <= i) {
+				if (value.equals(values_[i])) return this;
+				String[] values = values_.clone();
+				values[i] = value;
+				return new Snapshot(keys_, values);
+			} else {
+				String[] keys = Arrays.copyOf(keys_, keys_.length + 1);
+				String[] values = Arrays.copyOf(values_, values_.length + 1);
+				keys[keys_.length] = key;
+				values[values_.length] = value;
+				return new Snapshot(keys, values);
+			}
+		}
+	}
+
+	/**
+	 * Restores the previous context when closed.
+	 * @author OES Project
+	 * 閉じると以前のコンテキストに戻す.
+	 * @author OES Project
+	 */
+	public static final class Scope implements AutoCloseable {
+		private final Snapshot previous_;
+		private Scope(Snapshot previous) {
+			previous_ = previous;
+		}
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override public void close() {
+			CURRENT_.set(previous_);
+		}
+	}
+
+}
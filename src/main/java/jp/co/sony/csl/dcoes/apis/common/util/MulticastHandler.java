@@ -1,22 +1,37 @@
 package jp.co.sony.csl.dcoes.apis.common.util;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.net.MulticastSocket;
+import java.security.SecureRandom;
 import java.util.logging.ErrorManager;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.XMLFormatter;
 
+import jp.co.sony.csl.dcoes.apis.common.util.vertx.VertxConfig;
+
 /**
  * This handler sends log via UDP multicast.
  * Overall, {@link java.util.logging.SocketHandler} is used as reference.
+ * If {@code async} property is {@code true}, records are handed over to a background thread via {@link AsyncLogDispatcher} and formatted and sent there.
+ * The caller then pays neither the UDP send nor the lock of this handler.
+ * If {@code compact} property is {@code true}, records are sent in {@link MulticastLogCodec} binary format instead of the formatter's output.
+ * In async compact mode, the records of a batch are packed into as few datagrams as fit with {@link MulticastLogCodec.Packer}, and the datagram is sent at the end of the batch.
+ * Otherwise each record is sent as its own datagram, which text receivers such as {@code nc} or older ones rely on.
  * @author OES Project
  * ログを UDP マルチキャストで送信するハンドラ.
  * 全体的に {@link java.util.logging.SocketHandler} あたりを参考にした.
+ * {@code async} プロパティが {@code true} なら {@link AsyncLogDispatcher} でレコードをバックグラウンドスレッドに渡しそちらでフォーマットと送信を行う.
+ * 呼び出し元は UDP 送信もこのハンドラのロックも負担しなくて済む.
+ * {@code compact} プロパティが {@code true} ならフォーマッタの出力ではなく {@link MulticastLogCodec} のバイナリ形式で送信する.
+ * 非同期のコンパクトモードではバッチのレコードを {@link MulticastLogCodec.Packer} でできるだけ少ないデータグラムに詰め, バッチの終わりに送信する.
+ * それ以外では各レコードを一つのデータグラムとして送る. {@code nc} などのテキスト受信側や古い受信側はそれを前提としている.
  * @author OES Project
  */
 public class MulticastHandler extends Handler {
@@ -25,6 +40,32 @@ public class MulticastHandler extends Handler {
 	private int port;
 	private InetAddress sendAddress;
 	private MulticastSocket sock;
+	private boolean async;
+	private int bufferSize;
+	private int batchSize;
+	private RingBuffer.OverflowPolicy overflowPolicy;
+	private boolean compact;
+	private int maxDatagramSize;
+	private volatile AsyncLogDispatcher dispatcher_;
+	private MulticastLogCodec.Encoder encoder_;
+	private MulticastLogCodec.Packer packer_;
+	private DatagramPacket packet_;
+
+	/**
+	 * Default capacity of the ring buffer in async mode.
+	 * The value is {@value}.
+	 * 非同期モードのリングバッファの容量のデフォルト.
+	 * 値は {@value}.
+	 */
+	private static final int DEFAULT_BUFFER_SIZE = 8192;
+	/**
+	 * Default maximum number of records sent in one batch in async mode.
+	 * The value is {@value}.
+	 * 非同期モードで一回のバッチで送信するレコード数の最大値のデフォルト.
+	 * 値は {@value}.
+	 */
+	private static final int DEFAULT_BATCH_SIZE = 256;
+	private static final long IDLE_MSEC_ = 1000L;
 
 	/**
 	 * Creates instance.
@@ -48,6 +89,7 @@ public class MulticastHandler extends Handler {
 			System.err.println("MulticastHandler : failed to create socket");
 			throw e;
 		}
+		startDispatcher_();
 //		sealed = true;
 	}
 
@@ -79,15 +121,28 @@ public class MulticastHandler extends Handler {
 			System.err.println("MulticastHandler : failed to create socket");
 			throw e;
 		}
+		startDispatcher_();
 //		sealed = true;
 	}
 
 	/**
 	 * Initializes.
 	 * Reads settings from property.
+	 * - {@code async} : sends on a background thread if {@code true}. Default {@code false}
+	 * - {@code bufferSize} : capacity of the ring buffer in async mode. Default {@link #DEFAULT_BUFFER_SIZE}
+	 * - {@code batchSize} : maximum number of records sent in one batch in async mode. Default {@link #DEFAULT_BATCH_SIZE}
+	 * - {@code overflowPolicy} : {@link RingBuffer.OverflowPolicy} when the ring buffer is full. Default {@link RingBuffer.OverflowPolicy#DROP_OLDEST}
+	 * - {@code compact} : sends in {@link MulticastLogCodec} format if {@code true}. Only {@link java.util.logging.Formatter#formatMessage(LogRecord)} of the formatter is used. Default {@code false}
+	 * - {@code maxDatagramSize} : maximum datagram size in compact format. Default {@link MulticastLogCodec#DEFAULT_MAX_DATAGRAM_SIZE}
 	 * @throws IllegalArgumentException funny port and groupAddress values
 	 * 初期化.
 	 * プロパティから設定を読み込む.
+	 * - {@code async} : {@code true} ならバックグラウンドスレッドで送信する. デフォルト {@code false}
+	 * - {@code bufferSize} : 非同期モードのリングバッファの容量. デフォルト {@link #DEFAULT_BUFFER_SIZE}
+	 * - {@code batchSize} : 非同期モードで一回のバッチで送信するレコード数の最大値. デフォルト {@link #DEFAULT_BATCH_SIZE}
+	 * - {@code overflowPolicy} : リングバッファが一杯のときの {@link RingBuffer.OverflowPolicy}. デフォルト {@link RingBuffer.OverflowPolicy#DROP_OLDEST}
+	 * - {@code compact} : {@code true} なら {@link MulticastLogCodec} 形式で送信する. フォーマッタは {@link java.util.logging.Formatter#formatMessage(LogRecord)} のみ使われる. デフォルト {@code false}
+	 * - {@code maxDatagramSize} : コンパクト形式のデータグラムの最大長. デフォルト {@link MulticastLogCodec#DEFAULT_MAX_DATAGRAM_SIZE}
 	 * @throws IllegalArgumentException port と groupAddress の値がおかしい
 	 */
 	private void configure_() {
@@ -107,6 +162,12 @@ public class MulticastHandler extends Handler {
 		}
 		port = JulUtil.getIntProperty(cname + ".port", 0);
 		groupAddress = JulUtil.getStringProperty(cname + ".groupAddress", null);
+		async = JulUtil.getBooleanProperty(cname + ".async", false);
+		bufferSize = JulUtil.getIntProperty(cname + ".bufferSize", DEFAULT_BUFFER_SIZE);
+		batchSize = JulUtil.getIntProperty(cname + ".batchSize", DEFAULT_BATCH_SIZE);
+		overflowPolicy = RingBuffer.overflowPolicy(JulUtil.getStringProperty(cname + ".overflowPolicy", null), RingBuffer.OverflowPolicy.DROP_OLDEST);
+		compact = JulUtil.getBooleanProperty(cname + ".compact", false);
+		maxDatagramSize = JulUtil.getIntProperty(cname + ".maxDatagramSize", MulticastLogCodec.DEFAULT_MAX_DATAGRAM_SIZE);
 		if (port == 0) {
 			throw new IllegalArgumentException("Bad port: " + port);
 		}
@@ -125,18 +186,66 @@ public class MulticastHandler extends Handler {
 		sock = new MulticastSocket(port);
 		sock.joinGroup(sendAddress);
 		sock.setTimeToLive(1);
+		if (compact) {
+			encoder_ = new MulticastLogCodec.Encoder(new SecureRandom().nextLong(), maxDatagramSize);
+			packet_ = new DatagramPacket(new byte[0], 0, sendAddress, port);
+			if (async) packer_ = new MulticastLogCodec.Packer(maxDatagramSize);
+		}
+	}
+
+	/**
+	 * Starts background thread if in async mode.
+	 * 非同期モードならバックグラウンドスレッドを起動する.
+	 */
+	private void startDispatcher_() {
+		if (async) {
+			dispatcher_ = new AsyncLogDispatcher(getClass().getSimpleName() + "-sender", bufferSize, batchSize, overflowPolicy, IDLE_MSEC_, new Sink_());
+		}
+	}
+
+	/**
+	 * Gets number of records discarded because the ring buffer was full.
+	 * @return number of discarded records.
+	 *         Always {@code 0} if not in async mode.
+	 * リングバッファが一杯で捨てたレコードの数を取得する.
+	 * @return 捨てたレコードの数.
+	 *         非同期モードでなければ常に {@code 0}.
+	 */
+	public long dropped() {
+		AsyncLogDispatcher dispatcher = dispatcher_;
+		return (dispatcher != null) ? dispatcher.dropped() : 0L;
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
-	@Override public synchronized void publish(LogRecord record) {
+	@Override public void publish(LogRecord record) {
 		if (!isLoggable(record)) {
 			return;
 		}
+		AsyncLogDispatcher dispatcher = dispatcher_;
+		if (dispatcher != null) {
+			dispatcher.dispatch(record);
+			return;
+		}
+		send_(record);
+	}
+	/**
+	 * Formats and sends record.
+	 * Called on the logging thread in sync mode and on the background thread in async mode.
+	 * @param record log record
+	 * レコードをフォーマットし送信する.
+	 * 同期モードではログ出力スレッドで, 非同期モードではバックグラウンドスレッドで呼ばれる.
+	 * @param record ログレコード
+	 */
+	private synchronized void send_(LogRecord record) {
 		if (sock == null) {
 			return;
 		}
+		if (encoder_ != null) {
+			sendCompact_(record);
+			return;
+		}
 		String msg;
 		try {
 			msg = getFormatter().format(record);
@@ -164,6 +273,60 @@ public class MulticastHandler extends Handler {
 		}
 	}
 
+	/**
+	 * Sends record in {@link MulticastLogCodec} format.
+	 * Long messages are split into several datagrams.
+	 * @param record log record
+	 * レコードを {@link MulticastLogCodec} 形式で送信する.
+	 * 長いメッセージは複数のデータグラムに分割される.
+	 * @param record ログレコード
+	 */
+	private void sendCompact_(LogRecord record) {
+		String msg;
+		try {
+			msg = getFormatter().formatMessage(record);
+			if (record.getThrown() != null) {
+				StringWriter sw = new StringWriter();
+				sw.append(msg).append(System.lineSeparator());
+				try (PrintWriter pw = new PrintWriter(sw)) {
+					record.getThrown().printStackTrace(pw);
+				}
+				msg = sw.toString();
+			}
+		} catch (Exception e) {
+			reportError(null, e, ErrorManager.FORMAT_FAILURE);
+			return;
+		}
+		try {
+			if (packer_ != null) {
+				encoder_.encode(VertxConfig.programId(), AsyncLogDispatcher.callerThreadName(), record, msg, (data, length) -> packer_.add(data, length, this::sendDatagram_));
+			} else {
+				encoder_.encode(VertxConfig.programId(), AsyncLogDispatcher.callerThreadName(), record, msg, this::sendDatagram_);
+			}
+		} catch (Exception e) {
+			reportError(null, e, ErrorManager.WRITE_FAILURE);
+		}
+	}
+
+	private void sendDatagram_(byte[] data, int length) throws IOException {
+		packet_.setData(data, 0, length);
+		sock.send(packet_);
+	}
+	/**
+	 * Sends the datagram packed so far in async compact mode.
+	 * 非同期のコンパクトモードでそれまでに詰めたデータグラムを送信する.
+	 */
+	private synchronized void sendPacked_() {
+		if (packer_ == null || sock == null) {
+			return;
+		}
+		try {
+			packer_.flush(this::sendDatagram_);
+		} catch (Exception e) {
+			reportError(null, e, ErrorManager.WRITE_FAILURE);
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -174,11 +337,42 @@ public class MulticastHandler extends Handler {
 	/**
 	 * {@inheritDoc}
 	 */
-	@Override public synchronized void close() throws SecurityException {
+	@Override public void close() throws SecurityException {
+		// Stops the background thread outside of the lock because it calls send_() until the ring buffer is empty
+		// バックグラウンドスレッドはリングバッファが空になるまで send_() を呼ぶのでロックの外で止める
+		AsyncLogDispatcher dispatcher = dispatcher_;
+		if (dispatcher != null) {
+			dispatcher_ = null;
+			dispatcher.close();
+		}
+		closeSocket_();
+	}
+	private synchronized void closeSocket_() {
+		sendPacked_();
 		if (sock != null) {
 			sock.close();
 			sock = null;
 		}
 	}
 
+	////
+
+	/**
+	 * Receives records on the background thread in async mode.
+	 * @author OES Project
+	 * 非同期モードでバックグラウンドスレッドからレコードを受け取る.
+	 * @author OES Project
+	 */
+	private class Sink_ implements AsyncLogDispatcher.Sink {
+		@Override public void write(LogRecord record) {
+			send_(record);
+		}
+		@Override public void endOfBatch() {
+			sendPacked_();
+		}
+		@Override public void idle() {
+			// nop
+		}
+	}
+
 }
@@ -0,0 +1,627 @@
+package jp.co.sony.csl.dcoes.apis.common.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Compact binary wire format for log records sent by {@link MulticastHandler}.
+ * One record is a length-prefixed binary payload split into datagrams that fit one MTU.
+ * Every datagram starts with the following fixed header ( big endian, {@value #HEADER_SIZE} bytes ).
+ * - magic [short] : {@value #MAGIC}
+ * - version [byte] : {@value #VERSION}
+ * - flags [byte] : {@link #FLAG_MORE} or 0
+ * - senderId [long] : random value chosen per sender
+ * - seq [long] : record sequence number per sender, starting from 1
+ * - fragmentIndex [unsigned short]
+ * - fragmentCount [unsigned short]
+ * The payload is the following.
+ * - timestamp [long] : epoch milliseconds
+ * - level [int] : {@link Level#intValue()}
+ * - threadId [int]
+ * - programId, loggerName, threadName [unsigned short length + UTF-8]
+ * - message [int length + UTF-8]
+ * A record which fits in one datagram is self-delimiting, so {@link Packer} packs several such frames into one datagram, setting {@link #FLAG_MORE} on every frame but the last.
+ * Receivers of packed datagrams must use {@link Decoder#decode(byte[], int, int, Consumer)}.
+ * @author OES Project
+ * {@link MulticastHandler} が送信するログレコードのコンパクトなバイナリ形式.
+ * 一レコードは長さプレフィクス付きのバイナリペイロードで MTU に収まるデータグラムに分割される.
+ * 各データグラムは以下の固定ヘッダで始まる ( ビッグエンディアン, {@value #HEADER_SIZE} バイト ).
+ * - magic [short] : {@value #MAGIC}
+ * - version [byte] : {@value #VERSION}
+ * - flags [byte] : {@link #FLAG_MORE} または 0
+ * - senderId [long] : 送信元ごとにランダムに決める値
+ * - seq [long] : 送信元ごとのレコード通し番号. 1 から始まる
+ * - fragmentIndex [unsigned short]
+ * - fragmentCount [unsigned short]
+ * ペイロードは以下.
+ * - timestamp [long] : エポックミリ秒
+ * - level [int] : {@link Level#intValue()}
+ * - threadId [int]
+ * - programId, loggerName, threadName [unsigned short 長 + UTF-8]
+ * - message [int 長 + UTF-8]
+ * 一つのデータグラムに収まるレコードは自己区切りなので, {@link Packer} はそうしたフレームを複数一つのデータグラムに詰め, 最後以外の各フレームに {@link #FLAG_MORE} を立てる.
+ * 詰めたデータグラムの受信側は {@link Decoder#decode(byte[], int, int, Consumer)} を使うこと.
+ * @author OES Project
+ */
+public class MulticastLogCodec {
+
+	private MulticastLogCodec() { }
+
+	/**
+	 * Magic number at the head of datagram.
+	 * The value is {@value}.
+	 * データグラム先頭のマジックナンバ.
+	 * 値は {@value}.
+	 */
+	public static final short MAGIC = 0x414C;
+	/**
+	 * Format version.
+	 * The value is {@value}.
+	 * 形式のバージョン.
+	 * 値は {@value}.
+	 */
+	public static final byte VERSION = 1;
+	/**
+	 * Size of datagram header.
+	 * The value is {@value}.
+	 * データグラムヘッダの大きさ.
+	 * 値は {@value}.
+	 */
+	public static final int HEADER_SIZE = 24;
+	/**
+	 * Flag meaning that another frame follows this one in the same datagram.
+	 * The value is {@value}.
+	 * 同じデータグラム内でこのフレームの後に別のフレームが続くことを示すフラグ.
+	 * 値は {@value}.
+	 */
+	public static final byte FLAG_MORE = 0x01;
+	/**
+	 * Default maximum datagram size.
+	 * Fits in an Ethernet MTU of 1500 bytes together with IP and UDP headers.
+	 * The value is {@value}.
+	 * データグラムの最大長のデフォルト.
+	 * IP および UDP ヘッダを含めて Ethernet の MTU 1500 バイトに収まる.
+	 * 値は {@value}.
+	 */
+	public static final int DEFAULT_MAX_DATAGRAM_SIZE = 1400;
+
+	private static final int MAX_SHORT_STRING_ = 0xFFFF;
+	private static final int MAX_FRAGMENTS_ = 0xFFFF;
+
+	/**
+	 * Determines if datagram is in this format.
+	 * @param data datagram bytes
+	 * @param offset offset in {@code data}
+	 * @param length datagram length
+	 * @return {@code true} if the datagram starts with this format's header
+	 * データグラムがこの形式か否か.
+	 * @param data データグラムのバイト列
+	 * @param offset {@code data} 中のオフセット
+	 * @param length データグラムの長さ
+	 * @return この形式のヘッダで始まっていれば {@code true}
+	 */
+	public static boolean isCompact(byte[] data, int offset, int length) {
+		return (HEADER_SIZE <= length && data[offset] == (byte) (MAGIC >> 8) && data[offset + 1] == (byte) MAGIC && data[offset + 2] == VERSION);
+	}
+
+	////
+
+	/**
+	 * Receives datagrams produced by {@link Encoder}.
+	 * @author OES Project
+	 * {@link Encoder} が作ったデータグラムを受け取る.
+	 * @author OES Project
+	 */
+	public interface DatagramSink {
+		/**
+		 * Receives one datagram.
+		 * {@code data} is reused for the next datagram.
+		 * @param data datagram bytes
+		 * @param length datagram length
+		 * @throws IOException send failure
+		 * データグラムを一つ受け取る.
+		 * {@code data} は次のデータグラムに再利用される.
+		 * @param data データグラムのバイト列
+		 * @param length データグラムの長さ
+		 * @throws IOException 送信失敗
+		 */
+		void send(byte[] data, int length) throws IOException;
+	}
+
+	/**
+	 * Encodes log records into datagrams.
+	 * Buffers are reused, so an instance must not be used by several threads at once.
+	 * @author OES Project
+	 * ログレコードをデータグラムにエンコードする.
+	 * バッファを再利用するため一つのインスタンスを複数スレッドから同時に使ってはいけない.
+	 * @author OES Project
+	 */
+	public static class Encoder {
+		private final long senderId_;
+		private final byte[] datagram_;
+		private final CharsetEncoder charsetEncoder_ = StandardCharsets.UTF_8.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		private ByteBuffer payload_ = ByteBuffer.allocate(4096);
+		private long seq_ = 0L;
+
+		/**
+		 * Creates instance.
+		 * @param senderId ID of sender
+		 * @param maxDatagramSize maximum datagram size
+		 * インスタンス作成.
+		 * @param senderId 送信元の ID
+		 * @param maxDatagramSize データグラムの最大長
+		 */
+		public Encoder(long senderId, int maxDatagramSize) {
+			senderId_ = senderId;
+			datagram_ = new byte[Math.max(HEADER_SIZE + 64, maxDatagramSize)];
+		}
+
+		/**
+		 * Gets sequence number of the last encoded record.
+		 * @return sequence number
+		 * 最後にエンコードしたレコードの通し番号を取得する.
+		 * @return 通し番号
+		 */
+		public long seq() {
+			return seq_;
+		}
+
+		/**
+		 * Encodes record and passes resulting datagrams to {@code sink}.
+		 * @param programId program identification string
+		 * @param threadName name of the thread which logged the record
+		 * @param record log record
+		 * @param message formatted message
+		 * @param sink receiver of datagrams
+		 * @return number of datagrams
+		 * @throws IOException {@link DatagramSink#send(byte[], int)}
+		 * レコードをエンコードし結果のデータグラムを {@code sink} に渡す.
+		 * @param programId プログラム識別文字列
+		 * @param threadName レコードをログ出力したスレッドの名前
+		 * @param record ログレコード
+		 * @param message フォーマット済みのメッセージ
+		 * @param sink データグラムの受け取り手
+		 * @return データグラムの数
+		 * @throws IOException {@link DatagramSink#send(byte[], int)}
+		 */
+		public int encode(String programId, String threadName, LogRecord record, String message, DatagramSink sink) throws IOException {
+			payload_.clear();
+			ensure_(16);
+			payload_.putLong(record.getMillis());
+			payload_.putInt(record.getLevel().intValue());
+			payload_.putInt(record.getThreadID());
+			putString_(programId, false);
+			putString_(record.getLoggerName(), false);
+			putString_(threadName, false);
+			putString_(message, true);
+			payload_.flip();
+			int chunk = datagram_.length - HEADER_SIZE;
+			int count = Math.min(MAX_FRAGMENTS_, Math.max(1, (payload_.remaining() + chunk - 1) / chunk));
+			long seq = ++seq_;
+			ByteBuffer header = ByteBuffer.wrap(datagram_);
+			for (int i = 0; i < count; i++) {
+				header.clear();
+				header.putShort(MAGIC).put(VERSION).put((byte) 0).putLong(senderId_).putLong(seq).putShort((short) i).putShort((short) count);
+				int length = Math.min(chunk, payload_.remaining());
+				payload_.get(datagram_, HEADER_SIZE, length);
+				sink.send(datagram_, HEADER_SIZE + length);
+			}
+			return count;
+		}
+
+		private void ensure_(int size) {
+			if (payload_.remaining() < size) {
+				ByteBuffer bigger = ByteBuffer.allocate(Math.max(payload_.capacity() * 2, payload_.position() + size));
+				payload_.flip();
+				bigger.put(payload_);
+				payload_ = bigger;
+			}
+		}
+		private void putString_(String value, boolean isLong) throws CharacterCodingException {
+			if (value == null) value = "";
+			int lengthSize = (isLong) ? 4 : 2;
+			ensure_(lengthSize + value.length());
+			int lengthPos = payload_.position();
+			payload_.position(lengthPos + lengthSize);
+			CharBuffer in = CharBuffer.wrap(value);
+			charsetEncoder_.reset();
+			for (;;) {
+				CoderResult cr = charsetEncoder_.encode(in, payload_, true);
+				if (cr.isUnderflow()) break;
+				if (!cr.isOverflow()) cr.throwException();
+				ensure_(Math.max(16, in.remaining() * 3));
+			}
+			while (charsetEncoder_.flush(payload_).isOverflow()) {
+				ensure_(16);
+			}
+			int length = payload_.position() - lengthPos - lengthSize;
+			if (!isLong && MAX_SHORT_STRING_ < length) {
+				// Too long for a short field : cuts off ( may split a multibyte character, which the decoder replaces )
+				// short フィールドには長すぎる : 切り詰める ( マルチバイト文字が分断されうるがデコーダ側で置換される )
+				length = MAX_SHORT_STRING_;
+				payload_.position(lengthPos + lengthSize + length);
+			}
+			if (isLong) {
+				payload_.putInt(lengthPos, length);
+			} else {
+				payload_.putShort(lengthPos, (short) length);
+			}
+		}
+	}
+
+	/**
+	 * Packs single-datagram frames produced by {@link Encoder} into datagrams of up to the maximum size.
+	 * Frames of fragmented records are passed through as they are.
+	 * Not thread safe.
+	 * @author OES Project
+	 * {@link Encoder} が作った単一データグラムのフレームを最大長までのデータグラムに詰める.
+	 * 分割されたレコードのフレームはそのまま通す.
+	 * スレッドセーフではない.
+	 * @author OES Project
+	 */
+	public static class Packer {
+		private final byte[] pack_;
+		private int length_ = 0;
+		private int last_ = -1;
+
+		/**
+		 * Creates instance.
+		 * @param maxDatagramSize maximum datagram size. Must be the same as that of the {@link Encoder}
+		 * インスタンス作成.
+		 * @param maxDatagramSize データグラムの最大長. {@link Encoder} のものと同じであること
+		 */
+		public Packer(int maxDatagramSize) {
+			pack_ = new byte[Math.max(HEADER_SIZE + 64, maxDatagramSize)];
+		}
+
+		/**
+		 * Adds frame, sending the pending datagram first if the frame does not fit in it.
+		 * @param data frame bytes
+		 * @param length frame length
+		 * @param sink receiver of datagrams
+		 * @throws IOException {@link DatagramSink#send(byte[], int)}
+		 * フレームを追加する. 収まらなければ先に保留中のデータグラムを送る.
+		 * @param data フレームのバイト列
+		 * @param length フレームの長さ
+		 * @param sink データグラムの受け取り手
+		 * @throws IOException {@link DatagramSink#send(byte[], int)}
+		 */
+		public void add(byte[] data, int length, DatagramSink sink) throws IOException {
+			int count = ((data[HEADER_SIZE - 2] & 0xFF) << 8) | (data[HEADER_SIZE - 1] & 0xFF);
+			if (count != 1 || pack_.length < length) {
+				flush(sink);
+				sink.send(data, length);
+				return;
+			}
+			if (pack_.length < length_ + length) flush(sink);
+			if (0 <= last_) pack_[last_ + 3] |= FLAG_MORE;
+			System.arraycopy(data, 0, pack_, length_, length);
+			last_ = length_;
+			length_ += length;
+		}
+		/**
+		 * Sends the pending datagram if any.
+		 * @param sink receiver of datagrams
+		 * @throws IOException {@link DatagramSink#send(byte[], int)}
+		 * 保留中のデータグラムがあれば送る.
+		 * @param sink データグラムの受け取り手
+		 * @throws IOException {@link DatagramSink#send(byte[], int)}
+		 */
+		public void flush(DatagramSink sink) throws IOException {
+			if (length_ == 0) return;
+			int length = length_;
+			length_ = 0;
+			last_ = -1;
+			sink.send(pack_, length);
+		}
+	}
+
+	////
+
+	/**
+	 * Decoded log record.
+	 * @author OES Project
+	 * デコードされたログレコード.
+	 * @author OES Project
+	 */
+	public static class Record {
+		public final long senderId;
+		public final long seq;
+		public final long millis;
+		public final Level level;
+		public final int threadId;
+		public final String programId;
+		public final String loggerName;
+		public final String threadName;
+		public final String message;
+		private Record(long senderId, long seq, long millis, Level level, int threadId, String programId, String loggerName, String threadName, String message) {
+			this.senderId = senderId;
+			this.seq = seq;
+			this.millis = millis;
+			this.level = level;
+			this.threadId = threadId;
+			this.programId = programId;
+			this.loggerName = loggerName;
+			this.threadName = threadName;
+			this.message = message;
+		}
+		/**
+		 * Creates {@link LogRecord} from this record.
+		 * The message is already formatted, so it can be passed to another handler as is.
+		 * @return logrecord object
+		 * このレコードから {@link LogRecord} を作成する.
+		 * メッセージはフォーマット済みなのでそのまま他のハンドラに渡せる.
+		 * @return logrecord オブジェクト
+		 */
+		public LogRecord toLogRecord() {
+			LogRecord result = new LogRecord(level, message);
+			result.setMillis(millis);
+			result.setThreadID(threadId);
+			result.setLoggerName(loggerName);
+			result.setSequenceNumber(seq);
+			return result;
+		}
+	}
+
+	/**
+	 * Decodes datagrams produced by {@link Encoder} and reassembles fragments.
+	 * Not thread safe.
+	 * Intended to be fed from a single receiving thread or event loop.
+	 * @author OES Project
+	 * {@link Encoder} が作ったデータグラムをデコードしフラグメントを組み立てる.
+	 * スレッドセーフではない.
+	 * 受信スレッドまたはイベントループ一本から使う想定.
+	 * @author OES Project
+	 */
+	public static class Decoder {
+		private final int maxPending_;
+		private final long fragmentTimeoutMsec_;
+		private final Map<Key_, Partial_> pending_ = new LinkedHashMap<>();
+		private long invalid_ = 0L;
+		private long incomplete_ = 0L;
+
+		/**
+		 * Creates instance.
+		 * @param maxPending maximum number of records being reassembled
+		 * @param fragmentTimeoutMsec time after which an incomplete record is discarded [ms]
+		 * インスタンス作成.
+		 * @param maxPending 組み立て中レコード数の最大値
+		 * @param fragmentTimeoutMsec 不完全なレコードを捨てるまでの時間 [ms]
+		 */
+		public Decoder(int maxPending, long fragmentTimeoutMsec) {
+			maxPending_ = Math.max(1, maxPending);
+			fragmentTimeoutMsec_ = fragmentTimeoutMsec;
+		}
+
+		/**
+		 * Gets number of datagrams that could not be decoded.
+		 * @return number of invalid datagrams
+		 * デコードできなかったデータグラムの数を取得する.
+		 * @return 不正なデータグラムの数
+		 */
+		public long invalid() {
+			return invalid_;
+		}
+		/**
+		 * Gets number of records discarded before all fragments arrived.
+		 * @return number of incomplete records
+		 * 全フラグメントが揃う前に捨てたレコードの数を取得する.
+		 * @return 不完全なレコードの数
+		 */
+		public long incomplete() {
+			return incomplete_;
+		}
+
+		/**
+		 * Decodes datagram.
+		 * @param data datagram bytes
+		 * @param offset offset in {@code data}
+		 * @param length datagram length
+		 * @return decoded record.
+		 *         {@code null} if still waiting for other fragments or if the datagram is invalid.
+		 * データグラムをデコードする.
+		 * @param data データグラムのバイト列
+		 * @param offset {@code data} 中のオフセット
+		 * @param length データグラムの長さ
+		 * @return デコードしたレコード.
+		 *         他のフラグメント待ちまたはデータグラムが不正なら {@code null}.
+		 */
+		public Record decode(byte[] data, int offset, int length) {
+			if (!isCompact(data, offset, length)) {
+				invalid_++;
+				return null;
+			}
+			ByteBuffer header = ByteBuffer.wrap(data, offset, length);
+			header.position(offset + 4);
+			long senderId = header.getLong();
+			long seq = header.getLong();
+			int index = header.getShort() & 0xFFFF;
+			int count = header.getShort() & 0xFFFF;
+			if (count == 0 || count <= index) {
+				invalid_++;
+				return null;
+			}
+			if (count == 1) {
+				return parse_(senderId, seq, ByteBuffer.wrap(data, offset + HEADER_SIZE, length - HEADER_SIZE));
+			}
+			long now = System.currentTimeMillis();
+			expire_(now);
+			Key_ key = new Key_(senderId, seq);
+			Partial_ partial = pending_.get(key);
+			if (partial == null) {
+				if (maxPending_ <= pending_.size()) {
+					Iterator<Partial_> it = pending_.values().iterator();
+					it.next();
+					it.remove();
+					incomplete_++;
+				}
+				partial = new Partial_(count, now);
+				pending_.put(key, partial);
+			}
+			if (partial.chunks_.length != count) {
+				invalid_++;
+				return null;
+			}
+			if (partial.chunks_[index] == null) {
+				byte[] chunk = new byte[length - HEADER_SIZE];
+				System.arraycopy(data, offset + HEADER_SIZE, chunk, 0, chunk.length);
+				partial.chunks_[index] = chunk;
+				partial.received_++;
+				partial.size_ += chunk.length;
+			}
+			if (partial.received_ < count) return null;
+			pending_.remove(key);
+			ByteBuffer payload = ByteBuffer.allocate(partial.size_);
+			for (byte[] aChunk : partial.chunks_) payload.put(aChunk);
+			payload.flip();
+			return parse_(senderId, seq, payload);
+		}
+
+		/**
+		 * Decodes datagram which may contain several frames packed by {@link Packer}.
+		 * @param data datagram bytes
+		 * @param offset offset in {@code data}
+		 * @param length datagram length
+		 * @param consumer receiver of decoded records
+		 * @return number of decoded records
+		 * {@link Packer} が詰めた複数のフレームを含みうるデータグラムをデコードする.
+		 * @param data データグラムのバイト列
+		 * @param offset {@code data} 中のオフセット
+		 * @param length データグラムの長さ
+		 * @param consumer デコードしたレコードの受け取り手
+		 * @return デコードしたレコードの数
+		 */
+		public int decode(byte[] data, int offset, int length, Consumer<Record> consumer) {
+			int result = 0;
+			int end = offset + length;
+			for (;;) {
+				if (!isCompact(data, offset, end - offset)) {
+					invalid_++;
+					return result;
+				}
+				if ((data[offset + 3] & FLAG_MORE) == 0) {
+					Record record = decode(data, offset, end - offset);
+					if (record != null) {
+						consumer.accept(record);
+						result++;
+					}
+					return result;
+				}
+				// Packed frame : always a single fragment, which ends where its payload does
+				// 詰められたフレーム : 常に単一フラグメントで, ペイロードの終わりで終わる
+				ByteBuffer header = ByteBuffer.wrap(data, offset, end - offset);
+				header.position(offset + 4);
+				long senderId = header.getLong();
+				long seq = header.getLong();
+				int index = header.getShort() & 0xFFFF;
+				int count = header.getShort() & 0xFFFF;
+				if (index != 0 || count != 1) {
+					invalid_++;
+					return result;
+				}
+				ByteBuffer payload = ByteBuffer.wrap(data, offset + HEADER_SIZE, end - offset - HEADER_SIZE);
+				Record record = parse_(senderId, seq, payload);
+				if (record == null) return result;
+				consumer.accept(record);
+				result++;
+				offset = payload.position();
+			}
+		}
+
+		private void expire_(long now) {
+			Iterator<Partial_> it = pending_.values().iterator();
+			while (it.hasNext()) {
+				Partial_ partial = it.next();
+				if (now - partial.firstMillis_ < fragmentTimeoutMsec_) break;
+				it.remove();
+				incomplete_++;
+			}
+		}
+		private Record parse_(long senderId, long seq, ByteBuffer payload) {
+			try {
+				long millis = payload.getLong();
+				Level level = level_(payload.getInt());
+				int threadId = payload.getInt();
+				String programId = getString_(payload, false);
+				String loggerName = getString_(payload, false);
+				String threadName = getString_(payload, false);
+				String message = getString_(payload, true);
+				return new Record(senderId, seq, millis, level, threadId, programId, loggerName, threadName, message);
+			} catch (RuntimeException e) {
+				invalid_++;
+				return null;
+			}
+		}
+		private static String getString_(ByteBuffer payload, boolean isLong) {
+			int length = (isLong) ? payload.getInt() : (payload.getShort() & 0xFFFF);
+			if (length < 0 || payload.remaining() < length) throw new IndexOutOfBoundsException("bad string length : " + length);
+			String result = new String(payload.array(), payload.arrayOffset() + payload.position(), length, StandardCharsets.UTF_8);
+			payload.position(payload.position() + length);
+			return result;
+		}
+		private static Level level_(int value) {
+			if (value == Level.SEVERE.intValue()) return Level.SEVERE;
+			if (value == Level.WARNING.intValue()) return Level.WARNING;
+			if (value == Level.INFO.intValue()) return Level.INFO;
+			if (value == Level.CONFIG.intValue()) return Level.CONFIG;
+			if (value == Level.FINE.intValue()) return Level.FINE;
+			if (value == Level.FINER.intValue()) return Level.FINER;
+			if (value == Level.FINEST.intValue()) return Level.FINEST;
+			if (value == Level.ALL.intValue()) return Level.ALL;
+			if (value == Level.OFF.intValue()) return Level.OFF;
+			return Level.parse(String.valueOf(value));
+		}
+	}
+
+	/**
+	 * Key of record being reassembled.
+	 * @author OES Project
+	 * 組み立て中レコードのキー.
+	 * @author OES Project
+	 */
+	private static class Key_ {
+		private final long senderId_;
+		private final long seq_;
+		private Key_(long senderId, long seq) {
+			senderId_ = senderId;
+			seq_ = seq;
+		}
+		@Override public boolean equals(Object obj) {
+			if (!(obj instanceof Key_)) return false;
+			Key_ other = (Key_) obj;
+			return senderId_ == other.senderId_ && seq_ == other.seq_;
+		}
+		@Override public int hashCode() {
+			return Long.hashCode(senderId_) * 31 + Long.hashCode(seq_);
+		}
+	}
+	/**
+	 * Record being reassembled.
+	 * @author OES Project
+	 * 組み立て中のレコード.
+	 * @author OES Project
+	 */
+	private static class Partial_ {
+		private final byte[][] chunks_;
+		private final long firstMillis_;
+		private int received_ = 0;
+		private int size_ = 0;
+		private Partial_(int count, long firstMillis) {
+			chunks_ = new byte[count][];
+			firstMillis_ = firstMillis;
+		}
+	}
+
+}
@@ -0,0 +1,366 @@
+package jp.co.sony.csl.dcoes.apis.common.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * This handler limits the rate of log records passed to another handler.
+ * Records are grouped by logger name and raw message ( before parameters are applied ), and each group has a token bucket.
+ * Records beyond the limit are suppressed, except one in every {@code sampleEvery}.
+ * The number of suppressed records is reported as a "repeated N times" record when the group passes again, and on {@link #flush()} and {@link #close()}.
+ * Groups are kept in a fixed size table indexed by hash so that no allocation or global lock is needed on the hot path.
+ * When two groups collide the older one is reported and replaced.
+ * To wrap several handlers, create a subclass per handler in the same way as {@link AnotherFileHandler}.
+ * @author OES Project
+ * 別のハンドラに渡すログレコードの頻度を制限するハンドラ.
+ * レコードをロガー名と生のメッセージ ( パラメタ適用前 ) でグループ分けしグループごとにトークンバケットを持つ.
+ * 制限を超えたレコードは {@code sampleEvery} 個に一つを除き抑止する.
+ * 抑止したレコードの数はそのグループが再び通過するとき, および {@link #flush()} と {@link #close()} で "repeated N times" レコードとして報告する.
+ * ホットパスで割り当ても全体ロックも不要なようにグループはハッシュで引く固定長の表に保持する.
+ * 二つのグループが衝突したら古い方を報告して置き換える.
+ * 複数のハンドラをラップするには {@link AnotherFileHandler} と同じ要領でハンドラごとにサブクラスを作る.
+ * @author OES Project
+ */
+public class RateLimitingHandler extends Handler {
+
+	/**
+	 * Default number of records per second allowed per group.
+	 * The value is {@value}.
+	 * グループごとに許す毎秒のレコード数のデフォルト.
+	 * 値は {@value}.
+	 */
+	private static final int DEFAULT_RATE_PER_SEC = 10;
+	/**
+	 * Default number of records allowed in a burst per group.
+	 * The value is {@value}.
+	 * グループごとに許すバーストのレコード数のデフォルト.
+	 * 値は {@value}.
+	 */
+	private static final int DEFAULT_BURST = 50;
+	/**
+	 * Default size of the group table.
+	 * The value is {@value}.
+	 * グループ表の大きさのデフォルト.
+	 * 値は {@value}.
+	 */
+	private static final int DEFAULT_MAX_KEYS = 1024;
+
+	private final LongSupplier nanoClock_;
+	private Handler target_;
+	private double tokensPerNano_;
+	private double burst_;
+	private int sampleEvery_;
+	private Level bypassLevel_;
+	private Bucket_[] buckets_;
+	private int mask_;
+	private final AtomicLong passed_ = new AtomicLong();
+	private final AtomicLong suppressed_ = new AtomicLong();
+	private final AtomicLong sampled_ = new AtomicLong();
+
+	/**
+	 * Creates instance.
+	 * The target handler is created from {@code target} property.
+	 * @throws IllegalStateException {@link #configure_(Handler)} failure
+	 * インスタンス作成.
+	 * 対象のハンドラは {@code target} プロパティから作成する.
+	 * @throws IllegalStateException {@link #configure_(Handler)} 失敗
+	 */
+	public RateLimitingHandler() {
+		nanoClock_ = System::nanoTime;
+		try {
+			configure_(null);
+		} catch (Exception e) {
+			System.err.println(getClass().getSimpleName() + " : failed to configure");
+			throw new IllegalStateException(e);
+		}
+	}
+	/**
+	 * Creates instance.
+	 * @param target handler to which records are passed
+	 * @throws IllegalStateException {@link #configure_(Handler)} failure
+	 * インスタンス作成.
+	 * @param target レコードを渡す先のハンドラ
+	 * @throws IllegalStateException {@link #configure_(Handler)} 失敗
+	 */
+	public RateLimitingHandler(Handler target) {
+		nanoClock_ = System::nanoTime;
+		try {
+			configure_(target);
+		} catch (Exception e) {
+			System.err.println(getClass().getSimpleName() + " : failed to configure");
+			throw new IllegalStateException(e);
+		}
+	}
+	/*package*/ RateLimitingHandler(Handler target, int ratePerSec, int burst, int sampleEvery, int maxKeys, LongSupplier nanoClock) {
+		nanoClock_ = nanoClock;
+		setLevel(Level.ALL);
+		target_ = target;
+		init_(ratePerSec, burst, sampleEvery, Level.SEVERE, maxKeys);
+	}
+
+	/**
+	 * Initializes.
+	 * Reads settings from property.
+	 * - {@code target} : class name of the handler to which records are passed. Required unless given to the constructor
+	 * - {@code ratePerSec} : records per second allowed per group. Default {@link #DEFAULT_RATE_PER_SEC}
+	 * - {@code burst} : records allowed in a burst per group. Default {@link #DEFAULT_BURST}
+	 * - {@code sampleEvery} : passes one in every this number of suppressed records. No sampling if {@code 0} or less. Default {@code 0}
+	 * - {@code bypassLevel} : records at this level or higher are never limited. Default {@link Level#SEVERE}
+	 * - {@code maxKeys} : size of the group table. Rounded up to a power of two. Default {@link #DEFAULT_MAX_KEYS}
+	 * @param target handler to which records are passed.
+	 *        Read from {@code target} property if {@code null}
+	 * @throws IllegalArgumentException no target handler
+	 * 初期化.
+	 * プロパティから設定を読み込む.
+	 * - {@code target} : レコードを渡す先のハンドラのクラス名. コンストラクタで与えない場合は必須
+	 * - {@code ratePerSec} : グループごとに許す毎秒のレコード数. デフォルト {@link #DEFAULT_RATE_PER_SEC}
+	 * - {@code burst} : グループごとに許すバーストのレコード数. デフォルト {@link #DEFAULT_BURST}
+	 * - {@code sampleEvery} : 抑止したレコードのうちこの数に一つを通す. {@code 0} 以下ならサンプリングしない. デフォルト {@code 0}
+	 * - {@code bypassLevel} : このレベル以上のレコードは制限しない. デフォルト {@link Level#SEVERE}
+	 * - {@code maxKeys} : グループ表の大きさ. 2 のべき乗に切り上げる. デフォルト {@link #DEFAULT_MAX_KEYS}
+	 * @param target レコードを渡す先のハンドラ.
+	 *        {@code null} なら {@code target} プロパティから読み込む
+	 * @throws IllegalArgumentException 対象のハンドラがない
+	 */
+	private void configure_(Handler target) {
+		String cname = getClass().getName();
+		setLevel(JulUtil.getLevelProperty(cname + ".level", Level.ALL));
+		setFilter(JulUtil.getFilterProperty(cname +".filter", null));
+		target_ = (target != null) ? target : JulUtil.getHandlerProperty(cname + ".target", null);
+		int ratePerSec = JulUtil.getIntProperty(cname + ".ratePerSec", DEFAULT_RATE_PER_SEC);
+		int burst = JulUtil.getIntProperty(cname + ".burst", DEFAULT_BURST);
+		int sampleEvery = JulUtil.getIntProperty(cname + ".sampleEvery", 0);
+		Level bypassLevel = JulUtil.getLevelProperty(cname + ".bypassLevel", Level.SEVERE);
+		int maxKeys = JulUtil.getIntProperty(cname + ".maxKeys", DEFAULT_MAX_KEYS);
+		if (target_ == null) {
+			throw new IllegalArgumentException("Null target handler");
+		}
+		init_(ratePerSec, burst, sampleEvery, bypassLevel, maxKeys);
+	}
+	private void init_(int ratePerSec, int burst, int sampleEvery, Level bypassLevel, int maxKeys) {
+		sampleEvery_ = sampleEvery;
+		bypassLevel_ = bypassLevel;
+		tokensPerNano_ = Math.max(ratePerSec, 0) / 1e9d;
+		burst_ = Math.max(burst, 1);
+		int size = Integer.highestOneBit(Math.max(maxKeys, 1) - 1) << 1;
+		if (size <= 0) size = 1;
+		buckets_ = new Bucket_[size];
+		for (int i = 0; i < size; i++) {
+			buckets_[i] = new Bucket_();
+		}
+		mask_ = size - 1;
+	}
+
+	/**
+	 * Gets the handler to which records are passed.
+	 * @return target handler
+	 * レコードを渡す先のハンドラを取得する.
+	 * @return 対象のハンドラ
+	 */
+	public Handler target() {
+		return target_;
+	}
+	/**
+	 * Gets number of records passed to the target handler, excluding summaries.
+	 * @return number of records
+	 * 対象のハンドラに渡したレコードの数を取得する. 要約は含まない.
+	 * @return レコードの数
+	 */
+	public long passed() {
+		return passed_.get();
+	}
+	/**
+	 * Gets number of suppressed records.
+	 * @return number of records
+	 * 抑止したレコードの数を取得する.
+	 * @return レコードの数
+	 */
+	public long suppressed() {
+		return suppressed_.get();
+	}
+	/**
+	 * Gets number of records passed by sampling while over the limit.
+	 * @return number of records
+	 * 制限超過中にサンプリングで通したレコードの数を取得する.
+	 * @return レコードの数
+	 */
+	public long sampled() {
+		return sampled_.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override public void publish(LogRecord record) {
+		if (!isLoggable(record)) {
+			return;
+		}
+		if (bypassLevel_.intValue() <= record.getLevel().intValue()) {
+			passed_.incrementAndGet();
+			target_.publish(record);
+			return;
+		}
+		String loggerName = record.getLoggerName();
+		// A null message is grouped as an empty one, the same in hashing, matching and the bucket
+		// null メッセージはハッシュ, 照合, バケットのいずれでも空のものとしてまとめる
+		String message = (record.getMessage() != null) ? record.getMessage() : "";
+		int h = hash_(loggerName, message);
+		Bucket_ bucket = buckets_[h & mask_];
+		LogRecord summary;
+		boolean pass;
+		synchronized (bucket) {
+			long now = nanoClock_.getAsLong();
+			if (!bucket.matches_(h, loggerName, message)) {
+				// Empty or collided : reports the previous group and takes over the slot
+				// 空または衝突 : 前のグループを報告してスロットを引き継ぐ
+				summary = bucket.takeSummary_(now);
+				bucket.reset_(h, loggerName, message, burst_, now);
+			} else {
+				summary = null;
+				bucket.refill_(now, tokensPerNano_, burst_);
+			}
+			if (1d <= bucket.tokens_) {
+				bucket.tokens_ -= 1d;
+				if (summary == null) summary = bucket.takeSummary_(now);
+				pass = true;
+			} else {
+				bucket.overLimit_++;
+				if (0 < sampleEvery_ && bucket.overLimit_ % sampleEvery_ == 0) {
+					sampled_.incrementAndGet();
+					pass = true;
+				} else {
+					bucket.suppressed_++;
+					bucket.last_ = record;
+					suppressed_.incrementAndGet();
+					pass = false;
+				}
+			}
+		}
+		if (summary != null) {
+			target_.publish(summary);
+		}
+		if (pass) {
+			passed_.incrementAndGet();
+			target_.publish(record);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * Reports pending suppressed counts before flushing the target handler.
+	 * 対象のハンドラをフラッシュする前に保留中の抑止数を報告する.
+	 */
+	@Override public void flush() {
+		publishSummaries_();
+		target_.flush();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * Reports pending suppressed counts and closes the target handler.
+	 * 保留中の抑止数を報告し対象のハンドラを閉じる.
+	 */
+	@Override public void close() throws SecurityException {
+		publishSummaries_();
+		target_.close();
+	}
+
+	////
+
+	private static int hash_(String loggerName, String message) {
+		int h = (loggerName != null) ? loggerName.hashCode() : 0;
+		h = h * 31 + ((message != null) ? message.hashCode() : 0);
+		return h ^ (h >>> 16);
+	}
+
+	private void publishSummaries_() {
+		List<LogRecord> summaries = new ArrayList<>();
+		long now = nanoClock_.getAsLong();
+		for (Bucket_ aBucket : buckets_) {
+			LogRecord summary;
+			synchronized (aBucket) {
+				summary = aBucket.takeSummary_(now);
+			}
+			if (summary != null) summaries.add(summary);
+		}
+		for (LogRecord aSummary : summaries) {
+			try {
+				target_.publish(aSummary);
+			} catch (Exception e) {
+				reportError(null, e, ErrorManager.WRITE_FAILURE);
+			}
+		}
+	}
+
+	/**
+	 * Token bucket of a group.
+	 * Guarded by its own monitor.
+	 * @author OES Project
+	 * グループのトークンバケット.
+	 * 自身のモニタで保護する.
+	 * @author OES Project
+	 */
+	private static class Bucket_ {
+		private int hash_;
+		private String loggerName_;
+		private String message_;
+		private double tokens_;
+		private long refilledNanos_;
+		private long overLimit_;
+		private long suppressed_;
+		private long sinceNanos_;
+		private LogRecord last_;
+		private boolean matches_(int hash, String loggerName, String message) {
+			return message_ != null && hash_ == hash && message_.equals(message) && (loggerName_ == null ? loggerName == null : loggerName_.equals(loggerName));
+		}
+		private void reset_(int hash, String loggerName, String message, double burst, long now) {
+			hash_ = hash;
+			loggerName_ = loggerName;
+			message_ = message;
+			tokens_ = burst;
+			refilledNanos_ = now;
+			overLimit_ = 0L;
+			suppressed_ = 0L;
+			sinceNanos_ = now;
+			last_ = null;
+		}
+		private void refill_(long now, double tokensPerNano, double burst) {
+			long elapsed = now - refilledNanos_;
+			if (0 < elapsed) {
+				tokens_ = Math.min(burst, tokens_ + elapsed * tokensPerNano);
+				refilledNanos_ = now;
+			}
+		}
+		/**
+		 * Creates a "repeated N times" record and resets the count.
+		 * @param now current time [ns]
+		 * @return summary record.
+		 *         {@code null} if nothing has been suppressed
+		 * "repeated N times" レコードを作りカウントをリセットする.
+		 * @param now 現在時刻 [ns]
+		 * @return 要約レコード.
+		 *         何も抑止していなければ {@code null}
+		 */
+		private LogRecord takeSummary_(long now) {
+			LogRecord result = null;
+			if (0 < suppressed_ && last_ != null) {
+				result = new LogRecord(last_.getLevel(), "repeated " + suppressed_ + " times in " + ((now - sinceNanos_) / 1000000L) + " ms : " + last_.getMessage());
+				result.setLoggerName(last_.getLoggerName());
+				result.setParameters(last_.getParameters());
+				result.setSourceClassName(last_.getSourceClassName());
+				result.setSourceMethodName(last_.getSourceMethodName());
+			}
+			suppressed_ = 0L;
+			sinceNanos_ = now;
+			last_ = null;
+			return result;
+		}
+	}
+
+}
@@ -0,0 +1,253 @@
+package jp.co.sony.csl.dcoes.apis.common.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free ring buffer.
+ * Any number of threads may put and take concurrently.
+ * Each slot carries a sequence number so that producers and consumers only have to CAS a position counter ( D. Vyukov's bounded MPMC queue ).
+ * @author OES Project
+ * 有限長のロックフリーリングバッファ.
+ * 任意の数のスレッドから同時に put / take してよい.
+ * スロットごとにシーケンス番号を持たせ生産者と消費者は位置カウンタを CAS するだけで済ませる ( D. Vyukov の bounded MPMC queue ).
+ * @author OES Project
+ * @param <E> element type
+ */
+public class RingBuffer<E> {
+
+	/**
+	 * What to do when the buffer is full.
+	 * @author OES Project
+	 * バッファが一杯のときの振る舞い.
+	 * @author OES Project
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * Discards the oldest element and stores the new one.
+		 * 最も古い要素を捨てて新しい要素を格納する.
+		 */
+		DROP_OLDEST,
+		/**
+		 * Discards the new element.
+		 * 新しい要素を捨てる.
+		 */
+		DROP_NEWEST,
+		/**
+		 * Waits until there is room.
+		 * 空きができるまで待つ.
+		 */
+		BLOCK,
+	}
+
+	/**
+	 * Gets {@link OverflowPolicy} from string.
+	 * @param value string.
+	 *        Case insensitive.
+	 * @param defaultValue value returned if {@code value} is {@code null} or unknown
+	 * @return overflowpolicy object
+	 * 文字列から {@link OverflowPolicy} を取得する.
+	 * @param value 文字列.
+	 *        大文字小文字は区別しない.
+	 * @param defaultValue {@code value} が {@code null} または不明な場合に返す値
+	 * @return overflowpolicy オブジェクト
+	 */
+	public static OverflowPolicy overflowPolicy(String value, OverflowPolicy defaultValue) {
+		if (value != null) {
+			for (OverflowPolicy aPolicy : OverflowPolicy.values()) {
+				if (aPolicy.name().equalsIgnoreCase(value.trim())) return aPolicy;
+			}
+		}
+		return defaultValue;
+	}
+
+	private static final long BLOCK_PARK_NANOS_ = 100_000L;
+
+	private final int mask_;
+	private final AtomicReferenceArray<E> elements_;
+	private final AtomicLongArray sequences_;
+	private final AtomicLong head_ = new AtomicLong();
+	private final AtomicLong tail_ = new AtomicLong();
+	private final AtomicLong dropped_ = new AtomicLong();
+
+	/**
+	 * Creates instance.
+	 * @param capacity requested capacity.
+	 *        Rounded up to a power of two.
+	 * インスタンス作成.
+	 * @param capacity 容量.
+	 *        2 のべき乗に切り上げる.
+	 */
+	public RingBuffer(int capacity) {
+		if (capacity < 2) capacity = 2;
+		int size = Integer.highestOneBit(capacity - 1) << 1;
+		mask_ = size - 1;
+		elements_ = new AtomicReferenceArray<>(size);
+		sequences_ = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences_.set(i, i);
+		}
+	}
+
+	/**
+	 * Gets capacity.
+	 * @return capacity
+	 * 容量を取得する.
+	 * @return 容量
+	 */
+	public int capacity() {
+		return mask_ + 1;
+	}
+	/**
+	 * Gets approximate number of elements.
+	 * @return number of elements
+	 * おおよその要素数を取得する.
+	 * @return 要素数
+	 */
+	public int size() {
+		long size = tail_.get() - head_.get();
+		return (int) Math.max(0L, Math.min(size, capacity()));
+	}
+	/**
+	 * Determines if empty.
+	 * @return {@code true} if empty
+	 * 空か否か.
+	 * @return 空なら {@code true}
+	 */
+	public boolean isEmpty() {
+		return head_.get() >= tail_.get();
+	}
+	/**
+	 * Gets number of elements discarded by {@link #put(Object, OverflowPolicy)}.
+	 * @return number of discarded elements
+	 * {@link #put(Object, OverflowPolicy)} で捨てられた要素の数を取得する.
+	 * @return 捨てられた要素の数
+	 */
+	public long dropped() {
+		return dropped_.get();
+	}
+
+	/**
+	 * Adds element if there is room.
+	 * @param element element to add.
+	 *        Must not be {@code null}.
+	 * @return {@code true} if added.
+	 *         {@code false} if full.
+	 * 空きがあれば要素を追加する.
+	 * @param element 追加する要素.
+	 *        {@code null} 不可.
+	 * @return 追加したら {@code true}.
+	 *         一杯なら {@code false}.
+	 */
+	public boolean offer(E element) {
+		if (element == null) throw new NullPointerException();
+		long pos = tail_.get();
+		for (;;) {
+			int index = (int) pos & mask_;
+			long seq = sequences_.get(index);
+			long diff = seq - pos;
+			if (diff == 0) {
+				if (tail_.compareAndSet(pos, pos + 1)) {
+					elements_.lazySet(index, element);
+					sequences_.lazySet(index, pos + 1);
+					return true;
+				}
+				pos = tail_.get();
+			} else if (diff < 0) {
+				return false;
+			} else {
+				pos = tail_.get();
+			}
+		}
+	}
+	/**
+	 * Takes the oldest element.
+	 * @return the oldest element.
+	 *         {@code null} if empty.
+	 * 最も古い要素を取り出す.
+	 * @return 最も古い要素.
+	 *         空なら {@code null}.
+	 */
+	public E poll() {
+		long pos = head_.get();
+		for (;;) {
+			int index = (int) pos & mask_;
+			long seq = sequences_.get(index);
+			long diff = seq - (pos + 1);
+			if (diff == 0) {
+				if (head_.compareAndSet(pos, pos + 1)) {
+					E result = elements_.get(index);
+					elements_.lazySet(index, null);
+					sequences_.lazySet(index, pos + mask_ + 1);
+					return result;
+				}
+				pos = head_.get();
+			} else if (diff < 0) {
+				return null;
+			} else {
+				pos = head_.get();
+			}
+		}
+	}
+	/**
+	 * Takes up to {@code max} elements and passes them to {@code consumer} in order.
+	 * @param consumer receiver of elements
+	 * @param max maximum number of elements to take
+	 * @return number of elements taken
+	 * 最大 {@code max} 個の要素を取り出し順に {@code consumer} に渡す.
+	 * @param consumer 要素の受け取り手
+	 * @param max 取り出す要素の最大数
+	 * @return 取り出した要素の数
+	 */
+	public int drain(Consumer<? super E> consumer, int max) {
+		int result = 0;
+		E element;
+		while (result < max && (element = poll()) != null) {
+			consumer.accept(element);
+			result++;
+		}
+		return result;
+	}
+
+	/**
+	 * Adds element following {@code policy} when full.
+	 * Discarded elements are counted in {@link #dropped()}.
+	 * @param element element to add.
+	 *        Must not be {@code null}.
+	 * @param policy overflow policy
+	 * @return {@code true} if {@code element} has been stored
+	 * 一杯なら {@code policy} に従って要素を追加する.
+	 * 捨てた要素は {@link #dropped()} に数えられる.
+	 * @param element 追加する要素.
+	 *        {@code null} 不可.
+	 * @param policy あふれたときの振る舞い
+	 * @return {@code element} を格納したら {@code true}
+	 */
+	public boolean put(E element, OverflowPolicy policy) {
+		if (offer(element)) return true;
+		switch (policy) {
+		case DROP_OLDEST:
+			while (!offer(element)) {
+				if (poll() != null) dropped_.incrementAndGet();
+			}
+			return true;
+		case BLOCK:
+			while (!offer(element)) {
+				if (Thread.currentThread().isInterrupted()) {
+					dropped_.incrementAndGet();
+					return false;
+				}
+				LockSupport.parkNanos(BLOCK_PARK_NANOS_);
+			}
+			return true;
+		case DROP_NEWEST:
+		default:
+			dropped_.incrementAndGet();
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,229 @@
+package jp.co.sony.csl.dcoes.apis.common.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Writes bytes to a file with {@link FileChannel} and rotates the file by size.
+ * Rotated files are renamed to {@code <file name>.<uuuuMMdd-HHmmss-SSS>} and only the newest {@code maxBackups} are kept.
+ * Calls are blocking : use from a worker thread, not from an event loop.
+ * @author OES Project
+ * {@link FileChannel} でファイルにバイト列を書き込みサイズでローテートする.
+ * ローテートしたファイルは {@code <ファイル名>.<uuuuMMdd-HHmmss-SSS>} にリネームし新しいものから {@code maxBackups} 個だけ残す.
+ * ブロッキング呼び出しなのでイベントループではなくワーカスレッドから使うこと.
+ * @author OES Project
+ */
+public class RotatingFileWriter implements Closeable {
+
+	private static final DateTimeFormatter SUFFIX_FORMATTER_ = DateTimeFormatter.ofPattern("uuuuMMdd-HHmmss-SSS");
+
+	private final Path file_;
+	private final long maxFileSize_;
+	private final int maxBackups_;
+	private FileChannel channel_;
+	private long size_;
+
+	/**
+	 * Creates instance and opens file.
+	 * Appends to the file if it exists.
+	 * @param file file to write
+	 * @param maxFileSize size which triggers rotation [byte].
+	 *        No rotation by size if {@code 0} or less.
+	 * @param maxBackups number of rotated files to keep.
+	 *        All are kept if {@code 0} or less.
+	 * @throws IOException failed to open file
+	 * インスタンスを作成しファイルを開く.
+	 * ファイルが存在すれば追記する.
+	 * @param file 書き込むファイル
+	 * @param maxFileSize ローテートするサイズ [byte].
+	 *        {@code 0} 以下ならサイズではローテートしない.
+	 * @param maxBackups 残すローテート済みファイルの数.
+	 *        {@code 0} 以下なら全て残す.
+	 * @throws IOException ファイルを開けなかった
+	 */
+	public RotatingFileWriter(Path file, long maxFileSize, int maxBackups) throws IOException {
+		file_ = file.toAbsolutePath();
+		maxFileSize_ = maxFileSize;
+		maxBackups_ = maxBackups;
+		Path dir = file_.getParent();
+		if (dir != null) Files.createDirectories(dir);
+		open_();
+	}
+
+	/**
+	 * Gets path of the file being written.
+	 * @return path
+	 * 書き込み中のファイルのパスを取得する.
+	 * @return パス
+	 */
+	public Path file() {
+		return file_;
+	}
+	/**
+	 * Gets size of the file being written.
+	 * @return size [byte]
+	 * 書き込み中のファイルのサイズを取得する.
+	 * @return サイズ [byte]
+	 */
+	public synchronized long size() {
+		return size_;
+	}
+
+	/**
+	 * Writes all remaining bytes of {@code src}.
+	 * Rotates first if the file has reached {@code maxFileSize}.
+	 * @param src bytes to write
+	 * @throws IOException write failure
+	 * {@code src} の残りのバイトを全て書き込む.
+	 * ファイルが {@code maxFileSize} に達していたら先にローテートする.
+	 * @param src 書き込むバイト列
+	 * @throws IOException 書き込み失敗
+	 */
+	public synchronized void write(ByteBuffer src) throws IOException {
+		if (0 < maxFileSize_ && maxFileSize_ <= size_) rotate();
+		while (src.hasRemaining()) {
+			size_ += channel_.write(src);
+		}
+	}
+	/**
+	 * Forces written bytes to the storage device.
+	 * @throws IOException {@link FileChannel#force(boolean)}
+	 * 書き込んだバイト列を記憶装置に反映させる.
+	 * @throws IOException {@link FileChannel#force(boolean)}
+	 */
+	public synchronized void force() throws IOException {
+		channel_.force(false);
+	}
+
+	/**
+	 * Rotates the file.
+	 * Does nothing if the file is empty.
+	 * @return rotated file.
+	 *         {@code null} if not rotated.
+	 * @throws IOException rename or open failure
+	 * ファイルをローテートする.
+	 * ファイルが空なら何もしない.
+	 * @return ローテートしたファイル.
+	 *         ローテートしなかったら {@code null}.
+	 * @throws IOException リネームまたはオープンの失敗
+	 */
+	public synchronized Path rotate() throws IOException {
+		if (size_ == 0) return null;
+		channel_.close();
+		Path rotated = file_.resolveSibling(file_.getFileName() + "." + nextSuffix_());
+		Files.move(file_, rotated);
+		open_();
+		if (rotated(rotated)) prune();
+		return rotated;
+	}
+	/**
+	 * Called after the file has been rotated.
+	 * Does nothing by default.
+	 * Overridden by subclasses which post-process rotated files.
+	 * A subclass which post-processes in the background returns {@code false} and calls {@link #prune()} when it has finished,
+	 * so that a file being processed is neither counted twice nor deleted.
+	 * @param rotated rotated file
+	 * @return {@code true} to prune old rotated files right away.
+	 *         {@code false} if the subclass calls {@link #prune()} itself.
+	 *         Always {@code true} by default.
+	 * ファイルをローテートした後に呼ばれる.
+	 * デフォルトでは何もしない.
+	 * ローテートしたファイルを後処理するサブクラスがオーバライドする.
+	 * バックグラウンドで後処理するサブクラスは {@code false} を返し終わったら {@link #prune()} を呼ぶこと.
+	 * 処理中のファイルを二重に数えたり削除したりしないためである.
+	 * @param rotated ローテートしたファイル
+	 * @return すぐに古いローテート済みファイルを削除するなら {@code true}.
+	 *         サブクラスが自分で {@link #prune()} を呼ぶなら {@code false}.
+	 *         デフォルトでは常に {@code true}.
+	 */
+	protected boolean rotated(Path rotated) {
+		return true;
+	}
+	/**
+	 * Deletes old rotated files beyond {@code maxBackups}.
+	 * Called after rotation unless {@link #rotated(Path)} returns {@code false}.
+	 * @throws IOException directory read or delete failure
+	 * {@code maxBackups} を超える古いローテート済みファイルを削除する.
+	 * {@link #rotated(Path)} が {@code false} を返さなければローテートの後に呼ばれる.
+	 * @throws IOException ディレクトリ読み込みまたは削除の失敗
+	 */
+	public synchronized void prune() throws IOException {
+		if (maxBackups_ <= 0) return;
+		List<Path> backups = backups();
+		for (int i = 0; i < backups.size() - maxBackups_; i++) {
+			Files.deleteIfExists(backups.get(i));
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override public synchronized void close() throws IOException {
+		if (channel_.isOpen()) {
+			channel_.close();
+		}
+	}
+
+	////
+
+	private void open_() throws IOException {
+		channel_ = FileChannel.open(file_, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		size_ = channel_.size();
+	}
+	/**
+	 * Generates suffix of rotated file.
+	 * Made unique even if rotated several times within the same millisecond, also against compressed {@code .gz} files.
+	 * @return suffix string
+	 * ローテートしたファイルの接尾辞を生成する.
+	 * 同じミリ秒内に複数回ローテートしても, 圧縮した {@code .gz} ファイルとも重複しないようにする.
+	 * @return 接尾辞文字列
+	 */
+	private String nextSuffix_() {
+		String base = LocalDateTime.now().format(SUFFIX_FORMATTER_);
+		String result = base;
+		for (int n = 1; Files.exists(file_.resolveSibling(file_.getFileName() + "." + result)) || Files.exists(file_.resolveSibling(file_.getFileName() + "." + result + ".gz")); n++) {
+			result = base + "-" + n;
+		}
+		return result;
+	}
+	/**
+	 * Lists rotated files from oldest to newest.
+	 * Files whose name is {@code <file name>.} followed by a digit are taken as rotated ones, except those ending with {@code .tmp}.
+	 * They are ordered by name without a {@code .gz} extension, so that a compressed file keeps its place.
+	 * @return list of rotated files
+	 * @throws IOException directory read failure
+	 * ローテート済みファイルを古い順に列挙する.
+	 * {@code <ファイル名>.} に数字が続く名前のファイルをローテート済みとみなす. ただし {@code .tmp} で終わるものは除く.
+	 * 圧縮したファイルも元の位置に並ぶよう {@code .gz} 拡張子を除いた名前の順に並べる.
+	 * @return ローテート済みファイルのリスト
+	 * @throws IOException ディレクトリ読み込み失敗
+	 */
+	public List<Path> backups() throws IOException {
+		List<Path> result = new ArrayList<>();
+		String prefix = file_.getFileName() + ".";
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(file_.getParent())) {
+			for (Path aPath : stream) {
+				String name = aPath.getFileName().toString();
+				if (name.startsWith(prefix) && prefix.length() < name.length() && Character.isDigit(name.charAt(prefix.length())) && !name.endsWith(".tmp")) result.add(aPath);
+			}
+		}
+		result.sort(Comparator.comparing(RotatingFileWriter::sortKey_));
+		return result;
+	}
+	private static String sortKey_(Path path) {
+		String result = path.getFileName().toString();
+		return result.endsWith(".gz") ? result.substring(0, result.length() - 3) : result;
+	}
+
+}
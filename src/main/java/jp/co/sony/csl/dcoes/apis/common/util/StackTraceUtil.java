@@ -1,20 +1,49 @@
 package jp.co.sony.csl.dcoes.apis.common.util;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * This is a trivial stack trace-related tool.
+ * Sets of class names to ignore are cached per combination of classes.
+ * On Java 9 or later {@code java.lang.StackWalker} is used via reflection so that the walk stops at the first frame found and, on Java 10 or later, {@link StackTraceElement}s are cached per call site.
+ * Otherwise the whole stack trace of the current thread is taken as before.
  * @author OES Project
   * スタックトレースまわりのどうってことないツール.
+ * スルーするクラス名の集合はクラスの組み合わせごとにキャッシュする.
+ * Java 9 以降ではリフレクション経由で {@code java.lang.StackWalker} を使い, 見つけた最初のフレームで走査を止め, Java 10 以降では {@link StackTraceElement} を呼び出し箇所ごとにキャッシュする.
+ * そうでなければ従来通り現在のスレッドのスタックトレース全体を取得する.
  * @author OES Project
  */
 public class StackTraceUtil {
 
 	private StackTraceUtil() { }
 
+	/**
+	 * Maximum number of cached entries of each cache.
+	 * Caches stop growing beyond this.
+	 * The value is {@value}.
+	 * 各キャッシュのエントリ数の最大値.
+	 * これを超えたらキャッシュを増やさない.
+	 * 値は {@value}.
+	 */
+	private static final int MAX_CACHE_SIZE_ = 1024;
+	private static final Set<String> DEFAULT_SKIP_ = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(Thread.class.getName(), StackTraceUtil.class.getName(), Walker_.class.getName())));
+	private static final Map<List<Class<?>>, Set<String>> skipCache_ = new ConcurrentHashMap<>();
+	private static final Map<Site_, StackTraceElement> siteCache_ = new ConcurrentHashMap<>();
+	private static final Walker_ WALKER_ = Walker_.create_();
+
 	/**
 	 * Gets the last element in stack trace of current thread.
 	 * @return last stacktraceelement object in stack trace of current thread
@@ -39,18 +68,19 @@ public class StackTraceUtil {
 	 *         ただし {@code classes} で指定したクラス内の処理は除く.
 	 */
 	public static StackTraceElement lastStackTrace(Class<?>[] classes) {
-		Map<String, Object> classNames = new HashMap<>();
-		classNames.put(Thread.class.getName(), Boolean.TRUE);
-		classNames.put(StackTraceUtil.class.getName(), Boolean.TRUE);
-		if (classes != null) {
-			for (Class<?> aClass : classes) {
-				classNames.put(aClass.getName(), Boolean.TRUE);
+		Set<String> classNames = skipSet_(classes);
+		if (WALKER_ != null) {
+			try {
+				return WALKER_.first_(classNames);
+			} catch (Throwable t) {
+				// Falls back to the whole stack trace
+				// スタックトレース全体にフォールバックする
 			}
 		}
 		for (StackTraceElement aSte : Thread.currentThread().getStackTrace()) {
 			// Ignores classes to be ignored
 			// スルーするクラスをスルーするー
-			if (classNames.containsKey(aSte.getClassName())) continue;
+			if (classNames.contains(aSte.getClassName())) continue;
 			return aSte;
 		}
 		return null;
@@ -80,19 +110,169 @@ public class StackTraceUtil {
 	 *         ただし {@code classes} で指定したクラス内の処理は除く.
 	 */
 	public static StackTraceElement[] stackTrace(Class<?>[] classes) {
-		Map<String, Object> classNames = new HashMap<>();
-		classNames.put(Thread.class.getName(), Boolean.TRUE);
-		classNames.put(StackTraceUtil.class.getName(), Boolean.TRUE);
-		if (classes != null) {
-			for (Class<?> aClass : classes) {
-				classNames.put(aClass.getName(), Boolean.TRUE);
-			}
-		}
+		Set<String> classNames = skipSet_(classes);
 		List<StackTraceElement> result = new ArrayList<>();
 		for (StackTraceElement aSte : Thread.currentThread().getStackTrace()) {
-			if (classNames.containsKey(aSte.getClassName())) continue;
+			if (classNames.contains(aSte.getClassName())) continue;
 			result.add(aSte);
 		}
 		return result.toArray(new StackTraceElement[result.size()]);
 	}
+
+	////
+
+	/**
+	 * Gets set of class names to ignore.
+	 * Cached per combination of classes.
+	 * @param classes array of classes to ignore
+	 * @return set of class names including {@link Thread} and this class
+	 * スルーするクラス名の集合を取得する.
+	 * クラスの組み合わせごとにキャッシュする.
+	 * @param classes スルーするクラスの配列
+	 * @return {@link Thread} とこのクラスを含むクラス名の集合
+	 */
+	private static Set<String> skipSet_(Class<?>[] classes) {
+		if (classes == null || classes.length == 0) return DEFAULT_SKIP_;
+		List<Class<?>> key = Arrays.asList(classes);
+		Set<String> result = skipCache_.get(key);
+		if (result == null) {
+			Set<String> classNames = new HashSet<>(DEFAULT_SKIP_);
+			for (Class<?> aClass : classes) {
+				classNames.add(aClass.getName());
+			}
+			result = Collections.unmodifiableSet(classNames);
+			if (skipCache_.size() < MAX_CACHE_SIZE_) {
+				// Copies the key so that later changes of the caller's array do not affect the cache
+				// 呼び出し元の配列が後で変更されてもキャッシュに影響しないようキーをコピーする
+				skipCache_.putIfAbsent(new ArrayList<>(key), result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Call site identified by class, method name, method descriptor and bytecode index.
+	 * The descriptor tells overloaded methods apart, which share a name and may share a bytecode index.
+	 * @author OES Project
+	 * クラス, メソッド名, メソッドディスクリプタ, バイトコードインデクスで識別する呼び出し箇所.
+	 * 名前が同じでバイトコードインデクスも同じになりうるオーバーロードをディスクリプタで区別する.
+	 * @author OES Project
+	 */
+	private static final class Site_ {
+		private final String className_;
+		private final String methodName_;
+		private final String descriptor_;
+		private final int bci_;
+		private final int hash_;
+		private Site_(String className, String methodName, String descriptor, int bci) {
+			className_ = className;
+			methodName_ = methodName;
+			descriptor_ = descriptor;
+			bci_ = bci;
+			hash_ = ((className.hashCode() * 31 + methodName.hashCode()) * 31 + descriptor.hashCode()) * 31 + bci;
+		}
+		@Override public int hashCode() {
+			return hash_;
+		}
+		@Override public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof Site_)) return false;
+			Site_ other = (Site_) obj;
+			return bci_ == other.bci_ && className_.equals(other.className_) && methodName_.equals(other.methodName_) && descriptor_.equals(other.descriptor_);
+		}
+	}
+
+	/**
+	 * Access to {@code java.lang.StackWalker} via reflection.
+	 * @author OES Project
+	 * リフレクション経由の {@code java.lang.StackWalker} へのアクセス.
+	 * @author OES Project
+	 */
+	private static final class Walker_ {
+		private final Object walker_;
+		private final MethodHandle walk_;
+		private final MethodHandle getClassName_;
+		private final MethodHandle getMethodName_;
+		private final MethodHandle getDescriptor_;
+		private final MethodHandle getByteCodeIndex_;
+		private final MethodHandle toStackTraceElement_;
+		private Walker_(Object walker, MethodHandle walk, MethodHandle getClassName, MethodHandle getMethodName, MethodHandle getDescriptor, MethodHandle getByteCodeIndex, MethodHandle toStackTraceElement) {
+			walker_ = walker;
+			walk_ = walk;
+			getClassName_ = getClassName;
+			getMethodName_ = getMethodName;
+			getDescriptor_ = getDescriptor;
+			getByteCodeIndex_ = getByteCodeIndex;
+			toStackTraceElement_ = toStackTraceElement;
+		}
+		/**
+		 * Creates instance.
+		 * @return instance.
+		 *         {@code null} if {@code java.lang.StackWalker} is not available
+		 * インスタンスを作成する.
+		 * @return インスタンス.
+		 *         {@code java.lang.StackWalker} が使えなければ {@code null}
+		 */
+		private static Walker_ create_() {
+			try {
+				Class<?> walkerClass = Class.forName("java.lang.StackWalker");
+				Class<?> frameClass = Class.forName("java.lang.StackWalker$StackFrame");
+				MethodHandles.Lookup lookup = MethodHandles.lookup();
+				Object walker = walkerClass.getMethod("getInstance").invoke(null);
+				MethodHandle walk = lookup.findVirtual(walkerClass, "walk", MethodType.methodType(Object.class, Function.class));
+				MethodHandle getClassName = lookup.findVirtual(frameClass, "getClassName", MethodType.methodType(String.class));
+				MethodHandle getMethodName = lookup.findVirtual(frameClass, "getMethodName", MethodType.methodType(String.class));
+				MethodHandle getDescriptor;
+				try {
+					getDescriptor = lookup.findVirtual(frameClass, "getDescriptor", MethodType.methodType(String.class));
+				} catch (NoSuchMethodException e) {
+					// StackFrame.getDescriptor() is available since Java 10 ; without it call sites are not cached
+					// StackFrame.getDescriptor() は Java 10 から. なければ呼び出し箇所をキャッシュしない
+					getDescriptor = null;
+				}
+				MethodHandle getByteCodeIndex = lookup.findVirtual(frameClass, "getByteCodeIndex", MethodType.methodType(int.class));
+				MethodHandle toStackTraceElement = lookup.findVirtual(frameClass, "toStackTraceElement", MethodType.methodType(StackTraceElement.class));
+				return new Walker_(walker, walk, getClassName, getMethodName, getDescriptor, getByteCodeIndex, toStackTraceElement);
+			} catch (Throwable t) {
+				return null;
+			}
+		}
+		/**
+		 * Finds the first frame not in {@code classNames}.
+		 * The walk stops there, and the {@link StackTraceElement} is reused for the same call site.
+		 * @param classNames class names to ignore
+		 * @return stacktraceelement object.
+		 *         {@code null} if not found
+		 * @throws Throwable reflection failure
+		 * {@code classNames} に含まれない最初のフレームを探す.
+		 * 走査はそこで止め, 同じ呼び出し箇所には {@link StackTraceElement} を再利用する.
+		 * @param classNames スルーするクラス名
+		 * @return stacktraceelement オブジェクト.
+		 *         見つからなければ {@code null}
+		 * @throws Throwable リフレクションの失敗
+		 */
+		private StackTraceElement first_(Set<String> classNames) throws Throwable {
+			Function<Stream<Object>, Object> fn = frames -> frames.filter(f -> !classNames.contains(invoke_(getClassName_, f))).findFirst().orElse(null);
+			Object frame = walk_.invoke(walker_, fn);
+			if (frame == null) return null;
+			if (getDescriptor_ == null) return (StackTraceElement) toStackTraceElement_.invoke(frame);
+			Site_ site = new Site_((String) getClassName_.invoke(frame), (String) getMethodName_.invoke(frame), (String) getDescriptor_.invoke(frame), (int) getByteCodeIndex_.invoke(frame));
+			StackTraceElement result = siteCache_.get(site);
+			if (result == null) {
+				result = (StackTraceElement) toStackTraceElement_.invoke(frame);
+				if (siteCache_.size() < MAX_CACHE_SIZE_) siteCache_.putIfAbsent(site, result);
+			}
+			return result;
+		}
+		private static Object invoke_(MethodHandle handle, Object frame) {
+			try {
+				return handle.invoke(frame);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new IllegalStateException(t);
+			}
+		}
+	}
+
 }
@@ -6,11 +6,24 @@ import io.vertx.core.Closeable;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.impl.VertxImpl;
+import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.core.shareddata.AsyncMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+
+import jp.co.sony.csl.dcoes.apis.common.ErrorAggregator;
+import jp.co.sony.csl.dcoes.apis.common.ErrorException;
+import jp.co.sony.csl.dcoes.apis.common.ErrorRecord;
+import jp.co.sony.csl.dcoes.apis.common.ReadOnlyJsonObject;
 import jp.co.sony.csl.dcoes.apis.common.ServiceAddress;
+import jp.co.sony.csl.dcoes.apis.common.UnitDataTable;
+import jp.co.sony.csl.dcoes.apis.common.util.EnumLookup;
 import jp.co.sony.csl.dcoes.apis.common.util.JulUtil;
+import jp.co.sony.csl.dcoes.apis.common.util.StringUtil;
 
 /**
  * This is the main common Verticle for APIS programs.
@@ -50,21 +63,33 @@ public abstract class AbstractStarter extends AbstractVerticle {
 							if (resShutdownLocal.succeeded()) {
 								startMulticastLogHandlerLevelService_(resMulticastLogHandlerLevel -> {
 									if (resMulticastLogHandlerLevel.succeeded()) {
-										vertx.deployVerticle(new WatchdogRestarting(), resWatchdogRestarting -> {
-											if (resWatchdogRestarting.succeeded()) {
-												doStart(resDoStart -> {
-													if (resDoStart.succeeded()) {
-														if (log.isInfoEnabled()) log.info("APIS version : " + AbstractStarter.APIS_VERSION);
-														if (log.isInfoEnabled()) log.info("communityId  : " + VertxConfig.communityId());
-														if (log.isInfoEnabled()) log.info("clusterId    : " + VertxConfig.clusterId());
-														if (log.isTraceEnabled()) log.trace("started : " + deploymentID());
-														startFuture.complete();
+										startLogLevelService_(resLogLevel -> {
+											if (resLogLevel.succeeded()) {
+												startErrorJournal_(resErrorJournal -> {
+													if (resErrorJournal.succeeded()) {
+														vertx.deployVerticle(new WatchdogRestarting(), resWatchdogRestarting -> {
+															if (resWatchdogRestarting.succeeded()) {
+																doStart(resDoStart -> {
+																	if (resDoStart.succeeded()) {
+																		if (log.isInfoEnabled()) log.info("APIS version : " + AbstractStarter.APIS_VERSION);
+																		if (log.isInfoEnabled()) log.info("communityId  : " + VertxConfig.communityId());
+																		if (log.isInfoEnabled()) log.info("clusterId    : " + VertxConfig.clusterId());
+																		if (log.isTraceEnabled()) log.trace("started : " + deploymentID());
+																		startFuture.complete();
+																	} else {
+																		startFuture.fail(resDoStart.cause());
+																	}
+																});
+															} else {
+																startFuture.fail(resWatchdogRestarting.cause());
+															}
+														});
 													} else {
-														startFuture.fail(resDoStart.cause());
+														startFuture.fail(resErrorJournal.cause());
 													}
 												});
 											} else {
-												startFuture.fail(resWatchdogRestarting.cause());
+												startFuture.fail(resLogLevel.cause());
 											}
 										});
 									} else {
@@ -102,6 +127,7 @@ public abstract class AbstractStarter extends AbstractVerticle {
 			} else {
 				log.error(resDoStop.cause());
 			}
+			ErrorAggregator.uninstall(vertx);
 			if (log.isTraceEnabled()) log.trace("stopped : " + deploymentID());
 			stopFuture.complete();
 		});
@@ -117,6 +143,11 @@ public abstract class AbstractStarter extends AbstractVerticle {
 	 */
 	private void init_(Handler<AsyncResult<Void>> completionHandler) {
 		initCloseHook_();
+		ErrorRecord.Codec.register(vertx);
+		ReadOnlyJsonObject.Codec.register(vertx);
+		UnitDataTable.Codec.register(vertx);
+		initErrorAggregator_();
+		initErrorException_();
 		vertx.exceptionHandler(t -> {
 			handleUnhandledException(t);
 		});
@@ -153,6 +184,37 @@ public abstract class AbstractStarter extends AbstractVerticle {
 		});
 		if (log.isInfoEnabled()) log.info("Vert.x close hook initialized");
 	}
+	/**
+	 * Installs {@link ErrorAggregator} according to the {@code errorAggregator} section of CONFIG.
+	 * - {@code errorAggregator.enabled} : whether to install [{@link Boolean}]. Default : {@code true}
+	 * - {@code errorAggregator.windowMsec} : window length [ms]. Default : {@link ErrorAggregator#DEFAULT_WINDOW_MSEC}
+	 * - {@code errorAggregator.maxKeys} : maximum number of distinct errors tracked at once. Default : {@link ErrorAggregator#DEFAULT_MAX_KEYS}
+	 * CONFIG の {@code errorAggregator} セクションに従って {@link ErrorAggregator} を設置する.
+	 * - {@code errorAggregator.enabled} : 設置するか否か [{@link Boolean}]. デフォルト : {@code true}
+	 * - {@code errorAggregator.windowMsec} : ウィンドウの長さ [ms]. デフォルト : {@link ErrorAggregator#DEFAULT_WINDOW_MSEC}
+	 * - {@code errorAggregator.maxKeys} : 同時に追跡する異なるエラーの最大数. デフォルト : {@link ErrorAggregator#DEFAULT_MAX_KEYS}
+	 */
+	private void initErrorAggregator_() {
+		if (VertxConfig.config.getBoolean(Boolean.TRUE, "errorAggregator", "enabled")) {
+			long windowMsec = VertxConfig.config.getLong(ErrorAggregator.DEFAULT_WINDOW_MSEC, "errorAggregator", "windowMsec");
+			int maxKeys = VertxConfig.config.getInteger(ErrorAggregator.DEFAULT_MAX_KEYS, "errorAggregator", "maxKeys");
+			ErrorAggregator.install(vertx, windowMsec, maxKeys);
+		}
+	}
+	/**
+	 * Configures stack trace capture of {@link ErrorException} according to the {@code errorException} section of CONFIG.
+	 * - {@code errorException.capturePolicy} : {@link ErrorException.CapturePolicy} [{@link String}]. Default : {@code NONE}
+	 * - {@code errorException.sampleEvery} : sampling interval of {@code SAMPLED}. Default : {@link ErrorException#DEFAULT_SAMPLE_EVERY}
+	 * CONFIG の {@code errorException} セクションに従って {@link ErrorException} のスタックトレース取得を設定する.
+	 * - {@code errorException.capturePolicy} : {@link ErrorException.CapturePolicy} [{@link String}]. デフォルト : {@code NONE}
+	 * - {@code errorException.sampleEvery} : {@code SAMPLED} のサンプリング間隔. デフォルト : {@link ErrorException#DEFAULT_SAMPLE_EVERY}
+	 */
+	private void initErrorException_() {
+		String policy = VertxConfig.config.getString(JsonObjectUtil.defaultString("NONE"), "errorException", "capturePolicy");
+		int sampleEvery = VertxConfig.config.getInteger(ErrorException.DEFAULT_SAMPLE_EVERY, "errorException", "sampleEvery");
+		ErrorException.configure(new EnumLookup<>(ErrorException.CapturePolicy.class, ErrorException.CapturePolicy.NONE, log).get(policy), sampleEvery);
+		if (log.isInfoEnabled()) log.info("ErrorException capture policy : " + ErrorException.capturePolicy());
+	}
 	private static final String MAP_NAME = AbstractStarter.class.getName();
 	private static final String MAP_KEY_APIS_VERSION = "apisVersion";
 	/**
@@ -237,6 +299,91 @@ public abstract class AbstractStarter extends AbstractVerticle {
 		}).completionHandler(completionHandler);
 	}
 
+	private final Map<String, Long> logLevelRevertTimerIds_ = new HashMap<>();
+	/**
+	 * Starts {@link io.vertx.core.eventbus.EventBus} service.
+	 * Address : {@link ServiceAddress#logLevel()}
+	 * Scope : Global
+	 * Process : Updates log level of a logger or of handlers of a logger.
+	 * 　　   Reverts automatically after {@code ttlMsec} if specified.
+	 * 　　   A newer request for the same target cancels the pending revert.
+	 * Message body : Setting [{@link JsonObject}]
+	 * 　　　　　　　　   See {@link ServiceAddress#logLevel()}
+	 * Message header : None
+	 * Response : {@code "ok"} if successful
+	 * 　　　　　   Fail if error occurs.
+	 * @param completionHandler the completion handler
+	 * {@link io.vertx.core.eventbus.EventBus} サービス起動.
+	 * アドレス : {@link ServiceAddress#logLevel()}
+	 * 範囲 : グローバル
+	 * 処理 : ロガーまたはロガーが持つハンドラのログレベルを変更する.
+	 * 　　   {@code ttlMsec} の指定があればその時間の後に自動的に元に戻す.
+	 * 　　   同じ対象への新しい要求は保留中の復帰を取り消す.
+	 * メッセージボディ : 設定 [{@link JsonObject}]
+	 * 　　　　　　　　   {@link ServiceAddress#logLevel()} 参照
+	 * メッセージヘッダ : なし
+	 * レスポンス : 成功したら {@code "ok"}
+	 * 　　　　　   エラーが起きたら fail.
+	 * @param completionHandler the completion handler
+	 */
+	private void startLogLevelService_(Handler<AsyncResult<Void>> completionHandler) {
+		vertx.eventBus().<JsonObject>consumer(ServiceAddress.logLevel(), req -> {
+			try {
+				JsonObject body = (req.body() != null) ? req.body() : new JsonObject();
+				String logger = JsonObjectUtil.getString(body, JsonObjectUtil.defaultString(""), "logger");
+				String handler = StringUtil.nullIfEmpty(body.getString("handler"));
+				Level level = JulUtil.parseLevel(body.getString("level"));
+				Long ttlMsec = body.getLong("ttlMsec");
+				if (log.isInfoEnabled()) log.info("setting log level of logger : '" + logger + "'" + ((handler != null) ? ", handler : " + handler : "") + " to : " + level + ((ttlMsec != null) ? " for " + ttlMsec + " ms" : "") + " ...");
+				setLogLevel_(logger, handler, level);
+				String key = logger + '\n' + ((handler != null) ? handler : "");
+				Long timerId = logLevelRevertTimerIds_.remove(key);
+				if (timerId != null) vertx.cancelTimer(timerId);
+				if (level != null && ttlMsec != null && 0 < ttlMsec) {
+					logLevelRevertTimerIds_.put(key, vertx.setTimer(ttlMsec, t -> {
+						if (logLevelRevertTimerIds_.remove(key, t)) {
+							if (log.isInfoEnabled()) log.info("reverting log level of logger : '" + logger + "'" + ((handler != null) ? ", handler : " + handler : "") + " ...");
+							setLogLevel_(logger, handler, null);
+						}
+					}));
+				}
+				req.reply("ok");
+			} catch (Exception e) {
+				log.error(e);
+				req.fail(-1, e.getMessage());
+			}
+		}).completionHandler(completionHandler);
+	}
+	private void setLogLevel_(String logger, String handler, Level level) {
+		if (handler != null) {
+			JulUtil.setHandlerLevel(logger, handler, level);
+		} else {
+			JulUtil.setLoggerLevel(logger, level);
+		}
+	}
+
+	/**
+	 * Deploys {@link ErrorJournalService} if {@code CONFIG.errorJournal.enabled} is {@code true}.
+	 * Not deployed by default.
+	 * @param completionHandler the completion handler
+	 * {@code CONFIG.errorJournal.enabled} が {@code true} なら {@link ErrorJournalService} を起動する.
+	 * デフォルトでは起動しない.
+	 * @param completionHandler the completion handler
+	 */
+	private void startErrorJournal_(Handler<AsyncResult<Void>> completionHandler) {
+		if (VertxConfig.config.getBoolean(Boolean.FALSE, "errorJournal", "enabled")) {
+			vertx.deployVerticle(new ErrorJournalService(), res -> {
+				if (res.succeeded()) {
+					completionHandler.handle(Future.succeededFuture());
+				} else {
+					completionHandler.handle(Future.failedFuture(res.cause()));
+				}
+			});
+		} else {
+			completionHandler.handle(Future.succeededFuture());
+		}
+	}
+
 	/**
 	 * Starts {@link io.vertx.core.eventbus.EventBus} service.
 	 * Address : {@link ServiceAddress#shutdownLocal()}
@@ -2,33 +2,75 @@ package jp.co.sony.csl.dcoes.apis.common.util.vertx;
 
 import io.vertx.core.logging.VertxLoggerFormatter;
 
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.logging.LogRecord;
 
+import jp.co.sony.csl.dcoes.apis.common.util.AsyncLogDispatcher;
+
 /**
  * Sets dedicated log format for APIS.
  * The program identification string is output.
  * Parsed by {@link jp.co.sony.csl.dcoes.apis.tools.log.util.ApisVertxLogParser}.
+ * The output is the same as adding the program identification string to {@link VertxLoggerFormatter#format(LogRecord)}, but it is built in a per-thread reusable {@link StringBuilder} so that each line is copied only once.
+ * Timestamps are rendered once per second and the milliseconds are appended, and the last rendering is reused within the same millisecond.
  * @author OES Project
  * APIS 専用のログフォーマット.
  * プログラム識別文字列が出力される.
  * {@link jp.co.sony.csl.dcoes.apis.tools.log.util.ApisVertxLogParser} でパースされる.
+ * 出力は {@link VertxLoggerFormatter#format(LogRecord)} にプログラム識別文字列を追加したものと同じだが, 各行のコピーが一度で済むようスレッドごとに再利用する {@link StringBuilder} で組み立てる.
+ * タイムスタンプは秒ごとに一度だけ描画してミリ秒を付け足し, 同じミリ秒内では前回の描画を再利用する.
  * @author OES Project
  */
 public class ApisLoggerFormatter extends VertxLoggerFormatter {
 
-	private String PROGRAM_ID_ = null;
+	private static final String LINE_SEPARATOR_ = System.lineSeparator();
+	/**
+	 * Builders larger than this are not kept for reuse so that one huge record does not pin memory.
+	 * The value is {@value}.
+	 * 一つの巨大なレコードがメモリを占有し続けないよう, これより大きなビルダは再利用のために保持しない.
+	 * 値は {@value}.
+	 */
+	private static final int MAX_RETAINED_CAPACITY_ = 16 * 1024;
+	private static final ThreadLocal<Context_> CONTEXT_ = ThreadLocal.withInitial(Context_::new);
+
+	private volatile String PROGRAM_ID_ = null;
 
 	/**
 	 * Adds {@link #programId() program identification string} to parent class {@link VertxLoggerFormatter#format(LogRecord) result} and outputs.
+	 * When called on the background thread of {@link AsyncLogDispatcher}, the name of the thread which logged the record is output.
 	 * @param record {@inheritDoc}
 	 * @return {@inheritDoc}
 	 * 親クラスの {@link VertxLoggerFormatter#format(LogRecord) 結果} に {@link #programId() プログラム識別文字列} を追加して出力する.
+	 * {@link AsyncLogDispatcher} のバックグラウンドスレッドで呼ばれた場合はレコードをログ出力したスレッドの名前を出力する.
 	 * @param record {@inheritDoc}
 	 * @return {@inheritDoc}
 	 */
 	@Override public String format(final LogRecord record) {
-		String result = super.format(record);
-		return "[[[" + programId() + "]]] " + result;
+		Context_ context = CONTEXT_.get();
+		StringBuilder sb = context.builder_;
+		sb.setLength(0);
+		sb.append("[[[").append(programId()).append("]]] ");
+		sb.append('[').append(AsyncLogDispatcher.callerThreadName()).append("] ");
+		context.appendTimestamp_(sb, record.getMillis());
+		sb.append(' ').append(record.getLevel()).append(" [").append(record.getLoggerName()).append("]  ");
+		sb.append(record.getMessage()).append(LINE_SEPARATOR_);
+		if (record.getThrown() != null) {
+			try (PrintWriter pw = new PrintWriter(new BuilderWriter_(sb))) {
+				record.getThrown().printStackTrace(pw);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		String result = sb.toString();
+		if (MAX_RETAINED_CAPACITY_ < sb.capacity()) {
+			context.builder_ = new StringBuilder(256);
+		}
+		return result;
 	}
 
 	/**
@@ -40,8 +82,94 @@ public class ApisLoggerFormatter extends VertxLoggerFormatter {
 	 * @return プログラム識別文字列
 	 */
 	protected String programId() {
-		if (PROGRAM_ID_ == null) PROGRAM_ID_ = VertxConfig.programId();
-		return (PROGRAM_ID_ != null) ? PROGRAM_ID_ : "";
+		String result = PROGRAM_ID_;
+		if (result == null) {
+			result = VertxConfig.programId();
+			PROGRAM_ID_ = result;
+		}
+		return (result != null) ? result : "";
+	}
+
+	////
+
+	/**
+	 * Per-thread working area.
+	 * @author OES Project
+	 * スレッドごとの作業領域.
+	 * @author OES Project
+	 */
+	private static class Context_ {
+		private StringBuilder builder_ = new StringBuilder(256);
+		private long millis_ = Long.MIN_VALUE;
+		private String timestamp_;
+		private long second_ = Long.MIN_VALUE;
+		private String secondPart_;
+		private String offsetPart_;
+		/**
+		 * Appends timestamp in {@link DateTimeFormatter#ISO_OFFSET_DATE_TIME} format.
+		 * The fraction is printed with as few digits as needed and omitted if zero, as that formatter does.
+		 * @param sb builder to append to
+		 * @param millis time [ms]
+		 * {@link DateTimeFormatter#ISO_OFFSET_DATE_TIME} 形式のタイムスタンプを追加する.
+		 * 小数部はそのフォーマッタと同じく必要な桁数だけ出力し, ゼロなら省略する.
+		 * @param sb 追加先のビルダ
+		 * @param millis 時刻 [ms]
+		 */
+		private void appendTimestamp_(StringBuilder sb, long millis) {
+			if (millis != millis_) {
+				long second = Math.floorDiv(millis, 1000L);
+				if (second != second_) {
+					OffsetDateTime odt = OffsetDateTime.ofInstant(Instant.ofEpochSecond(second), ZoneId.systemDefault());
+					secondPart_ = odt.toLocalDateTime().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+					offsetPart_ = odt.getOffset().getId();
+					second_ = second;
+				}
+				int ms = (int) Math.floorMod(millis, 1000L);
+				StringBuilder ts = new StringBuilder(secondPart_.length() + offsetPart_.length() + 4);
+				ts.append(secondPart_);
+				if (ms != 0) {
+					ts.append('.').append((char) ('0' + ms / 100));
+					if (ms % 100 != 0) {
+						ts.append((char) ('0' + ms / 10 % 10));
+						if (ms % 10 != 0) ts.append((char) ('0' + ms % 10));
+					}
+				}
+				ts.append(offsetPart_);
+				timestamp_ = ts.toString();
+				millis_ = millis;
+			}
+			sb.append(timestamp_);
+		}
+	}
+
+	/**
+	 * {@link Writer} which appends to a {@link StringBuilder}.
+	 * Used to print stack trace without an intermediate copy.
+	 * @author OES Project
+	 * {@link StringBuilder} に追加する {@link Writer}.
+	 * スタックトレースを中間コピーなしで出力するために使う.
+	 * @author OES Project
+	 */
+	private static class BuilderWriter_ extends Writer {
+		private final StringBuilder sb_;
+		private BuilderWriter_(StringBuilder sb) {
+			sb_ = sb;
+		}
+		@Override public void write(char[] cbuf, int off, int len) {
+			sb_.append(cbuf, off, len);
+		}
+		@Override public void write(String str, int off, int len) {
+			sb_.append(str, off, off + len);
+		}
+		@Override public void write(int c) {
+			sb_.append((char) c);
+		}
+		@Override public void flush() {
+			// nop
+		}
+		@Override public void close() {
+			// nop
+		}
 	}
 
 }
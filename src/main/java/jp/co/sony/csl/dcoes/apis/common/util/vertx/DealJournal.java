@@ -0,0 +1,633 @@
+package jp.co.sony.csl.dcoes.apis.common.util.vertx;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import jp.co.sony.csl.dcoes.apis.common.Deal;
+import jp.co.sony.csl.dcoes.apis.common.util.DateTimeUtil;
+
+/**
+ * Append-only persistence of Power Sharing information, for saving Power Sharings received via {@link jp.co.sony.csl.dcoes.apis.common.ServiceAddress.Mediator#dealLogging()}.
+ * Callers usually append only Power Sharings for which {@link Deal#isSaveworthy(JsonObject)} holds.
+ * Records are appended to memory-mapped segment files {@code deal-NNNNNNNNNN.seg} in a directory, and a new segment is started when the current one is full.
+ * Appending only copies into the mapping ; {@link MappedByteBuffer#force()} is done on a worker thread for all records appended meanwhile at once ( group commit ), and then the completion handlers are called.
+ * Records are indexed by Power Sharing ID and by the date of {@link Deal#createDateTime(JsonObject)}, and a later record of the same Power Sharing ID supersedes earlier ones.
+ * {@link #compact(LocalDate, Handler)} drops old Power Sharings and rewrites or deletes sealed segments which are mostly superseded.
+ * The drop date is kept in file {@code deal.drop} as a watermark, and records of Power Sharings created before it are never indexed again, even after reopening.
+ * Record format : length [int] , CRC32 [int] , epoch day [int] , Power Sharing ID length [short] , Power Sharing ID [UTF-8] , Power Sharing information [JSON UTF-8].
+ * A record with a length of zero or a wrong CRC ends a segment, so a write torn by a crash is discarded on {@link #open(Vertx, Path, long, long, Handler) open}.
+ * @author OES Project
+ * {@link jp.co.sony.csl.dcoes.apis.common.ServiceAddress.Mediator#dealLogging()} で受け取る融通を保存するための追記型の融通情報の永続化.
+ * 呼び出し側は通常 {@link Deal#isSaveworthy(JsonObject)} が成り立つ融通だけを追加する.
+ * レコードはディレクトリ内のメモリマップしたセグメントファイル {@code deal-NNNNNNNNNN.seg} に追記し, 現在のセグメントが一杯になると新しいセグメントを始める.
+ * 追記はマップへのコピーだけで, {@link MappedByteBuffer#force()} はその間に追記された全てのレコードに対してワーカスレッドで一度に行い ( グループコミット ), その後完了ハンドラを呼ぶ.
+ * レコードは融通 ID と {@link Deal#createDateTime(JsonObject)} の日付で索引し, 同じ融通 ID の後のレコードは前のものに優先する.
+ * {@link #compact(LocalDate, Handler)} は古い融通を捨て, 大半が上書きされた封印済みセグメントを書き直すか削除する.
+ * 捨てる日付はウォータマークとしてファイル {@code deal.drop} に保持し, それより前に作成された融通のレコードは開き直した後も二度と索引しない.
+ * レコード形式 : 長さ [int] , CRC32 [int] , エポック日 [int] , 融通 ID の長さ [short] , 融通 ID [UTF-8] , 融通情報 [JSON UTF-8].
+ * 長さがゼロまたは CRC が誤っているレコードでセグメントは終わるので, クラッシュで途切れた書き込みは {@link #open(Vertx, Path, long, long, Handler) open} 時に捨てられる.
+ * @author OES Project
+ */
+public class DealJournal {
+	private static final Logger log = LoggerFactory.getLogger(DealJournal.class);
+
+	/**
+	 * Default segment size [byte].
+	 * The value is {@value}.
+	 * セグメントサイズのデフォルト [byte].
+	 * 値は {@value}.
+	 */
+	public static final long DEFAULT_SEGMENT_SIZE = 16L * 1024L * 1024L;
+	/**
+	 * Default delay from the first append to the commit [ms].
+	 * Records appended within this delay are committed together.
+	 * The value is {@value}.
+	 * 最初の追記からコミットまでの遅延のデフォルト [ms].
+	 * この間に追記されたレコードはまとめてコミットされる.
+	 * 値は {@value}.
+	 */
+	public static final long DEFAULT_COMMIT_DELAY_MSEC = 10L;
+
+	private static final String PREFIX_ = "deal-";
+	private static final String SUFFIX_ = ".seg";
+	private static final int HEADER_SIZE_ = 8;
+	private static final String DROP_FILE_ = "deal.drop";
+
+	/**
+	 * Opens journal in directory.
+	 * Existing segments are scanned to rebuild the indexes.
+	 * @param vertx the {@link Vertx} instance, cannot be {@code null}
+	 * @param dir directory. Created if not exists
+	 * @param segmentSize segment size [byte]
+	 * @param commitDelayMsec delay from the first append to the commit [ms]
+	 * @param completionHandler the completion handler
+	 * ディレクトリのジャーナルを開く.
+	 * 既存のセグメントを走査して索引を再構築する.
+	 * @param vertx the {@link Vertx} instance, cannot be {@code null}
+	 * @param dir ディレクトリ. なければ作成する
+	 * @param segmentSize セグメントサイズ [byte]
+	 * @param commitDelayMsec 最初の追記からコミットまでの遅延 [ms]
+	 * @param completionHandler the completion handler
+	 */
+	public static void open(Vertx vertx, Path dir, long segmentSize, long commitDelayMsec, Handler<AsyncResult<DealJournal>> completionHandler) {
+		vertx.<DealJournal>executeBlocking(future -> {
+			try {
+				DealJournal result = new DealJournal(vertx, dir, segmentSize, commitDelayMsec);
+				result.recover_();
+				future.complete(result);
+			} catch (Exception e) {
+				future.fail(e);
+			}
+		}, false, completionHandler);
+	}
+
+	////
+
+	private final Vertx vertx_;
+	private final Path dir_;
+	private final int segmentSize_;
+	private final long commitDelayMsec_;
+	private final TreeMap<Integer, Segment_> segments_ = new TreeMap<>();
+	private final Map<String, Location_> byDealId_ = new HashMap<>();
+	private final TreeMap<Integer, Set<String>> byDate_ = new TreeMap<>();
+	private final Set<Segment_> dirty_ = new LinkedHashSet<>();
+	private Segment_ active_;
+	private List<Handler<AsyncResult<Void>>> pending_ = new ArrayList<>();
+	private boolean commitScheduled_ = false;
+	private boolean compacting_ = false;
+	private boolean closed_ = false;
+	private long commits_ = 0L;
+	private int dropBefore_ = Integer.MIN_VALUE;
+
+	private DealJournal(Vertx vertx, Path dir, long segmentSize, long commitDelayMsec) {
+		if (segmentSize <= HEADER_SIZE_ || Integer.MAX_VALUE < segmentSize) throw new IllegalArgumentException("invalid segmentSize : " + segmentSize);
+		vertx_ = vertx;
+		dir_ = dir;
+		segmentSize_ = (int) segmentSize;
+		commitDelayMsec_ = commitDelayMsec;
+	}
+
+	/**
+	 * Appends Power Sharing information.
+	 * {@code completionHandler} is called when the record has been forced to storage.
+	 * @param deal jsonobject object of target Power Sharing information
+	 * @param completionHandler the completion handler
+	 * 融通情報を追記する.
+	 * {@code completionHandler} はレコードがストレージに書き出された時に呼ばれる.
+	 * @param deal 対象の融通情報 jsonobject オブジェクト
+	 * @param completionHandler the completion handler
+	 */
+	public void append(JsonObject deal, Handler<AsyncResult<Void>> completionHandler) {
+		String dealId = Deal.dealId(deal);
+		if (dealId == null) {
+			completionHandler.handle(Future.failedFuture("no dealId : " + deal));
+			return;
+		}
+		byte[] id = dealId.getBytes(StandardCharsets.UTF_8);
+		byte[] json = deal.encode().getBytes(StandardCharsets.UTF_8);
+		int length = 4 + 2 + id.length + json.length;
+		if (0xFFFF < id.length || segmentSize_ < HEADER_SIZE_ + length) {
+			completionHandler.handle(Future.failedFuture("deal too large : " + dealId + " ; " + length + " bytes"));
+			return;
+		}
+		int epochDay = epochDay_(deal);
+		synchronized (this) {
+			if (closed_) {
+				completionHandler.handle(Future.failedFuture("journal closed"));
+				return;
+			}
+			if (segmentSize_ < active_.position_ + HEADER_SIZE_ + length) {
+				try {
+					roll_();
+				} catch (IOException e) {
+					completionHandler.handle(Future.failedFuture(e));
+					return;
+				}
+			}
+			int offset = active_.position_;
+			ByteBuffer body = active_.buffer_.duplicate();
+			body.position(offset + HEADER_SIZE_);
+			body.putInt(epochDay).putShort((short) id.length).put(id).put(json);
+			body.flip().position(offset + HEADER_SIZE_);
+			CRC32 crc = new CRC32();
+			crc.update(body);
+			active_.buffer_.putInt(offset + 4, (int) crc.getValue());
+			// The length is written last, so that a record is visible only when complete
+			// 長さを最後に書くので, レコードは完全になって初めて見える
+			active_.buffer_.putInt(offset, length);
+			active_.position_ += HEADER_SIZE_ + length;
+			index_(active_, offset, epochDay, dealId);
+			dirty_.add(active_);
+			pending_.add(completionHandler);
+			scheduleCommit_();
+		}
+	}
+
+	/**
+	 * Gets the latest Power Sharing information of Power Sharing ID.
+	 * @param dealId Power Sharing ID
+	 * @return jsonobject object of Power Sharing information.
+	 *         {@code null} if not found
+	 * 融通 ID の最新の融通情報を取得する.
+	 * @param dealId 融通 ID
+	 * @return 融通情報 jsonobject オブジェクト.
+	 *         見つからなければ {@code null}
+	 */
+	public JsonObject get(String dealId) {
+		Location_ location;
+		synchronized (this) {
+			location = byDealId_.get(dealId);
+		}
+		return (location != null) ? read_(location) : null;
+	}
+	/**
+	 * Gets the latest Power Sharing information of all Power Sharings created on a date.
+	 * Reads directly from the mappings without touching the filesystem.
+	 * @param date date of {@link Deal#createDateTime(JsonObject)}
+	 * @return list of jsonobject objects of Power Sharing information in order of first append
+	 * ある日付に作成された全ての融通の最新の融通情報を取得する.
+	 * ファイルシステムに触れずマップから直接読む.
+	 * @param date {@link Deal#createDateTime(JsonObject)} の日付
+	 * @return 最初に追記された順の融通情報 jsonobject オブジェクトのリスト
+	 */
+	public List<JsonObject> replay(LocalDate date) {
+		List<Location_> locations = new ArrayList<>();
+		synchronized (this) {
+			Set<String> dealIds = byDate_.get((int) date.toEpochDay());
+			if (dealIds != null) {
+				for (String dealId : dealIds) locations.add(byDealId_.get(dealId));
+			}
+		}
+		List<JsonObject> result = new ArrayList<>(locations.size());
+		for (Location_ location : locations) result.add(read_(location));
+		return result;
+	}
+
+	/**
+	 * Gets statistics.
+	 * - {@code deals} : number of Power Sharing IDs indexed
+	 * - {@code dates} : number of dates indexed
+	 * - {@code segments} : number of segments
+	 * - {@code commits} : number of group commits so far
+	 * @return statistics
+	 * 統計を取得する.
+	 * - {@code deals} : 索引されている融通 ID の数
+	 * - {@code dates} : 索引されている日付の数
+	 * - {@code segments} : セグメントの数
+	 * - {@code commits} : これまでのグループコミットの回数
+	 * @return 統計
+	 */
+	public synchronized JsonObject stats() {
+		return new JsonObject()
+				.put("deals", byDealId_.size())
+				.put("dates", byDate_.size())
+				.put("segments", segments_.size())
+				.put("commits", commits_);
+	}
+
+	/**
+	 * Compacts sealed segments.
+	 * Power Sharings created before {@code dropBefore} are removed from the indexes first.
+	 * {@code dropBefore} is persisted as the drop watermark beforehand, so the drop survives reopening, and Power Sharings created before it are not indexed even if appended later.
+	 * The watermark only moves forward.
+	 * Then sealed segments with no live record are deleted, and those with less than half live records are rewritten with only the live ones.
+	 * The active segment is not touched.
+	 * @param dropBefore date before which Power Sharings are dropped. Nothing is dropped if {@code null}
+	 * @param completionHandler the completion handler. Receives number of segments deleted or rewritten
+	 * 封印済みセグメントをコンパクションする.
+	 * まず {@code dropBefore} より前に作成された融通を索引から削除する.
+	 * その前に {@code dropBefore} を捨てる日付のウォータマークとして永続化するので, 削除は開き直しても残り, それより前に作成された融通は後で追記されても索引しない.
+	 * ウォータマークは前にしか進まない.
+	 * 次に有効なレコードのない封印済みセグメントを削除し, 有効なレコードが半分未満のものは有効なものだけで書き直す.
+	 * 現在のセグメントには触れない.
+	 * @param dropBefore これより前の融通を捨てる日付. {@code null} なら何も捨てない
+	 * @param completionHandler the completion handler. 削除または書き直したセグメントの数を受け取る
+	 */
+	public void compact(LocalDate dropBefore, Handler<AsyncResult<Integer>> completionHandler) {
+		synchronized (this) {
+			if (compacting_) {
+				completionHandler.handle(Future.failedFuture("compaction in progress"));
+				return;
+			}
+			compacting_ = true;
+		}
+		vertx_.<Integer>executeBlocking(future -> {
+			try {
+				future.complete(compact_(dropBefore));
+			} catch (Exception e) {
+				future.fail(e);
+			} finally {
+				synchronized (this) {
+					compacting_ = false;
+				}
+			}
+		}, false, completionHandler);
+	}
+
+	/**
+	 * Commits pending records and stops accepting appends.
+	 * @param completionHandler the completion handler
+	 * 保留中のレコードをコミットし追記の受け付けを止める.
+	 * @param completionHandler the completion handler
+	 */
+	public void close(Handler<AsyncResult<Void>> completionHandler) {
+		synchronized (this) {
+			closed_ = true;
+			pending_.add(completionHandler);
+			if (!commitScheduled_) {
+				commitScheduled_ = true;
+				vertx_.runOnContext(v -> commit_());
+			}
+		}
+	}
+
+	////
+
+	private static int epochDay_(JsonObject deal) {
+		LocalDateTime created = DateTimeUtil.toLocalDateTime(Deal.createDateTime(deal));
+		return (int) ((created != null) ? created.toLocalDate() : LocalDate.now()).toEpochDay();
+	}
+
+	private void index_(Segment_ segment, int offset, int epochDay, String dealId) {
+		segment.records_++;
+		if (epochDay < dropBefore_) {
+			// A dropped Power Sharing is not indexed, and its latest record supersedes earlier ones as usual
+			// 捨てた融通は索引せず, 通常通りその最新のレコードが前のものに優先する
+			Location_ old = byDealId_.remove(dealId);
+			if (old != null) unindexDate_(old.epochDay_, dealId);
+			return;
+		}
+		Location_ old = byDealId_.put(dealId, new Location_(segment, offset, epochDay));
+		if (old != null && old.epochDay_ != epochDay) unindexDate_(old.epochDay_, dealId);
+		byDate_.computeIfAbsent(epochDay, k -> new LinkedHashSet<>()).add(dealId);
+	}
+	private void unindexDate_(int epochDay, String dealId) {
+		Set<String> dealIds = byDate_.get(epochDay);
+		if (dealIds != null) {
+			dealIds.remove(dealId);
+			if (dealIds.isEmpty()) byDate_.remove(epochDay);
+		}
+	}
+
+	private static JsonObject read_(Location_ location) {
+		ByteBuffer b = location.segment_.buffer_.duplicate();
+		b.position(location.offset_);
+		int length = b.getInt();
+		b.getInt();
+		b.getInt();
+		int idLength = b.getShort() & 0xFFFF;
+		b.position(b.position() + idLength);
+		byte[] json = new byte[length - 4 - 2 - idLength];
+		b.get(json);
+		return new JsonObject(new String(json, StandardCharsets.UTF_8));
+	}
+
+	private void scheduleCommit_() {
+		if (!commitScheduled_) {
+			commitScheduled_ = true;
+			if (0 < commitDelayMsec_) {
+				vertx_.setTimer(commitDelayMsec_, t -> commit_());
+			} else {
+				vertx_.runOnContext(v -> commit_());
+			}
+		}
+	}
+	/**
+	 * Forces dirty segments on a worker thread and calls the completion handlers waiting for them.
+	 * Records appended while forcing wait for the next commit.
+	 * 書き換えたセグメントをワーカスレッドで書き出し, それを待つ完了ハンドラを呼ぶ.
+	 * 書き出し中に追記されたレコードは次のコミットを待つ.
+	 */
+	private void commit_() {
+		List<Handler<AsyncResult<Void>>> handlers;
+		List<Segment_> segments;
+		synchronized (this) {
+			handlers = pending_;
+			pending_ = new ArrayList<>();
+			segments = new ArrayList<>(dirty_);
+			dirty_.clear();
+		}
+		vertx_.<Void>executeBlocking(future -> {
+			for (Segment_ segment : segments) {
+				segment.buffer_.force();
+			}
+			future.complete();
+		}, true, res -> {
+			synchronized (this) {
+				commits_++;
+				commitScheduled_ = false;
+				if (!pending_.isEmpty()) scheduleCommit_();
+			}
+			if (res.failed()) log.error(res.cause());
+			for (Handler<AsyncResult<Void>> handler : handlers) {
+				handler.handle(res);
+			}
+		});
+	}
+
+	private Path path_(int id) {
+		return dir_.resolve(String.format("%s%010d%s", PREFIX_, id, SUFFIX_));
+	}
+	private void roll_() throws IOException {
+		Segment_ segment = map_(active_.id_ + 1, true);
+		segments_.put(segment.id_, segment);
+		active_ = segment;
+		if (log.isInfoEnabled()) log.info("new segment : " + segment.path_);
+	}
+	private Segment_ map_(int id, boolean writable) throws IOException {
+		Path path = path_(id);
+		if (writable) {
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				long size = Math.max(segmentSize_, channel.size());
+				return new Segment_(id, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+			}
+		} else {
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				return new Segment_(id, path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			}
+		}
+	}
+
+	/**
+	 * Maps existing segments and rebuilds the indexes.
+	 * Records of Power Sharings created before the drop watermark are skipped.
+	 * The last segment becomes the active one, and everything after its last valid record is zeroed.
+	 * 既存のセグメントをマップし索引を再構築する.
+	 * 捨てる日付のウォータマークより前に作成された融通のレコードは飛ばす.
+	 * 最後のセグメントを現在のセグメントとし, その最後の有効なレコード以降をゼロにする.
+	 */
+	private synchronized void recover_() throws IOException {
+		Files.createDirectories(dir_);
+		Path drop = dir_.resolve(DROP_FILE_);
+		if (Files.exists(drop)) {
+			byte[] bytes = Files.readAllBytes(drop);
+			if (bytes.length == 4) {
+				dropBefore_ = ByteBuffer.wrap(bytes).getInt();
+			} else {
+				if (log.isWarnEnabled()) log.warn("ignoring broken drop watermark : " + drop);
+			}
+		}
+		List<Integer> ids = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir_, PREFIX_ + "*" + SUFFIX_)) {
+			for (Path path : stream) {
+				String name = path.getFileName().toString();
+				try {
+					ids.add(Integer.parseInt(name.substring(PREFIX_.length(), name.length() - SUFFIX_.length())));
+				} catch (NumberFormatException e) {
+					if (log.isWarnEnabled()) log.warn("ignoring file : " + path);
+				}
+			}
+		}
+		ids.sort(null);
+		for (int i = 0; i < ids.size(); i++) {
+			boolean last = (i == ids.size() - 1);
+			Segment_ segment = map_(ids.get(i), last);
+			scan_(segment);
+			segments_.put(segment.id_, segment);
+			if (last) active_ = segment;
+		}
+		if (active_ == null) {
+			active_ = map_(0, true);
+			segments_.put(active_.id_, active_);
+		}
+		for (int i = active_.position_; i < active_.buffer_.limit(); i++) {
+			active_.buffer_.put(i, (byte) 0);
+		}
+		if (log.isInfoEnabled()) log.info("opened " + dir_ + " ; " + stats());
+	}
+	private void scan_(Segment_ segment) {
+		ByteBuffer b = segment.buffer_.duplicate();
+		int limit = b.limit();
+		int offset = 0;
+		while (offset + HEADER_SIZE_ <= limit) {
+			int length = b.getInt(offset);
+			if (length <= 6 || limit < offset + HEADER_SIZE_ + length) break;
+			b.limit(offset + HEADER_SIZE_ + length).position(offset + HEADER_SIZE_);
+			CRC32 crc = new CRC32();
+			crc.update(b);
+			b.limit(limit);
+			if ((int) crc.getValue() != b.getInt(offset + 4)) {
+				if (log.isWarnEnabled()) log.warn("discarding torn record at " + segment.path_ + " : " + offset);
+				break;
+			}
+			int epochDay = b.getInt(offset + HEADER_SIZE_);
+			int idLength = b.getShort(offset + HEADER_SIZE_ + 4) & 0xFFFF;
+			byte[] id = new byte[idLength];
+			b.position(offset + HEADER_SIZE_ + 6);
+			b.get(id);
+			index_(segment, offset, epochDay, new String(id, StandardCharsets.UTF_8));
+			offset += HEADER_SIZE_ + length;
+		}
+		segment.position_ = offset;
+	}
+
+	/**
+	 * Persists the drop watermark atomically.
+	 * ウォータマークをアトミックに永続化する.
+	 */
+	private void writeDropBefore_(int epochDay) throws IOException {
+		Path drop = dir_.resolve(DROP_FILE_);
+		Path tmp = drop.resolveSibling(DROP_FILE_ + ".tmp");
+		try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer b = ByteBuffer.allocate(4).putInt(epochDay);
+			b.flip();
+			while (b.hasRemaining()) channel.write(b);
+			channel.force(true);
+		}
+		Files.move(tmp, drop, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private int compact_(LocalDate dropBefore) throws IOException {
+		List<Segment_> sealed;
+		int dropEpochDay = (dropBefore != null) ? (int) dropBefore.toEpochDay() : Integer.MIN_VALUE;
+		boolean advance;
+		synchronized (this) {
+			advance = (dropBefore_ < dropEpochDay);
+		}
+		if (advance) {
+			// The watermark is persisted before the indexes change, so that a reopen never brings dropped Power Sharings back
+			// 索引を変える前にウォータマークを永続化するので, 開き直しても捨てた融通が戻ることはない
+			writeDropBefore_(dropEpochDay);
+		}
+		synchronized (this) {
+			if (advance) {
+				dropBefore_ = dropEpochDay;
+				Map<Integer, Set<String>> dropped = byDate_.headMap(dropEpochDay);
+				for (Set<String> dealIds : dropped.values()) {
+					for (String dealId : dealIds) byDealId_.remove(dealId);
+				}
+				dropped.clear();
+			}
+			sealed = new ArrayList<>(segments_.headMap(active_.id_).values());
+		}
+		int result = 0;
+		for (Segment_ segment : sealed) {
+			List<String> dealIds = new ArrayList<>();
+			List<Integer> offsets = new ArrayList<>();
+			synchronized (this) {
+				for (Map.Entry<String, Location_> entry : byDealId_.entrySet()) {
+					if (entry.getValue().segment_ == segment) {
+						dealIds.add(entry.getKey());
+						offsets.add(entry.getValue().offset_);
+					}
+				}
+			}
+			if (dealIds.isEmpty()) {
+				synchronized (this) {
+					segments_.remove(segment.id_);
+				}
+				Files.deleteIfExists(segment.path_);
+				if (log.isInfoEnabled()) log.info("deleted segment : " + segment.path_);
+				result++;
+			} else if (dealIds.size() * 2 < segment.records_) {
+				rewrite_(segment, dealIds, offsets);
+				result++;
+			}
+		}
+		return result;
+	}
+	/**
+	 * Rewrites a sealed segment with only the given records, and replaces it atomically.
+	 * Index entries updated meanwhile are left as they are.
+	 * 封印済みセグメントを与えられたレコードだけで書き直し, アトミックに置き換える.
+	 * その間に更新された索引エントリはそのままにする.
+	 */
+	private void rewrite_(Segment_ segment, List<String> dealIds, List<Integer> offsets) throws IOException {
+		offsets.sort(null);
+		Path tmp = segment.path_.resolveSibling(segment.path_.getFileName() + ".tmp");
+		Map<Integer, Integer> moved = new HashMap<>();
+		try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			int position = 0;
+			for (int offset : offsets) {
+				ByteBuffer b = segment.buffer_.duplicate();
+				int size = HEADER_SIZE_ + b.getInt(offset);
+				b.limit(offset + size).position(offset);
+				while (b.hasRemaining()) channel.write(b);
+				moved.put(offset, position);
+				position += size;
+			}
+			channel.force(true);
+		}
+		Files.move(tmp, segment.path_, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		Segment_ rewritten = map_(segment.id_, false);
+		rewritten.position_ = rewritten.buffer_.limit();
+		rewritten.records_ = offsets.size();
+		synchronized (this) {
+			segments_.put(rewritten.id_, rewritten);
+			for (String dealId : dealIds) {
+				Location_ location = byDealId_.get(dealId);
+				if (location != null && location.segment_ == segment) {
+					byDealId_.put(dealId, new Location_(rewritten, moved.get(location.offset_), location.epochDay_));
+				}
+			}
+		}
+		if (log.isInfoEnabled()) log.info("rewrote segment : " + segment.path_ + " ; " + segment.records_ + " -> " + rewritten.records_ + " records");
+	}
+
+	////
+
+	/**
+	 * Mapped segment file.
+	 * The mapping is never moved : all access goes through absolute operations or duplicates.
+	 * @author OES Project
+	 * マップしたセグメントファイル.
+	 * マップの位置は動かさない : 全てのアクセスは絶対位置の操作か複製を介する.
+	 * @author OES Project
+	 */
+	private static class Segment_ {
+		private final int id_;
+		private final Path path_;
+		private final MappedByteBuffer buffer_;
+		private int position_ = 0;
+		private int records_ = 0;
+		private Segment_(int id, Path path, MappedByteBuffer buffer) {
+			id_ = id;
+			path_ = path;
+			buffer_ = buffer;
+		}
+	}
+
+	/**
+	 * Location of a record.
+	 * @author OES Project
+	 * レコードの位置.
+	 * @author OES Project
+	 */
+	private static class Location_ {
+		private final Segment_ segment_;
+		private final int offset_;
+		private final int epochDay_;
+		private Location_(Segment_ segment, int offset, int epochDay) {
+			segment_ = segment;
+			offset_ = offset;
+			epochDay_ = epochDay;
+		}
+	}
+
+}
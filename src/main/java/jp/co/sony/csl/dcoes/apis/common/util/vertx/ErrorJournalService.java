@@ -0,0 +1,134 @@
+package jp.co.sony.csl.dcoes.apis.common.util.vertx;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.util.List;
+
+import jp.co.sony.csl.dcoes.apis.common.ErrorJournal;
+import jp.co.sony.csl.dcoes.apis.common.ErrorRecord;
+import jp.co.sony.csl.dcoes.apis.common.ServiceAddress;
+
+/**
+ * Keeps errors published to {@link ServiceAddress#error()} in an {@link ErrorJournal} and serves queries over it.
+ * Queries are served via {@link ServiceAddress#errorJournal()}.
+ * Settings are read from CONFIG.
+ * - {@code CONFIG.errorJournal.capacity} : maximum number of entries. Default {@link ErrorJournal#DEFAULT_CAPACITY}
+ * - {@code CONFIG.errorJournal.maxBytes} : maximum estimated memory [byte]. Default {@link ErrorJournal#DEFAULT_MAX_BYTES}
+ * @author OES Project
+ * {@link ServiceAddress#error()} に publish されたエラーを {@link ErrorJournal} に保持し検索に応える.
+ * 検索は {@link ServiceAddress#errorJournal()} で受け付ける.
+ * 設定は CONFIG から読み込む.
+ * - {@code CONFIG.errorJournal.capacity} : エントリ数の上限. デフォルト {@link ErrorJournal#DEFAULT_CAPACITY}
+ * - {@code CONFIG.errorJournal.maxBytes} : 推定メモリ量の上限 [byte]. デフォルト {@link ErrorJournal#DEFAULT_MAX_BYTES}
+ * @author OES Project
+ */
+public class ErrorJournalService extends AbstractVerticle {
+	private static final Logger log = LoggerFactory.getLogger(ErrorJournalService.class);
+
+	private ErrorJournal journal_;
+
+	/**
+	 * Called during startup.
+	 * Starts receiving errors and serving queries.
+	 * @param startFuture {@inheritDoc}
+	 * @throws Exception {@inheritDoc}
+	 * 起動時に呼び出される.
+	 * エラーの受信と検索の受け付けを開始する.
+	 * @param startFuture {@inheritDoc}
+	 * @throws Exception {@inheritDoc}
+	 */
+	@Override public void start(Future<Void> startFuture) throws Exception {
+		int capacity = VertxConfig.config.getInteger(ErrorJournal.DEFAULT_CAPACITY, "errorJournal", "capacity");
+		long maxBytes = VertxConfig.config.getLong(ErrorJournal.DEFAULT_MAX_BYTES, "errorJournal", "maxBytes");
+		journal_ = new ErrorJournal(capacity, maxBytes);
+		if (log.isInfoEnabled()) log.info("capacity : " + capacity + ", maxBytes : " + maxBytes);
+		startErrorService_(resError -> {
+			if (resError.succeeded()) {
+				startQueryService_(resQuery -> {
+					if (resQuery.succeeded()) {
+						if (log.isTraceEnabled()) log.trace("started : " + deploymentID());
+						startFuture.complete();
+					} else {
+						startFuture.fail(resQuery.cause());
+					}
+				});
+			} else {
+				startFuture.fail(resError.cause());
+			}
+		});
+	}
+
+	/**
+	 * Called when stopped.
+	 * @throws Exception {@inheritDoc}
+	 * 停止時に呼び出される.
+	 * @throws Exception {@inheritDoc}
+	 */
+	@Override public void stop() throws Exception {
+		if (log.isTraceEnabled()) log.trace("stopped : " + deploymentID());
+	}
+
+	////
+
+	/**
+	 * Starts receiving errors.
+	 * Both {@link JsonObject} and {@link ErrorRecord} bodies are accepted.
+	 * @param completionHandler the completion handler
+	 * エラーの受信を開始する.
+	 * {@link JsonObject} と {@link ErrorRecord} のどちらのボディも受け付ける.
+	 * @param completionHandler the completion handler
+	 */
+	private void startErrorService_(Handler<AsyncResult<Void>> completionHandler) {
+		vertx.eventBus().consumer(ServiceAddress.error(), req -> {
+			ErrorRecord record = ErrorRecord.from(req.body());
+			if (record != null) {
+				journal_.append(record, System.currentTimeMillis());
+			}
+		}).completionHandler(completionHandler);
+	}
+
+	/**
+	 * Starts {@link io.vertx.core.eventbus.EventBus} service.
+	 * Address : {@link ServiceAddress#errorJournal()}
+	 * Scope : Local
+	 * Process : Searches the journal.
+	 * Message body : Search condition [{@link JsonObject}]
+	 * 　　　　　　　　   See {@link ErrorJournal.Query#fromJson(JsonObject)}
+	 * Message header : None
+	 * Response : Result [{@link JsonObject}]
+	 * 　　　　　   - {@code "errors"} : matching errors, newest first
+	 * 　　　　　   - {@code "stats"} : {@link ErrorJournal#stats()}
+	 * 　　　　　   Fail if error occurs.
+	 * @param completionHandler the completion handler
+	 * {@link io.vertx.core.eventbus.EventBus} サービス起動.
+	 * アドレス : {@link ServiceAddress#errorJournal()}
+	 * 範囲 : ローカル
+	 * 処理 : ジャーナルを検索する.
+	 * メッセージボディ : 検索条件 [{@link JsonObject}]
+	 * 　　　　　　　　   {@link ErrorJournal.Query#fromJson(JsonObject)} 参照
+	 * メッセージヘッダ : なし
+	 * レスポンス : 結果 [{@link JsonObject}]
+	 * 　　　　　   - {@code "errors"} : 条件に合うエラー. 新しい順
+	 * 　　　　　   - {@code "stats"} : {@link ErrorJournal#stats()}
+	 * 　　　　　   エラーが起きたら fail.
+	 * @param completionHandler the completion handler
+	 */
+	private void startQueryService_(Handler<AsyncResult<Void>> completionHandler) {
+		vertx.eventBus().<JsonObject>localConsumer(ServiceAddress.errorJournal(), req -> {
+			try {
+				List<ErrorJournal.Entry> entries = journal_.query(ErrorJournal.Query.fromJson(req.body()));
+				req.reply(new JsonObject().put("errors", ErrorJournal.toJsonArray(entries)).put("stats", journal_.stats()));
+			} catch (Exception e) {
+				log.error(e);
+				req.fail(-1, e.getMessage());
+			}
+		}).completionHandler(completionHandler);
+	}
+
+}
@@ -0,0 +1,160 @@
+package jp.co.sony.csl.dcoes.apis.common.util.vertx;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+
+import jp.co.sony.csl.dcoes.apis.common.util.AsyncLogDispatcher;
+import jp.co.sony.csl.dcoes.apis.common.util.LogContext;
+
+/**
+ * Log format of one JSON object per line.
+ * Fields are written directly into a per-thread reusable {@link StringBuilder} without building intermediate objects.
+ * - {@code time} : time [ms since epoch]
+ * - {@code level} : log level
+ * - {@code programId}, {@code communityId}, {@code clusterId} : from {@link VertxConfig}. Omitted if {@code null}
+ * - {@code thread} : name of the thread which logged the record
+ * - {@code logger} : logger name
+ * - {@code message} : message with parameters applied
+ * - entries of {@link LogContext} such as {@link LogContext#DEAL_ID} and {@link LogContext#UNIT_ID}. A key equal to one of the fixed field names is prefixed with {@value #CONTEXT_KEY_PREFIX} so that no key is duplicated
+ * - {@code thrown} : stack trace. Omitted if none
+ * @author OES Project
+ * 一行に一つの JSON オブジェクトを出力するログフォーマット.
+ * 中間オブジェクトを作らずにスレッドごとに再利用する {@link StringBuilder} にフィールドを直接書き込む.
+ * - {@code time} : 時刻 [エポックからの ms]
+ * - {@code level} : ログレベル
+ * - {@code programId}, {@code communityId}, {@code clusterId} : {@link VertxConfig} から. {@code null} なら省略
+ * - {@code thread} : レコードをログ出力したスレッドの名前
+ * - {@code logger} : ロガー名
+ * - {@code message} : パラメタを適用したメッセージ
+ * - {@link LogContext#DEAL_ID} や {@link LogContext#UNIT_ID} などの {@link LogContext} のエントリ. 固定フィールド名と同じキーはキーが重複しないよう {@value #CONTEXT_KEY_PREFIX} を前置する
+ * - {@code thrown} : スタックトレース. なければ省略
+ * @author OES Project
+ */
+public class JsonLinesFormatter extends Formatter {
+
+	/**
+	 * Prefix of {@link LogContext} keys equal to a fixed field name.
+	 * The value is {@value}.
+	 * 固定フィールド名と同じ {@link LogContext} のキーの接頭辞.
+	 * 値は {@value}.
+	 */
+	public static final String CONTEXT_KEY_PREFIX = "context.";
+
+	private static final Set<String> FIXED_FIELDS_ = new HashSet<>(Arrays.asList("time", "level", "programId", "communityId", "clusterId", "thread", "logger", "message", "thrown"));
+	private static final char[] HEX_ = "0123456789abcdef".toCharArray();
+	private static final int MAX_RETAINED_CAPACITY_ = 16 * 1024;
+	private static final ThreadLocal<StringBuilder> BUILDER_ = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+	private volatile String programId_ = null;
+	private volatile String communityId_ = null;
+	private volatile String clusterId_ = null;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override public String format(LogRecord record) {
+		StringBuilder sb = BUILDER_.get();
+		sb.setLength(0);
+		sb.append("{\"time\":").append(record.getMillis());
+		sb.append(",\"level\":\"").append(record.getLevel().getName()).append('"');
+		field_(sb, "programId", programId_());
+		field_(sb, "communityId", communityId_());
+		field_(sb, "clusterId", clusterId_());
+		field_(sb, "thread", AsyncLogDispatcher.callerThreadName());
+		field_(sb, "logger", record.getLoggerName());
+		field_(sb, "message", formatMessage(record));
+		LogContext.Snapshot context = LogContext.capture();
+		for (int i = 0; i < context.size(); i++) {
+			String key = context.key(i);
+			field_(sb, (FIXED_FIELDS_.contains(key)) ? CONTEXT_KEY_PREFIX + key : key, context.value(i));
+		}
+		if (record.getThrown() != null) {
+			StringWriter sw = new StringWriter();
+			try (PrintWriter pw = new PrintWriter(sw)) {
+				record.getThrown().printStackTrace(pw);
+			}
+			field_(sb, "thrown", sw.toString());
+		}
+		sb.append('}').append('\n');
+		String result = sb.toString();
+		if (MAX_RETAINED_CAPACITY_ < sb.capacity()) {
+			BUILDER_.set(new StringBuilder(256));
+		}
+		return result;
+	}
+
+	////
+
+	private String programId_() {
+		String result = programId_;
+		if (result == null) programId_ = result = VertxConfig.programId();
+		return result;
+	}
+	private String communityId_() {
+		String result = communityId_;
+		if (result == null) communityId_ = result = VertxConfig.communityId();
+		return result;
+	}
+	private String clusterId_() {
+		String result = clusterId_;
+		if (result == null) clusterId_ = result = VertxConfig.clusterId();
+		return result;
+	}
+
+	/**
+	 * Appends a string field.
+	 * Does nothing if {@code value} is {@code null}.
+	 * @param sb builder to append to
+	 * @param name field name
+	 * @param value field value
+	 * 文字列フィールドを追加する.
+	 * {@code value} が {@code null} なら何もしない.
+	 * @param sb 追加先のビルダ
+	 * @param name フィールド名
+	 * @param value フィールド値
+	 */
+	private static void field_(StringBuilder sb, String name, String value) {
+		if (value == null) return;
+		sb.append(',');
+		string_(sb, name);
+		sb.append(':');
+		string_(sb, value);
+	}
+	/**
+	 * Appends a JSON string literal.
+	 * @param sb builder to append to
+	 * @param s string
+	 * JSON 文字列リテラルを追加する.
+	 * @param sb 追加先のビルダ
+	 * @param s 文字列
+	 */
+	private static void string_(StringBuilder sb, String s) {
+		sb.append('"');
+		int start = 0;
+		int len = s.length();
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if (c < 0x20 || c == '"' || c == '\\' || c == '\u2028' || c == '\u2029') {
+				sb.append(s, start, i);
+				switch (c) {
+				case '"': sb.append("\\\""); break;
+				case '\\': sb.append("\\\\"); break;
+				case '\n': sb.append("\\n"); break;
+				case '\r': sb.append("\\r"); break;
+				case '\t': sb.append("\\t"); break;
+				default:
+					sb.append("\\u").append(HEX_[(c >> 12) & 0xF]).append(HEX_[(c >> 8) & 0xF]).append(HEX_[(c >> 4) & 0xF]).append(HEX_[c & 0xF]);
+				}
+				start = i + 1;
+			}
+		}
+		sb.append(s, start, len);
+		sb.append('"');
+	}
+
+}
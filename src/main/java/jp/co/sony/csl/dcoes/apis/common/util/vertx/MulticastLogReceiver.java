@@ -0,0 +1,530 @@
+package jp.co.sony.csl.dcoes.apis.common.util.vertx;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.datagram.DatagramPacket;
+import io.vertx.core.datagram.DatagramSocket;
+import io.vertx.core.datagram.DatagramSocketOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jp.co.sony.csl.dcoes.apis.common.ServiceAddress;
+import jp.co.sony.csl.dcoes.apis.common.util.MulticastLogCodec;
+import jp.co.sony.csl.dcoes.apis.common.util.RotatingFileWriter;
+import jp.co.sony.csl.dcoes.apis.common.util.StringUtil;
+
+/**
+ * Receives log datagrams sent by {@link jp.co.sony.csl.dcoes.apis.common.util.MulticastHandler} and writes them to rotating files.
+ * Records in {@link MulticastLogCodec} format are deduplicated by sequence number per sender, and gaps in the sequence are counted as lost.
+ * They are written in the same layout as {@link ApisLoggerFormatter}.
+ * Other datagrams ( e.g. {@link java.util.logging.XMLFormatter} output ) are written as they are.
+ * Received records are buffered and written on a worker thread in batches.
+ * Metrics are available via {@link ServiceAddress#multicastLogReceiverMetrics()}.
+ * Settings are read from CONFIG.
+ * - {@code CONFIG.multicastLogReceiver.port} : port. Required
+ * - {@code CONFIG.multicastLogReceiver.groupAddress} : multicast group address. Listens in unicast only if not specified ( e.g. for loopback )
+ * - {@code CONFIG.multicastLogReceiver.host} : address to bind. Default {@code "0.0.0.0"}
+ * - {@code CONFIG.multicastLogReceiver.networkInterface} : network interface joining the group
+ * - {@code CONFIG.multicastLogReceiver.file} : output file path. Required
+ * - {@code CONFIG.multicastLogReceiver.maxFileSize} : size which triggers rotation [byte]. Default {@link #DEFAULT_MAX_FILE_SIZE}
+ * - {@code CONFIG.multicastLogReceiver.maxBackups} : number of rotated files to keep. Default {@link #DEFAULT_MAX_BACKUPS}
+ * - {@code CONFIG.multicastLogReceiver.flushPeriodMsec} : write cycle [ms]. Default {@link #DEFAULT_FLUSH_PERIOD_MSEC}
+ * - {@code CONFIG.multicastLogReceiver.flushSize} : buffered size which triggers write [byte]. Default {@link #DEFAULT_FLUSH_SIZE}
+ * - {@code CONFIG.multicastLogReceiver.maxBufferSize} : buffered size beyond which records are discarded [byte]. Default {@link #DEFAULT_MAX_BUFFER_SIZE}
+ * @author OES Project
+ * {@link jp.co.sony.csl.dcoes.apis.common.util.MulticastHandler} が送信したログのデータグラムを受信しローテートするファイルに書き込む.
+ * {@link MulticastLogCodec} 形式のレコードは送信元ごとの通し番号で重複を除き, 番号の抜けを欠損として数える.
+ * 書き込みは {@link ApisLoggerFormatter} と同じ形式.
+ * それ以外のデータグラム ( {@link java.util.logging.XMLFormatter} の出力など ) はそのまま書き込む.
+ * 受信したレコードはバッファに溜めワーカスレッドでまとめて書き込む.
+ * メトリクスは {@link ServiceAddress#multicastLogReceiverMetrics()} で取得できる.
+ * 設定は CONFIG から読み込む.
+ * - {@code CONFIG.multicastLogReceiver.port} : ポート. 必須
+ * - {@code CONFIG.multicastLogReceiver.groupAddress} : マルチキャストグループアドレス. 指定がなければユニキャストのみ受信する ( ループバックなど )
+ * - {@code CONFIG.multicastLogReceiver.host} : バインドするアドレス. デフォルト {@code "0.0.0.0"}
+ * - {@code CONFIG.multicastLogReceiver.networkInterface} : グループに参加するネットワークインタフェイス
+ * - {@code CONFIG.multicastLogReceiver.file} : 出力ファイルのパス. 必須
+ * - {@code CONFIG.multicastLogReceiver.maxFileSize} : ローテートするサイズ [byte]. デフォルト {@link #DEFAULT_MAX_FILE_SIZE}
+ * - {@code CONFIG.multicastLogReceiver.maxBackups} : 残すローテート済みファイルの数. デフォルト {@link #DEFAULT_MAX_BACKUPS}
+ * - {@code CONFIG.multicastLogReceiver.flushPeriodMsec} : 書き込み周期 [ms]. デフォルト {@link #DEFAULT_FLUSH_PERIOD_MSEC}
+ * - {@code CONFIG.multicastLogReceiver.flushSize} : 書き込みを始めるバッファサイズ [byte]. デフォルト {@link #DEFAULT_FLUSH_SIZE}
+ * - {@code CONFIG.multicastLogReceiver.maxBufferSize} : これを超えたらレコードを捨てるバッファサイズ [byte]. デフォルト {@link #DEFAULT_MAX_BUFFER_SIZE}
+ * @author OES Project
+ */
+public class MulticastLogReceiver extends AbstractVerticle {
+	private static final Logger log = LoggerFactory.getLogger(MulticastLogReceiver.class);
+
+	/**
+	 * Default size which triggers rotation.
+	 * The value is {@value}.
+	 * ローテートするサイズのデフォルト.
+	 * 値は {@value}.
+	 */
+	private static final Long DEFAULT_MAX_FILE_SIZE = 100L * 1024L * 1024L;
+	/**
+	 * Default number of rotated files to keep.
+	 * The value is {@value}.
+	 * 残すローテート済みファイルの数のデフォルト.
+	 * 値は {@value}.
+	 */
+	private static final Integer DEFAULT_MAX_BACKUPS = 10;
+	/**
+	 * Default write cycle.
+	 * The value is {@value}.
+	 * 書き込み周期のデフォルト.
+	 * 値は {@value}.
+	 */
+	private static final Long DEFAULT_FLUSH_PERIOD_MSEC = 1000L;
+	/**
+	 * Default buffered size which triggers write.
+	 * The value is {@value}.
+	 * 書き込みを始めるバッファサイズのデフォルト.
+	 * 値は {@value}.
+	 */
+	private static final Integer DEFAULT_FLUSH_SIZE = 64 * 1024;
+	/**
+	 * Default buffered size beyond which records are discarded.
+	 * The value is {@value}.
+	 * これを超えたらレコードを捨てるバッファサイズのデフォルト.
+	 * 値は {@value}.
+	 */
+	private static final Integer DEFAULT_MAX_BUFFER_SIZE = 16 * 1024 * 1024;
+	/**
+	 * Number of past sequence numbers remembered per sender for deduplication.
+	 * The value is {@value}.
+	 * 重複除去のため送信元ごとに覚えておく過去の通し番号の数.
+	 * 値は {@value}.
+	 */
+	private static final int SEQ_WINDOW_ = 64;
+	private static final int MAX_SENDERS_ = 1024;
+	private static final DateTimeFormatter DATE_TIME_FORMATTER_ = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+	private static final String LINE_SEPARATOR_ = System.lineSeparator();
+
+	private DatagramSocket socket_;
+	private RotatingFileWriter writer_;
+	private MulticastLogCodec.Decoder decoder_;
+	private final Map<Long, Sender_> senders_ = new LinkedHashMap<Long, Sender_>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override protected boolean removeEldestEntry(Map.Entry<Long, Sender_> eldest) {
+			return MAX_SENDERS_ < size();
+		}
+	};
+	private Buffer buffer_ = Buffer.buffer();
+	private boolean writing_ = false;
+	private long flushTimerId_ = 0L;
+	private boolean stopped_ = false;
+	private int flushSize_;
+	private int maxBufferSize_;
+
+	private long datagrams_ = 0L;
+	private long records_ = 0L;
+	private long rawRecords_ = 0L;
+	private long duplicates_ = 0L;
+	private long lost_ = 0L;
+	private long dropped_ = 0L;
+	private long writeFailures_ = 0L;
+	private long bytesWritten_ = 0L;
+	private long rateBaseRecords_ = 0L;
+	private long rateBaseMillis_ = 0L;
+	private double ratePerSec_ = 0d;
+
+	/**
+	 * Called during startup.
+	 * Opens output file, starts listening and launches timer.
+	 * @param startFuture {@inheritDoc}
+	 * @throws Exception {@inheritDoc}
+	 * 起動時に呼び出される.
+	 * 出力ファイルを開き受信を開始しタイマを起動する.
+	 * @param startFuture {@inheritDoc}
+	 * @throws Exception {@inheritDoc}
+	 */
+	@Override public void start(Future<Void> startFuture) throws Exception {
+		init_(resInit -> {
+			if (resInit.succeeded()) {
+				startMetricsService_(resMetrics -> {
+					if (resMetrics.succeeded()) {
+						rateBaseMillis_ = System.currentTimeMillis();
+						setFlushTimer_();
+						if (log.isTraceEnabled()) log.trace("started : " + deploymentID());
+						startFuture.complete();
+					} else {
+						startFuture.fail(resMetrics.cause());
+					}
+				});
+			} else {
+				startFuture.fail(resInit.cause());
+			}
+		});
+	}
+
+	/**
+	 * Called when stopped.
+	 * Writes out buffered records and closes file and socket.
+	 * @param stopFuture {@inheritDoc}
+	 * @throws Exception {@inheritDoc}
+	 * 停止時に呼び出される.
+	 * バッファに溜まったレコードを書き出しファイルとソケットを閉じる.
+	 * @param stopFuture {@inheritDoc}
+	 * @throws Exception {@inheritDoc}
+	 */
+	@Override public void stop(Future<Void> stopFuture) throws Exception {
+		stopped_ = true;
+		vertx.cancelTimer(flushTimerId_);
+		Buffer rest = buffer_;
+		buffer_ = Buffer.buffer();
+		vertx.<Void>executeBlocking(future -> {
+			try {
+				if (writer_ != null) {
+					if (0 < rest.length()) writer_.write(rest.getByteBuf().nioBuffer());
+					writer_.close();
+				}
+				future.complete();
+			} catch (IOException e) {
+				future.fail(e);
+			}
+		}, true, res -> {
+			if (res.failed()) log.error(res.cause());
+			if (socket_ != null) socket_.close();
+			if (log.isTraceEnabled()) log.trace("stopped : " + deploymentID());
+			stopFuture.complete();
+		});
+	}
+
+	/**
+	 * Gets metrics.
+	 * - datagrams : number of received datagrams
+	 * - records : number of records written
+	 * - rawRecords : of {@code records}, number of datagrams not in {@link MulticastLogCodec} format
+	 * - duplicates : number of duplicated records discarded
+	 * - lost : number of records estimated lost from gaps in sequence numbers
+	 * - invalid : number of datagrams that could not be decoded
+	 * - incomplete : number of records discarded before all fragments arrived
+	 * - dropped : number of records discarded because the buffer was full
+	 * - writeFailures : number of write failures
+	 * - bytesWritten : number of bytes written
+	 * - ratePerSec : records per second during the last write cycle
+	 * - senders : number of known senders
+	 * @return metrics
+	 * メトリクスを取得する.
+	 * - datagrams : 受信したデータグラムの数
+	 * - records : 書き込んだレコードの数
+	 * - rawRecords : {@code records} のうち {@link MulticastLogCodec} 形式でなかったデータグラムの数
+	 * - duplicates : 重複で捨てたレコードの数
+	 * - lost : 通し番号の抜けから推定した欠損レコードの数
+	 * - invalid : デコードできなかったデータグラムの数
+	 * - incomplete : 全フラグメントが揃う前に捨てたレコードの数
+	 * - dropped : バッファが一杯で捨てたレコードの数
+	 * - writeFailures : 書き込みに失敗した回数
+	 * - bytesWritten : 書き込んだバイト数
+	 * - ratePerSec : 直近の書き込み周期における毎秒のレコード数
+	 * - senders : 既知の送信元の数
+	 * @return メトリクス
+	 */
+	public JsonObject metrics() {
+		return new JsonObject()
+				.put("datagrams", datagrams_)
+				.put("records", records_)
+				.put("rawRecords", rawRecords_)
+				.put("duplicates", duplicates_)
+				.put("lost", lost_)
+				.put("invalid", (decoder_ != null) ? decoder_.invalid() : 0L)
+				.put("incomplete", (decoder_ != null) ? decoder_.incomplete() : 0L)
+				.put("dropped", dropped_)
+				.put("writeFailures", writeFailures_)
+				.put("bytesWritten", bytesWritten_)
+				.put("ratePerSec", ratePerSec_)
+				.put("senders", senders_.size());
+	}
+
+	////
+
+	/**
+	 * Reads settings from CONFIG, opens output file and starts listening.
+	 * @param completionHandler the completion handler
+	 * CONFIG から設定を読み込み出力ファイルを開き受信を開始する.
+	 * @param completionHandler the completion handler
+	 */
+	private void init_(Handler<AsyncResult<Void>> completionHandler) {
+		Integer port = VertxConfig.config.getInteger("multicastLogReceiver", "port");
+		String groupAddress = VertxConfig.config.getString("multicastLogReceiver", "groupAddress");
+		String host = VertxConfig.config.getString(JsonObjectUtil.defaultString("0.0.0.0"), "multicastLogReceiver", "host");
+		String networkInterface = VertxConfig.config.getString("multicastLogReceiver", "networkInterface");
+		String file = VertxConfig.config.getString("multicastLogReceiver", "file");
+		Long maxFileSize = VertxConfig.config.getLong(DEFAULT_MAX_FILE_SIZE, "multicastLogReceiver", "maxFileSize");
+		Integer maxBackups = VertxConfig.config.getInteger(DEFAULT_MAX_BACKUPS, "multicastLogReceiver", "maxBackups");
+		flushSize_ = VertxConfig.config.getInteger(DEFAULT_FLUSH_SIZE, "multicastLogReceiver", "flushSize");
+		maxBufferSize_ = VertxConfig.config.getInteger(DEFAULT_MAX_BUFFER_SIZE, "multicastLogReceiver", "maxBufferSize");
+		if (port == null || port <= 0 || file == null || file.isEmpty()) {
+			completionHandler.handle(Future.failedFuture("invalid multicastLogReceiver.port and/or multicastLogReceiver.file value in config : " + VertxConfig.config.jsonObject()));
+			return;
+		}
+		decoder_ = new MulticastLogCodec.Decoder(1024, 5000L);
+		vertx.<RotatingFileWriter>executeBlocking(future -> {
+			try {
+				future.complete(new RotatingFileWriter(Paths.get(StringUtil.fixFilePath(file)), maxFileSize, maxBackups));
+			} catch (IOException e) {
+				future.fail(e);
+			}
+		}, resWriter -> {
+			if (resWriter.succeeded()) {
+				writer_ = resWriter.result();
+				socket_ = vertx.createDatagramSocket(new DatagramSocketOptions().setReuseAddress(true).setIpV6(false));
+				socket_.listen(port, host, resListen -> {
+					if (resListen.succeeded()) {
+						socket_.handler(this::handlePacket_);
+						if (groupAddress != null && !groupAddress.isEmpty()) {
+							socket_.listenMulticastGroup(groupAddress, networkInterface, null, resGroup -> {
+								if (resGroup.succeeded()) {
+									if (log.isInfoEnabled()) log.info("listening multicast log on " + groupAddress + ':' + port);
+									completionHandler.handle(Future.succeededFuture());
+								} else {
+									completionHandler.handle(Future.failedFuture(resGroup.cause()));
+								}
+							});
+						} else {
+							if (log.isInfoEnabled()) log.info("listening log on " + host + ':' + port);
+							completionHandler.handle(Future.succeededFuture());
+						}
+					} else {
+						completionHandler.handle(Future.failedFuture(resListen.cause()));
+					}
+				});
+			} else {
+				completionHandler.handle(Future.failedFuture(resWriter.cause()));
+			}
+		});
+	}
+
+	/**
+	 * Starts {@link io.vertx.core.eventbus.EventBus} service.
+	 * Address : {@link ServiceAddress#multicastLogReceiverMetrics()}
+	 * Scope : Local
+	 * Process : Returns {@link #metrics()}.
+	 * Message body : None
+	 * Message header : None
+	 * Response : Metrics [{@link JsonObject}]
+	 * @param completionHandler the completion handler
+	 * {@link io.vertx.core.eventbus.EventBus} サービス起動.
+	 * アドレス : {@link ServiceAddress#multicastLogReceiverMetrics()}
+	 * 範囲 : ローカル
+	 * 処理 : {@link #metrics()} を返す.
+	 * メッセージボディ : なし
+	 * メッセージヘッダ : なし
+	 * レスポンス : メトリクス [{@link JsonObject}]
+	 * @param completionHandler the completion handler
+	 */
+	private void startMetricsService_(Handler<AsyncResult<Void>> completionHandler) {
+		vertx.eventBus().<Void>localConsumer(ServiceAddress.multicastLogReceiverMetrics(), req -> {
+			req.reply(metrics());
+		}).completionHandler(completionHandler);
+	}
+
+	/**
+	 * Processes a received datagram.
+	 * @param packet received datagram
+	 * 受信したデータグラムを処理する.
+	 * @param packet 受信したデータグラム
+	 */
+	private void handlePacket_(DatagramPacket packet) {
+		datagrams_++;
+		Buffer data = packet.data();
+		byte[] bytes = data.getBytes();
+		if (MulticastLogCodec.isCompact(bytes, 0, bytes.length)) {
+			decoder_.decode(bytes, 0, bytes.length, record -> {
+				if (accept_(record.senderId, record.seq)) {
+					append_(format_(record));
+				}
+			});
+		} else {
+			Buffer line = (0 < bytes.length && bytes[bytes.length - 1] != '\n') ? data.copy().appendString(LINE_SEPARATOR_) : data;
+			if (append_(line)) rawRecords_++;
+		}
+	}
+	/**
+	 * Checks sequence number of sender.
+	 * @param senderId ID of sender
+	 * @param seq sequence number
+	 * @return {@code false} if duplicated
+	 * 送信元の通し番号を確認する.
+	 * @param senderId 送信元の ID
+	 * @param seq 通し番号
+	 * @return 重複なら {@code false}
+	 */
+	private boolean accept_(long senderId, long seq) {
+		Sender_ sender = senders_.get(senderId);
+		if (sender == null) {
+			sender = new Sender_();
+			senders_.put(senderId, sender);
+		}
+		return sender.accept_(seq);
+	}
+	/**
+	 * Formats decoded record in the same layout as {@link ApisLoggerFormatter}.
+	 * @param record decoded record
+	 * @return formatted bytes
+	 * デコードしたレコードを {@link ApisLoggerFormatter} と同じ形式にする.
+	 * @param record デコードしたレコード
+	 * @return 整形したバイト列
+	 */
+	private Buffer format_(MulticastLogCodec.Record record) {
+		StringBuilder sb = new StringBuilder(record.message.length() + 128);
+		sb.append("[[[").append(record.programId).append("]]] ");
+		sb.append('[').append(record.threadName).append("] ");
+		sb.append(OffsetDateTime.ofInstant(Instant.ofEpochMilli(record.millis), ZoneId.systemDefault()).format(DATE_TIME_FORMATTER_)).append(' ');
+		sb.append(record.level).append(" [").append(record.loggerName).append("]  ");
+		sb.append(record.message);
+		if (!record.message.endsWith("\n")) sb.append(LINE_SEPARATOR_);
+		return Buffer.buffer(sb.toString());
+	}
+	/**
+	 * Adds bytes to the buffer and starts writing if it is large enough.
+	 * @param bytes bytes of one record
+	 * @return {@code true} if added.
+	 *         {@code false} if dropped because the buffer is full
+	 * バッファにバイト列を追加し十分溜まっていれば書き込みを始める.
+	 * @param bytes 一レコード分のバイト列
+	 * @return 追加したら {@code true}.
+	 *         バッファが一杯で捨てたら {@code false}
+	 */
+	private boolean append_(Buffer bytes) {
+		if (maxBufferSize_ < buffer_.length() + bytes.length()) {
+			dropped_++;
+			return false;
+		}
+		buffer_.appendBuffer(bytes);
+		records_++;
+		if (flushSize_ <= buffer_.length()) flush_();
+		return true;
+	}
+	/**
+	 * Writes buffered bytes on a worker thread.
+	 * Only one write runs at a time; records received meanwhile are written in the next batch.
+	 * バッファに溜まったバイト列をワーカスレッドで書き込む.
+	 * 書き込みは同時に一つだけ. その間に受信したレコードは次のバッチで書き込む.
+	 */
+	private void flush_() {
+		if (writing_ || buffer_.length() == 0 || writer_ == null) return;
+		writing_ = true;
+		Buffer batch = buffer_;
+		buffer_ = Buffer.buffer(Math.max(flushSize_, 1024));
+		vertx.<Integer>executeBlocking(future -> {
+			try {
+				writer_.write(batch.getByteBuf().nioBuffer());
+				future.complete(batch.length());
+			} catch (IOException e) {
+				future.fail(e);
+			}
+		}, true, res -> {
+			writing_ = false;
+			if (res.succeeded()) {
+				bytesWritten_ += res.result();
+			} else {
+				writeFailures_++;
+				log.error(res.cause());
+			}
+			if (!stopped_ && flushSize_ <= buffer_.length()) flush_();
+		});
+	}
+
+	/**
+	 * Sets timer for periodic write and rate calculation.
+	 * The wait time is {@code CONFIG.multicastLogReceiver.flushPeriodMsec} ( default value {@link #DEFAULT_FLUSH_PERIOD_MSEC} ).
+	 * 定期的な書き込みとレート計算のためのタイマを設定する.
+	 * 待ち時間は {@code CONFIG.multicastLogReceiver.flushPeriodMsec} ( デフォルト値 {@link #DEFAULT_FLUSH_PERIOD_MSEC} ).
+	 */
+	private void setFlushTimer_() {
+		Long delay = VertxConfig.config.getLong(DEFAULT_FLUSH_PERIOD_MSEC, "multicastLogReceiver", "flushPeriodMsec");
+		flushTimerId_ = vertx.setTimer(delay, this::flushTimerHandler_);
+	}
+	/**
+	 * Periodic write and rate calculation.
+	 * @param timerId timer ID
+	 * 定期的な書き込みとレート計算.
+	 * @param timerId タイマ ID
+	 */
+	private void flushTimerHandler_(Long timerId) {
+		if (stopped_) return;
+		if (null == timerId || timerId.longValue() != flushTimerId_) {
+			if (log.isWarnEnabled()) log.warn("illegal timerId : " + timerId + ", flushTimerId_ : " + flushTimerId_);
+			return;
+		}
+		long now = System.currentTimeMillis();
+		if (rateBaseMillis_ < now) {
+			ratePerSec_ = (records_ - rateBaseRecords_) * 1000d / (now - rateBaseMillis_);
+		}
+		rateBaseRecords_ = records_;
+		rateBaseMillis_ = now;
+		flush_();
+		setFlushTimer_();
+	}
+
+	////
+
+	/**
+	 * Sequence number state of a sender.
+	 * Remembers the highest sequence number and which of the preceding {@link #SEQ_WINDOW_} have arrived.
+	 * @author OES Project
+	 * 送信元の通し番号の状態.
+	 * 最大の通し番号とそれに先立つ {@link #SEQ_WINDOW_} 個が届いたか否かを覚えておく.
+	 * @author OES Project
+	 */
+	private class Sender_ {
+		private long first_ = 0L;
+		private long highest_ = 0L;
+		private long window_ = 0L;
+		/**
+		 * Checks sequence number and updates {@code duplicates_} and {@code lost_}.
+		 * @param seq sequence number
+		 * @return {@code false} if duplicated
+		 * 通し番号を確認し {@code duplicates_} と {@code lost_} を更新する.
+		 * @param seq 通し番号
+		 * @return 重複なら {@code false}
+		 */
+		private boolean accept_(long seq) {
+			if (highest_ < seq) {
+				// Newer one : the skipped numbers are counted as lost ( except for the first one received from this sender )
+				// 新しいもの : 飛ばした番号を欠損として数える ( この送信元から最初に受信したものは除く )
+				long shift = seq - highest_;
+				if (0 < highest_) {
+					lost_ += shift - 1;
+				} else {
+					first_ = seq;
+				}
+				window_ = (shift < SEQ_WINDOW_) ? (window_ << shift) | 1L : 1L;
+				highest_ = seq;
+				return true;
+			}
+			long age = highest_ - seq;
+			if (SEQ_WINDOW_ <= age) {
+				// Too old to tell : treated as duplicated
+				// 古すぎて判断できない : 重複扱い
+				duplicates_++;
+				return false;
+			}
+			long bit = 1L << age;
+			if ((window_ & bit) != 0) {
+				duplicates_++;
+				return false;
+			}
+			// Late arrival : it was counted as lost unless older than the first one received
+			// 遅れて届いた : 最初に受信したものより古くなければ欠損として数えていた
+			window_ |= bit;
+			if (first_ < seq) lost_--;
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,672 @@
+package jp.co.sony.csl.dcoes.apis.common.util.vertx;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.json.JsonObject;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import jp.co.sony.csl.dcoes.apis.common.Address;
+
+/**
+ * {@link io.vertx.core.eventbus.EventBus} request client which retries failed requests.
+ * Failures are classified by {@link ReplyFailureUtil} and retried according to the {@link Policy} of the address, with exponential backoff and jitter.
+ * Retries of each address are limited by a token bucket retry budget so that a failing recipient is not flooded with retries :
+ * a failed request takes one token, a successful one gives back {@link Policy#setBudgetTokenRatio(double) a fraction of one}, and retries are made only while more than half of the tokens are left.
+ * Idempotent reads may be hedged : if no reply arrives within {@link Policy#setHedgeDelayMsec(long) the hedge delay}, a second request is sent and the first reply wins.
+ * Latency and failures are counted per address ; see {@link #stats()}.
+ * @author OES Project
+ * 失敗したリクエストを再試行する {@link io.vertx.core.eventbus.EventBus} リクエストクライアント.
+ * 失敗を {@link ReplyFailureUtil} で分類し, アドレスの {@link Policy} に従い指数バックオフとジッタ付きで再試行する.
+ * 失敗している受信者に再試行が殺到しないよう, アドレスごとの再試行はトークンバケットの再試行予算で制限する :
+ * 失敗したリクエストはトークンを一つ消費し, 成功したリクエストは {@link Policy#setBudgetTokenRatio(double) その一部} を戻し, 再試行はトークンが半分より多く残っている間だけ行う.
+ * 冪等な読み出しはヘッジできる : {@link Policy#setHedgeDelayMsec(long) ヘッジ遅延} 以内に返信がなければ二つ目のリクエストを送り, 先に届いた返信を採用する.
+ * 遅延と失敗はアドレスごとに数える. {@link #stats()} 参照.
+ * @author OES Project
+ */
+public class RequestClient {
+
+	/**
+	 * Retry policy of an address.
+	 * The default policy makes no retries and no hedging, which is the same as a plain send.
+	 * @author OES Project
+	 * アドレスの再試行ポリシ.
+	 * デフォルトのポリシは再試行もヘッジもしないので, 単純な send と同じである.
+	 * @author OES Project
+	 */
+	public static class Policy {
+		/**
+		 * Default initial backoff [ms].
+		 * The value is {@value}.
+		 * バックオフの初期値のデフォルト [ms].
+		 * 値は {@value}.
+		 */
+		public static final long DEFAULT_INITIAL_BACKOFF_MSEC = 100L;
+		/**
+		 * Default maximum backoff [ms].
+		 * The value is {@value}.
+		 * バックオフの最大値のデフォルト [ms].
+		 * 値は {@value}.
+		 */
+		public static final long DEFAULT_MAX_BACKOFF_MSEC = 5000L;
+		/**
+		 * Default number of budget tokens.
+		 * The value is {@value}.
+		 * 予算トークン数のデフォルト.
+		 * 値は {@value}.
+		 */
+		public static final int DEFAULT_BUDGET_TOKENS = 10;
+		/**
+		 * Default tokens given back by a successful request.
+		 * The value is {@value}.
+		 * 成功したリクエストが戻すトークンのデフォルト.
+		 * 値は {@value}.
+		 */
+		public static final double DEFAULT_BUDGET_TOKEN_RATIO = 0.1;
+
+		private int maxRetries_ = 0;
+		private long initialBackoffMsec_ = DEFAULT_INITIAL_BACKOFF_MSEC;
+		private long maxBackoffMsec_ = DEFAULT_MAX_BACKOFF_MSEC;
+		private double multiplier_ = 2.0;
+		private double jitter_ = 0.5;
+		private boolean retryOnTimeout_ = true;
+		private boolean retryOnNoHandlers_ = true;
+		private boolean retryOnRecipientFailure_ = false;
+		private int budgetTokens_ = DEFAULT_BUDGET_TOKENS;
+		private double budgetTokenRatio_ = DEFAULT_BUDGET_TOKEN_RATIO;
+		private long hedgeDelayMsec_ = 0L;
+
+		/**
+		 * Creates default policy.
+		 * デフォルトのポリシを作成する.
+		 */
+		public Policy() { }
+		/**
+		 * Creates copy of policy.
+		 * @param other policy to copy
+		 * ポリシのコピーを作成する.
+		 * @param other コピー元ポリシ
+		 */
+		public Policy(Policy other) {
+			maxRetries_ = other.maxRetries_;
+			initialBackoffMsec_ = other.initialBackoffMsec_;
+			maxBackoffMsec_ = other.maxBackoffMsec_;
+			multiplier_ = other.multiplier_;
+			jitter_ = other.jitter_;
+			retryOnTimeout_ = other.retryOnTimeout_;
+			retryOnNoHandlers_ = other.retryOnNoHandlers_;
+			retryOnRecipientFailure_ = other.retryOnRecipientFailure_;
+			budgetTokens_ = other.budgetTokens_;
+			budgetTokenRatio_ = other.budgetTokenRatio_;
+			hedgeDelayMsec_ = other.hedgeDelayMsec_;
+		}
+
+		/**
+		 * Sets maximum number of retries after the first request.
+		 * @param value number of retries. Default is 0
+		 * @return this policy
+		 * 最初のリクエストの後の再試行の最大回数を設定する.
+		 * @param value 再試行回数. デフォルトは 0
+		 * @return このポリシ
+		 */
+		public Policy setMaxRetries(int value) {
+			maxRetries_ = value;
+			return this;
+		}
+		/**
+		 * Sets backoff before the first retry.
+		 * @param value backoff [ms]. Default is {@link #DEFAULT_INITIAL_BACKOFF_MSEC}
+		 * @return this policy
+		 * 最初の再試行の前のバックオフを設定する.
+		 * @param value バックオフ [ms]. デフォルトは {@link #DEFAULT_INITIAL_BACKOFF_MSEC}
+		 * @return このポリシ
+		 */
+		public Policy setInitialBackoffMsec(long value) {
+			initialBackoffMsec_ = value;
+			return this;
+		}
+		/**
+		 * Sets upper limit of backoff.
+		 * @param value backoff [ms]. Default is {@link #DEFAULT_MAX_BACKOFF_MSEC}
+		 * @return this policy
+		 * バックオフの上限を設定する.
+		 * @param value バックオフ [ms]. デフォルトは {@link #DEFAULT_MAX_BACKOFF_MSEC}
+		 * @return このポリシ
+		 */
+		public Policy setMaxBackoffMsec(long value) {
+			maxBackoffMsec_ = value;
+			return this;
+		}
+		/**
+		 * Sets factor by which backoff grows per retry.
+		 * @param value factor. Default is 2
+		 * @return this policy
+		 * 再試行ごとにバックオフを増やす倍率を設定する.
+		 * @param value 倍率. デフォルトは 2
+		 * @return このポリシ
+		 */
+		public Policy setMultiplier(double value) {
+			multiplier_ = value;
+			return this;
+		}
+		/**
+		 * Sets jitter, the largest fraction by which backoff is randomly shortened.
+		 * @param value fraction from 0 to 1. Default is 0.5
+		 * @return this policy
+		 * バックオフをランダムに短縮する最大の割合であるジッタを設定する.
+		 * @param value 0 から 1 の割合. デフォルトは 0.5
+		 * @return このポリシ
+		 */
+		public Policy setJitter(double value) {
+			jitter_ = value;
+			return this;
+		}
+		/**
+		 * Sets whether to retry on {@link ReplyFailure#TIMEOUT}.
+		 * @param value true to retry. Default is true
+		 * @return this policy
+		 * {@link ReplyFailure#TIMEOUT} で再試行するか否かを設定する.
+		 * @param value 再試行するなら true. デフォルトは true
+		 * @return このポリシ
+		 */
+		public Policy setRetryOnTimeout(boolean value) {
+			retryOnTimeout_ = value;
+			return this;
+		}
+		/**
+		 * Sets whether to retry on {@link ReplyFailure#NO_HANDLERS}.
+		 * @param value true to retry. Default is true
+		 * @return this policy
+		 * {@link ReplyFailure#NO_HANDLERS} で再試行するか否かを設定する.
+		 * @param value 再試行するなら true. デフォルトは true
+		 * @return このポリシ
+		 */
+		public Policy setRetryOnNoHandlers(boolean value) {
+			retryOnNoHandlers_ = value;
+			return this;
+		}
+		/**
+		 * Sets whether to retry on {@link ReplyFailure#RECIPIENT_FAILURE}.
+		 * Recipients of this system fail deliberately, so this is off by default.
+		 * @param value true to retry. Default is false
+		 * @return this policy
+		 * {@link ReplyFailure#RECIPIENT_FAILURE} で再試行するか否かを設定する.
+		 * このシステムの受信者は意図して fail するのでデフォルトはオフ.
+		 * @param value 再試行するなら true. デフォルトは false
+		 * @return このポリシ
+		 */
+		public Policy setRetryOnRecipientFailure(boolean value) {
+			retryOnRecipientFailure_ = value;
+			return this;
+		}
+		/**
+		 * Sets size of retry budget.
+		 * @param value number of tokens. 0 for no budget. Default is {@link #DEFAULT_BUDGET_TOKENS}
+		 * @return this policy
+		 * 再試行予算の大きさを設定する.
+		 * @param value トークン数. 予算なしなら 0. デフォルトは {@link #DEFAULT_BUDGET_TOKENS}
+		 * @return このポリシ
+		 */
+		public Policy setBudgetTokens(int value) {
+			budgetTokens_ = value;
+			return this;
+		}
+		/**
+		 * Sets tokens given back to retry budget by a successful request.
+		 * @param value number of tokens. Default is {@link #DEFAULT_BUDGET_TOKEN_RATIO}
+		 * @return this policy
+		 * 成功したリクエストが再試行予算に戻すトークンを設定する.
+		 * @param value トークン数. デフォルトは {@link #DEFAULT_BUDGET_TOKEN_RATIO}
+		 * @return このポリシ
+		 */
+		public Policy setBudgetTokenRatio(double value) {
+			budgetTokenRatio_ = value;
+			return this;
+		}
+		/**
+		 * Sets delay after which a hedged request is sent.
+		 * Use only for idempotent reads, preferably of local addresses, since the recipient may process both requests.
+		 * @param value delay [ms]. 0 for no hedging. Default is 0
+		 * @return this policy
+		 * ヘッジリクエストを送るまでの遅延を設定する.
+		 * 受信者は両方のリクエストを処理しうるので, 冪等な読み出し, できればローカルアドレスのものにだけ使うこと.
+		 * @param value 遅延 [ms]. ヘッジしないなら 0. デフォルトは 0
+		 * @return このポリシ
+		 */
+		public Policy setHedgeDelayMsec(long value) {
+			hedgeDelayMsec_ = value;
+			return this;
+		}
+
+		/**
+		 * Gets maximum number of retries.
+		 * @return number of retries
+		 * 再試行の最大回数を取得する.
+		 * @return 再試行回数
+		 */
+		public int getMaxRetries() {
+			return maxRetries_;
+		}
+		/**
+		 * Gets hedge delay.
+		 * @return delay [ms]
+		 * ヘッジ遅延を取得する.
+		 * @return 遅延 [ms]
+		 */
+		public long getHedgeDelayMsec() {
+			return hedgeDelayMsec_;
+		}
+
+		/**
+		 * Determines whether failure is retryable under this policy.
+		 * @param cause failure
+		 * @return true if retryable
+		 * このポリシで失敗が再試行可能か否か.
+		 * @param cause 失敗
+		 * @return 再試行可能なら true
+		 */
+		public boolean isRetryable(Throwable cause) {
+			ReplyFailure failure = ReplyFailureUtil.replyFailure(cause);
+			if (failure == null) return false;
+			switch (failure) {
+			case TIMEOUT: return retryOnTimeout_;
+			case NO_HANDLERS: return retryOnNoHandlers_;
+			case RECIPIENT_FAILURE: return retryOnRecipientFailure_;
+			default: return false;
+			}
+		}
+		/**
+		 * Computes backoff before retry.
+		 * @param retry retry number starting with 1
+		 * @param random source of jitter
+		 * @return backoff [ms]
+		 * 再試行の前のバックオフを計算する.
+		 * @param retry 1 から始まる再試行番号
+		 * @param random ジッタの元
+		 * @return バックオフ [ms]
+		 */
+		public long backoffMsec(int retry, Random random) {
+			double base = Math.min((double) maxBackoffMsec_, initialBackoffMsec_ * Math.pow(multiplier_, retry - 1));
+			return Math.max(1L, (long) (base * (1.0 - jitter_ * random.nextDouble())));
+		}
+	}
+
+	////
+
+	private final Vertx vertx_;
+	private final Random random_;
+	private Policy defaultPolicy_ = new Policy();
+	private final Map<String, Policy> policies_ = new HashMap<>();
+	private final Map<String, Stats_> stats_ = new HashMap<>();
+
+	/**
+	 * Creates instance.
+	 * @param vertx the {@link Vertx} instance
+	 * インスタンスを作成する.
+	 * @param vertx the {@link Vertx} instance
+	 */
+	public RequestClient(Vertx vertx) {
+		this(vertx, new Random());
+	}
+	/*package*/ RequestClient(Vertx vertx, Random random) {
+		vertx_ = vertx;
+		random_ = random;
+	}
+
+	/**
+	 * Sets policy of addresses without their own policy.
+	 * @param policy policy. Copied
+	 * @return this client
+	 * 個別のポリシを持たないアドレスのポリシを設定する.
+	 * @param policy ポリシ. コピーされる
+	 * @return このクライアント
+	 */
+	public synchronized RequestClient setDefaultPolicy(Policy policy) {
+		defaultPolicy_ = new Policy(policy);
+		return this;
+	}
+	/**
+	 * Sets policy of address.
+	 * @param address address string
+	 * @param policy policy. Copied. {@code null} to use the default policy
+	 * @return this client
+	 * アドレスのポリシを設定する.
+	 * @param address アドレス文字列
+	 * @param policy ポリシ. コピーされる. デフォルトのポリシを使うなら {@code null}
+	 * @return このクライアント
+	 */
+	public synchronized RequestClient setPolicy(String address, Policy policy) {
+		if (policy != null) {
+			policies_.put(address, new Policy(policy));
+		} else {
+			policies_.remove(address);
+		}
+		return this;
+	}
+	/**
+	 * Gets policy of address.
+	 * @param address address string
+	 * @return policy
+	 * アドレスのポリシを取得する.
+	 * @param address アドレス文字列
+	 * @return ポリシ
+	 */
+	public synchronized Policy policy(String address) {
+		Policy result = policies_.get(address);
+		return (result != null) ? result : defaultPolicy_;
+	}
+
+	/**
+	 * Sends request and receives reply body.
+	 * @param <T> type of reply body
+	 * @param address destination address
+	 * @param body message body. May be {@code null}
+	 * @param options delivery options of each attempt. May be {@code null}
+	 * @param replyHandler handler receiving reply body, or the failure of the last attempt
+	 * リクエストを送り返信ボディを受け取る.
+	 * @param <T> 返信ボディの型
+	 * @param address 宛先アドレス
+	 * @param body メッセージボディ. {@code null} 可
+	 * @param options 各試行の配送オプション. {@code null} 可
+	 * @param replyHandler 返信ボディ, または最後の試行の失敗を受け取るハンドラ
+	 */
+	public <T> void request(String address, Object body, DeliveryOptions options, Handler<AsyncResult<T>> replyHandler) {
+		DeliveryOptions deliveryOptions = (options != null) ? options : new DeliveryOptions();
+		execute_(address, done -> {
+			vertx_.eventBus().<T>send(address, body, deliveryOptions, res -> {
+				done.handle(res.map(Message::body));
+			});
+		}, replyHandler);
+	}
+	/**
+	 * Sends request to typed address and receives reply body.
+	 * Each attempt uses the timeout of {@code address}.
+	 * @param <Req> type of message body
+	 * @param <Res> type of reply body
+	 * @param address destination address
+	 * @param body message body. May be {@code null}
+	 * @param replyHandler handler receiving reply body, or the failure of the last attempt
+	 * 型付きアドレスにリクエストを送り返信ボディを受け取る.
+	 * 各試行は {@code address} のタイムアウトを使う.
+	 * @param <Req> メッセージボディの型
+	 * @param <Res> 返信ボディの型
+	 * @param address 宛先アドレス
+	 * @param body メッセージボディ. {@code null} 可
+	 * @param replyHandler 返信ボディ, または最後の試行の失敗を受け取るハンドラ
+	 */
+	public <Req, Res> void request(Address<Req, Res> address, Req body, Handler<AsyncResult<Res>> replyHandler) {
+		execute_(address.name(), done -> address.request(vertx_, body, done), replyHandler);
+	}
+
+	/**
+	 * Gets statistics of all addresses.
+	 * @return statistics keyed by address. See {@link #stats(String)}
+	 * 全アドレスの統計を取得する.
+	 * @return アドレスをキーとする統計. {@link #stats(String)} 参照
+	 */
+	public JsonObject stats() {
+		JsonObject result = new JsonObject();
+		synchronized (stats_) {
+			for (Map.Entry<String, Stats_> anEntry : stats_.entrySet()) {
+				result.put(anEntry.getKey(), anEntry.getValue().toJson_());
+			}
+		}
+		return result;
+	}
+	/**
+	 * Gets statistics of address.
+	 * Keys are {@code requests}, {@code successes}, {@code failures}, {@code attempts}, {@code retries}, {@code hedges}, {@code budgetExhausted}, {@code timeouts}, {@code noHandlers}, {@code recipientFailures}, {@code budgetTokens}, {@code latencyAvgMsec} and {@code latencyMaxMsec}.
+	 * Latency is measured from the request to its final result, including retries.
+	 * @param address address string
+	 * @return statistics. {@code null} if no request has been made to address
+	 * アドレスの統計を取得する.
+	 * キーは {@code requests}, {@code successes}, {@code failures}, {@code attempts}, {@code retries}, {@code hedges}, {@code budgetExhausted}, {@code timeouts}, {@code noHandlers}, {@code recipientFailures}, {@code budgetTokens}, {@code latencyAvgMsec}, {@code latencyMaxMsec}.
+	 * 遅延はリクエストから再試行を含めた最終結果までを測る.
+	 * @param address アドレス文字列
+	 * @return 統計. アドレスにリクエストしていなければ {@code null}
+	 */
+	public JsonObject stats(String address) {
+		synchronized (stats_) {
+			Stats_ stats = stats_.get(address);
+			return (stats != null) ? stats.toJson_() : null;
+		}
+	}
+
+	////
+
+	private <T> void execute_(String address, Consumer<Handler<AsyncResult<T>>> attempt, Handler<AsyncResult<T>> replyHandler) {
+		Policy policy = policy(address);
+		Stats_ stats = stats_(address, policy);
+		synchronized (stats) {
+			stats.requests_++;
+		}
+		new Call_<>(address, policy, stats, attempt, replyHandler).round_();
+	}
+
+	private Stats_ stats_(String address, Policy policy) {
+		synchronized (stats_) {
+			Stats_ result = stats_.get(address);
+			if (result == null) {
+				result = new Stats_(policy.budgetTokens_);
+				stats_.put(address, result);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Sets a one-shot timer from any thread.
+	 * The first attempt and its failure may run on the caller's thread, which need not be a Vert.x one.
+	 * Vert.x 3.7 drops a timer set from such a thread if it fires before being registered, which short backoffs make likely,
+	 * so the timer is set on a Vert.x thread in that case.
+	 * @param delayMsec delay [ms]
+	 * @param handler timer handler
+	 * 任意のスレッドからワンショットタイマを設定する.
+	 * 最初の試行とその失敗は呼び出し元のスレッドで走ることがあり, それは Vert.x のスレッドとは限らない.
+	 * Vert.x 3.7 はそのようなスレッドから設定したタイマが登録前に発火すると捨ててしまい, 短いバックオフではそれが起きやすい.
+	 * そのためその場合は Vert.x のスレッドでタイマを設定する.
+	 * @param delayMsec 遅延 [ms]
+	 * @param handler タイマハンドラ
+	 */
+	private void setTimer_(long delayMsec, Handler<Long> handler) {
+		if (Context.isOnVertxThread()) {
+			vertx_.setTimer(delayMsec, handler);
+		} else {
+			vertx_.runOnContext(v -> vertx_.setTimer(delayMsec, handler));
+		}
+	}
+
+	/**
+	 * State of a request across its attempts.
+	 * @author OES Project
+	 * 試行をまたいだリクエストの状態.
+	 * @author OES Project
+	 */
+	private class Call_<T> {
+		private final String address_;
+		private final Policy policy_;
+		private final Stats_ stats_;
+		private final Consumer<Handler<AsyncResult<T>>> attempt_;
+		private final Handler<AsyncResult<T>> replyHandler_;
+		private final long startNanos_ = System.nanoTime();
+		private int retries_ = 0;
+		private int round_ = 0;
+		private int outstanding_ = 0;
+		private boolean roundDone_ = false;
+		private boolean done_ = false;
+		private Call_(String address, Policy policy, Stats_ stats, Consumer<Handler<AsyncResult<T>>> attempt, Handler<AsyncResult<T>> replyHandler) {
+			address_ = address;
+			policy_ = policy;
+			stats_ = stats;
+			attempt_ = attempt;
+			replyHandler_ = replyHandler;
+		}
+		private void round_() {
+			int round;
+			synchronized (this) {
+				round = ++round_;
+				outstanding_ = 0;
+				roundDone_ = false;
+			}
+			attempt_(round);
+			if (0 < policy_.hedgeDelayMsec_) {
+				setTimer_(policy_.hedgeDelayMsec_, t -> {
+					synchronized (this) {
+						if (done_ || roundDone_ || round_ != round) return;
+					}
+					if (!stats_.withdraw_(policy_, false)) return;
+					synchronized (stats_) {
+						stats_.hedges_++;
+					}
+					attempt_(round);
+				});
+			}
+		}
+		private void attempt_(int round) {
+			synchronized (this) {
+				outstanding_++;
+			}
+			synchronized (stats_) {
+				stats_.attempts_++;
+			}
+			try {
+				attempt_.accept(res -> attempted_(round, res));
+			} catch (Exception e) {
+				attempted_(round, Future.failedFuture(e));
+			}
+		}
+		private void attempted_(int round, AsyncResult<T> res) {
+			stats_.classify_(res);
+			synchronized (this) {
+				if (done_ || round_ != round || roundDone_) return;
+				outstanding_--;
+				if (res.failed() && 0 < outstanding_) {
+					// a hedged attempt of this round is still in flight
+					// この回のヘッジ試行がまだ実行中
+					return;
+				}
+				roundDone_ = true;
+			}
+			if (res.succeeded()) {
+				stats_.deposit_(policy_);
+				finish_(res);
+				return;
+			}
+			stats_.withdraw_(policy_, true);
+			if (retries_ < policy_.maxRetries_ && policy_.isRetryable(res.cause())) {
+				if (stats_.withdraw_(policy_, false)) {
+					retries_++;
+					synchronized (stats_) {
+						stats_.retries_++;
+					}
+					setTimer_(policy_.backoffMsec(retries_, random_), t -> round_());
+					return;
+				}
+				synchronized (stats_) {
+					stats_.budgetExhausted_++;
+				}
+			}
+			finish_(res);
+		}
+		private void finish_(AsyncResult<T> res) {
+			synchronized (this) {
+				if (done_) return;
+				done_ = true;
+			}
+			stats_.finished_(res.succeeded(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos_));
+			replyHandler_.handle(res);
+		}
+	}
+
+	/**
+	 * Statistics and retry budget of an address.
+	 * @author OES Project
+	 * アドレスの統計と再試行予算.
+	 * @author OES Project
+	 */
+	private static class Stats_ {
+		private long requests_ = 0L;
+		private long successes_ = 0L;
+		private long failures_ = 0L;
+		private long attempts_ = 0L;
+		private long retries_ = 0L;
+		private long hedges_ = 0L;
+		private long budgetExhausted_ = 0L;
+		private long timeouts_ = 0L;
+		private long noHandlers_ = 0L;
+		private long recipientFailures_ = 0L;
+		private long latencyTotalMsec_ = 0L;
+		private long latencyMaxMsec_ = 0L;
+		private double tokens_;
+		private Stats_(int tokens) {
+			tokens_ = tokens;
+		}
+		private synchronized void classify_(AsyncResult<?> res) {
+			if (ReplyFailureUtil.isTimeout(res)) {
+				timeouts_++;
+			} else if (ReplyFailureUtil.isNoHandlers(res)) {
+				noHandlers_++;
+			} else if (ReplyFailureUtil.isRecipientFailure(res)) {
+				recipientFailures_++;
+			}
+		}
+		private synchronized void deposit_(Policy policy) {
+			if (0 < policy.budgetTokens_) tokens_ = Math.min(policy.budgetTokens_, tokens_ + policy.budgetTokenRatio_);
+		}
+		/**
+		 * Takes a token on failure, or checks whether a retry or hedge is allowed.
+		 * @param policy policy
+		 * @param failure true to take a token for a failure
+		 * @return true if allowed
+		 * 失敗でトークンを一つ消費する, または再試行かヘッジが許されるか確かめる.
+		 * @param policy ポリシ
+		 * @param failure 失敗でトークンを消費するなら true
+		 * @return 許されるなら true
+		 */
+		private synchronized boolean withdraw_(Policy policy, boolean failure) {
+			if (policy.budgetTokens_ <= 0) return true;
+			if (failure) {
+				tokens_ = Math.max(0D, tokens_ - 1D);
+				return true;
+			}
+			return policy.budgetTokens_ / 2D < tokens_;
+		}
+		private synchronized void finished_(boolean succeeded, long latencyMsec) {
+			if (succeeded) {
+				successes_++;
+			} else {
+				failures_++;
+			}
+			latencyTotalMsec_ += latencyMsec;
+			if (latencyMaxMsec_ < latencyMsec) latencyMaxMsec_ = latencyMsec;
+		}
+		private synchronized JsonObject toJson_() {
+			long finished = successes_ + failures_;
+			return new JsonObject()
+					.put("requests", requests_)
+					.put("successes", successes_)
+					.put("failures", failures_)
+					.put("attempts", attempts_)
+					.put("retries", retries_)
+					.put("hedges", hedges_)
+					.put("budgetExhausted", budgetExhausted_)
+					.put("timeouts", timeouts_)
+					.put("noHandlers", noHandlers_)
+					.put("recipientFailures", recipientFailures_)
+					.put("budgetTokens", tokens_)
+					.put("latencyAvgMsec", (0 < finished) ? (double) latencyTotalMsec_ / finished : 0D)
+					.put("latencyMaxMsec", latencyMaxMsec_);
+		}
+	}
+
+}
@@ -0,0 +1,304 @@
+package jp.co.sony.csl.dcoes.apis.common.util.vertx;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.ReplyFailure;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import jp.co.sony.csl.dcoes.apis.common.Address;
+
+/**
+ * Sends the same request to a per-unit address of many units and gathers the replies.
+ * Unlike {@link io.vertx.core.CompositeFuture#all(List)}, the gathering never fails as a whole :
+ * each request has its own deadline, and the result holds the replies which arrived together with the failure of each other unit, classified by {@link ReplyFailureUtil}.
+ * At most {@link #setConcurrency(int) concurrency} requests are in flight at a time, and replies can be streamed to a handler as they arrive.
+ * Addresses are given as {@link Address.PerUnit} templates such as {@link jp.co.sony.csl.dcoes.apis.common.ServiceAddress.Typed#CONTROLLER_UNIT_DATA}.
+ * @param <Req> type of message body
+ * @param <Res> type of reply body
+ * @author OES Project
+ * 多数のユニットのユニットごとのアドレスに同じリクエストを送り返信を集める.
+ * {@link io.vertx.core.CompositeFuture#all(List)} と異なり, 全体としては決して fail しない :
+ * 各リクエストはそれぞれ期限を持ち, 結果は届いた返信と, それ以外の各ユニットの {@link ReplyFailureUtil} で分類した失敗を持つ.
+ * 同時に実行するリクエストは {@link #setConcurrency(int) 並列数} までで, 返信は届いた順にハンドラへ流すこともできる.
+ * アドレスは {@link jp.co.sony.csl.dcoes.apis.common.ServiceAddress.Typed#CONTROLLER_UNIT_DATA} などの {@link Address.PerUnit} テンプレートで与える.
+ * @param <Req> メッセージボディの型
+ * @param <Res> 返信ボディの型
+ * @author OES Project
+ */
+public class ScatterGather<Req, Res> {
+
+	/**
+	 * Default maximum number of requests in flight.
+	 * The value is {@value}.
+	 * 同時に実行するリクエストの最大数のデフォルト.
+	 * 値は {@value}.
+	 */
+	public static final int DEFAULT_CONCURRENCY = 16;
+
+	private final Vertx vertx_;
+	private final Address.PerUnit<Req, Res> template_;
+	private int concurrency_ = DEFAULT_CONCURRENCY;
+	private long deadlineMsec_ = 0L;
+
+	/**
+	 * Creates instance.
+	 * @param vertx the {@link Vertx} instance
+	 * @param template per-unit address
+	 * インスタンスを作成する.
+	 * @param vertx the {@link Vertx} instance
+	 * @param template ユニットごとのアドレス
+	 */
+	public ScatterGather(Vertx vertx, Address.PerUnit<Req, Res> template) {
+		vertx_ = vertx;
+		template_ = template;
+	}
+
+	/**
+	 * Sets maximum number of requests in flight.
+	 * @param value number of requests. Default is {@link #DEFAULT_CONCURRENCY}
+	 * @return this instance
+	 * 同時に実行するリクエストの最大数を設定する.
+	 * @param value リクエスト数. デフォルトは {@link #DEFAULT_CONCURRENCY}
+	 * @return このインスタンス
+	 */
+	public ScatterGather<Req, Res> setConcurrency(int value) {
+		concurrency_ = Math.max(1, value);
+		return this;
+	}
+	/**
+	 * Sets deadline of each request.
+	 * @param value deadline [ms]. 0 to use the timeout of the address. Default is 0
+	 * @return this instance
+	 * 各リクエストの期限を設定する.
+	 * @param value 期限 [ms]. アドレスのタイムアウトを使うなら 0. デフォルトは 0
+	 * @return このインスタンス
+	 */
+	public ScatterGather<Req, Res> setDeadlineMsec(long value) {
+		deadlineMsec_ = value;
+		return this;
+	}
+
+	/**
+	 * Sends request to units and gathers replies.
+	 * @param unitIds IDs of units. Duplicates are requested once
+	 * @param body message body. May be {@code null}
+	 * @param completionHandler handler receiving result. Always succeeds
+	 * ユニットにリクエストを送り返信を集める.
+	 * @param unitIds ユニット ID. 重複は一度だけリクエストする
+	 * @param body メッセージボディ. {@code null} 可
+	 * @param completionHandler 結果を受け取るハンドラ. 常に成功する
+	 */
+	public void gather(Collection<String> unitIds, Req body, Handler<AsyncResult<Result<Res>>> completionHandler) {
+		gather(unitIds, body, null, completionHandler);
+	}
+	/**
+	 * Sends request to units, streaming each reply as it arrives, and gathers replies.
+	 * @param unitIds IDs of units. Duplicates are requested once
+	 * @param body message body. May be {@code null}
+	 * @param replyHandler handler receiving each unit's reply or failure as it arrives. May be {@code null}
+	 * @param completionHandler handler receiving result after all replies. Always succeeds
+	 * ユニットにリクエストを送り, 届いた順に各返信を流しつつ返信を集める.
+	 * @param unitIds ユニット ID. 重複は一度だけリクエストする
+	 * @param body メッセージボディ. {@code null} 可
+	 * @param replyHandler 各ユニットの返信または失敗を届いた順に受け取るハンドラ. {@code null} 可
+	 * @param completionHandler 全ての返信の後で結果を受け取るハンドラ. 常に成功する
+	 */
+	public void gather(Collection<String> unitIds, Req body, Handler<Reply<Res>> replyHandler, Handler<AsyncResult<Result<Res>>> completionHandler) {
+		List<String> ids = new ArrayList<>(new LinkedHashSet<>(unitIds));
+		Gathering_ gathering = new Gathering_(ids, body, replyHandler, completionHandler);
+		if (ids.isEmpty()) {
+			gathering.complete_();
+			return;
+		}
+		for (int i = 0; i < Math.min(concurrency_, ids.size()); i++) {
+			gathering.next_();
+		}
+	}
+
+	////
+
+	/**
+	 * State of a gathering.
+	 * @author OES Project
+	 * 収集の状態.
+	 * @author OES Project
+	 */
+	private class Gathering_ {
+		private final List<String> unitIds_;
+		private final Req body_;
+		private final Handler<Reply<Res>> replyHandler_;
+		private final Handler<AsyncResult<Result<Res>>> completionHandler_;
+		private final Map<String, Res> values_ = new LinkedHashMap<>();
+		private final Map<String, Throwable> failures_ = new LinkedHashMap<>();
+		private int next_ = 0;
+		private int finished_ = 0;
+		private Gathering_(List<String> unitIds, Req body, Handler<Reply<Res>> replyHandler, Handler<AsyncResult<Result<Res>>> completionHandler) {
+			unitIds_ = unitIds;
+			body_ = body;
+			replyHandler_ = replyHandler;
+			completionHandler_ = completionHandler;
+		}
+		private void next_() {
+			String unitId;
+			synchronized (this) {
+				if (unitIds_.size() <= next_) return;
+				unitId = unitIds_.get(next_++);
+			}
+			Address<Req, Res> address = template_.of(unitId);
+			DeliveryOptions options = address.deliveryOptions();
+			if (0 < deadlineMsec_) options.setSendTimeout(deadlineMsec_);
+			try {
+				address.request(vertx_, body_, options, res -> replied_(unitId, res));
+			} catch (Exception e) {
+				replied_(unitId, Future.failedFuture(e));
+			}
+		}
+		private void replied_(String unitId, AsyncResult<Res> res) {
+			boolean done;
+			synchronized (this) {
+				if (res.succeeded()) {
+					values_.put(unitId, res.result());
+				} else {
+					failures_.put(unitId, res.cause());
+				}
+				done = (++finished_ == unitIds_.size());
+			}
+			if (replyHandler_ != null) replyHandler_.handle(new Reply<>(unitId, res));
+			if (done) {
+				complete_();
+			} else {
+				next_();
+			}
+		}
+		private void complete_() {
+			Result<Res> result;
+			synchronized (this) {
+				result = new Result<>(unitIds_, values_, failures_);
+			}
+			completionHandler_.handle(Future.succeededFuture(result));
+		}
+	}
+
+	////
+
+	/**
+	 * Reply or failure of a unit.
+	 * @param <Res> type of reply body
+	 * @author OES Project
+	 * ユニットの返信または失敗.
+	 * @param <Res> 返信ボディの型
+	 * @author OES Project
+	 */
+	public static class Reply<Res> {
+		private final String unitId_;
+		private final AsyncResult<Res> result_;
+		private Reply(String unitId, AsyncResult<Res> result) {
+			unitId_ = unitId;
+			result_ = result;
+		}
+		/**
+		 * Gets unit ID.
+		 * @return unit ID
+		 * ユニット ID を取得する.
+		 * @return ユニット ID
+		 */
+		public String unitId() {
+			return unitId_;
+		}
+		/**
+		 * Gets reply body or failure.
+		 * @return result
+		 * 返信ボディまたは失敗を取得する.
+		 * @return 結果
+		 */
+		public AsyncResult<Res> result() {
+			return result_;
+		}
+		/**
+		 * Gets type of failure.
+		 * @return failure type. {@code null} if succeeded or not an EventBus failure
+		 * 失敗の種類を取得する.
+		 * @return 失敗の種類. 成功または EventBus の失敗でなければ {@code null}
+		 */
+		public ReplyFailure failureType() {
+			return ReplyFailureUtil.replyFailure(result_);
+		}
+	}
+
+	/**
+	 * Gathered replies and failures.
+	 * @param <Res> type of reply body
+	 * @author OES Project
+	 * 集めた返信と失敗.
+	 * @param <Res> 返信ボディの型
+	 * @author OES Project
+	 */
+	public static class Result<Res> {
+		private final List<String> unitIds_;
+		private final Map<String, Res> values_;
+		private final Map<String, Throwable> failures_;
+		private Result(List<String> unitIds, Map<String, Res> values, Map<String, Throwable> failures) {
+			unitIds_ = Collections.unmodifiableList(unitIds);
+			values_ = Collections.unmodifiableMap(new LinkedHashMap<>(values));
+			failures_ = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+		}
+		/**
+		 * Gets IDs of requested units.
+		 * @return unmodifiable list of unit IDs in request order
+		 * リクエストしたユニットの ID を取得する.
+		 * @return リクエスト順のユニット ID の変更不可リスト
+		 */
+		public List<String> unitIds() {
+			return unitIds_;
+		}
+		/**
+		 * Gets reply bodies of units which replied.
+		 * @return unmodifiable map of unit ID to reply body in arrival order
+		 * 返信したユニットの返信ボディを取得する.
+		 * @return 到着順のユニット ID から返信ボディへの変更不可マップ
+		 */
+		public Map<String, Res> values() {
+			return values_;
+		}
+		/**
+		 * Gets failures of units which did not reply.
+		 * @return unmodifiable map of unit ID to failure in arrival order
+		 * 返信しなかったユニットの失敗を取得する.
+		 * @return 到着順のユニット ID から失敗への変更不可マップ
+		 */
+		public Map<String, Throwable> failures() {
+			return failures_;
+		}
+		/**
+		 * Gets type of failure of unit.
+		 * @param unitId unit ID
+		 * @return failure type. {@code null} if unit replied or the failure is not an EventBus failure
+		 * ユニットの失敗の種類を取得する.
+		 * @param unitId ユニット ID
+		 * @return 失敗の種類. ユニットが返信したか EventBus の失敗でなければ {@code null}
+		 */
+		public ReplyFailure failureType(String unitId) {
+			return ReplyFailureUtil.replyFailure(failures_.get(unitId));
+		}
+		/**
+		 * Determines whether all units replied.
+		 * @return true if no failure
+		 * 全てのユニットが返信したか否か.
+		 * @return 失敗がなければ true
+		 */
+		public boolean isComplete() {
+			return failures_.isEmpty();
+		}
+	}
+
+}
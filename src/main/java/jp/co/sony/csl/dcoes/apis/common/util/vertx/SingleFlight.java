@@ -0,0 +1,295 @@
+package jp.co.sony.csl.dcoes.apis.common.util.vertx;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Coalesces concurrent identical requests into one.
+ * While a request of a key is in flight, further requests of the same key wait for its result instead of starting their own.
+ * With a positive {@code freshnessMsec}, a successful result is also reused by requests of the same key started within that time after it arrived.
+ * Failures are never reused.
+ * Each waiting handler is called on the {@link Context} it was registered from, not on the one which completed the operation.
+ * A result which is a {@link JsonObject} or {@link JsonArray} is copied for each handler, so handlers may modify theirs ; any other result object is shared and must not be modified.
+ * Intended for requests such as {@link jp.co.sony.csl.dcoes.apis.common.ServiceAddress.Controller#urgentUnitData()} which make a slow device query per call ; see {@link #send(SingleFlight, Vertx, String, Object, DeliveryOptions, Handler)}.
+ * @param <K> key type
+ * @param <V> result type
+ * @author OES Project
+ * 同時に起きた同一のリクエストを一つにまとめる.
+ * あるキーのリクエストが実行中の間, 同じキーの後続のリクエストは自分で始めずにその結果を待つ.
+ * {@code freshnessMsec} が正なら, 成功した結果は到着後その時間内に始まった同じキーのリクエストでも再利用する.
+ * 失敗は再利用しない.
+ * 待っている各ハンドラは処理を完了させた {@link Context} ではなく, 登録した {@link Context} で呼ぶ.
+ * {@link JsonObject} と {@link JsonArray} の結果はハンドラごとにコピーするのでハンドラは変更してよい. それ以外の結果オブジェクトは共有するので変更してはならない.
+ * 呼ぶたびに遅いデバイス問い合わせを行う {@link jp.co.sony.csl.dcoes.apis.common.ServiceAddress.Controller#urgentUnitData()} などのリクエストを想定している. {@link #send(SingleFlight, Vertx, String, Object, DeliveryOptions, Handler)} 参照.
+ * @param <K> キーの型
+ * @param <V> 結果の型
+ * @author OES Project
+ */
+public class SingleFlight<K, V> {
+
+	/**
+	 * Sends a request via {@link io.vertx.core.eventbus.EventBus} through {@code flight}.
+	 * The key is made of {@code address}, {@code body} and the headers of {@code options}, so only requests with equal ones are coalesced.
+	 * @param <T> type of reply body
+	 * @param flight coalescer
+	 * @param vertx the {@link Vertx} instance
+	 * @param address destination address
+	 * @param body message body. May be {@code null}
+	 * @param options delivery options. May be {@code null}
+	 * @param resultHandler handler receiving reply body
+	 * {@code flight} を通して {@link io.vertx.core.eventbus.EventBus} でリクエストを送る.
+	 * キーは {@code address}, {@code body}, {@code options} のヘッダから作るので, それらが等しいリクエストだけがまとめられる.
+	 * @param <T> 返信ボディの型
+	 * @param flight まとめ器
+	 * @param vertx the {@link Vertx} instance
+	 * @param address 宛先アドレス
+	 * @param body メッセージボディ. {@code null} 可
+	 * @param options 配送オプション. {@code null} 可
+	 * @param resultHandler 返信ボディを受け取るハンドラ
+	 */
+	public static <T> void send(SingleFlight<String, T> flight, Vertx vertx, String address, Object body, DeliveryOptions options, Handler<AsyncResult<T>> resultHandler) {
+		DeliveryOptions deliveryOptions = (options != null) ? options : new DeliveryOptions();
+		flight.execute(key(address, body, deliveryOptions), done -> {
+			vertx.eventBus().<T>send(address, body, deliveryOptions, res -> {
+				done.handle(res.map(Message::body));
+			});
+		}, resultHandler);
+	}
+	/**
+	 * Makes key of {@link io.vertx.core.eventbus.EventBus} request.
+	 * @param address destination address
+	 * @param body message body. May be {@code null}
+	 * @param options delivery options. May be {@code null}
+	 * @return key string
+	 * {@link io.vertx.core.eventbus.EventBus} リクエストのキーを作る.
+	 * @param address 宛先アドレス
+	 * @param body メッセージボディ. {@code null} 可
+	 * @param options 配送オプション. {@code null} 可
+	 * @return キー文字列
+	 */
+	public static String key(String address, Object body, DeliveryOptions options) {
+		StringBuilder sb = new StringBuilder(address).append('|').append(body);
+		if (options != null && options.getHeaders() != null) {
+			Map<String, String> headers = new TreeMap<>();
+			for (Map.Entry<String, String> header : options.getHeaders()) headers.put(header.getKey(), header.getValue());
+			sb.append('|').append(headers);
+		}
+		return sb.toString();
+	}
+
+	////
+
+	private static final int PRUNE_THRESHOLD_ = 1024;
+
+	private final long freshnessMsec_;
+	private final LongSupplier clock_;
+	private final Map<K, List<Waiter_<V>>> inFlight_ = new HashMap<>();
+	private final Map<K, Fresh_<V>> fresh_ = new HashMap<>();
+	private long executed_ = 0L;
+	private long coalesced_ = 0L;
+	private long reused_ = 0L;
+
+	/**
+	 * Creates instance.
+	 * @param freshnessMsec time a successful result is reused for [ms]. 0 to share only in-flight requests
+	 * インスタンスを作成する.
+	 * @param freshnessMsec 成功した結果を再利用する時間 [ms]. 実行中のリクエストの共有だけなら 0
+	 */
+	public SingleFlight(long freshnessMsec) {
+		this(freshnessMsec, System::currentTimeMillis);
+	}
+	/*package*/ SingleFlight(long freshnessMsec, LongSupplier clock) {
+		freshnessMsec_ = freshnessMsec;
+		clock_ = clock;
+	}
+
+	/**
+	 * Executes operation unless one of the same key is in flight or has a fresh result.
+	 * {@code resultHandler} receives the shared result in any case, on the current {@link Context} if any.
+	 * @param key key identifying identical requests
+	 * @param operation operation which completes the given handler exactly once
+	 * @param resultHandler handler receiving result
+	 * 同じキーのものが実行中でも新鮮な結果を持っているのでもなければ処理を実行する.
+	 * いずれの場合も {@code resultHandler} は共有された結果を, {@link Context} があれば現在の {@link Context} で受け取る.
+	 * @param key 同一のリクエストを識別するキー
+	 * @param operation 与えられたハンドラをちょうど一度完了させる処理
+	 * @param resultHandler 結果を受け取るハンドラ
+	 */
+	public void execute(K key, Consumer<Handler<AsyncResult<V>>> operation, Handler<AsyncResult<V>> resultHandler) {
+		V freshResult = null;
+		boolean reuse = false;
+		synchronized (this) {
+			Fresh_<V> fresh = fresh_.get(key);
+			if (fresh != null) {
+				if (clock_.getAsLong() - fresh.time_ < freshnessMsec_) {
+					freshResult = fresh.result_;
+					reuse = true;
+					reused_++;
+				} else {
+					fresh_.remove(key);
+				}
+			}
+			if (!reuse) {
+				Waiter_<V> waiter = new Waiter_<>(Vertx.currentContext(), resultHandler);
+				List<Waiter_<V>> waiting = inFlight_.get(key);
+				if (waiting != null) {
+					waiting.add(waiter);
+					coalesced_++;
+					return;
+				}
+				waiting = new ArrayList<>();
+				waiting.add(waiter);
+				inFlight_.put(key, waiting);
+				executed_++;
+			}
+		}
+		if (reuse) {
+			resultHandler.handle(Future.succeededFuture(copy_(freshResult)));
+			return;
+		}
+		try {
+			operation.accept(res -> complete_(key, res));
+		} catch (Exception e) {
+			complete_(key, Future.failedFuture(e));
+		}
+	}
+
+	/**
+	 * Forgets fresh results.
+	 * 新鮮な結果を忘れる.
+	 */
+	public synchronized void invalidate() {
+		fresh_.clear();
+	}
+	/**
+	 * Forgets fresh result of key.
+	 * @param key key
+	 * キーの新鮮な結果を忘れる.
+	 * @param key キー
+	 */
+	public synchronized void invalidate(K key) {
+		fresh_.remove(key);
+	}
+
+	/**
+	 * Gets number of operations executed.
+	 * @return number of operations
+	 * 実行した処理の数を取得する.
+	 * @return 処理の数
+	 */
+	public synchronized long executed() {
+		return executed_;
+	}
+	/**
+	 * Gets number of requests which waited for an operation in flight.
+	 * @return number of requests
+	 * 実行中の処理を待ったリクエストの数を取得する.
+	 * @return リクエストの数
+	 */
+	public synchronized long coalesced() {
+		return coalesced_;
+	}
+	/**
+	 * Gets number of requests answered with a fresh result.
+	 * @return number of requests
+	 * 新鮮な結果で答えたリクエストの数を取得する.
+	 * @return リクエストの数
+	 */
+	public synchronized long reused() {
+		return reused_;
+	}
+
+	////
+
+	private void complete_(K key, AsyncResult<V> result) {
+		List<Waiter_<V>> waiting;
+		boolean cached = false;
+		synchronized (this) {
+			waiting = inFlight_.remove(key);
+			if (waiting == null) return;
+			if (result.succeeded() && 0 < freshnessMsec_) {
+				long now = clock_.getAsLong();
+				if (PRUNE_THRESHOLD_ <= fresh_.size()) prune_(now);
+				fresh_.put(key, new Fresh_<>(result.result(), now));
+				cached = true;
+			}
+		}
+		// The result itself is handed over only if nobody else sees it
+		// 他の誰も見ない場合だけ結果そのものを渡す
+		boolean share = (waiting.size() == 1 && !cached);
+		Context current = Vertx.currentContext();
+		for (Waiter_<V> waiter : waiting) {
+			AsyncResult<V> res = (result.succeeded() && !share) ? Future.succeededFuture(copy_(result.result())) : result;
+			if (waiter.context_ == null || waiter.context_ == current) {
+				waiter.handler_.handle(res);
+			} else {
+				waiter.context_.runOnContext(v -> waiter.handler_.handle(res));
+			}
+		}
+	}
+
+	private static <V> V copy_(V value) {
+		if (value instanceof JsonObject) {
+			@SuppressWarnings("unchecked") V result = (V) ((JsonObject) value).copy();
+			return result;
+		}
+		if (value instanceof JsonArray) {
+			@SuppressWarnings("unchecked") V result = (V) ((JsonArray) value).copy();
+			return result;
+		}
+		return value;
+	}
+
+	private void prune_(long now) {
+		for (Iterator<Fresh_<V>> it = fresh_.values().iterator(); it.hasNext();) {
+			if (freshnessMsec_ <= now - it.next().time_) it.remove();
+		}
+	}
+
+	/**
+	 * Waiting handler and the context it was registered from.
+	 * @author OES Project
+	 * 待っているハンドラとそれを登録した context.
+	 * @author OES Project
+	 */
+	private static class Waiter_<V> {
+		private final Context context_;
+		private final Handler<AsyncResult<V>> handler_;
+		private Waiter_(Context context, Handler<AsyncResult<V>> handler) {
+			context_ = context;
+			handler_ = handler;
+		}
+	}
+
+	/**
+	 * Successful result and its arrival time.
+	 * @author OES Project
+	 * 成功した結果とその到着時刻.
+	 * @author OES Project
+	 */
+	private static class Fresh_<V> {
+		private final V result_;
+		private final long time_;
+		private Fresh_(V result, long time) {
+			result_ = result;
+			time_ = time;
+		}
+	}
+
+}
@@ -0,0 +1,86 @@
+package jp.co.sony.csl.dcoes.apis.common;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class AddressTest {
+
+	public AddressTest() {
+		super();
+	}
+
+	private Vertx vertx_;
+
+	@Before public void setUp() {
+		vertx_ = Vertx.vertx();
+	}
+	@After public void tearDown(TestContext context) {
+		vertx_.close(context.asyncAssertSuccess());
+	}
+
+	@Test public void interned(TestContext context) {
+		context.assertEquals("apis.E001.Controller.data", ServiceAddress.Controller.unitData("E001"));
+		context.assertTrue(ServiceAddress.Controller.unitData("E001") == ServiceAddress.Controller.unitData("E001"));
+		context.assertTrue(ServiceAddress.Typed.CONTROLLER_UNIT_DATA.of("E001") == ServiceAddress.Typed.CONTROLLER_UNIT_DATA.of("E001"));
+		context.assertEquals("apis.E002.Mediator.interlock.deal", ServiceAddress.Mediator.dealInterlocking("E002"));
+		context.assertEquals(Address.Scope.GLOBAL, ServiceAddress.Typed.HELO.of("E001").scope());
+	}
+
+	@Test public void nullUnitId(TestContext context) {
+		// Same as the former string concatenation
+		context.assertEquals("apis.null.helo", ServiceAddress.helo(null));
+		context.assertEquals("apis.null.helo", ServiceAddress.Typed.HELO.of(null).name());
+	}
+
+	@Test public void capped(TestContext context) {
+		Address.PerUnit<Void, Void> template = new Address.PerUnit<>("test.", ".capped", Address.Scope.LOCAL, Void.class, Void.class);
+		for (int i = 0; i < Address.PerUnit.MAX_CACHE_SIZE; i++) template.of("E" + i);
+		context.assertTrue(template.of("E0") == template.of("E0"));
+		// Beyond the cap, still correct but not interned
+		context.assertEquals("test.X.capped", template.name("X"));
+		context.assertFalse(template.of("X") == template.of("X"));
+	}
+
+	@Test public void request(TestContext context) {
+		Address<Void, JsonObject> address = ServiceAddress.Typed.CONTROLLER_UNIT_DATA.of("E001");
+		address.consumer(vertx_, req -> {
+			req.reply(new JsonObject().put("rsoc", 50));
+		}).completionHandler(context.asyncAssertSuccess(v -> {
+			address.request(vertx_, null, context.asyncAssertSuccess(res -> {
+				context.assertEquals(50, res.getInteger("rsoc"));
+			}));
+		}));
+	}
+
+	@Test public void typeMismatch(TestContext context) {
+		Address<Void, JsonObject> address = Address.of("test.mismatch", Address.Scope.LOCAL, Void.class, JsonObject.class, 1000L);
+		address.consumer(vertx_, req -> {
+			req.reply("not a json object");
+		});
+		address.request(vertx_, null, context.asyncAssertFailure(t -> {
+			context.assertTrue(t instanceof ClassCastException);
+		}));
+	}
+
+	@Test public void timeout(TestContext context) {
+		Address<String, String> address = Address.of("test.silent", Address.Scope.LOCAL, String.class, String.class, 100L);
+		Async async = context.async();
+		address.consumer(vertx_, req -> { });
+		long start = System.currentTimeMillis();
+		address.request(vertx_, "ping", res -> {
+			context.assertTrue(res.failed());
+			context.assertTrue(System.currentTimeMillis() - start < 5000L);
+			async.complete();
+		});
+	}
+
+}
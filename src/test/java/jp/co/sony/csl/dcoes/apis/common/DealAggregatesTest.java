@@ -0,0 +1,65 @@
+package jp.co.sony.csl.dcoes.apis.common;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class DealAggregatesTest {
+
+	public DealAggregatesTest() {
+		super();
+	}
+
+	private static JsonObject deal_(String dealId, String dischargeUnitId, String chargeUnitId, float currentA, float wh) {
+		return new JsonObject().put("dealId", dealId).put("dischargeUnitId", dischargeUnitId).put("chargeUnitId", chargeUnitId).put("dealGridCurrentA", currentA).put("dealAmountWh", wh);
+	}
+
+	@Test public void onePass(TestContext context) {
+		List<JsonObject> deals = new ArrayList<>();
+		deals.add(deal_("d1", "E002", "E001", 2F, 100F));
+		deals.add(deal_("d2", "E002", "E003", 3F, 200F).put("activateDateTime", "t").put("dischargeUnitCompensatedGridCurrentA", 3.5F));
+		deals.add(deal_("d3", "E003", "E001", 1F, 50F).put("activateDateTime", "t").put("stopDateTime", "t"));
+		// Integers are read as well as floats
+		deals.add(new JsonObject().put("dealId", "d4").put("dischargeUnitId", "E001").put("chargeUnitId", "E004").put("dealGridCurrentA", 1).put("dealAmountWh", 10));
+		DealAggregates aggregates = DealAggregates.of(deals);
+		context.assertEquals(Arrays.asList("E001", "E002", "E003", "E004"), Arrays.asList(aggregates.unitIds()));
+		context.assertEquals(-2F, aggregates.netGridCurrentA("E001"));
+		context.assertEquals(5.5F, aggregates.netGridCurrentA("E002"));
+		context.assertEquals(-2F, aggregates.netGridCurrentA("E003"));
+		context.assertEquals(-1F, aggregates.netGridCurrentA("E004"));
+		context.assertEquals(0F, aggregates.netGridCurrentA("E005"));
+		context.assertEquals(3F, aggregates.chargeGridCurrentA()[aggregates.indexOf("E001")]);
+		context.assertEquals(2, aggregates.count(Deal.State.NOT_ACTIVATED));
+		context.assertEquals(1, aggregates.count(Deal.State.ACTIVATED));
+		context.assertEquals(1, aggregates.count(Deal.State.STOPPED));
+		context.assertEquals(4, aggregates.dealCount());
+		context.assertEquals(360D, aggregates.totalDealAmountWh());
+		context.assertEquals(200D, aggregates.inFlightDealAmountWh());
+	}
+
+	@Test public void parallel(TestContext context) {
+		List<JsonObject> deals = new ArrayList<>();
+		for (int i = 0; i < 20000; i++) {
+			JsonObject deal = deal_("d" + i, "E" + (i % 97), "E" + ((i + 1) % 89), 1F + i % 4, 10F);
+			if (i % 3 == 0) deal.put("activateDateTime", "t");
+			deals.add(deal);
+		}
+		DealAggregates sequential = DealAggregates.of(deals);
+		DealAggregates parallel = DealAggregates.of(deals, 1000);
+		context.assertTrue(Arrays.equals(sequential.unitIds(), parallel.unitIds()));
+		context.assertTrue(Arrays.equals(sequential.netGridCurrentA(), parallel.netGridCurrentA()));
+		context.assertTrue(Arrays.equals(sequential.stateCounts(), parallel.stateCounts()));
+		context.assertEquals(20000, parallel.dealCount());
+		context.assertEquals(200000D, parallel.totalDealAmountWh());
+		context.assertEquals(sequential.inFlightDealAmountWh(), parallel.inFlightDealAmountWh());
+	}
+
+}
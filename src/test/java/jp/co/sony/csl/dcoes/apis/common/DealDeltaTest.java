@@ -0,0 +1,95 @@
+package jp.co.sony.csl.dcoes.apis.common;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class DealDeltaTest {
+
+	public DealDeltaTest() {
+		super();
+	}
+
+	private static JsonObject deal_() {
+		return new JsonObject().put("dealId", "d1").put("type", "discharge").put("dischargeUnitId", "E001").put("chargeUnitId", "E002").put("dealAmountWh", 100F).put("activateDateTime", Deal.NULL_DATE_TIME_VALUE).put("resets", new JsonArray());
+	}
+
+	@Test public void patch(TestContext context) {
+		JsonObject previous = deal_();
+		JsonObject current = deal_().put("activateDateTime", "2020/01/01-12:00:00").put("resets", new JsonArray().add("x")).put("extra", (Object) null);
+		current.remove("type");
+		JsonObject patch = DealDelta.patch(previous, current, 2L);
+		context.assertFalse(DealDelta.isFull(patch));
+		context.assertEquals(2L, DealDelta.version(patch));
+		context.assertEquals(3, patch.getJsonObject("set").size());
+		context.assertEquals("2020/01/01-12:00:00", patch.getJsonObject("set").getString("activateDateTime"));
+		context.assertTrue(patch.getJsonObject("set").containsKey("extra"));
+		context.assertEquals(new JsonArray().add("type"), patch.getJsonArray("unset"));
+		context.assertNull(DealDelta.patch(previous, deal_(), 2L));
+	}
+
+	@Test public void trackerToCache(TestContext context) {
+		DealDelta.Tracker tracker = new DealDelta.Tracker();
+		DealDelta.Cache cache = new DealDelta.Cache();
+		JsonObject deal = deal_();
+		JsonObject d1 = tracker.delta(deal);
+		context.assertTrue(DealDelta.isFull(d1));
+		context.assertEquals(DealDelta.Result.APPLIED, cache.apply(d1));
+		context.assertNull(tracker.delta(deal));
+		deal.put("activateDateTime", "2020/01/01-12:00:00");
+		JsonObject d2 = tracker.delta(deal);
+		context.assertFalse(DealDelta.isFull(d2));
+		context.assertEquals(1, d2.getJsonObject("set").size());
+		context.assertEquals(DealDelta.Result.APPLIED, cache.apply(d2));
+		context.assertEquals(DealDelta.Result.STALE, cache.apply(d2));
+		context.assertEquals(deal, cache.get("d1"));
+		context.assertEquals(2L, cache.version("d1"));
+	}
+
+	@Test public void resyncOnGap(TestContext context) {
+		DealDelta.Tracker tracker = new DealDelta.Tracker();
+		DealDelta.Cache cache = new DealDelta.Cache();
+		JsonObject deal = deal_();
+		cache.apply(tracker.delta(deal));
+		tracker.delta(deal.put("activateDateTime", "2020/01/01-12:00:00"));
+		JsonObject d3 = tracker.delta(deal.put("rampUpDateTime", "2020/01/01-12:00:05"));
+		context.assertEquals(DealDelta.Result.GAP, cache.apply(d3));
+		context.assertEquals(1, cache.needResync().size());
+		JsonObject d4 = tracker.delta(deal.put("warmUpDateTime", "2020/01/01-12:00:10"));
+		// Patches stay refused until a full delta arrives, even if consecutive
+		context.assertEquals(DealDelta.Result.GAP, cache.apply(d4));
+		context.assertEquals(DealDelta.Result.APPLIED, cache.apply(tracker.full("d1")));
+		context.assertEquals(0, cache.needResync().size());
+		context.assertEquals(deal, cache.get("d1"));
+		context.assertEquals(DealDelta.Result.APPLIED, cache.apply(tracker.delta(deal.put("startDateTime", "2020/01/01-12:00:15"))));
+		context.assertEquals(deal, cache.get("d1"));
+		// A patch for an unknown deal is a gap too
+		context.assertEquals(DealDelta.Result.GAP, new DealDelta.Cache().apply(d4));
+	}
+
+	@Test public void staleFull(TestContext context) {
+		DealDelta.Tracker tracker = new DealDelta.Tracker();
+		DealDelta.Cache cache = new DealDelta.Cache();
+		JsonObject deal = deal_();
+		cache.apply(tracker.delta(deal));
+		JsonObject oldFull = tracker.full("d1");
+		context.assertEquals(DealDelta.Result.APPLIED, cache.apply(tracker.delta(deal.put("activateDateTime", "2020/01/01-12:00:00"))));
+		// A late resync reply does not roll the deal back
+		context.assertEquals(DealDelta.Result.STALE, cache.apply(oldFull));
+		context.assertEquals(2L, cache.version("d1"));
+		context.assertEquals(deal, cache.get("d1"));
+		context.assertEquals(DealDelta.Result.APPLIED, cache.apply(tracker.delta(deal.put("rampUpDateTime", "2020/01/01-12:00:05"))));
+		// The same version is accepted again
+		context.assertEquals(DealDelta.Result.APPLIED, cache.apply(tracker.full("d1")));
+		// Copies are returned
+		cache.get("d1").put("dealAmountWh", 0F);
+		cache.deals().get(0).put("dealAmountWh", 0F);
+		context.assertEquals(deal, cache.get("d1"));
+	}
+
+}
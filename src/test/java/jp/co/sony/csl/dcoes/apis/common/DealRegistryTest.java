@@ -0,0 +1,115 @@
+package jp.co.sony.csl.dcoes.apis.common;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import java.util.Collection;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class DealRegistryTest {
+
+	public DealRegistryTest() {
+		super();
+	}
+
+	private static JsonObject deal_(String dealId, String dischargeUnitId, String chargeUnitId) {
+		return new JsonObject().put("dealId", dealId).put("dischargeUnitId", dischargeUnitId).put("chargeUnitId", chargeUnitId);
+	}
+
+	@Test public void state(TestContext context) {
+		JsonObject deal = deal_("d", "E001", "E002");
+		context.assertEquals(Deal.State.NOT_ACTIVATED, Deal.state(deal));
+		context.assertEquals(Deal.State.ACTIVATED, Deal.state(deal.put("activateDateTime", "t")));
+		context.assertEquals(Deal.State.WARMED_UP, Deal.state(deal.put("warmUpDateTime", "t")));
+		context.assertEquals(Deal.State.STOPPED, Deal.state(deal.put("startDateTime", "t").put("stopDateTime", "t")));
+		context.assertEquals(Deal.State.ABORTED, Deal.state(deal.put("abortDateTime", "t")));
+	}
+
+	@Test public void indexes(TestContext context) {
+		DealRegistry registry = new DealRegistry("dischargeUnit");
+		JsonObject d1 = deal_("d1", "E001", "E002");
+		JsonObject d2 = deal_("d2", "E001", "E003");
+		JsonObject d3 = deal_("d3", "E003", "E002");
+		registry.put(d1);
+		registry.put(d2);
+		registry.put(d3);
+		context.assertEquals(2, registry.involving("E001").size());
+		context.assertEquals(2, registry.involving("E003").size());
+		context.assertEquals(0, registry.involving("E004").size());
+		context.assertEquals(2, registry.involving("E001", Deal.Direction.DISCHARGE).size());
+		context.assertEquals(0, registry.involving("E001", Deal.Direction.CHARGE).size());
+		context.assertEquals(2, registry.masterSide("E001").size());
+		context.assertEquals(2, registry.slaveSide("E002").size());
+		context.assertEquals(3, registry.inState(Deal.State.NOT_ACTIVATED).size());
+		context.assertEquals(0, registry.transitional().size());
+
+		// Modified in place, then put again
+		d1.put("activateDateTime", "t");
+		registry.put(d1);
+		context.assertEquals(2, registry.inState(Deal.State.NOT_ACTIVATED).size());
+		context.assertEquals(1, registry.inState(Deal.State.ACTIVATED).size());
+		context.assertEquals(1, registry.transitional().size());
+		d1.put("warmUpDateTime", "t");
+		registry.put(d1);
+		context.assertEquals(0, registry.transitional().size());
+		context.assertEquals(0, registry.inState(Deal.State.ACTIVATED).size());
+
+		registry.masterSidePolicy("chargeUnit");
+		context.assertEquals(0, registry.masterSide("E001").size());
+		context.assertEquals(2, registry.masterSide("E002").size());
+
+		registry.remove("d2");
+		context.assertEquals(1, registry.involving("E001").size());
+		context.assertEquals(1, registry.involving("E003").size());
+		context.assertEquals(2, registry.size());
+		context.assertNull(registry.get("d2"));
+	}
+
+	@Test public void replace(TestContext context) {
+		DealRegistry registry = new DealRegistry("dischargeUnit");
+		JsonObject d1 = deal_("d1", "E001", "E002");
+		registry.put(d1);
+		Collection<JsonObject> involving = registry.involving("E001");
+		Collection<JsonObject> all = registry.deals();
+		// Nothing changed, so the cached snapshots are returned again
+		registry.put(d1);
+		context.assertTrue(involving == registry.involving("E001"));
+		context.assertTrue(all == registry.deals());
+		// Replaced by another object with the same keys
+		registry.put(deal_("d1", "E001", "E002").put("x", 1));
+		context.assertEquals(1, registry.involving("E001").iterator().next().getInteger("x"));
+		context.assertEquals(1, registry.deals().iterator().next().getInteger("x"));
+		context.assertNull(involving.iterator().next().getInteger("x"));
+		// Units swapped
+		registry.put(deal_("d1", "E002", "E001"));
+		context.assertEquals(1, registry.involving("E001").size());
+		context.assertEquals(1, registry.involving("E002").size());
+		context.assertEquals(0, registry.involving("E001", Deal.Direction.DISCHARGE).size());
+		context.assertEquals(1, registry.involving("E002", Deal.Direction.DISCHARGE).size());
+		context.assertEquals(1, registry.masterSide("E002").size());
+		context.assertEquals(0, registry.masterSide("E001").size());
+	}
+
+	@Test public void snapshot(TestContext context) {
+		DealRegistry registry = new DealRegistry("dischargeUnit");
+		registry.put(deal_("d1", "E001", "E002"));
+		registry.put(deal_("d2", "E001", "E003"));
+		Collection<JsonObject> involving = registry.involving("E001");
+		Collection<JsonObject> all = registry.deals();
+		int n = 0;
+		for (JsonObject deal : involving) {
+			registry.remove(Deal.dealId(deal));
+			registry.put(deal_("x" + n++, "E001", "E004"));
+		}
+		context.assertEquals(2, n);
+		context.assertEquals(2, involving.size());
+		context.assertEquals(2, all.size());
+		context.assertEquals(2, registry.involving("E001").size());
+		context.assertEquals("x0", Deal.dealId(registry.involving("E001").iterator().next()));
+	}
+
+}
@@ -0,0 +1,164 @@
+package jp.co.sony.csl.dcoes.apis.common;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class ErrorAggregatorTest {
+
+	public ErrorAggregatorTest() {
+		super();
+	}
+
+	private static final long WINDOW_MSEC_ = 1000L;
+
+	private Vertx vertx_;
+	private final AtomicLong now_ = new AtomicLong(1000000L);
+	private final List<JsonObject> received_ = new CopyOnWriteArrayList<>();
+	private ErrorAggregator aggregator_;
+
+	@Before public void setUp(TestContext context) {
+		vertx_ = Vertx.vertx();
+		vertx_.eventBus().<JsonObject>localConsumer(ServiceAddress.error(), m -> received_.add(m.body())).completionHandler(context.asyncAssertSuccess());
+		aggregator_ = ErrorAggregator.install_(new ErrorAggregator(vertx_, WINDOW_MSEC_, 4, now_::get));
+	}
+
+	@After public void tearDown(TestContext context) {
+		ErrorAggregator.uninstall(vertx_);
+		vertx_.close(context.asyncAssertSuccess());
+	}
+
+	private void report_(String message, Error.Level level) {
+		Error.report(vertx_, "E001", Error.Category.HARDWARE, Error.Extent.LOCAL, level, message, new StackTraceElement("Foo", "bar", "Foo.java", 42));
+	}
+
+	private void afterDelivery_(Runnable assertions) {
+		vertx_.setTimer(200L, t -> assertions.run());
+	}
+
+	@Test public void storm(TestContext context) {
+		for (int i = 0; i < 10000; i++) {
+			if (i % 100 == 0) now_.incrementAndGet();
+			report_("storm", Error.Level.ERROR);
+		}
+		now_.addAndGet(WINDOW_MSEC_);
+		aggregator_.sweep_();
+		Async async = context.async();
+		afterDelivery_(() -> {
+			context.assertEquals(2, received_.size());
+			context.assertNull(received_.get(0).getValue("aggregated"));
+			context.assertNull(received_.get(0).getValue("count"));
+			JsonObject summary = received_.get(1);
+			context.assertTrue(summary.getBoolean("aggregated"));
+			// The first occurrence has been published by itself
+			context.assertEquals(9999, summary.getInteger("count"));
+			context.assertEquals("storm", Error.message(summary));
+			context.assertEquals(Error.Level.ERROR, Error.level(summary));
+			context.assertEquals(42, Error.stackTraceElement(summary).getLineNumber());
+			context.assertNotNull(summary.getString("firstDateTime"));
+			context.assertNotNull(summary.getString("lastDateTime"));
+			context.assertEquals(1L, aggregator_.published());
+			context.assertEquals(9999L, aggregator_.aggregated());
+			context.assertEquals(1L, aggregator_.summaries());
+			async.complete();
+		});
+	}
+
+	@Test public void fatalPassesImmediately(TestContext context) {
+		for (int i = 0; i < 100; i++) {
+			report_("fatal", Error.Level.FATAL);
+		}
+		Async async = context.async();
+		afterDelivery_(() -> {
+			context.assertEquals(100, received_.size());
+			context.assertEquals(0L, aggregator_.aggregated());
+			async.complete();
+		});
+	}
+
+	@Test public void distinctKeys(TestContext context) {
+		for (int i = 0; i < 3; i++) {
+			report_("a", Error.Level.WARN);
+			report_("a", Error.Level.ERROR);
+			report_("b", Error.Level.WARN);
+		}
+		Async async = context.async();
+		afterDelivery_(() -> {
+			context.assertEquals(3, received_.size());
+			aggregator_.flush();
+			afterDelivery_(() -> {
+				context.assertEquals(6, received_.size());
+				for (JsonObject summary : received_.subList(3, 6)) {
+					context.assertEquals(2, summary.getInteger("count"));
+				}
+				async.complete();
+			});
+		});
+	}
+
+	@Test public void windowCloses(TestContext context) {
+		report_("w", Error.Level.ERROR);
+		report_("w", Error.Level.ERROR);
+		now_.addAndGet(WINDOW_MSEC_);
+		// The next occurrence opens a new window and flushes the previous one
+		// 次の発生が新しいウィンドウを開き前のウィンドウを吐き出す
+		report_("w", Error.Level.ERROR);
+		Async async = context.async();
+		afterDelivery_(() -> {
+			context.assertEquals(3, received_.size());
+			context.assertEquals(1, received_.get(1).getInteger("count"));
+			context.assertNull(received_.get(2).getValue("count"));
+			async.complete();
+		});
+	}
+
+	@Test public void overflow(TestContext context) {
+		for (int i = 0; i < 10; i++) {
+			report_("m" + i, Error.Level.ERROR);
+			report_("m" + i, Error.Level.ERROR);
+		}
+		Async async = context.async();
+		afterDelivery_(() -> {
+			// 4 tracked keys absorb their duplicates, the other 6 pass through every time
+			// 追跡する 4 キーは重複を吸収し, 残りの 6 キーは毎回素通りする
+			context.assertEquals(4 + 6 * 2, received_.size());
+			context.assertEquals(12L, aggregator_.overflowed());
+			async.complete();
+		});
+	}
+
+	@Test public void concurrentStorm(TestContext context) throws InterruptedException {
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(() -> {
+				for (int j = 0; j < 5000; j++) {
+					report_("concurrent", Error.Level.WARN);
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		aggregator_.flush();
+		Async async = context.async();
+		afterDelivery_(() -> {
+			context.assertEquals(2, received_.size());
+			context.assertEquals(19999, received_.get(1).getInteger("count"));
+			async.complete();
+		});
+	}
+
+}
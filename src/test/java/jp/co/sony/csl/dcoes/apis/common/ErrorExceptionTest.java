@@ -0,0 +1,64 @@
+package jp.co.sony.csl.dcoes.apis.common;
+
+import io.vertx.core.Future;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class ErrorExceptionTest {
+
+	public ErrorExceptionTest() {
+		super();
+	}
+
+	@After public void tearDown() {
+		ErrorException.configure(ErrorException.CapturePolicy.NONE, ErrorException.DEFAULT_SAMPLE_EVERY);
+	}
+
+	private static ErrorException create_(Error.Level level) {
+		return ErrorException.create("E001", Error.Category.LOGIC, Error.Extent.LOCAL, level, "message");
+	}
+
+	@Test public void none(TestContext context) {
+		context.assertEquals(0, create_(Error.Level.FATAL).getStackTrace().length);
+	}
+
+	@Test public void fatalOnly(TestContext context) {
+		ErrorException.configure(ErrorException.CapturePolicy.FATAL_ONLY, 1);
+		context.assertEquals(0, create_(Error.Level.ERROR).getStackTrace().length);
+		ErrorException e = create_(Error.Level.FATAL);
+		context.assertTrue(0 < e.getStackTrace().length);
+		context.assertEquals(getClass().getName(), e.getStackTrace()[1].getClassName());
+	}
+
+	@Test public void sampled(TestContext context) {
+		ErrorException.configure(ErrorException.CapturePolicy.SAMPLED, 4);
+		int captured = 0;
+		for (int i = 0; i < 100; i++) {
+			if (0 < create_(Error.Level.WARN).getStackTrace().length) captured++;
+		}
+		context.assertEquals(25, captured);
+		context.assertTrue(0 < create_(Error.Level.FATAL).getStackTrace().length);
+	}
+
+	@Test public void preallocated(TestContext context) {
+		ErrorException.configure(ErrorException.CapturePolicy.SAMPLED, 1);
+		ErrorException e = ErrorException.preallocated("E001", Error.Category.HARDWARE, "busy");
+		context.assertTrue(e == ErrorException.preallocated("E001", Error.Category.HARDWARE, "busy"));
+		context.assertFalse(e == ErrorException.preallocated("E002", Error.Category.HARDWARE, "busy"));
+		context.assertEquals(Error.Extent.LOCAL, e.extent);
+		context.assertEquals(Error.Level.WARN, e.level);
+		context.assertEquals(0, e.getStackTrace().length);
+		e.addSuppressed(new RuntimeException());
+		context.assertEquals(0, e.getSuppressed().length);
+		Future<String> f = e.failedFuture();
+		context.assertTrue(f.failed());
+		context.assertTrue(e == f.cause());
+		context.assertTrue((Object) f == e.<Integer>failedFuture());
+	}
+
+}
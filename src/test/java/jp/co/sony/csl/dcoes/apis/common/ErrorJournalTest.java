@@ -0,0 +1,123 @@
+package jp.co.sony.csl.dcoes.apis.common;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import jp.co.sony.csl.dcoes.apis.common.util.vertx.ErrorJournalService;
+import jp.co.sony.csl.dcoes.apis.common.util.vertx.VertxConfig;
+
+@RunWith(VertxUnitRunner.class)
+public class ErrorJournalTest {
+
+	public ErrorJournalTest() {
+		super();
+	}
+
+	private static final Error.Category[] CATEGORIES_ = { Error.Category.HARDWARE, Error.Category.FRAMEWORK, Error.Category.LOGIC };
+	private static final Error.Level[] LEVELS_ = { Error.Level.WARN, Error.Level.ERROR };
+
+	private JsonObject config_;
+
+	@Before public void setUp() {
+		config_ = VertxConfig.config.jsonObject();
+	}
+
+	@After public void tearDown() {
+		// Other tests share the global CONFIG
+		VertxConfig.config.setJsonObject(config_);
+	}
+
+	private static ErrorRecord record_(int i) {
+		return new ErrorRecord("E00" + (i % 4), CATEGORIES_[i % 3], Error.Extent.LOCAL, LEVELS_[i % 2], "message " + i, null);
+	}
+
+	@Test public void queries(TestContext context) {
+		ErrorJournal journal = new ErrorJournal(100, Long.MAX_VALUE);
+		for (int i = 0; i < 60; i++) {
+			journal.append(record_(i), 1000L + i);
+		}
+		List<ErrorJournal.Entry> all = journal.query(new ErrorJournal.Query().limit(1000));
+		context.assertEquals(60, all.size());
+		context.assertEquals(59L, all.get(0).seq());
+		List<ErrorJournal.Entry> unit = journal.query(new ErrorJournal.Query().unitId("E001").level(Error.Level.WARN).limit(1000));
+		// unit E001 is i % 4 == 1, which are all odd, so none is WARN
+		// ユニット E001 は i % 4 == 1 で全て奇数なので WARN はない
+		context.assertEquals(0, unit.size());
+		List<ErrorJournal.Entry> range = journal.query(new ErrorJournal.Query().unitId("E002").since(1010L).until(1030L));
+		context.assertEquals(6, range.size());
+		context.assertEquals(1030L, range.get(0).time());
+		context.assertEquals(1010L, range.get(5).time());
+		List<ErrorJournal.Entry> category = journal.query(new ErrorJournal.Query().category(Error.Category.LOGIC).limit(3));
+		context.assertEquals(3, category.size());
+		context.assertEquals("message 59", category.get(0).record().message());
+		context.assertEquals(0, journal.query(new ErrorJournal.Query().unitId("E999")).size());
+	}
+
+	@Test public void eviction(TestContext context) {
+		ErrorJournal journal = new ErrorJournal(10, Long.MAX_VALUE);
+		for (int i = 0; i < 25; i++) {
+			journal.append(record_(i), 1000L + i);
+		}
+		context.assertEquals(10, journal.size());
+		context.assertEquals(15L, journal.evicted());
+		context.assertEquals(15L, journal.stats().getLong("oldestSeq"));
+		context.assertEquals(24L, journal.stats().getLong("newestSeq"));
+		List<ErrorJournal.Entry> unit = journal.query(new ErrorJournal.Query().unitId("E000"));
+		context.assertEquals(3, unit.size());
+		context.assertEquals(24L, unit.get(0).seq());
+		context.assertEquals(16L, unit.get(2).seq());
+	}
+
+	@Test public void memoryLimit(TestContext context) {
+		ErrorJournal journal = new ErrorJournal(1000, 10000L);
+		for (int i = 0; i < 1000; i++) {
+			journal.append(record_(i), 1000L);
+		}
+		context.assertTrue(journal.bytes() <= 10000L);
+		context.assertTrue(journal.size() < 1000);
+		context.assertEquals(1000L, journal.size() + journal.evicted());
+		for (int i = 0; i < 1000; i++) {
+			journal.append(new ErrorRecord("U", Error.Category.USER, Error.Extent.GLOBAL, Error.Level.ERROR, "m", null), 2000L);
+		}
+		context.assertEquals(1, journal.stats().getInteger("units").intValue());
+	}
+
+	@Test public void nonDecreasingTime(TestContext context) {
+		ErrorJournal journal = new ErrorJournal(10, Long.MAX_VALUE);
+		journal.append(record_(0), 2000L);
+		journal.append(record_(1), 1000L);
+		context.assertEquals(2, journal.query(new ErrorJournal.Query().since(2000L)).size());
+	}
+
+	@Test public void service(TestContext context) {
+		VertxConfig.config.setJsonObject(new JsonObject().put("errorJournal", new JsonObject().put("capacity", 100)));
+		Vertx vertx = Vertx.vertx();
+		Async async = context.async();
+		vertx.deployVerticle(new ErrorJournalService(), context.asyncAssertSuccess(id -> {
+			Error.report(vertx, "E001", Error.Category.USER, Error.Extent.LOCAL, Error.Level.WARN, "first");
+			vertx.eventBus().publish(ServiceAddress.error(), record_(2).toJson());
+			vertx.setTimer(100L, t -> {
+				vertx.eventBus().<JsonObject>send(ServiceAddress.errorJournal(), new JsonObject().put("category", "USER"), rep -> {
+					context.assertTrue(rep.succeeded());
+					JsonObject body = rep.result().body();
+					context.assertEquals(1, body.getJsonArray("errors").size());
+					context.assertEquals("first", body.getJsonArray("errors").getJsonObject(0).getString("message"));
+					context.assertEquals(2, body.getJsonObject("stats").getInteger("size"));
+					vertx.close(context.asyncAssertSuccess());
+					async.complete();
+				});
+			});
+		}));
+	}
+
+}
@@ -0,0 +1,63 @@
+package jp.co.sony.csl.dcoes.apis.common;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class ErrorRecordTest {
+
+	public ErrorRecordTest() {
+		super();
+	}
+
+	private static ErrorRecord record_() {
+		return new ErrorRecord("E001", Error.Category.HARDWARE, Error.Extent.LOCAL, Error.Level.ERROR, "メッセージ", new StackTraceElement("Foo", "bar", "Foo.java", 42));
+	}
+
+	@Test public void json(TestContext context) {
+		ErrorRecord record = record_();
+		JsonObject json = record.toJson();
+		context.assertEquals(Error.generateErrorObject("E001", Error.Category.HARDWARE, Error.Extent.LOCAL, Error.Level.ERROR, "メッセージ", new StackTraceElement("Foo", "bar", "Foo.java", 42)), json);
+		context.assertEquals(record, ErrorRecord.fromJson(json));
+		context.assertEquals(record, ErrorRecord.from(json));
+		context.assertEquals(record.logMessage(), Error.logMessage(json));
+	}
+
+	@Test public void unknownEnums(TestContext context) {
+		JsonObject json = record_().toJson().put("category", "BROKEN").putNull("level");
+		ErrorRecord record = ErrorRecord.fromJson(json);
+		context.assertEquals(Error.Category.UNKNOWN, record.category());
+		context.assertEquals(Error.Extent.LOCAL, record.extent());
+		context.assertEquals(Error.Level.UNKNOWN, record.level());
+	}
+
+	@Test public void wire(TestContext context) {
+		ErrorRecord.Codec codec = new ErrorRecord.Codec();
+		for (ErrorRecord record : new ErrorRecord[] { record_(), new ErrorRecord(null, null, null, null, null, null) }) {
+			Buffer buffer = Buffer.buffer().appendString("prefix");
+			codec.encodeToWire(buffer, record);
+			context.assertEquals(record, codec.decodeFromWire(6, buffer));
+		}
+	}
+
+	@Test public void localDelivery(TestContext context) {
+		Vertx vertx = Vertx.vertx();
+		ErrorRecord.Codec.register(vertx);
+		ErrorRecord.Codec.register(vertx);
+		ErrorRecord record = record_();
+		Async async = context.async();
+		vertx.eventBus().<ErrorRecord>localConsumer(ServiceAddress.error(), m -> {
+			context.assertTrue(record == m.body());
+			vertx.close(context.asyncAssertSuccess());
+			async.complete();
+		}).completionHandler(r -> vertx.eventBus().publish(ServiceAddress.error(), record));
+	}
+
+}
@@ -0,0 +1,68 @@
+package jp.co.sony.csl.dcoes.apis.common;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class ReadOnlyJsonObjectTest {
+
+	public ReadOnlyJsonObjectTest() {
+		super();
+	}
+
+	private static JsonObject unitData_() {
+		return new JsonObject()
+				.put("oesunit", new JsonObject().put("id", "E001"))
+				.put("battery", new JsonObject().put("rsoc", 50.5).put("flags", new JsonArray().add(1).add(2)));
+	}
+
+	@Test public void readOnly(TestContext context) {
+		ReadOnlyJsonObject view = ReadOnlyJsonObject.copyOf(unitData_());
+		context.assertEquals("E001", view.getString("oesunit", "id"));
+		context.assertEquals(50.5F, view.getFloat("battery", "rsoc"));
+		context.assertTrue(view.getValue("battery") instanceof ReadOnlyJsonObject);
+		context.assertEquals(50.5F, view.getJsonObject("battery").getFloat("rsoc"));
+		// Arrays and copies are detached from the view
+		view.getJsonArray("battery", "flags").add(3);
+		view.copy().getJsonObject("battery").put("rsoc", 0);
+		context.assertEquals(2, view.getJsonArray("battery", "flags").size());
+		context.assertEquals(unitData_(), view.copy());
+		try {
+			view.fieldNames().clear();
+			context.fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		context.assertNull(ReadOnlyJsonObject.wrap(null));
+	}
+
+	@Test public void wire(TestContext context) {
+		ReadOnlyJsonObject.Codec codec = new ReadOnlyJsonObject.Codec();
+		ReadOnlyJsonObject view = ReadOnlyJsonObject.wrap(unitData_());
+		Buffer buffer = Buffer.buffer().appendString("prefix");
+		codec.encodeToWire(buffer, view);
+		context.assertEquals(view, codec.decodeFromWire(6, buffer));
+	}
+
+	@Test public void localDelivery(TestContext context) {
+		Vertx vertx = Vertx.vertx();
+		ReadOnlyJsonObject.Codec.register(vertx);
+		ReadOnlyJsonObject.Codec.register(vertx);
+		ReadOnlyJsonObject view = ReadOnlyJsonObject.wrap(unitData_());
+		Async async = context.async();
+		vertx.eventBus().<ReadOnlyJsonObject>localConsumer("test.json", m -> {
+			context.assertTrue(view == m.body());
+			vertx.close(context.asyncAssertSuccess());
+			async.complete();
+		}).completionHandler(r -> vertx.eventBus().send("test.json", view));
+	}
+
+}
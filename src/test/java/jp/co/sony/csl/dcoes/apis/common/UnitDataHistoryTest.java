@@ -0,0 +1,88 @@
+package jp.co.sony.csl.dcoes.apis.common;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class UnitDataHistoryTest {
+
+	public UnitDataHistoryTest() {
+		super();
+	}
+
+	private static final List<UnitDataTable.Column> METRICS_ = Arrays.asList(
+			new UnitDataTable.Column("rsoc", UnitDataTable.Type.FLOAT, "battery", "rsoc"),
+			new UnitDataTable.Column("ig", UnitDataTable.Type.FLOAT, "dcdc", "meter", "ig"));
+
+	private static JsonObject unitData_(double rsoc) {
+		return new JsonObject().put("battery", new JsonObject().put("rsoc", rsoc));
+	}
+
+	@Test public void downsample(TestContext context) {
+		UnitDataHistory history = new UnitDataHistory(METRICS_, 100);
+		// One sample per second for 60 seconds, rsoc = second
+		for (int s = 0; s < 60; s++) {
+			history.record("E001", 1000L * s, unitData_(s));
+		}
+		UnitDataHistory.Series avg = history.query("E001", "rsoc", 0L, 59999L, 10000L, UnitDataHistory.Aggregation.AVG);
+		context.assertEquals(6, avg.values().length);
+		context.assertEquals(4.5F, avg.values()[0]);
+		context.assertEquals(54.5F, avg.values()[5]);
+		context.assertEquals(10, avg.counts()[3]);
+		context.assertEquals(30000L, avg.times()[3]);
+		UnitDataHistory.Series max = history.last("E001", "rsoc", 59000L, 20000L, 10000L, UnitDataHistory.Aggregation.MAX);
+		// (39000, 59000] in two buckets ending at 49000 and 59000
+		context.assertEquals(2, max.values().length);
+		context.assertEquals(49F, max.values()[0]);
+		context.assertEquals(59F, max.values()[1]);
+		context.assertEquals(39001L, max.times()[0]);
+		context.assertEquals(10, max.counts()[1]);
+		// 10 minutes at 1 minute resolution gives 10 buckets
+		context.assertEquals(10, history.last("E001", "rsoc", 600000L, 600000L, 60000L, UnitDataHistory.Aggregation.AVG).values().length);
+		context.assertEquals(2, history.last("E001", "rsoc", 59000L, 15000L, 10000L, UnitDataHistory.Aggregation.AVG).values().length);
+		UnitDataHistory.Series min = history.query("E001", "rsoc", 0L, 59999L, 30000L, UnitDataHistory.Aggregation.MIN);
+		context.assertEquals(30F, min.values()[1]);
+		UnitDataHistory.Series last = history.query("E001", "rsoc", 0L, 59999L, 30000L, UnitDataHistory.Aggregation.LAST);
+		context.assertEquals(29F, last.values()[0]);
+		// Missing metric and unknown unit give empty buckets
+		UnitDataHistory.Series ig = history.query("E001", "ig", 0L, 59999L, 30000L, UnitDataHistory.Aggregation.AVG);
+		context.assertTrue(Float.isNaN(ig.values()[0]));
+		context.assertEquals(0, ig.counts()[0]);
+		context.assertEquals(0, history.query("E002", "rsoc", 0L, 59999L, 30000L, UnitDataHistory.Aggregation.AVG).counts()[1]);
+	}
+
+	@Test public void bounded(TestContext context) {
+		UnitDataHistory history = new UnitDataHistory(METRICS_, 10);
+		for (int s = 0; s < 25; s++) {
+			history.record("E001", 1000L * s, unitData_(s));
+		}
+		context.assertEquals(10, history.size("E001"));
+		UnitDataHistory.Series series = history.query("E001", "rsoc", 0L, 24999L, 1000L, UnitDataHistory.Aggregation.LAST);
+		context.assertEquals(0, series.counts()[14]);
+		context.assertEquals(1, series.counts()[15]);
+		context.assertEquals(24F, series.values()[24]);
+		// An older sample is recorded at the latest time
+		history.record("E001", 0L, unitData_(100));
+		context.assertEquals(100F, history.query("E001", "rsoc", 24000L, 24999L, 1000L, UnitDataHistory.Aggregation.MAX).values()[0]);
+		history.remove("E001");
+		context.assertEquals(0, history.size("E001"));
+	}
+
+	@Test public void fromTable(TestContext context) {
+		UnitDataTable table = UnitDataTable.fromJson(new JsonObject().put("E001", unitData_(10)).put("E002", unitData_(20)), METRICS_);
+		UnitDataHistory history = new UnitDataHistory(METRICS_, 10);
+		history.record(table, 1000L);
+		table.setFloat(table.rowIndex("E001"), table.columnIndex("rsoc"), 30F);
+		history.record(table, 2000L);
+		context.assertEquals(20F, history.query("E001", "rsoc", 0L, 2999L, 3000L, UnitDataHistory.Aggregation.AVG).values()[0]);
+		context.assertEquals(20F, history.query("E002", "rsoc", 0L, 2999L, 3000L, UnitDataHistory.Aggregation.AVG).values()[0]);
+	}
+
+}
@@ -0,0 +1,135 @@
+package jp.co.sony.csl.dcoes.apis.common;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class UnitDataTableTest {
+
+	public UnitDataTableTest() {
+		super();
+	}
+
+	private static final List<UnitDataTable.Column> COLUMNS_ = Arrays.asList(
+			new UnitDataTable.Column("rsoc", UnitDataTable.Type.FLOAT, "battery", "rsoc"),
+			new UnitDataTable.Column("ig", UnitDataTable.Type.FLOAT, "dcdc", "meter", "ig"),
+			new UnitDataTable.Column("count", UnitDataTable.Type.LONG, "count"));
+
+	private static JsonObject unitData_(double rsoc, Double ig, long count) {
+		JsonObject result = new JsonObject().put("battery", new JsonObject().put("rsoc", rsoc)).put("count", count).put("other", "ignored");
+		if (ig != null) result.put("dcdc", new JsonObject().put("meter", new JsonObject().put("ig", ig)));
+		return result;
+	}
+
+	@Test public void roundTrip(TestContext context) {
+		JsonObject unitDatas = new JsonObject()
+				.put("E001", unitData_(50.5, 1.5, 3L))
+				.put("E002", unitData_(70, null, 4L))
+				.put("E003", unitData_(20, -2.0, 5L));
+		UnitDataTable table = UnitDataTable.fromJson(unitDatas, COLUMNS_);
+		context.assertEquals(3, table.size());
+		int rsoc = table.columnIndex("rsoc");
+		int ig = table.columnIndex("ig");
+		int count = table.columnIndex("count");
+		context.assertEquals(-1, table.columnIndex("none"));
+		context.assertEquals(50.5F, table.getFloat(table.rowIndex("E001"), rsoc));
+		context.assertTrue(Float.isNaN(table.getFloat(table.rowIndex("E002"), ig)));
+		context.assertEquals(5L, table.getLong(table.rowIndex("E003"), count));
+		JsonObject json = table.toJson();
+		context.assertEquals(3, json.size());
+		context.assertEquals(1.5F, json.getJsonObject("E001").getJsonObject("dcdc").getJsonObject("meter").getFloat("ig"));
+		context.assertFalse(json.getJsonObject("E002").containsKey("dcdc"));
+		context.assertFalse(json.getJsonObject("E002").containsKey("other"));
+		context.assertEquals(json, UnitDataTable.fromJson(json, COLUMNS_).toJson());
+	}
+
+	@Test public void aggregates(TestContext context) {
+		UnitDataTable table = new UnitDataTable(COLUMNS_, 1);
+		table.put("E001", unitData_(50, 1.0, 3L));
+		table.put("E002", unitData_(70, null, 4L));
+		table.put("E003", unitData_(30, -3.0, 5L));
+		int rsoc = table.columnIndex("rsoc");
+		int ig = table.columnIndex("ig");
+		int count = table.columnIndex("count");
+		context.assertEquals(150D, table.sum(rsoc));
+		context.assertEquals(30D, table.min(rsoc));
+		context.assertEquals(70D, table.max(rsoc));
+		context.assertEquals(50D, table.avg(rsoc));
+		context.assertEquals(2, table.count(ig));
+		context.assertEquals(-2D, table.sum(ig));
+		context.assertEquals(-1D, table.avg(ig));
+		context.assertEquals(-3D, table.min(ig));
+		context.assertEquals(12D, table.sum(count));
+		context.assertEquals(5D, table.max(count));
+
+		// Replace and remove
+		table.put("E001", unitData_(10, 2.0, 3L));
+		context.assertEquals(3, table.size());
+		context.assertTrue(table.remove("E002"));
+		context.assertFalse(table.remove("E002"));
+		context.assertEquals(2, table.size());
+		context.assertEquals(-1, table.rowIndex("E002"));
+		context.assertEquals(40D, table.sum(rsoc));
+		context.assertEquals(2, table.count(ig));
+		context.assertEquals("E003", table.unitId(table.rowIndex("E003")));
+
+		UnitDataTable empty = new UnitDataTable(COLUMNS_, 0);
+		context.assertTrue(Double.isNaN(empty.min(rsoc)));
+		context.assertTrue(Double.isNaN(empty.avg(count)));
+	}
+
+	@Test public void wire(TestContext context) {
+		UnitDataTable table = UnitDataTable.fromJson(new JsonObject()
+				.put("E001", unitData_(50.5, 1.5, 3L))
+				.put("ユニット", unitData_(70, null, 4L)), COLUMNS_);
+		UnitDataTable.Codec codec = new UnitDataTable.Codec();
+		Buffer buffer = Buffer.buffer().appendString("prefix");
+		codec.encodeToWire(buffer, table);
+		UnitDataTable decoded = codec.decodeFromWire(6, buffer);
+		context.assertEquals(table.toJson(), decoded.toJson());
+		context.assertEquals(3, decoded.columns().size());
+		context.assertEquals(UnitDataTable.Type.LONG, decoded.columns().get(2).type());
+		context.assertTrue(Float.isNaN(decoded.getFloat(decoded.rowIndex("ユニット"), decoded.columnIndex("ig"))));
+	}
+
+	@Test public void localDelivery(TestContext context) {
+		Vertx vertx = Vertx.vertx();
+		UnitDataTable.Codec.register(vertx);
+		UnitDataTable.Codec.register(vertx);
+		UnitDataTable table = UnitDataTable.fromJson(new JsonObject().put("E001", unitData_(50.5, 1.5, 3L)), COLUMNS_);
+		Async async = context.async();
+		vertx.eventBus().<UnitDataTable>localConsumer("test.table", m -> {
+			// A copy, so that changes on either side are not seen by the other
+			context.assertFalse(table == m.body());
+			context.assertEquals(table.toJson(), m.body().toJson());
+			m.body().setFloat(0, 0, 0F);
+			context.assertEquals(50.5F, table.getFloat(0, 0));
+			m.body().put("E002", unitData_(70, null, 4L));
+			context.assertEquals(2, m.body().size());
+			context.assertEquals(1, table.size());
+			vertx.close(context.asyncAssertSuccess());
+			async.complete();
+		}).completionHandler(r -> vertx.eventBus().send("test.table", table));
+	}
+
+	@Test public void columnsCopied(TestContext context) {
+		List<UnitDataTable.Column> columns = new ArrayList<>(COLUMNS_);
+		UnitDataTable table = new UnitDataTable(columns, 1);
+		// Later changes to the caller's list do not leak into the table
+		columns.remove(0);
+		context.assertEquals(3, table.columns().size());
+		context.assertEquals("rsoc", table.columns().get(0).name());
+	}
+
+}
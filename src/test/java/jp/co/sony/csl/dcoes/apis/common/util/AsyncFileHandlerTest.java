@@ -0,0 +1,120 @@
+package jp.co.sony.csl.dcoes.apis.common.util;
+
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class AsyncFileHandlerTest {
+
+	public AsyncFileHandlerTest() {
+		super();
+	}
+
+	@After public void tearDown() throws IOException {
+		LogManager.getLogManager().reset();
+		LogManager.getLogManager().readConfiguration();
+	}
+
+	@Test public void rotateAndCompress(TestContext context) throws IOException {
+		Path dir = Files.createTempDirectory("AsyncFileHandlerTest");
+		String prefix = AsyncFileHandler.class.getName();
+		String props = prefix + ".pattern = " + dir.resolve("test.log").toString().replace("\\", "/") + "\n"
+				+ prefix + ".formatter = " + SimpleFormatter.class.getName() + "\n"
+				+ prefix + ".limit = 4096\n"
+				+ prefix + ".count = 3\n"
+				+ prefix + ".compress = true\n"
+				+ prefix + ".bufferSize = 1024\n"
+				+ prefix + ".overflowPolicy = BLOCK\n";
+		LogManager.getLogManager().readConfiguration(new ByteArrayInputStream(props.getBytes(StandardCharsets.ISO_8859_1)));
+		AsyncFileHandler handler = new AsyncFileHandler();
+		for (int i = 0; i < 1000; i++) {
+			LogRecord record = new LogRecord(Level.INFO, "message " + i);
+			record.setLoggerName("testLogger");
+			handler.publish(record);
+		}
+		handler.close();
+		context.assertEquals(0L, handler.dropped());
+		List<String> names;
+		try (Stream<Path> stream = Files.list(dir)) {
+			names = stream.map(p -> p.getFileName().toString()).sorted().collect(Collectors.toList());
+		}
+		context.assertTrue(names.contains("test.log"));
+		context.assertFalse(names.contains("test.log.lck"));
+		List<String> backups = names.stream().filter(n -> n.startsWith("test.log.")).collect(Collectors.toList());
+		context.assertEquals(2, backups.size());
+		for (String aName : backups) {
+			context.assertTrue(aName.endsWith(".gz"));
+		}
+		String last = new String(Files.readAllBytes(dir.resolve("test.log")), StandardCharsets.UTF_8);
+		context.assertTrue(last.contains("message 999"));
+	}
+
+	@Test public void compressKeepsOne(TestContext context) throws IOException {
+		Path dir = Files.createTempDirectory("AsyncFileHandlerTest");
+		String prefix = AsyncFileHandler.class.getName();
+		String props = prefix + ".pattern = " + dir.resolve("test.log").toString().replace("\\", "/") + "\n"
+				+ prefix + ".formatter = " + SimpleFormatter.class.getName() + "\n"
+				+ prefix + ".limit = 1024\n"
+				+ prefix + ".count = 1\n"
+				+ prefix + ".compress = true\n"
+				+ prefix + ".bufferSize = 1024\n"
+				+ prefix + ".flushIntervalMsec = 0\n"
+				+ prefix + ".overflowPolicy = BLOCK\n";
+		LogManager.getLogManager().readConfiguration(new ByteArrayInputStream(props.getBytes(StandardCharsets.ISO_8859_1)));
+		AsyncFileHandler handler = new AsyncFileHandler();
+		for (int i = 0; i < 2000; i++) {
+			LogRecord record = new LogRecord(Level.INFO, "message " + i);
+			record.setLoggerName("testLogger");
+			handler.publish(record);
+		}
+		handler.close();
+		List<String> names;
+		try (Stream<Path> stream = Files.list(dir)) {
+			names = stream.map(p -> p.getFileName().toString()).sorted().collect(Collectors.toList());
+		}
+		// Pruned after compression : neither the file being compressed nor its .gz is counted twice
+		List<String> backups = names.stream().filter(n -> n.startsWith("test.log.") && !n.equals("test.log.lck")).collect(Collectors.toList());
+		context.assertEquals(1, backups.size(), names.toString());
+		context.assertTrue(backups.get(0).endsWith(".gz"));
+	}
+
+	@Test public void anotherBlocks(TestContext context) throws IOException {
+		Path dir = Files.createTempDirectory("AsyncFileHandlerTest");
+		String prefix = AnotherFileHandler.class.getName();
+		String props = prefix + ".pattern = " + dir.resolve("test.err").toString().replace("\\", "/") + "\n"
+				+ prefix + ".formatter = " + SimpleFormatter.class.getName() + "\n"
+				+ prefix + ".queueSize = 16\n"
+				+ prefix + ".batchSize = 4\n"
+				+ prefix + ".flushIntervalMsec = 0\n";
+		LogManager.getLogManager().readConfiguration(new ByteArrayInputStream(props.getBytes(StandardCharsets.ISO_8859_1)));
+		AnotherFileHandler handler = new AnotherFileHandler();
+		for (int i = 0; i < 2000; i++) {
+			LogRecord record = new LogRecord(Level.SEVERE, "error " + i);
+			record.setLoggerName("testLogger");
+			handler.publish(record);
+		}
+		handler.close();
+		context.assertEquals(0L, handler.dropped());
+		String content = new String(Files.readAllBytes(dir.resolve("test.err")), StandardCharsets.UTF_8);
+		context.assertTrue(content.contains("error 0" + System.lineSeparator()));
+		context.assertTrue(content.contains("error 1999"));
+	}
+
+}
@@ -0,0 +1,58 @@
+package jp.co.sony.csl.dcoes.apis.common.util;
+
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * Compares {@link EnumLookup} with the former {@link Enum#valueOf(Class, String)} in try/catch on malformed traffic.
+ * The logger is disabled so that only the parsing cost, mostly filling in the stack trace of the exception, is measured.
+ * With logging enabled the former implementation additionally wrote a stack trace per malformed value.
+ * Not a unit test : run {@link #main(String[])} by hand.
+ * Optional arguments are the number of iterations and the number of rounds.
+ * {@link EnumLookup} を try/catch 内の {@link Enum#valueOf(Class, String)} による以前の実装と不正なトラフィックで比較する.
+ * パースのコスト ( 大半は例外のスタックトレースを埋めること ) だけを測るためロガーは無効にする.
+ * ログが有効なら以前の実装は不正な値ごとにさらにスタックトレースを出力していた.
+ * ユニットテストではない : {@link #main(String[])} を手で実行する.
+ * 省略可能な引数は繰り返し回数とラウンド数.
+ */
+public class EnumLookupBenchmark {
+
+	private EnumLookupBenchmark() { }
+
+	private enum Level_ { WARN, ERROR, FATAL, UNKNOWN }
+
+	private static final Logger log = LoggerFactory.getLogger(EnumLookupBenchmark.class);
+
+	private static Level_ legacy_(String value) {
+		try {
+			return Level_.valueOf(value);
+		} catch (Exception e) {
+			log.error(e);
+			return Level_.UNKNOWN;
+		}
+	}
+
+	public static void main(String[] args) {
+		int iterations = (0 < args.length) ? Integer.parseInt(args[0]) : 1000000;
+		int rounds = (1 < args.length) ? Integer.parseInt(args[1]) : 5;
+		java.util.logging.Logger.getLogger(EnumLookupBenchmark.class.getName()).setLevel(java.util.logging.Level.OFF);
+		String[] values = new String[] { "WARN", "warn", "SEVERE", null, "ERROR", "", "FATAL ", "Error" };
+		EnumLookup<Level_> lookup = new EnumLookup<>(Level_.class, Level_.UNKNOWN, log);
+		for (int r = 0; r < rounds; r++) {
+			long sink = 0L;
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				sink += legacy_(values[i % values.length]).ordinal();
+			}
+			long l = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				sink += lookup.get(values[i % values.length]).ordinal();
+			}
+			long c = System.nanoTime() - start;
+			if (sink == 42L) System.out.print("");
+			System.out.printf("round %d : legacy %.1f ns/op, current %.1f ns/op%n", r, (double) l / iterations, (double) c / iterations);
+		}
+	}
+
+}
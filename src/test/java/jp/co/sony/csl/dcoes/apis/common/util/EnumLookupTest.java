@@ -0,0 +1,49 @@
+package jp.co.sony.csl.dcoes.apis.common.util;
+
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import jp.co.sony.csl.dcoes.apis.common.Deal;
+import jp.co.sony.csl.dcoes.apis.common.Error;
+
+@RunWith(VertxUnitRunner.class)
+public class EnumLookupTest {
+
+	public EnumLookupTest() {
+		super();
+	}
+
+	private enum Color_ { RED, GREEN, UNKNOWN }
+
+	@Test public void lookup(TestContext context) {
+		EnumLookup<Color_> lookup = new EnumLookup<>(Color_.class, Color_.UNKNOWN, null);
+		context.assertEquals(Color_.RED, lookup.get("RED"));
+		context.assertEquals(Color_.GREEN, lookup.get("green"));
+		context.assertEquals(Color_.GREEN, lookup.get("Green"));
+		context.assertEquals(0L, lookup.unknownCount());
+		context.assertEquals(Color_.UNKNOWN, lookup.get("BLUE"));
+		context.assertEquals(Color_.UNKNOWN, lookup.get(""));
+		context.assertEquals(Color_.UNKNOWN, lookup.get(null));
+		context.assertEquals(3L, lookup.unknownCount());
+	}
+
+	@Test public void nullUnknown(TestContext context) {
+		EnumLookup<Color_> lookup = new EnumLookup<>(Color_.class, null, null);
+		context.assertNull(lookup.get("BLUE"));
+	}
+
+	@Test public void parsers(TestContext context) {
+		context.assertEquals(Deal.Direction.CHARGE, Deal.direction("charge"));
+		context.assertNull(Deal.direction("sideways"));
+		context.assertNull(Deal.direction((String) null));
+		context.assertEquals(Error.Category.LOGIC, Error.category("LOGIC"));
+		context.assertEquals(Error.Extent.GLOBAL, Error.extent("global"));
+		context.assertEquals(Error.Level.WARN, Error.level("Warn"));
+		context.assertEquals(Error.Level.UNKNOWN, Error.level("SEVERE"));
+		context.assertEquals(Error.Category.UNKNOWN, Error.category((String) null));
+	}
+
+}
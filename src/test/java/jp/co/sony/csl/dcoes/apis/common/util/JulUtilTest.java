@@ -0,0 +1,108 @@
+package jp.co.sony.csl.dcoes.apis.common.util;
+
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class JulUtilTest {
+
+	public JulUtilTest() {
+		super();
+	}
+
+	private static class Target_ extends Handler {
+		@Override public void publish(LogRecord record) { }
+		@Override public void flush() { }
+		@Override public void close() { }
+	}
+	private static class Sub_ extends Target_ {
+	}
+
+	@Test public void wrappedHandler(TestContext context) {
+		String name = JulUtilTest.class.getName() + ".wrapped";
+		Logger logger = Logger.getLogger(name);
+		Target_ target = new Target_();
+		target.setLevel(Level.INFO);
+		RateLimitingHandler wrapper = new RateLimitingHandler(target);
+		logger.addHandler(wrapper);
+		try {
+			// Matched through the wrapper, and both are set
+			context.assertEquals(1, JulUtil.setHandlerLevel(name, Target_.class.getName(), Level.FINE));
+			context.assertEquals(Level.FINE, target.getLevel());
+			context.assertEquals(Level.FINE, wrapper.getLevel());
+			context.assertEquals(0, JulUtil.setHandlerLevel(name, MulticastHandler.class.getName(), Level.FINEST));
+			context.assertEquals(1, JulUtil.setHandlerLevel(name, "Target_", null));
+			context.assertEquals(Level.INFO, target.getLevel());
+			context.assertEquals(Level.ALL, wrapper.getLevel());
+		} finally {
+			logger.removeHandler(wrapper);
+		}
+	}
+
+	@Test public void loggerLevel(TestContext context) {
+		String name = JulUtilTest.class.getName() + ".logger";
+		Logger logger = Logger.getLogger(name);
+		logger.setLevel(Level.WARNING);
+		JulUtil.setLoggerLevel(name, Level.FINE);
+		context.assertEquals(Level.FINE, logger.getLevel());
+		JulUtil.setLoggerLevel(name, Level.FINEST);
+		context.assertEquals(Level.FINEST, logger.getLevel());
+		// Reverts to the level before the first change
+		JulUtil.setLoggerLevel(name, null);
+		context.assertEquals(Level.WARNING, logger.getLevel());
+		// Nothing to revert any more
+		logger.setLevel(Level.SEVERE);
+		JulUtil.setLoggerLevel(name, null);
+		context.assertEquals(Level.SEVERE, logger.getLevel());
+		logger.setLevel(null);
+	}
+
+	@Test public void handlerHierarchy(TestContext context) {
+		String name = JulUtilTest.class.getName() + ".hierarchy";
+		Logger logger = Logger.getLogger(name);
+		Target_ target = new Target_();
+		Sub_ sub = new Sub_();
+		sub.setLevel(Level.WARNING);
+		logger.addHandler(target);
+		logger.addHandler(sub);
+		try {
+			// Only the subclass matches its own name
+			context.assertEquals(1, JulUtil.setHandlerLevel(name, Sub_.class.getName(), Level.FINE));
+			context.assertEquals(Level.FINE, sub.getLevel());
+			context.assertEquals(Level.ALL, target.getLevel());
+			// Both match the superclass name
+			context.assertEquals(2, JulUtil.setHandlerLevel(name, "Target_", Level.FINER));
+			context.assertEquals(Level.FINER, sub.getLevel());
+			context.assertEquals(Level.FINER, target.getLevel());
+			context.assertEquals(2, JulUtil.setHandlerLevel(name, null, null));
+			context.assertEquals(Level.WARNING, sub.getLevel());
+			context.assertEquals(Level.ALL, target.getLevel());
+			context.assertEquals(0, JulUtil.setHandlerLevel(name + ".none", null, Level.FINE));
+		} finally {
+			logger.removeHandler(target);
+			logger.removeHandler(sub);
+		}
+	}
+
+	@Test public void parseLevel(TestContext context) {
+		context.assertNull(JulUtil.parseLevel(null));
+		context.assertNull(JulUtil.parseLevel(""));
+		context.assertEquals(Level.FINE, JulUtil.parseLevel(" FINE "));
+		context.assertEquals(Level.INFO, JulUtil.parseLevel("800"));
+		try {
+			JulUtil.parseLevel("LOUD");
+			context.fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+}
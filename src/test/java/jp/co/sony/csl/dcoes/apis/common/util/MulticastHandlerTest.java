@@ -0,0 +1,180 @@
+package jp.co.sony.csl.dcoes.apis.common.util;
+
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class MulticastHandlerTest {
+
+	public MulticastHandlerTest() {
+		super();
+	}
+
+	private static final String GROUP_ADDRESS_ = "239.255.77.77";
+	private static final int PORT_ = 23457;
+
+	private MulticastSocket receiver_;
+
+	@After public void tearDown() throws IOException {
+		if (receiver_ != null) receiver_.close();
+		LogManager.getLogManager().reset();
+		LogManager.getLogManager().readConfiguration();
+	}
+
+	private static class Gate_ extends Formatter {
+		private final CountDownLatch entered_ = new CountDownLatch(1);
+		private final CountDownLatch released_ = new CountDownLatch(1);
+		@Override public String format(LogRecord record) {
+			return formatMessage(record);
+		}
+		@Override public String formatMessage(LogRecord record) {
+			entered_.countDown();
+			try {
+				released_.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return super.formatMessage(record);
+		}
+	}
+
+	private static class Source_ extends Formatter {
+		@Override public String format(LogRecord record) {
+			return record.getSourceClassName() + "#" + record.getSourceMethodName() + " " + record.getMessage();
+		}
+	}
+
+	private MulticastHandler handler_(String props) throws IOException {
+		String prefix = MulticastHandler.class.getName();
+		props = prefix + ".groupAddress = " + GROUP_ADDRESS_ + "\n"
+				+ prefix + ".port = " + PORT_ + "\n"
+				+ prefix + ".async = true\n"
+				+ props.replace("${prefix}", prefix);
+		LogManager.getLogManager().readConfiguration(new ByteArrayInputStream(props.getBytes(StandardCharsets.ISO_8859_1)));
+		receiver_ = new MulticastSocket(PORT_);
+		receiver_.joinGroup(InetAddress.getByName(GROUP_ADDRESS_));
+		receiver_.setSoTimeout(500);
+		return new MulticastHandler();
+	}
+
+	private List<byte[]> receive_() throws IOException {
+		List<byte[]> result = new ArrayList<>();
+		byte[] buf = new byte[65536];
+		for (;;) {
+			DatagramPacket packet = new DatagramPacket(buf, buf.length);
+			try {
+				receiver_.receive(packet);
+			} catch (SocketTimeoutException e) {
+				return result;
+			}
+			byte[] data = new byte[packet.getLength()];
+			System.arraycopy(buf, 0, data, 0, data.length);
+			result.add(data);
+		}
+	}
+
+	private static List<String> decode_(List<byte[]> datagrams) {
+		List<String> result = new ArrayList<>();
+		MulticastLogCodec.Decoder decoder = new MulticastLogCodec.Decoder(16, 1000L);
+		for (byte[] aData : datagrams) {
+			decoder.decode(aData, 0, aData.length, r -> result.add(r.message));
+		}
+		return result;
+	}
+
+	private static LogRecord record_(int i) {
+		LogRecord result = new LogRecord(Level.INFO, "message " + i);
+		result.setLoggerName("testLogger");
+		return result;
+	}
+
+	@Test public void compactBatching(TestContext context) throws IOException {
+		MulticastHandler handler = handler_("${prefix}.compact = true\n${prefix}.overflowPolicy = BLOCK\n${prefix}.bufferSize = 16\n");
+		for (int i = 0; i < 200; i++) {
+			handler.publish(record_(i));
+		}
+		// close() drains the ring buffer and sends the last packed datagram
+		handler.close();
+		context.assertEquals(0L, handler.dropped());
+		List<byte[]> datagrams = receive_();
+		List<String> messages = decode_(datagrams);
+		context.assertEquals(200, messages.size());
+		context.assertEquals("message 0", messages.get(0));
+		context.assertEquals("message 199", messages.get(199));
+		// Records of a batch share datagrams
+		context.assertTrue(datagrams.size() < messages.size());
+	}
+
+	@Test public void dropNewest(TestContext context) throws IOException, InterruptedException {
+		context.assertEquals(list_(0, 1, 2, 3, 4), overflow_(context, "DROP_NEWEST"));
+	}
+
+	@Test public void dropOldest(TestContext context) throws IOException, InterruptedException {
+		context.assertEquals(list_(0, 7, 8, 9, 10), overflow_(context, "DROP_OLDEST"));
+	}
+
+	private List<String> overflow_(TestContext context, String policy) throws IOException, InterruptedException {
+		MulticastHandler handler = handler_("${prefix}.compact = true\n${prefix}.overflowPolicy = " + policy + "\n${prefix}.bufferSize = 4\n");
+		Gate_ gate = new Gate_();
+		handler.setFormatter(gate);
+		handler.publish(record_(0));
+		// The background thread holds record 0 while the ring buffer of 4 takes 10 more
+		context.assertTrue(gate.entered_.await(5, TimeUnit.SECONDS));
+		for (int i = 1; i <= 10; i++) {
+			handler.publish(record_(i));
+		}
+		context.assertEquals(6L, handler.dropped());
+		gate.released_.countDown();
+		handler.close();
+		return decode_(receive_());
+	}
+
+	private static List<String> list_(int... values) {
+		List<String> result = new ArrayList<>();
+		for (int aValue : values) {
+			result.add("message " + aValue);
+		}
+		return result;
+	}
+
+	@Test public void source(TestContext context) throws IOException {
+		MulticastHandler handler = handler_("");
+		handler.setFormatter(new Source_());
+		Logger logger = Logger.getLogger(MulticastHandlerTest.class.getName() + ".source");
+		logger.setUseParentHandlers(false);
+		logger.addHandler(handler);
+		try {
+			logger.info("hello");
+		} finally {
+			logger.removeHandler(handler);
+			logger.setUseParentHandlers(true);
+		}
+		handler.close();
+		List<byte[]> datagrams = receive_();
+		context.assertEquals(1, datagrams.size());
+		// Resolved on the logging thread, not on the background thread
+		context.assertEquals(MulticastHandlerTest.class.getName() + "#source hello", new String(datagrams.get(0), StandardCharsets.UTF_8));
+	}
+
+}
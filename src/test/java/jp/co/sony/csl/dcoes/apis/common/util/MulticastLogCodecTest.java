@@ -0,0 +1,110 @@
+package jp.co.sony.csl.dcoes.apis.common.util;
+
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class MulticastLogCodecTest {
+
+	public MulticastLogCodecTest() {
+		super();
+	}
+
+	private static List<byte[]> encode_(MulticastLogCodec.Encoder encoder, LogRecord record, String message) throws IOException {
+		List<byte[]> result = new ArrayList<>();
+		encoder.encode("apis-main", "vert.x-eventloop-thread-0", record, message, (data, length) -> result.add(Arrays.copyOf(data, length)));
+		return result;
+	}
+
+	@Test public void singleDatagram(TestContext context) throws IOException {
+		MulticastLogCodec.Encoder encoder = new MulticastLogCodec.Encoder(12345L, MulticastLogCodec.DEFAULT_MAX_DATAGRAM_SIZE);
+		LogRecord record = new LogRecord(Level.WARNING, "ignored");
+		record.setLoggerName("testLogger");
+		record.setMillis(1234567890123L);
+		List<byte[]> datagrams = encode_(encoder, record, "短いメッセージ");
+		context.assertEquals(1, datagrams.size());
+		byte[] data = datagrams.get(0);
+		context.assertTrue(MulticastLogCodec.isCompact(data, 0, data.length));
+		MulticastLogCodec.Record result = new MulticastLogCodec.Decoder(16, 1000L).decode(data, 0, data.length);
+		context.assertNotNull(result);
+		context.assertEquals(12345L, result.senderId);
+		context.assertEquals(1L, result.seq);
+		context.assertEquals(1234567890123L, result.millis);
+		context.assertEquals(Level.WARNING, result.level);
+		context.assertEquals("apis-main", result.programId);
+		context.assertEquals("testLogger", result.loggerName);
+		context.assertEquals("vert.x-eventloop-thread-0", result.threadName);
+		context.assertEquals("短いメッセージ", result.message);
+	}
+
+	@Test public void fragmented(TestContext context) throws IOException {
+		MulticastLogCodec.Encoder encoder = new MulticastLogCodec.Encoder(1L, 200);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) sb.append(i % 10);
+		LogRecord record = new LogRecord(Level.INFO, "ignored");
+		List<byte[]> datagrams = encode_(encoder, record, sb.toString());
+		context.assertTrue(1 < datagrams.size());
+		for (byte[] aData : datagrams) {
+			context.assertTrue(aData.length <= 200);
+		}
+		Collections.reverse(datagrams);
+		MulticastLogCodec.Decoder decoder = new MulticastLogCodec.Decoder(16, 1000L);
+		MulticastLogCodec.Record result = null;
+		for (int i = 0; i < datagrams.size(); i++) {
+			byte[] data = datagrams.get(i);
+			result = decoder.decode(data, 0, data.length);
+			if (i < datagrams.size() - 1) context.assertNull(result);
+		}
+		context.assertNotNull(result);
+		context.assertEquals(sb.toString(), result.message);
+		context.assertEquals(0L, decoder.incomplete());
+	}
+
+	@Test public void notCompact(TestContext context) {
+		byte[] data = "<record></record>".getBytes();
+		context.assertFalse(MulticastLogCodec.isCompact(data, 0, data.length));
+		MulticastLogCodec.Decoder decoder = new MulticastLogCodec.Decoder(16, 1000L);
+		context.assertNull(decoder.decode(data, 0, data.length));
+		context.assertEquals(1L, decoder.invalid());
+	}
+
+	@Test public void packed(TestContext context) throws IOException {
+		MulticastLogCodec.Encoder encoder = new MulticastLogCodec.Encoder(7L, 400);
+		MulticastLogCodec.Packer packer = new MulticastLogCodec.Packer(400);
+		List<byte[]> datagrams = new ArrayList<>();
+		MulticastLogCodec.DatagramSink sink = (data, length) -> datagrams.add(Arrays.copyOf(data, length));
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) sb.append(i % 10);
+		// Ten short records, one fragmented record and two more short ones
+		for (int i = 0; i < 13; i++) {
+			String message = (i == 10) ? sb.toString() : "message " + i;
+			encoder.encode("apis-main", "main", new LogRecord(Level.INFO, "ignored"), message, (data, length) -> packer.add(data, length, sink));
+		}
+		packer.flush(sink);
+		context.assertTrue(datagrams.size() < 13);
+		MulticastLogCodec.Decoder decoder = new MulticastLogCodec.Decoder(16, 1000L);
+		List<MulticastLogCodec.Record> records = new ArrayList<>();
+		for (byte[] aData : datagrams) {
+			context.assertTrue(aData.length <= 400);
+			decoder.decode(aData, 0, aData.length, records::add);
+		}
+		context.assertEquals(13, records.size());
+		for (int i = 0; i < 13; i++) {
+			context.assertEquals((long) (i + 1), records.get(i).seq);
+			context.assertEquals((i == 10) ? sb.toString() : "message " + i, records.get(i).message);
+		}
+		context.assertEquals(0L, decoder.invalid());
+	}
+
+}
@@ -0,0 +1,113 @@
+package jp.co.sony.csl.dcoes.apis.common.util;
+
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class RateLimitingHandlerTest {
+
+	public RateLimitingHandlerTest() {
+		super();
+	}
+
+	private static class Collector_ extends Handler {
+		private final List<LogRecord> records_ = new ArrayList<>();
+		@Override public void publish(LogRecord record) {
+			records_.add(record);
+		}
+		@Override public void flush() { }
+		@Override public void close() { }
+	}
+
+	private static LogRecord record_(Level level, String message) {
+		LogRecord result = new LogRecord(level, message);
+		result.setLoggerName("testLogger");
+		return result;
+	}
+
+	@Test public void limitAndSummary(TestContext context) {
+		Collector_ collector = new Collector_();
+		RateLimitingHandler handler = new RateLimitingHandler(collector);
+		for (int i = 0; i < 1000; i++) {
+			handler.publish(record_(Level.WARNING, "flapping {0}"));
+		}
+		handler.publish(record_(Level.INFO, "another"));
+		handler.publish(record_(Level.SEVERE, "flapping {0}"));
+		context.assertEquals(1002L, handler.passed() + handler.suppressed());
+		context.assertTrue(handler.suppressed() > 900L);
+		int before = collector.records_.size();
+		handler.flush();
+		context.assertEquals(before + 1, collector.records_.size());
+		LogRecord summary = collector.records_.get(before);
+		context.assertTrue(summary.getMessage().startsWith("repeated " + handler.suppressed() + " times in "));
+		context.assertTrue(summary.getMessage().endsWith(" : flapping {0}"));
+		handler.flush();
+		context.assertEquals(before + 1, collector.records_.size());
+	}
+
+	@Test public void nullMessage(TestContext context) {
+		Collector_ collector = new Collector_();
+		RateLimitingHandler handler = new RateLimitingHandler(collector);
+		for (int i = 0; i < 1000; i++) {
+			handler.publish(record_(Level.WARNING, null));
+		}
+		context.assertTrue(handler.suppressed() > 900L);
+	}
+
+	@Test public void sampleEvery(TestContext context) {
+		Collector_ collector = new Collector_();
+		RateLimitingHandler handler = new RateLimitingHandler(collector, 0, 1, 10, 16, () -> 0L);
+		for (int i = 0; i < 101; i++) {
+			handler.publish(record_(Level.WARNING, "flapping"));
+		}
+		// One by the token, then one in every ten over the limit
+		context.assertEquals(10L, handler.sampled());
+		context.assertEquals(90L, handler.suppressed());
+		context.assertEquals(11L, handler.passed());
+		context.assertEquals(11, collector.records_.size());
+	}
+
+	@Test public void maxKeysOverflow(TestContext context) {
+		Collector_ collector = new Collector_();
+		RateLimitingHandler handler = new RateLimitingHandler(collector, 0, 1, 0, 1, () -> 0L);
+		for (int i = 0; i < 3; i++) {
+			handler.publish(record_(Level.WARNING, "a"));
+		}
+		// A single slot : "b" takes it over, reporting "a" first
+		handler.publish(record_(Level.WARNING, "b"));
+		context.assertEquals(3, collector.records_.size());
+		context.assertEquals("a", collector.records_.get(0).getMessage());
+		context.assertTrue(collector.records_.get(1).getMessage().startsWith("repeated 2 times in "));
+		context.assertTrue(collector.records_.get(1).getMessage().endsWith(" : a"));
+		context.assertEquals("b", collector.records_.get(2).getMessage());
+		handler.flush();
+		context.assertEquals(3, collector.records_.size());
+	}
+
+	@Test public void summaryOnNextPass(TestContext context) {
+		Collector_ collector = new Collector_();
+		AtomicLong clock = new AtomicLong(0L);
+		RateLimitingHandler handler = new RateLimitingHandler(collector, 1, 1, 0, 16, clock::get);
+		for (int i = 0; i < 5; i++) {
+			handler.publish(record_(Level.WARNING, "flapping"));
+		}
+		context.assertEquals(1, collector.records_.size());
+		// A token is back one second later ; the summary precedes the record
+		clock.set(1000000000L);
+		handler.publish(record_(Level.WARNING, "flapping"));
+		context.assertEquals(3, collector.records_.size());
+		context.assertEquals("repeated 4 times in 1000 ms : flapping", collector.records_.get(1).getMessage());
+		context.assertEquals("flapping", collector.records_.get(2).getMessage());
+	}
+
+}
@@ -0,0 +1,89 @@
+package jp.co.sony.csl.dcoes.apis.common.util;
+
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class RingBufferTest {
+
+	public RingBufferTest() {
+		super();
+	}
+
+	@Test public void capacity(TestContext context) {
+		context.assertEquals(8, new RingBuffer<Object>(5).capacity());
+		context.assertEquals(8, new RingBuffer<Object>(8).capacity());
+	}
+
+	@Test public void fifo(TestContext context) {
+		RingBuffer<Integer> buffer = new RingBuffer<>(4);
+		for (int i = 0; i < 4; i++) {
+			context.assertTrue(buffer.offer(i));
+		}
+		context.assertFalse(buffer.offer(4));
+		for (int i = 0; i < 4; i++) {
+			context.assertEquals(i, buffer.poll());
+		}
+		context.assertNull(buffer.poll());
+		context.assertTrue(buffer.isEmpty());
+	}
+
+	@Test public void dropNewest(TestContext context) {
+		RingBuffer<Integer> buffer = new RingBuffer<>(2);
+		buffer.put(0, RingBuffer.OverflowPolicy.DROP_NEWEST);
+		buffer.put(1, RingBuffer.OverflowPolicy.DROP_NEWEST);
+		context.assertFalse(buffer.put(2, RingBuffer.OverflowPolicy.DROP_NEWEST));
+		context.assertEquals(1L, buffer.dropped());
+		context.assertEquals(0, buffer.poll());
+		context.assertEquals(1, buffer.poll());
+	}
+
+	@Test public void dropOldest(TestContext context) {
+		RingBuffer<Integer> buffer = new RingBuffer<>(2);
+		buffer.put(0, RingBuffer.OverflowPolicy.DROP_OLDEST);
+		buffer.put(1, RingBuffer.OverflowPolicy.DROP_OLDEST);
+		context.assertTrue(buffer.put(2, RingBuffer.OverflowPolicy.DROP_OLDEST));
+		context.assertEquals(1L, buffer.dropped());
+		context.assertEquals(1, buffer.poll());
+		context.assertEquals(2, buffer.poll());
+	}
+
+	@Test public void concurrent(TestContext context) throws InterruptedException {
+		int producers = 4;
+		int perProducer = 100000;
+		RingBuffer<Long> buffer = new RingBuffer<>(1024);
+		AtomicLong sum = new AtomicLong();
+		AtomicLong count = new AtomicLong();
+		List<Thread> threads = new ArrayList<>();
+		for (int p = 0; p < producers; p++) {
+			threads.add(new Thread(() -> {
+				for (long i = 1; i <= perProducer; i++) {
+					buffer.put(i, RingBuffer.OverflowPolicy.BLOCK);
+				}
+			}));
+		}
+		Thread consumer = new Thread(() -> {
+			while (count.get() < (long) producers * perProducer) {
+				buffer.drain(v -> {
+					sum.addAndGet(v);
+					count.incrementAndGet();
+				}, 64);
+			}
+		});
+		consumer.start();
+		for (Thread aThread : threads) aThread.start();
+		for (Thread aThread : threads) aThread.join();
+		consumer.join(10000L);
+		context.assertEquals((long) producers * perProducer, count.get());
+		context.assertEquals((long) producers * perProducer * (perProducer + 1) / 2, sum.get());
+		context.assertEquals(0L, buffer.dropped());
+	}
+
+}
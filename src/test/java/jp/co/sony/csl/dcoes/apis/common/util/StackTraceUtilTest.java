@@ -0,0 +1,66 @@
+package jp.co.sony.csl.dcoes.apis.common.util;
+
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class StackTraceUtilTest {
+
+	public StackTraceUtilTest() {
+		super();
+	}
+
+	private static class Helper_ {
+		private static StackTraceElement call() {
+			return StackTraceUtil.lastStackTrace(new Class<?>[] { Helper_.class });
+		}
+	}
+
+	@Test public void lastStackTrace(TestContext context) {
+		StackTraceElement result = StackTraceUtil.lastStackTrace();
+		context.assertEquals(StackTraceUtilTest.class.getName(), result.getClassName());
+		context.assertEquals("lastStackTrace", result.getMethodName());
+		StackTraceElement first = null;
+		for (int i = 0; i < 3; i++) {
+			StackTraceElement ste = Helper_.call();
+			context.assertEquals(StackTraceUtilTest.class.getName(), ste.getClassName());
+			context.assertEquals("lastStackTrace", ste.getMethodName());
+			if (first == null) {
+				first = ste;
+			} else {
+				context.assertEquals(first, ste);
+			}
+		}
+		context.assertNotEquals(result.getLineNumber(), first.getLineNumber());
+	}
+
+	private static StackTraceElement site(int value) {
+		return StackTraceUtil.lastStackTrace();
+	}
+	private static StackTraceElement site(String value) {
+		return StackTraceUtil.lastStackTrace();
+	}
+
+	@Test public void overloads(TestContext context) {
+		// Both overloads call at bytecode index 0 but on different lines
+		for (int i = 0; i < 2; i++) {
+			StackTraceElement a = site(0);
+			StackTraceElement b = site("0");
+			context.assertEquals("site", a.getMethodName());
+			context.assertEquals("site", b.getMethodName());
+			context.assertNotEquals(a.getLineNumber(), b.getLineNumber());
+		}
+	}
+
+	@Test public void stackTrace(TestContext context) {
+		StackTraceElement[] result = StackTraceUtil.stackTrace(new Class<?>[] { StackTraceUtilTest.class });
+		for (StackTraceElement aSte : result) {
+			context.assertNotEquals(StackTraceUtilTest.class.getName(), aSte.getClassName());
+			context.assertNotEquals(Thread.class.getName(), aSte.getClassName());
+		}
+	}
+
+}
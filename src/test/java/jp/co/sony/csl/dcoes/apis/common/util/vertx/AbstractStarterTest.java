@@ -0,0 +1,86 @@
+package jp.co.sony.csl.dcoes.apis.common.util.vertx;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jp.co.sony.csl.dcoes.apis.common.ServiceAddress;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class AbstractStarterTest {
+
+	public AbstractStarterTest() {
+		super();
+	}
+
+	private static class Starter_ extends AbstractStarter {
+		@Override protected void doStart(Handler<AsyncResult<Void>> completionHandler) {
+			completionHandler.handle(Future.succeededFuture());
+		}
+	}
+
+	private static final String LOGGER_NAME_ = AbstractStarterTest.class.getName() + ".logLevel";
+
+	private Vertx vertx_;
+	private JsonObject config_;
+	private Logger logger_;
+
+	@Before public void setUp(TestContext context) {
+		config_ = VertxConfig.config.jsonObject();
+		VertxConfig.config.setJsonObject(new JsonObject());
+		logger_ = Logger.getLogger(LOGGER_NAME_);
+		logger_.setLevel(Level.WARNING);
+		vertx_ = Vertx.vertx();
+		vertx_.deployVerticle(new Starter_(), context.asyncAssertSuccess());
+	}
+
+	@After public void tearDown(TestContext context) {
+		vertx_.close(context.asyncAssertSuccess(v -> {
+			logger_.setLevel(null);
+			VertxConfig.config.setJsonObject(config_);
+		}));
+	}
+
+	@Test public void logLevelTtl(TestContext context) {
+		Async async = context.async();
+		vertx_.eventBus().send(ServiceAddress.logLevel(), new JsonObject().put("logger", LOGGER_NAME_).put("level", "FINE").put("ttlMsec", 200L), context.asyncAssertSuccess(rep -> {
+			context.assertEquals(Level.FINE, logger_.getLevel());
+			vertx_.setTimer(600L, t -> {
+				// Reverted by the timer
+				context.assertEquals(Level.WARNING, logger_.getLevel());
+				async.complete();
+			});
+		}));
+	}
+
+	@Test public void logLevelCancel(TestContext context) {
+		Async async = context.async();
+		vertx_.eventBus().send(ServiceAddress.logLevel(), new JsonObject().put("logger", LOGGER_NAME_).put("level", "FINE").put("ttlMsec", 200L), context.asyncAssertSuccess(rep -> {
+			vertx_.eventBus().send(ServiceAddress.logLevel(), new JsonObject().put("logger", LOGGER_NAME_).put("level", "FINER"), context.asyncAssertSuccess(rep2 -> {
+				context.assertEquals(Level.FINER, logger_.getLevel());
+				vertx_.setTimer(600L, t -> {
+					// The pending revert has been cancelled by the newer request
+					context.assertEquals(Level.FINER, logger_.getLevel());
+					vertx_.eventBus().send(ServiceAddress.logLevel(), new JsonObject().put("logger", LOGGER_NAME_), context.asyncAssertSuccess(rep3 -> {
+						context.assertEquals(Level.WARNING, logger_.getLevel());
+						async.complete();
+					}));
+				});
+			}));
+		}));
+	}
+
+}
@@ -0,0 +1,59 @@
+package jp.co.sony.csl.dcoes.apis.common.util.vertx;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.VertxLoggerFormatter;
+
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Compares {@link ApisLoggerFormatter} with the former implementation which added the prefix to the result of {@link VertxLoggerFormatter}.
+ * Not a unit test : run {@link #main(String[])} by hand.
+ * Optional arguments are the number of iterations and the number of rounds.
+ * {@link ApisLoggerFormatter} を {@link VertxLoggerFormatter} の結果に接頭辞を足していた以前の実装と比較する.
+ * ユニットテストではない : {@link #main(String[])} を手で実行する.
+ * 省略可能な引数は繰り返し回数とラウンド数.
+ */
+public class ApisLoggerFormatterBenchmark {
+
+	private ApisLoggerFormatterBenchmark() { }
+
+	private static class Legacy_ extends VertxLoggerFormatter {
+		@Override public String format(LogRecord record) {
+			return "[[[" + VertxConfig.programId() + "]]] " + super.format(record);
+		}
+	}
+
+	private static long run_(Formatter formatter, LogRecord[] records, int iterations) {
+		long sink = 0L;
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			LogRecord record = records[i % records.length];
+			record.setMillis(1577836800000L + (i >> 4));
+			sink += formatter.format(record).length();
+		}
+		long elapsed = System.nanoTime() - start;
+		if (sink == 42L) System.out.print("");
+		return elapsed;
+	}
+
+	public static void main(String[] args) {
+		int iterations = (0 < args.length) ? Integer.parseInt(args[0]) : 1000000;
+		int rounds = (1 < args.length) ? Integer.parseInt(args[1]) : 5;
+		VertxConfig.config.setJsonObject(new JsonObject().put("programId", "apis-main"));
+		LogRecord[] records = new LogRecord[16];
+		for (int i = 0; i < records.length; i++) {
+			records[i] = new LogRecord(Level.INFO, "deal " + i + " : dischargeUnitId : E00" + (i % 4) + ", chargeUnitId : E00" + ((i + 1) % 4) + ", dealGridCurrentA : 2.5");
+			records[i].setLoggerName("jp.co.sony.csl.dcoes.apis.main.app.gridmaster.Benchmark");
+		}
+		Formatter legacy = new Legacy_();
+		Formatter current = new ApisLoggerFormatter();
+		for (int r = 0; r < rounds; r++) {
+			long l = run_(legacy, records, iterations);
+			long c = run_(current, records, iterations);
+			System.out.printf("round %d : legacy %.1f ns/op, current %.1f ns/op%n", r, (double) l / iterations, (double) c / iterations);
+		}
+	}
+
+}
@@ -44,4 +44,22 @@ public class ApisLoggerFormatterTest {
 		context.assertEquals("[[[apis-log]]] " + BASE_.format(record), result);
 	}
 
+	@Test public void timestampAndThrown(TestContext context) {
+		VertxConfig.config.setJsonObject(new JsonObject("{\"programId\":\"apis-log\"}"));
+		ApisLoggerFormatter formatter = new ApisLoggerFormatter();
+		long base = 1577836800000L;
+		long[] offsets = new long[] { 0L, 1L, 10L, 100L, 120L, 123L, 999L, 1000L, 1001L, -1L };
+		for (long anOffset : offsets) {
+			LogRecord record = new LogRecord(Level.WARNING, "test message");
+			record.setLoggerName("testLogger");
+			record.setMillis(base + anOffset);
+			context.assertEquals("[[[apis-log]]] " + BASE_.format(record), formatter.format(record));
+			context.assertEquals("[[[apis-log]]] " + BASE_.format(record), formatter.format(record));
+		}
+		LogRecord record = new LogRecord(Level.SEVERE, "failed");
+		record.setLoggerName("testLogger");
+		record.setThrown(new IllegalStateException("test"));
+		context.assertEquals("[[[apis-log]]] " + BASE_.format(record), formatter.format(record));
+	}
+
 }
@@ -0,0 +1,186 @@
+package jp.co.sony.csl.dcoes.apis.common.util.vertx;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class DealJournalTest {
+	protected Vertx vertx;
+	protected Path dir;
+
+	public DealJournalTest() {
+		super();
+	}
+
+	@Before public void before(TestContext context) throws IOException {
+		vertx = Vertx.vertx();
+		dir = Files.createTempDirectory("dealJournal");
+	}
+	@After public void after(TestContext context) throws IOException {
+		vertx.close();
+		try (Stream<Path> paths = Files.walk(dir)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+
+	private static JsonObject deal_(String dealId, int day, String state) {
+		return new JsonObject().put("dealId", dealId).put("createDateTime", String.format("2020/01/%02d-12:00:00", day)).put("state", state);
+	}
+
+	@Test public void groupCommitAndReplay(TestContext context) {
+		Async async = context.async();
+		DealJournal.open(vertx, dir, 4096, 20, resOpen -> {
+			context.assertTrue(resOpen.succeeded());
+			DealJournal journal = resOpen.result();
+			int n = 100;
+			AtomicInteger done = new AtomicInteger();
+			for (int i = 0; i < n; i++) {
+				journal.append(deal_("d" + i, 1 + i % 3, "started"), res -> {
+					context.assertTrue(res.succeeded());
+					if (done.incrementAndGet() == n) {
+						JsonObject stats = journal.stats();
+						context.assertEquals(n, stats.getInteger("deals"));
+						context.assertEquals(3, stats.getInteger("dates"));
+						context.assertTrue(1 < stats.getInteger("segments"));
+						context.assertTrue(stats.getLong("commits") < n);
+						List<JsonObject> day1 = journal.replay(LocalDate.of(2020, 1, 1));
+						context.assertEquals(34, day1.size());
+						context.assertEquals("d0", day1.get(0).getString("dealId"));
+						context.assertEquals("d3", day1.get(1).getString("dealId"));
+						context.assertEquals(0, journal.replay(LocalDate.of(2020, 1, 4)).size());
+						async.complete();
+					}
+				});
+			}
+		});
+	}
+
+	@Test public void supersedeAndReopen(TestContext context) {
+		Async async = context.async();
+		DealJournal.open(vertx, dir, 4096, 0, resOpen -> {
+			DealJournal journal = resOpen.result();
+			journal.append(deal_("a", 1, "started"), res1 -> {
+				journal.append(deal_("b", 1, "started"), res2 -> {
+					journal.append(deal_("a", 1, "stopped"), res3 -> {
+						context.assertEquals("stopped", journal.get("a").getString("state"));
+						context.assertEquals(2, journal.replay(LocalDate.of(2020, 1, 1)).size());
+						context.assertNull(journal.get("c"));
+						journal.close(resClose -> {
+							context.assertTrue(resClose.succeeded());
+							journal.append(deal_("c", 1, "started"), res4 -> {
+								context.assertTrue(res4.failed());
+								DealJournal.open(vertx, dir, 4096, 0, resReopen -> {
+									context.assertTrue(resReopen.succeeded());
+									DealJournal reopened = resReopen.result();
+									context.assertEquals("stopped", reopened.get("a").getString("state"));
+									context.assertEquals("started", reopened.get("b").getString("state"));
+									List<JsonObject> day1 = reopened.replay(LocalDate.of(2020, 1, 1));
+									context.assertEquals("a", day1.get(0).getString("dealId"));
+									context.assertEquals("b", day1.get(1).getString("dealId"));
+									async.complete();
+								});
+							});
+						});
+					});
+				});
+			});
+		});
+	}
+
+	@Test public void tornTail(TestContext context) throws Exception {
+		Async async = context.async();
+		DealJournal.open(vertx, dir, 4096, 0, resOpen -> {
+			DealJournal journal = resOpen.result();
+			journal.append(deal_("a", 1, "started"), res1 -> {
+				journal.append(deal_("b", 1, "started"), res2 -> {
+					journal.close(resClose -> {
+						try (RandomAccessFile file = new RandomAccessFile(dir.resolve("deal-0000000000.seg").toFile(), "rw")) {
+							// Corrupt the last byte of the second record
+							long length = file.readInt();
+							long second = 8 + length;
+							file.seek(second);
+							long length2 = file.readInt();
+							file.seek(second + 8 + length2 - 1);
+							file.write('x');
+						} catch (IOException e) {
+							context.fail(e);
+						}
+						DealJournal.open(vertx, dir, 4096, 0, resReopen -> {
+							DealJournal reopened = resReopen.result();
+							context.assertNotNull(reopened.get("a"));
+							context.assertNull(reopened.get("b"));
+							reopened.append(deal_("c", 1, "started"), res3 -> {
+								context.assertTrue(res3.succeeded());
+								context.assertEquals(2, reopened.replay(LocalDate.of(2020, 1, 1)).size());
+								async.complete();
+							});
+						});
+					});
+				});
+			});
+		});
+	}
+
+	@Test public void compact(TestContext context) {
+		Async async = context.async();
+		DealJournal.open(vertx, dir, 1024, 0, resOpen -> {
+			DealJournal journal = resOpen.result();
+			int n = 60;
+			AtomicInteger done = new AtomicInteger();
+			for (int i = 0; i < n; i++) {
+				// d0 .. d4 updated over and over, on day 1 ; one deal on day 2 per ten appends
+				// d0 .. d4 を何度も更新する. 1 日目. 十回の追記ごとに 2 日目の融通を一件
+				JsonObject deal = (i % 10 == 9) ? deal_("e" + i, 2, "started") : deal_("d" + (i % 5), 1, "s" + i);
+				journal.append(deal, res -> {
+					if (done.incrementAndGet() == n) {
+						int segments = journal.stats().getInteger("segments");
+						journal.compact(null, resCompact -> {
+							context.assertTrue(resCompact.succeeded());
+							context.assertTrue(0 < resCompact.result());
+							context.assertTrue(journal.stats().getInteger("segments") <= segments);
+							context.assertEquals(5 + 6, journal.stats().getInteger("deals"));
+							context.assertEquals("s58", journal.get("d3").getString("state"));
+							context.assertEquals(6, journal.replay(LocalDate.of(2020, 1, 2)).size());
+							journal.compact(LocalDate.of(2020, 1, 2), resDrop -> {
+								context.assertTrue(resDrop.succeeded());
+								context.assertNull(journal.get("d0"));
+								context.assertEquals(0, journal.replay(LocalDate.of(2020, 1, 1)).size());
+								context.assertEquals(6, journal.replay(LocalDate.of(2020, 1, 2)).size());
+								journal.close(resClose -> {
+									DealJournal.open(vertx, dir, 1024, 0, resReopen -> {
+										DealJournal reopened = resReopen.result();
+										context.assertEquals(6, reopened.replay(LocalDate.of(2020, 1, 2)).size());
+										context.assertEquals("started", reopened.get("e59").getString("state"));
+										context.assertNull(reopened.get("d0"));
+										context.assertEquals(0, reopened.replay(LocalDate.of(2020, 1, 1)).size());
+										context.assertEquals(6, reopened.stats().getInteger("deals"));
+										async.complete();
+									});
+								});
+							});
+						});
+					}
+				});
+			}
+		});
+	}
+
+}
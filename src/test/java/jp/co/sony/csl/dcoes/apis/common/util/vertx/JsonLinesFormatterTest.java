@@ -0,0 +1,68 @@
+package jp.co.sony.csl.dcoes.apis.common.util.vertx;
+
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import jp.co.sony.csl.dcoes.apis.common.util.LogContext;
+
+@RunWith(VertxUnitRunner.class)
+public class JsonLinesFormatterTest {
+
+	public JsonLinesFormatterTest() {
+		super();
+	}
+
+	@Test public void fieldsAndContext(TestContext context) {
+		VertxConfig.config.setJsonObject(new JsonObject("{\"programId\":\"apis-main\",\"communityId\":\"c\",\"clusterId\":\"k\"}"));
+		LogRecord record = new LogRecord(Level.WARNING, "deal {0} : \"quoted\"\n\tnext");
+		record.setLoggerName("testLogger");
+		record.setParameters(new Object[] { "D1" });
+		record.setMillis(1234567890123L);
+		String result;
+		LogContext.Scope deal = LogContext.open(LogContext.DEAL_ID, "D1");
+		LogContext.Scope unit = LogContext.open(LogContext.UNIT_ID, "E001");
+		try {
+			result = new JsonLinesFormatter().format(record);
+		} finally {
+			unit.close();
+			deal.close();
+		}
+		context.assertNull(LogContext.get(LogContext.DEAL_ID));
+		context.assertTrue(result.endsWith("}\n"));
+		context.assertEquals(1, result.split("\n").length);
+		JsonObject json = new JsonObject(result);
+		context.assertEquals(1234567890123L, json.getLong("time"));
+		context.assertEquals("WARNING", json.getString("level"));
+		context.assertEquals("apis-main", json.getString("programId"));
+		context.assertEquals("c", json.getString("communityId"));
+		context.assertEquals("k", json.getString("clusterId"));
+		context.assertEquals(Thread.currentThread().getName(), json.getString("thread"));
+		context.assertEquals("testLogger", json.getString("logger"));
+		context.assertEquals("deal D1 : \"quoted\"\n\tnext", json.getString("message"));
+		context.assertEquals("D1", json.getString("dealId"));
+		context.assertEquals("E001", json.getString("unitId"));
+		context.assertFalse(json.containsKey("thrown"));
+	}
+
+	@Test public void reservedContextKey(TestContext context) {
+		LogRecord record = new LogRecord(Level.INFO, "message");
+		String result;
+		LogContext.Scope level = LogContext.open("level", "spoofed");
+		try {
+			result = new JsonLinesFormatter().format(record);
+		} finally {
+			level.close();
+		}
+		context.assertEquals(1, result.split("\"level\":").length - 1);
+		JsonObject json = new JsonObject(result);
+		context.assertEquals("INFO", json.getString("level"));
+		context.assertEquals("spoofed", json.getString(JsonLinesFormatter.CONTEXT_KEY_PREFIX + "level"));
+	}
+
+}
@@ -0,0 +1,127 @@
+package jp.co.sony.csl.dcoes.apis.common.util.vertx;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.datagram.DatagramSocket;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import jp.co.sony.csl.dcoes.apis.common.ServiceAddress;
+import jp.co.sony.csl.dcoes.apis.common.util.MulticastLogCodec;
+
+@RunWith(VertxUnitRunner.class)
+public class MulticastLogReceiverTest {
+
+	public MulticastLogReceiverTest() {
+		super();
+	}
+
+	private static final int PORT_ = 23456;
+
+	private Vertx vertx_;
+	private Path dir_;
+
+	@Before public void setUp(TestContext context) throws IOException {
+		dir_ = Files.createTempDirectory("MulticastLogReceiverTest");
+		VertxConfig.config.setJsonObject(new JsonObject()
+				.put("multicastLogReceiver", new JsonObject()
+						.put("port", PORT_)
+						.put("host", "127.0.0.1")
+						.put("file", dir_.resolve("apis.log").toString())
+						.put("flushPeriodMsec", 100L)));
+		vertx_ = Vertx.vertx();
+		vertx_.deployVerticle(new MulticastLogReceiver(), context.asyncAssertSuccess());
+	}
+
+	@After public void tearDown(TestContext context) {
+		vertx_.close(context.asyncAssertSuccess());
+	}
+
+	private static List<byte[]> encode_(MulticastLogCodec.Encoder encoder, String message) throws IOException {
+		LogRecord record = new LogRecord(Level.INFO, message);
+		record.setLoggerName("testLogger");
+		List<byte[]> result = new ArrayList<>();
+		encoder.encode("apis-test", "test-thread", record, message, (data, length) -> result.add(Arrays.copyOf(data, length)));
+		return result;
+	}
+
+	@Test public void dedupAndLoss(TestContext context) throws IOException {
+		MulticastLogCodec.Encoder encoder = new MulticastLogCodec.Encoder(42L, MulticastLogCodec.DEFAULT_MAX_DATAGRAM_SIZE);
+		byte[] first = encode_(encoder, "first").get(0);
+		encode_(encoder, "skipped");
+		byte[] third = encode_(encoder, "third").get(0);
+		DatagramSocket sender = vertx_.createDatagramSocket();
+		List<byte[]> datagrams = Arrays.asList(first, first, third, "raw line".getBytes(StandardCharsets.UTF_8));
+		Async async = context.async();
+		send_(sender, datagrams, 0, () -> {
+			vertx_.setTimer(500L, t -> {
+				vertx_.eventBus().<JsonObject>send(ServiceAddress.multicastLogReceiverMetrics(), null, rep -> {
+					context.assertTrue(rep.succeeded());
+					JsonObject metrics = rep.result().body();
+					context.assertEquals(4L, metrics.getLong("datagrams"));
+					context.assertEquals(3L, metrics.getLong("records"));
+					context.assertEquals(1L, metrics.getLong("rawRecords"));
+					context.assertEquals(1L, metrics.getLong("duplicates"));
+					context.assertEquals(1L, metrics.getLong("lost"));
+					try {
+						List<String> lines = Files.readAllLines(dir_.resolve("apis.log"), StandardCharsets.UTF_8);
+						context.assertEquals(3, lines.size());
+						context.assertTrue(lines.get(0).startsWith("[[[apis-test]]] [test-thread] "));
+						context.assertTrue(lines.get(0).endsWith(" INFO [testLogger]  first"));
+						context.assertTrue(lines.get(1).endsWith(" INFO [testLogger]  third"));
+						context.assertEquals("raw line", lines.get(2));
+					} catch (IOException e) {
+						context.fail(e);
+					}
+					async.complete();
+				});
+			});
+		});
+	}
+
+	@Test public void reorderedFirst(TestContext context) throws IOException {
+		MulticastLogCodec.Encoder encoder = new MulticastLogCodec.Encoder(43L, MulticastLogCodec.DEFAULT_MAX_DATAGRAM_SIZE);
+		byte[] first = encode_(encoder, "first").get(0);
+		byte[] second = encode_(encoder, "second").get(0);
+		encode_(encoder, "skipped");
+		byte[] fourth = encode_(encoder, "fourth").get(0);
+		DatagramSocket sender = vertx_.createDatagramSocket();
+		Async async = context.async();
+		send_(sender, Arrays.asList(second, first, fourth), 0, () -> {
+			vertx_.setTimer(500L, t -> {
+				vertx_.eventBus().<JsonObject>send(ServiceAddress.multicastLogReceiverMetrics(), null, rep -> {
+					context.assertTrue(rep.succeeded());
+					JsonObject metrics = rep.result().body();
+					context.assertEquals(3L, metrics.getLong("records"));
+					context.assertEquals(1L, metrics.getLong("lost"));
+					async.complete();
+				});
+			});
+		});
+	}
+
+	private void send_(DatagramSocket sender, List<byte[]> datagrams, int index, Runnable completion) {
+		if (datagrams.size() <= index) {
+			completion.run();
+			return;
+		}
+		sender.send(Buffer.buffer(datagrams.get(index)), PORT_, "127.0.0.1", res -> send_(sender, datagrams, index + 1, completion));
+	}
+
+}
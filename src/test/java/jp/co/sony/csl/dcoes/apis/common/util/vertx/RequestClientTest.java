@@ -0,0 +1,110 @@
+package jp.co.sony.csl.dcoes.apis.common.util.vertx;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class RequestClientTest {
+	protected Vertx vertx;
+
+	public RequestClientTest() {
+		super();
+	}
+
+	@Before public void before(TestContext context) {
+		vertx = Vertx.vertx();
+	}
+	@After public void after(TestContext context) {
+		vertx.close();
+	}
+
+	@Test public void retryTimeout(TestContext context) {
+		RequestClient client = new RequestClient(vertx, new Random(1L));
+		client.setPolicy("test.flaky", new RequestClient.Policy().setMaxRetries(3).setInitialBackoffMsec(10L));
+		AtomicInteger received = new AtomicInteger();
+		vertx.eventBus().<String>consumer("test.flaky", req -> {
+			// Ignores the first two requests, which time out
+			if (2 < received.incrementAndGet()) req.reply("pong");
+		});
+		client.<String>request("test.flaky", "ping", new DeliveryOptions().setSendTimeout(100L), context.asyncAssertSuccess(res -> {
+			context.assertEquals("pong", res);
+			JsonObject stats = client.stats("test.flaky");
+			context.assertEquals(1L, stats.getLong("successes"));
+			context.assertEquals(2L, stats.getLong("retries"));
+			context.assertEquals(3L, stats.getLong("attempts"));
+			context.assertEquals(2L, stats.getLong("timeouts"));
+		}));
+	}
+
+	@Test public void noRetryOnRecipientFailure(TestContext context) {
+		RequestClient client = new RequestClient(vertx, new Random(1L));
+		client.setDefaultPolicy(new RequestClient.Policy().setMaxRetries(3).setInitialBackoffMsec(10L));
+		vertx.eventBus().consumer("test.failing", req -> req.fail(-1, "boom"));
+		client.request("test.failing", null, null, context.asyncAssertFailure(t -> {
+			context.assertTrue(ReplyFailureUtil.isRecipientFailure(t));
+			context.assertEquals(1L, client.stats("test.failing").getLong("attempts"));
+			context.assertEquals(1L, client.stats("test.failing").getLong("failures"));
+		}));
+	}
+
+	@Test public void budget(TestContext context) {
+		RequestClient client = new RequestClient(vertx, new Random(1L));
+		client.setPolicy("test.nobody", new RequestClient.Policy().setMaxRetries(100).setInitialBackoffMsec(1L).setMaxBackoffMsec(1L).setBudgetTokens(10));
+		Async async = context.async();
+		client.request("test.nobody", null, null, res -> {
+			context.assertTrue(ReplyFailureUtil.isNoHandlers(res));
+			JsonObject stats = client.stats("test.nobody");
+			// Retries stop once half of the tokens are used up
+			context.assertEquals(4L, stats.getLong("retries"));
+			context.assertEquals(5L, stats.getLong("attempts"));
+			context.assertEquals(1L, stats.getLong("budgetExhausted"));
+			async.complete();
+		});
+	}
+
+	@Test public void hedge(TestContext context) {
+		RequestClient client = new RequestClient(vertx, new Random(1L));
+		client.setPolicy("test.slow", new RequestClient.Policy().setHedgeDelayMsec(50L));
+		AtomicInteger received = new AtomicInteger();
+		vertx.eventBus().<String>consumer("test.slow", req -> {
+			// The first request is answered late, the hedged one at once
+			if (received.incrementAndGet() == 1) {
+				vertx.setTimer(2000L, t -> req.reply("late"));
+			} else {
+				req.reply("hedged");
+			}
+		});
+		long start = System.currentTimeMillis();
+		client.<String>request("test.slow", "read", null, context.asyncAssertSuccess(res -> {
+			context.assertEquals("hedged", res);
+			context.assertTrue(System.currentTimeMillis() - start < 1000L);
+			context.assertEquals(1L, client.stats().getJsonObject("test.slow").getLong("hedges"));
+		}));
+	}
+
+	@Test public void backoff(TestContext context) {
+		RequestClient.Policy policy = new RequestClient.Policy().setInitialBackoffMsec(100L).setMaxBackoffMsec(1000L).setJitter(0D);
+		context.assertEquals(100L, policy.backoffMsec(1, new Random()));
+		context.assertEquals(400L, policy.backoffMsec(3, new Random()));
+		context.assertEquals(1000L, policy.backoffMsec(10, new Random()));
+		policy.setJitter(0.5);
+		Random random = new Random(1L);
+		for (int i = 0; i < 100; i++) {
+			long value = policy.backoffMsec(2, random);
+			context.assertTrue(100L <= value && value <= 200L);
+		}
+	}
+
+}
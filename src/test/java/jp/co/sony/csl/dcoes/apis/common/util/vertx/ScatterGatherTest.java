@@ -0,0 +1,99 @@
+package jp.co.sony.csl.dcoes.apis.common.util.vertx;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jp.co.sony.csl.dcoes.apis.common.Address;
+import jp.co.sony.csl.dcoes.apis.common.ServiceAddress;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class ScatterGatherTest {
+	protected Vertx vertx;
+
+	public ScatterGatherTest() {
+		super();
+	}
+
+	@Before public void before(TestContext context) {
+		vertx = Vertx.vertx();
+	}
+	@After public void after(TestContext context) {
+		vertx.close();
+	}
+
+	@Test public void partial(TestContext context) {
+		// E001 replies, E002 never replies, E003 fails, E004 has no consumer
+		vertx.eventBus().consumer(ServiceAddress.Controller.unitData("E001"), req -> req.reply(new JsonObject().put("id", "E001")));
+		vertx.eventBus().consumer(ServiceAddress.Controller.unitData("E002"), req -> { });
+		vertx.eventBus().consumer(ServiceAddress.Controller.unitData("E003"), req -> req.fail(-1, "broken"));
+		// Warms up the event bus first ; the first reply on a cold JVM can take hundreds of milliseconds
+		ServiceAddress.Typed.CONTROLLER_UNIT_DATA.of("E001").request(vertx, null, context.asyncAssertSuccess(warmUp -> {
+			// Only E002 should reach the deadline, so it is long enough for E001 on a slow machine
+			ScatterGather<Void, JsonObject> sg = new ScatterGather<>(vertx, ServiceAddress.Typed.CONTROLLER_UNIT_DATA).setDeadlineMsec(3000L);
+			List<String> streamed = Collections.synchronizedList(new ArrayList<>());
+			long start = System.currentTimeMillis();
+			sg.gather(Arrays.asList("E001", "E002", "E003", "E004", "E001"), null, reply -> streamed.add(reply.unitId()), context.asyncAssertSuccess(res -> {
+				context.assertTrue(System.currentTimeMillis() - start < 10000L);
+				context.assertEquals(4, res.unitIds().size());
+				context.assertEquals(4, streamed.size());
+				context.assertTrue(streamed.containsAll(res.unitIds()));
+				context.assertFalse(res.isComplete());
+				context.assertNotNull(res.values().get("E001"));
+				context.assertEquals("E001", res.values().get("E001").getString("id"));
+				context.assertEquals(ReplyFailure.TIMEOUT, res.failureType("E002"));
+				context.assertEquals(ReplyFailure.RECIPIENT_FAILURE, res.failureType("E003"));
+				context.assertEquals(ReplyFailure.NO_HANDLERS, res.failureType("E004"));
+				context.assertNull(res.failureType("E001"));
+			}));
+		}));
+	}
+
+	@Test public void concurrency(TestContext context) {
+		Address.PerUnit<Integer, Integer> template = new Address.PerUnit<>("test.", ".square", Address.Scope.LOCAL, Integer.class, Integer.class);
+		List<String> unitIds = new ArrayList<>();
+		AtomicInteger inFlight = new AtomicInteger();
+		AtomicInteger maxInFlight = new AtomicInteger();
+		for (int i = 0; i < 20; i++) {
+			String unitId = "E" + i;
+			unitIds.add(unitId);
+			template.of(unitId).consumer(vertx, req -> {
+				maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+				vertx.setTimer(10L, t -> {
+					inFlight.decrementAndGet();
+					req.reply(req.body() * req.body());
+				});
+			});
+		}
+		Async async = context.async();
+		new ScatterGather<>(vertx, template).setConcurrency(3).gather(unitIds, 7, res -> {
+			context.assertTrue(res.result().isComplete());
+			context.assertEquals(20, res.result().values().size());
+			context.assertEquals(49, res.result().values().get("E5"));
+			context.assertTrue(maxInFlight.get() <= 3);
+			async.complete();
+		});
+	}
+
+	@Test public void empty(TestContext context) {
+		new ScatterGather<>(vertx, ServiceAddress.Typed.CONTROLLER_UNIT_DATA).gather(Collections.emptyList(), null, context.asyncAssertSuccess(res -> {
+			context.assertTrue(res.isComplete());
+			context.assertTrue(res.values().isEmpty());
+		}));
+	}
+
+}
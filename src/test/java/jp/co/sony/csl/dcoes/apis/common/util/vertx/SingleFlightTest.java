@@ -0,0 +1,150 @@
+package jp.co.sony.csl.dcoes.apis.common.util.vertx;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class SingleFlightTest {
+	protected Vertx vertx;
+
+	public SingleFlightTest() {
+		super();
+	}
+
+	@Before public void before(TestContext context) {
+		vertx = Vertx.vertx();
+	}
+	@After public void after(TestContext context) {
+		vertx.close();
+	}
+
+	@Test public void coalesce(TestContext context) {
+		AtomicLong clock = new AtomicLong(0L);
+		SingleFlight<String, Integer> flight = new SingleFlight<>(100L, clock::get);
+		List<Handler<AsyncResult<Integer>>> pending = new ArrayList<>();
+		AtomicInteger results = new AtomicInteger();
+		for (int i = 0; i < 5; i++) {
+			flight.execute("a", pending::add, res -> {
+				context.assertEquals(42, res.result());
+				results.incrementAndGet();
+			});
+		}
+		flight.execute("b", pending::add, res -> context.assertEquals(7, res.result()));
+		context.assertEquals(2, pending.size());
+		context.assertEquals(4L, flight.coalesced());
+		pending.get(0).handle(Future.succeededFuture(42));
+		pending.get(1).handle(Future.succeededFuture(7));
+		context.assertEquals(5, results.get());
+		// Fresh result is reused within the window
+		clock.set(99L);
+		flight.execute("a", pending::add, res -> context.assertEquals(42, res.result()));
+		context.assertEquals(1L, flight.reused());
+		context.assertEquals(2, pending.size());
+		// and not after it
+		clock.set(100L);
+		flight.execute("a", pending::add, res -> context.assertEquals(43, res.result()));
+		context.assertEquals(3, pending.size());
+		pending.get(2).handle(Future.succeededFuture(43));
+		context.assertEquals(3L, flight.executed());
+	}
+
+	@Test public void failureNotReused(TestContext context) {
+		SingleFlight<String, Integer> flight = new SingleFlight<>(1000L, () -> 0L);
+		AtomicInteger failures = new AtomicInteger();
+		flight.execute("a", done -> { throw new IllegalStateException("boom"); }, res -> {
+			context.assertTrue(res.failed());
+			failures.incrementAndGet();
+		});
+		flight.execute("a", done -> done.handle(Future.failedFuture("again")), res -> {
+			context.assertTrue(res.failed());
+			failures.incrementAndGet();
+		});
+		flight.execute("a", done -> done.handle(Future.succeededFuture(1)), res -> context.assertEquals(1, res.result()));
+		context.assertEquals(2, failures.get());
+		context.assertEquals(3L, flight.executed());
+		flight.invalidate("a");
+		flight.execute("a", done -> done.handle(Future.succeededFuture(2)), res -> context.assertEquals(2, res.result()));
+	}
+
+	@Test public void eventBus(TestContext context) {
+		Async async = context.async(10);
+		AtomicInteger queries = new AtomicInteger();
+		vertx.eventBus().<JsonObject>consumer("test.singleFlight", req -> {
+			queries.incrementAndGet();
+			// A slow device query
+			vertx.setTimer(50L, t -> req.reply(new JsonObject().put("urgent", req.headers().get("urgent"))));
+		}).completionHandler(ar -> {
+			SingleFlight<String, JsonObject> flight = new SingleFlight<>(0L);
+			for (int i = 0; i < 10; i++) {
+				String urgent = (i % 2 == 0) ? "true" : "false";
+				SingleFlight.<JsonObject>send(flight, vertx, "test.singleFlight", null, new DeliveryOptions().addHeader("urgent", urgent), res -> {
+					context.assertTrue(res.succeeded());
+					context.assertEquals(urgent, res.result().getString("urgent"));
+					context.assertEquals(2, queries.get());
+					async.countDown();
+				});
+			}
+		});
+	}
+
+	@Test public void verticles(TestContext context) {
+		Async async = context.async(2);
+		AtomicInteger queries = new AtomicInteger();
+		SingleFlight<String, JsonObject> flight = new SingleFlight<>(0L);
+		vertx.eventBus().<JsonObject>consumer("test.singleFlight.verticles", req -> {
+			queries.incrementAndGet();
+			vertx.setTimer(100L, t -> req.reply(new JsonObject().put("value", 1)));
+		}).completionHandler(ar -> {
+			for (int i = 0; i < 2; i++) {
+				vertx.deployVerticle(new Client_(context, async, flight, queries, "v" + i));
+			}
+		});
+	}
+
+	// Requests through a shared flight ; the handler must run on its own context with its own copy of the result
+	private static class Client_ extends AbstractVerticle {
+		private final TestContext test_;
+		private final Async async_;
+		private final SingleFlight<String, JsonObject> flight_;
+		private final AtomicInteger queries_;
+		private final String name_;
+		private Client_(TestContext test, Async async, SingleFlight<String, JsonObject> flight, AtomicInteger queries, String name) {
+			test_ = test;
+			async_ = async;
+			flight_ = flight;
+			queries_ = queries;
+			name_ = name;
+		}
+		@Override public void start() {
+			Context mine = context;
+			SingleFlight.<JsonObject>send(flight_, vertx, "test.singleFlight.verticles", null, null, res -> {
+				test_.assertTrue(mine == Vertx.currentContext());
+				test_.assertEquals(1, res.result().getInteger("value"));
+				test_.assertFalse(res.result().containsKey("by"));
+				res.result().put("by", name_);
+				test_.assertEquals(1, queries_.get());
+				async_.countDown();
+			});
+		}
+	}
+
+}